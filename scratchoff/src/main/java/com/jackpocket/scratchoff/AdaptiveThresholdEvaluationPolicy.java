@@ -0,0 +1,88 @@
+package com.jackpocket.scratchoff;
+
+import android.view.MotionEvent;
+
+import com.jackpocket.scratchoff.paths.ScratchPathPointBuffer;
+
+/**
+ * A {@link ThresholdEvaluationPolicy} that adapts the delay between evaluations
+ * to how expensive they are on the current device.
+ * <br><br>
+ * The delay is kept at a multiple of the smoothed evaluation cost, so slow evaluations
+ * are spread out instead of falling behind, while cheap evaluations are performed as
+ * frequently as the minimum delay allows. Lifting the last pointer always triggers an
+ * immediate evaluation.
+ * <br><br>
+ * Instances track the cost of a single processor and must not be shared.
+ */
+public class AdaptiveThresholdEvaluationPolicy implements ThresholdEvaluationPolicy {
+
+    public static final long DEFAULT_MIN_DELAY_MS = 16L;
+    public static final long DEFAULT_INITIAL_DELAY_MS = 50L;
+    public static final long DEFAULT_MAX_DELAY_MS = 500L;
+
+    /**
+     * The delay as a multiple of the evaluation cost, limiting the evaluation
+     * Thread to spending roughly 25% of its time on a single processor.
+     */
+    public static final float DEFAULT_COST_MULTIPLIER = 4f;
+
+    private static final float COST_SMOOTHING_FACTOR = 0.25f;
+
+    private final long minDelayMs;
+    private final long maxDelayMs;
+    private final float costMultiplier;
+
+    private volatile long evaluationDelayMs;
+    private float smoothedCostMs = -1f;
+
+    public AdaptiveThresholdEvaluationPolicy() {
+        this(DEFAULT_MIN_DELAY_MS, DEFAULT_INITIAL_DELAY_MS, DEFAULT_MAX_DELAY_MS, DEFAULT_COST_MULTIPLIER);
+    }
+
+    public AdaptiveThresholdEvaluationPolicy(
+        long minDelayMs,
+        long initialDelayMs,
+        long maxDelayMs,
+        float costMultiplier
+    ) {
+
+        this.minDelayMs = minDelayMs;
+        this.maxDelayMs = Math.max(minDelayMs, maxDelayMs);
+        this.costMultiplier = costMultiplier;
+        this.evaluationDelayMs = constrainDelay(initialDelayMs);
+    }
+
+    @Override
+    public long getEvaluationDelayMs() {
+        return evaluationDelayMs;
+    }
+
+    @Override
+    public boolean isImmediateEvaluationRequired(ScratchPathPointBuffer points) {
+        final int count = points.size();
+
+        for (int i = 0; i < count; i++) {
+            if (points.getAction(i) == MotionEvent.ACTION_UP) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public void onEvaluationCompleted(long durationNs) {
+        float costMs = durationNs / 1000000f;
+
+        this.smoothedCostMs = smoothedCostMs < 0
+            ? costMs
+            : smoothedCostMs + ((costMs - smoothedCostMs) * COST_SMOOTHING_FACTOR);
+
+        this.evaluationDelayMs = constrainDelay((long) Math.ceil(smoothedCostMs * costMultiplier));
+    }
+
+    protected long constrainDelay(long delayMs) {
+        return Math.min(maxDelayMs, Math.max(minDelayMs, delayMs));
+    }
+}
@@ -6,7 +6,11 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.os.Build;
+import android.annotation.TargetApi;
+import android.view.Choreographer;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewTreeObserver;
@@ -15,17 +19,30 @@ import android.view.animation.Animation;
 import android.view.animation.Interpolator;
 import android.view.animation.LinearInterpolator;
 
+import com.jackpocket.scratchoff.coverage.CoverageMask;
+import com.jackpocket.scratchoff.coverage.OverlayAlphaCoverage;
+import com.jackpocket.scratchoff.paths.ScratchPathBatch;
+import com.jackpocket.scratchoff.paths.ScratchPathBatchAggregator;
 import com.jackpocket.scratchoff.paths.ScratchPathManager;
 import com.jackpocket.scratchoff.paths.ScratchPathPoint;
 import com.jackpocket.scratchoff.paths.ScratchPathPointsAggregator;
+import com.jackpocket.scratchoff.tools.AlphaMaskOverlay;
+import com.jackpocket.scratchoff.tools.BitmapPool;
+import com.jackpocket.scratchoff.tools.ScratchableOverlay;
+import com.jackpocket.scratchoff.tools.TiledOverlayBitmap;
 import com.jackpocket.scratchoff.tools.ViewGroupVisibilityController;
 
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
-public class ScratchableLayoutDrawer implements ScratchPathPointsAggregator, Animation.AnimationListener {
+public class ScratchableLayoutDrawer implements ScratchPathPointsAggregator,
+    ScratchPathBatchAggregator,
+    Animation.AnimationListener,
+    OverlayAlphaCoverage.IncrementalOverlaySource {
 
     enum State {
         UNATTACHED,
@@ -35,33 +52,102 @@ public class ScratchableLayoutDrawer implements ScratchPathPointsAggregator, Ani
         CLEARED
     }
 
+    public enum OverlayRenderMode {
+        /**
+         * Render the scratchable View into mutable ARGB_8888 tiles and erase the
+         * scratched paths from them directly. See {@link TiledOverlayBitmap}.
+         */
+        TILED_BITMAP,
+
+        /**
+         * Render the scratchable View into an ARGB_8888 Bitmap that is never modified, erase the
+         * scratched paths from a separate ALPHA_8 mask, and composite the two when drawing, so that
+         * the blending can be performed by a hardware-accelerated Canvas. See {@link AlphaMaskOverlay}.
+         */
+        ALPHA_MASK
+    }
+
     public interface Delegate {
 
         public void onScratchableLayoutAvailable(int width, int height);
     }
 
+    /**
+     * An immutable snapshot of the {@link State} and the scratchable overlay it applies to,
+     * so that both can be read and replaced together without locking.
+     */
+    private static final class StateSnapshot {
+
+        final State state;
+        final ScratchableOverlay overlay;
+
+        StateSnapshot(State state, ScratchableOverlay overlay) {
+            this.state = state;
+            this.overlay = overlay;
+        }
+
+        StateSnapshot withState(State state) {
+            return new StateSnapshot(state, overlay);
+        }
+    }
+
+    private static final StateSnapshot UNATTACHED_SNAPSHOT = new StateSnapshot(State.UNATTACHED, null);
+
+    // A right edge before the left edge, which no packed dirty bounds ever have
+    private static final long NO_DIRTY_BOUNDS = packDirtyBounds(1, 0, 0, 0);
+
     private WeakReference<View> scratchView = new WeakReference<>(null);
 
-    private State state = State.UNATTACHED;
-    private Canvas pathStrippedCanvas;
-    private Bitmap pathStrippedImage;
+    private final AtomicReference<StateSnapshot> snapshot = new AtomicReference<StateSnapshot>(UNATTACHED_SNAPSHOT);
 
     private final WeakReference<Delegate> delegate;
 
-    private Paint clearPaint = new Paint();
+    private volatile Paint clearPaint = new Paint();
 
     private Interpolator clearAnimationInterpolator = new LinearInterpolator();
     private long clearAnimationDurationMs = 1000;
 
     private final ViewGroupVisibilityController visibilityController = new ViewGroupVisibilityController();
 
-    private final ArrayList<ScratchPathPoint> pendingPathPoints = new ArrayList<ScratchPathPoint>();
+    private final ConcurrentLinkedQueue<ScratchPathBatch> pendingPathBatches = new ConcurrentLinkedQueue<ScratchPathBatch>();
+
+    // Only used to build batches for points added directly
     private final ScratchPathManager pathManager = new ScratchPathManager();
 
+    // Guards the tiles of the overlay, which may be read from the
+    // threshold evaluation Thread, against being drawn to or recycled at the same time
+    private final Object overlayLock = new Object();
+
+    // Only used while holding the overlayLock
+    private final RectF batchBounds = new RectF();
+    private final Rect batchDirtyBounds = new Rect();
+
+    // The bounds of everything erased since they were last taken, and the bounds last taken, packed
+    // with packDirtyBounds() so that taking them never waits on the overlayLock
+    private final AtomicLong pendingDirtyBounds = new AtomicLong(NO_DIRTY_BOUNDS);
+    private final AtomicLong lastDirtyBounds = new AtomicLong(NO_DIRTY_BOUNDS);
+
+    // The bounds of everything erased since the overlay's changes were last drawn, guarded by the overlayLock
+    private final Rect overlayChangeBounds = new Rect();
+    private boolean overlayChangeBoundsAvailable = false;
+
+    // Only used from the frame callback
+    private final Rect frameDirtyBounds = new Rect();
+
     private Long activeClearTag = 0L;
 
     private boolean activePathRecoveryEnabled = false;
 
+    private boolean frameSynchronizedDrawingEnabled = false;
+    private OverlayRenderMode overlayRenderMode = OverlayRenderMode.TILED_BITMAP;
+    private int overlayTileSizePx = TiledOverlayBitmap.DEFAULT_TILE_SIZE_PX;
+    private float overlayDrawingQuality = 1f;
+    private BitmapPool bitmapPool = BitmapPool.UNPOOLED;
+    private boolean hardwareOverlayContentEnabled = false;
+    private final ConcurrentLinkedQueue<ScratchPathBatch> frameBatches = new ConcurrentLinkedQueue<ScratchPathBatch>();
+    private final AtomicBoolean frameDrawScheduled = new AtomicBoolean(false);
+    private FrameDrawCallback frameDrawCallback;
+
     private WeakReference<View> initializeLayoutTarget = new WeakReference<>(null);
     private ViewTreeObserver.OnGlobalLayoutListener initializationGlobalLayoutListener;
 
@@ -89,27 +175,79 @@ public class ScratchableLayoutDrawer implements ScratchPathPointsAggregator, Ani
         final View behindView
     ) {
 
-        synchronized (pathManager) {
-            this.scratchView = new WeakReference<>(scratchView);
-            this.state = State.PREPARING;
-            this.clearPaint = createClearPaint(touchRadiusPx);
-            this.activeClearTag = System.currentTimeMillis();
+        this.scratchView = new WeakReference<>(scratchView);
+        this.clearPaint = createClearPaint(touchRadiusPx);
+        this.activeClearTag = System.currentTimeMillis();
+
+        // The Choreographer must be obtained on the Thread whose frames it will be synchronized with
+        if (isFrameSynchronizedDrawingEnabled() && frameDrawCallback == null) {
+            this.frameDrawCallback = new FrameDrawCallback(this);
+        }
 
-            scratchView.setTag(R.id.scratch__clear_animation_tag, 0L);
-            scratchView.clearAnimation();
-            scratchView.setVisibility(View.VISIBLE);
-            scratchView.setWillNotDraw(false);
+        transitionState(State.PREPARING);
 
-            visibilityController.showChildren(scratchView);
+        scratchView.setTag(R.id.scratch__clear_animation_tag, 0L);
+        scratchView.clearAnimation();
+        scratchView.setVisibility(View.VISIBLE);
+        scratchView.setWillNotDraw(false);
 
-            scratchView.invalidate();
+        visibilityController.showChildren(scratchView);
 
-            enqueueViewInitializationOnGlobalLayout(scratchView, behindView);
+        scratchView.invalidate();
 
-            return this;
+        enqueueViewInitializationOnGlobalLayout(scratchView, behindView);
+
+        return this;
+    }
+
+    /**
+     * Replace the current {@link State}, regardless of what it was.
+     */
+    private void transitionState(State next) {
+        while (true) {
+            StateSnapshot current = snapshot.get();
+
+            if (snapshot.compareAndSet(current, current.withState(next))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Replace the current {@link State} only if it matches the expected one.
+     *
+     * @return false if the current {@link State} did not match
+     */
+    private boolean transitionState(State expected, State next) {
+        while (true) {
+            StateSnapshot current = snapshot.get();
+
+            if (current.state != expected) {
+                return false;
+            }
+
+            if (snapshot.compareAndSet(current, current.withState(next))) {
+                return true;
+            }
         }
     }
 
+    State getState() {
+        return snapshot.get().state;
+    }
+
+    /**
+     * Create the Paint that removes the opaque areas of a {@link CoverageMask} Bitmap from the
+     * overlay. The mask is filtered, so that the edges of its cells are softened when scaled up.
+     */
+    protected Paint createCoverageMaskPaint() {
+        Paint paint = new Paint();
+        paint.setFilterBitmap(true);
+        paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.DST_OUT));
+
+        return paint;
+    }
+
     protected Paint createClearPaint(int touchRadiusPx) {
         Paint paint = ScratchPathManager.createBaseScratchoffPaint(touchRadiusPx);
         paint.setAlpha(0xFF);
@@ -159,29 +297,62 @@ public class ScratchableLayoutDrawer implements ScratchPathPointsAggregator, Ani
     }
 
     protected void initializeLaidOutScratchableView(final View scratchView) {
-        synchronized (pathManager) {
-            this.pathStrippedImage = createBitmapFromScratchableView(scratchView);
-            this.pathStrippedCanvas = new Canvas(pathStrippedImage);
+        final ScratchableOverlay overlay = createOverlayFromScratchableView(scratchView);
+        final StateSnapshot preparing = snapshot.get();
 
-            scratchView.setBackgroundColor(Color.TRANSPARENT);
+        // The overlay is published before the Delegate is notified, so that it can be read
+        // during the callback, but the State only becomes scratchable afterwards so that any
+        // points restored by the Delegate are drawn in order with the pending ones
+        final StateSnapshot prepared = new StateSnapshot(State.PREPARING, overlay);
 
-            visibilityController.hideChildren(scratchView);
+        if (preparing.state != State.PREPARING || !snapshot.compareAndSet(preparing, prepared)) {
+            overlay.recycle();
 
-            Delegate delegate = this.delegate.get();
+            return;
+        }
 
-            if (delegate != null) {
-                delegate.onScratchableLayoutAvailable(
-                    pathStrippedImage.getWidth(),
-                    pathStrippedImage.getHeight()
-                );
-            }
+        scratchView.setBackgroundColor(Color.TRANSPARENT);
+
+        visibilityController.hideChildren(scratchView);
+
+        Delegate delegate = this.delegate.get();
+
+        if (delegate != null) {
+            delegate.onScratchableLayoutAvailable(
+                overlay.getWidth(),
+                overlay.getHeight()
+            );
+        }
+
+        if (!snapshot.compareAndSet(prepared, prepared.withState(State.SCRATCHABLE))) {
+            return;
+        }
+
+        addPendingScratchPathBatchesAndClear();
+    }
 
-            this.state = State.SCRATCHABLE;
+    /**
+     * Render the scratchable View into a new {@link ScratchableOverlay} for the {@link OverlayRenderMode}.
+     */
+    @SuppressWarnings("WeakerAccess")
+    protected ScratchableOverlay createOverlayFromScratchableView(final View scratchView) {
+        switch (overlayRenderMode) {
+            case ALPHA_MASK:
+                if (isHardwareOverlayContentEnabled(scratchView)) {
+                    return AlphaMaskOverlay.createHardwareFromView(scratchView, overlayDrawingQuality, bitmapPool);
+                }
 
-            addPendingScratchPathPointsAndClear();
+                return AlphaMaskOverlay.createFromView(scratchView, overlayDrawingQuality, bitmapPool);
+            default:
+                return TiledOverlayBitmap.createFromView(scratchView, overlayTileSizePx, overlayDrawingQuality, bitmapPool);
         }
     }
 
+    /**
+     * @deprecated the scratchable View is now rendered by {@link #createOverlayFromScratchableView(View)},
+     * so overriding this has no effect. It still returns a full-size copy of the View's content.
+     */
+    @Deprecated
     @SuppressWarnings("WeakerAccess")
     protected Bitmap createBitmapFromScratchableView(final View scratchView) {
         Bitmap bitmap = Bitmap.createBitmap(
@@ -197,93 +368,468 @@ public class ScratchableLayoutDrawer implements ScratchPathPointsAggregator, Ani
         return bitmap;
     }
 
-    protected void addPendingScratchPathPointsAndClear() {
-        final List<ScratchPathPoint> pendingPoints;
+    protected void addPendingScratchPathBatchesAndClear() {
+        ScratchPathBatch batch;
 
-        synchronized (pathManager) {
-            if (this.pendingPathPoints.isEmpty()) {
-                return;
-            }
+        while ((batch = pendingPathBatches.poll()) != null) {
+            addScratchPathBatch(batch);
 
-            pendingPoints = new ArrayList<ScratchPathPoint>(this.pendingPathPoints);
-
-            this.pendingPathPoints.clear();
+            batch.release();
         }
+    }
 
-        addScratchPathPoints(pendingPoints);
+    /**
+     * @deprecated pending points are now held as batches, and drawn by
+     * {@link #addPendingScratchPathBatchesAndClear()}, to which this delegates.
+     * This is no longer called, so overriding it has no effect.
+     */
+    @Deprecated
+    protected void addPendingScratchPathPointsAndClear() {
+        addPendingScratchPathBatchesAndClear();
     }
 
     @Override
     public void addScratchPathPoints(Collection<ScratchPathPoint> events) {
-        final State state;
-        final Bitmap pathStrippedImage;
-        final Canvas pathStrippedCanvas;
+        ScratchPathBatch batch = pathManager.createBatch(events);
 
-        synchronized (pathManager) {
-            state = this.state;
-            pathStrippedImage = this.pathStrippedImage;
-            pathStrippedCanvas = this.pathStrippedCanvas;
-        }
+        addScratchPathBatch(batch);
+
+        batch.release();
+    }
+
+    /**
+     * Erase the geometry of a {@link ScratchPathBatch} from the scratchable overlay, or hold onto
+     * it until the overlay is available. The batch's Paths are expected to be in the
+     * coordinate space of the scratchable layout. A batch that is held onto is retained
+     * until it has been drawn.
+     */
+    @Override
+    public void addScratchPathBatch(ScratchPathBatch batch) {
+        addScratchPathBatch(batch, isFrameSynchronizedDrawingEnabled());
+    }
 
-        switch (state) {
+    private void addScratchPathBatch(ScratchPathBatch batch, boolean frameSynchronized) {
+        final StateSnapshot snapshot = this.snapshot.get();
+
+        switch (snapshot.state) {
             case UNATTACHED:
             case CLEARED:
                 break;
             case PREPARING:
-                synchronized (pathManager) {
-                    this.pendingPathPoints.addAll(events);
+                pendingPathBatches.add(batch.retain());
+
+                // If the layout became scratchable after the State was read, the pending
+                // batches may have already been drawn without this one. Erasing is
+                // order-independent, so whichever Thread gets to it first draws it
+                if (getState() != State.PREPARING) {
+                    addPendingScratchPathBatchesAndClear();
                 }
 
                 break;
             default:
-                pathManager.addScratchPathPoints(events);
-                pathManager.drawAndReset(pathStrippedCanvas, clearPaint);
+                if (frameSynchronized) {
+                    frameBatches.add(batch.retain());
+
+                    scheduleFrameDraw();
+
+                    break;
+                }
 
-                pathStrippedImage.prepareToDraw();
+                final ScratchableOverlay overlay = snapshot.overlay;
+
+                synchronized (overlayLock) {
+                    if (overlay.isRecycled()) {
+                        return;
+                    }
+
+                    drawScratchPathBatch(overlay, batch);
+
+                    overlay.trim();
+                }
         }
     }
 
-    public void draw(Canvas canvas) {
-        final State state;
-        final Bitmap pathStrippedImage;
+    /**
+     * Erase every erased cell of a restored {@link CoverageMask} from the overlay in a single draw,
+     * in place of replaying the history that produced it. This may be called once the overlay
+     * is available, including from {@link Delegate#onScratchableLayoutAvailable(int, int)}.
+     *
+     * @return false if the overlay is not available
+     */
+    public boolean eraseCoverageMask(CoverageMask mask) {
+        final StateSnapshot snapshot = this.snapshot.get();
+        final ScratchableOverlay overlay = snapshot.overlay;
+
+        if (overlay == null || snapshot.state == State.CLEARED) {
+            return false;
+        }
+
+        final Bitmap maskBitmap = mask.createBitmap();
+
+        try {
+            synchronized (overlayLock) {
+                if (overlay.isRecycled()) {
+                    return false;
+                }
+
+                batchBounds.set(
+                    0,
+                    0,
+                    mask.getColumns() * mask.getCellSizePx(),
+                    mask.getRows() * mask.getCellSizePx()
+                );
+
+                overlay.eraseMask(maskBitmap, batchBounds, createCoverageMaskPaint());
+                overlay.trim();
+
+                batchDirtyBounds.set(0, 0, overlay.getWidth(), overlay.getHeight());
+
+                includePendingDirtyBounds(batchDirtyBounds);
+            }
+        }
+        finally {
+            maskBitmap.recycle();
+        }
+
+        return true;
+    }
+
+    /**
+     * Request a single call to {@link #drawFrameScratchPathBatches()} on the next frame,
+     * no matter how many batches are added before then.
+     */
+    protected void scheduleFrameDraw() {
+        if (!frameDrawScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        FrameDrawCallback frameDrawCallback = this.frameDrawCallback;
+
+        if (frameDrawCallback == null) {
+            frameDrawScheduled.set(false);
+
+            addFrameScratchPathBatchesImmediately();
+
+            return;
+        }
+
+        frameDrawCallback.post();
+    }
+
+    /**
+     * Draw every batch accumulated since the last frame in a single pass, and
+     * invalidate the scratchable View once for all of them.
+     */
+    protected void drawFrameScratchPathBatches() {
+        // Cleared before draining, so that any batch added from here on schedules another frame
+        frameDrawScheduled.set(false);
+
+        final StateSnapshot snapshot = this.snapshot.get();
+        final ScratchableOverlay overlay = snapshot.overlay;
+
+        switch (snapshot.state) {
+            case SCRATCHABLE:
+            case CLEARING:
+                break;
+            default:
+                // The State changed since the batches were accumulated
+                addFrameScratchPathBatchesImmediately();
+
+                return;
+        }
+
+        boolean drawn = false;
+
+        synchronized (overlayLock) {
+            if (overlay.isRecycled()) {
+                return;
+            }
+
+            ScratchPathBatch batch;
+
+            while ((batch = frameBatches.poll()) != null) {
+                drawScratchPathBatch(overlay, batch);
+
+                batch.release();
+
+                drawn = true;
+            }
+
+            overlay.trim();
+        }
+
+        if (!drawn) {
+            return;
+        }
+
+        View view = scratchView.get();
+
+        if (view != null && takeDirtyBounds(frameDirtyBounds)) {
+            invalidate(view, frameDirtyBounds);
+        }
+    }
+
+    @SuppressWarnings({ "deprecation", "RedundantSuppression" })
+    private static void invalidate(View view, Rect dirtyBounds) {
+        view.invalidate(dirtyBounds.left, dirtyBounds.top, dirtyBounds.right, dirtyBounds.bottom);
+    }
+
+    /**
+     * Erase the batch from the overlay and include the area it affected in the
+     * pending dirty bounds. Must be called while holding the overlayLock.
+     */
+    private void drawScratchPathBatch(ScratchableOverlay overlay, ScratchPathBatch batch) {
+        final Paint clearPaint = this.clearPaint;
+
+        if (!batch.getBounds(batchBounds)) {
+            return;
+        }
+
+        // Half of the stroke width, plus a pixel for the anti-aliased edges, or two of the
+        // overlay's pixels for a reduced-resolution overlay that is filtered when scaled up
+        final float padding = (clearPaint.getStrokeWidth() / 2) * batch.getStrokeScale()
+            + (overlayDrawingQuality < 1f ? 2 / overlayDrawingQuality : 1);
+
+        batchDirtyBounds.set(
+            (int) Math.floor(batchBounds.left - padding),
+            (int) Math.floor(batchBounds.top - padding),
+            (int) Math.ceil(batchBounds.right + padding),
+            (int) Math.ceil(batchBounds.bottom + padding)
+        );
+
+        // Only the tiles within the affected area need to be drawn to
+        overlay.erase(batch, clearPaint, batchDirtyBounds);
+
+        includePendingDirtyBounds(batchDirtyBounds);
+    }
+
+    /**
+     * Must be called while holding the overlayLock, which only guards the overlay's change bounds,
+     * as the pending dirty bounds are included atomically.
+     */
+    private void includePendingDirtyBounds(Rect dirtyBounds) {
+        if (overlayChangeBoundsAvailable) {
+            overlayChangeBounds.union(dirtyBounds);
+        }
+        else {
+            overlayChangeBounds.set(dirtyBounds);
+            overlayChangeBoundsAvailable = true;
+        }
 
-        synchronized (pathManager) {
-            state = this.state;
-            pathStrippedImage = this.pathStrippedImage;
+        while (true) {
+            final long pending = pendingDirtyBounds.get();
+            final long included = pending == NO_DIRTY_BOUNDS
+                ? packDirtyBounds(dirtyBounds.left, dirtyBounds.top, dirtyBounds.right, dirtyBounds.bottom)
+                : packDirtyBounds(
+                    Math.min(unpackDirtyBoundsEdge(pending, 0), dirtyBounds.left),
+                    Math.min(unpackDirtyBoundsEdge(pending, 1), dirtyBounds.top),
+                    Math.max(unpackDirtyBoundsEdge(pending, 2), dirtyBounds.right),
+                    Math.max(unpackDirtyBoundsEdge(pending, 3), dirtyBounds.bottom)
+                );
+
+            if (pendingDirtyBounds.compareAndSet(pending, included)) {
+                return;
+            }
         }
+    }
+
+    /**
+     * Pack the edges of a Rect into a single long, as four 16-bit values, clamped to
+     * the range of a short, which is far beyond the size of any View.
+     */
+    static long packDirtyBounds(int left, int top, int right, int bottom) {
+        return (packDirtyBoundsEdge(left) << 48)
+            | (packDirtyBoundsEdge(top) << 32)
+            | (packDirtyBoundsEdge(right) << 16)
+            | packDirtyBoundsEdge(bottom);
+    }
+
+    private static long packDirtyBoundsEdge(int edge) {
+        return Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, edge)) & 0xFFFFL;
+    }
+
+    /**
+     * @param edge the index of the edge, in the order left, top, right, bottom
+     */
+    static int unpackDirtyBoundsEdge(long packed, int edge) {
+        return (short) (packed >>> (48 - (edge * 16)));
+    }
+
+    private static boolean unpackDirtyBounds(long packed, Rect out) {
+        if (packed == NO_DIRTY_BOUNDS) {
+            return false;
+        }
+
+        out.set(
+            unpackDirtyBoundsEdge(packed, 0),
+            unpackDirtyBoundsEdge(packed, 1),
+            unpackDirtyBoundsEdge(packed, 2),
+            unpackDirtyBoundsEdge(packed, 3)
+        );
+
+        return true;
+    }
+
+    /**
+     * Copy the bounds of everything erased from the overlay since the last call into the
+     * supplied Rect, in the coordinate space of the scratchable View, and reset them.
+     *
+     * @return false if nothing has been erased since the last call, in which
+     * case the supplied Rect is left untouched
+     */
+    public boolean takeDirtyBounds(Rect out) {
+        final long taken = pendingDirtyBounds.getAndSet(NO_DIRTY_BOUNDS);
+
+        if (taken == NO_DIRTY_BOUNDS) {
+            return false;
+        }
+
+        lastDirtyBounds.set(taken);
+
+        return unpackDirtyBounds(taken, out);
+    }
+
+    /**
+     * Copy the bounds most recently returned by {@link #takeDirtyBounds(Rect)} into the supplied Rect.
+     *
+     * @return false if no bounds have been taken since this drawer was attached
+     */
+    public boolean getLastDirtyBounds(Rect out) {
+        return unpackDirtyBounds(lastDirtyBounds.get(), out);
+    }
+
+    private static void releaseScratchPathBatches(ConcurrentLinkedQueue<ScratchPathBatch> batches) {
+        ScratchPathBatch batch;
+
+        while ((batch = batches.poll()) != null) {
+            batch.release();
+        }
+    }
+
+    private void addFrameScratchPathBatchesImmediately() {
+        ScratchPathBatch batch;
+
+        while ((batch = frameBatches.poll()) != null) {
+            addScratchPathBatch(batch, false);
+
+            batch.release();
+        }
+    }
+
+    /**
+     * Draw the scratched overlay into the supplied Canvas, for the threshold evaluation
+     * of the {@link ScratchoffThresholdProcessor.CoverageMode#OVERLAY_ALPHA} mode.
+     * <br><br>
+     * This is safe to call from any Thread.
+     */
+    @Override
+    public boolean drawOverlay(Canvas canvas, Paint paint) {
+        synchronized (overlayLock) {
+            ScratchableOverlay overlay = snapshot.get().overlay;
+
+            if (overlay == null || overlay.isRecycled()) {
+                return false;
+            }
+
+            // Erased areas are skipped when drawing, so they must be cleared beforehand
+            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+
+            overlay.draw(canvas, paint);
+
+            return true;
+        }
+    }
+
+    /**
+     * Draw only the area of the overlay erased since the last call into the supplied Canvas,
+     * so that the overlayLock is never held for a full redraw of the overlay during the
+     * threshold evaluation of the {@link ScratchoffThresholdProcessor.CoverageMode#OVERLAY_ALPHA} mode.
+     * <br><br>
+     * This is safe to call from any Thread.
+     */
+    @Override
+    public boolean drawOverlayChanges(Canvas canvas, Paint paint) {
+        synchronized (overlayLock) {
+            ScratchableOverlay overlay = snapshot.get().overlay;
+
+            if (overlay == null || overlay.isRecycled()) {
+                return false;
+            }
+
+            if (!overlayChangeBoundsAvailable) {
+                return true;
+            }
+
+            canvas.save();
+            canvas.clipRect(overlayChangeBounds);
+
+            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+
+            overlay.draw(canvas, paint);
+
+            canvas.restore();
+
+            overlayChangeBoundsAvailable = false;
+
+            return true;
+        }
+    }
+
+    /**
+     * Draw the scratchable overlay into the supplied Canvas, without ever waiting on a lock.
+     */
+    public void draw(Canvas canvas) {
+        final StateSnapshot snapshot = this.snapshot.get();
+        final ScratchableOverlay overlay = snapshot.overlay;
 
-        if (pathStrippedImage == null) {
+        if (overlay == null) {
             return;
         }
 
-        switch (state) {
+        switch (snapshot.state) {
             case UNATTACHED:
             case PREPARING:
             case CLEARED:
                 return;
             default:
-                canvas.drawBitmap(pathStrippedImage, 0, 0, null);
+                overlay.draw(canvas, null);
         }
     }
 
     public void destroy() {
         removeInitializationViewTreeObservers();
 
-        synchronized (pathManager) {
-            this.state = State.UNATTACHED;
+        final ScratchableOverlay overlay = snapshot
+            .getAndSet(UNATTACHED_SNAPSHOT)
+            .overlay;
 
-            if (pathStrippedImage == null) {
-                return;
-            }
+        releaseScratchPathBatches(pendingPathBatches);
+        releaseScratchPathBatches(frameBatches);
 
-            pathStrippedImage.recycle();
-            pathStrippedImage = null;
+        pendingDirtyBounds.set(NO_DIRTY_BOUNDS);
+        lastDirtyBounds.set(NO_DIRTY_BOUNDS);
 
-            pathStrippedCanvas = null;
+        synchronized (overlayLock) {
+            overlayChangeBoundsAvailable = false;
+        }
 
-            pendingPathPoints.clear();
-            pathManager.clear();
+        FrameDrawCallback frameDrawCallback = this.frameDrawCallback;
+
+        if (frameDrawCallback != null) {
+            frameDrawCallback.remove();
         }
+
+        frameDrawScheduled.set(false);
+
+        if (overlay == null) {
+            return;
+        }
+
+        synchronized (overlayLock) {
+            overlay.recycle();
+        }
+
+        pathManager.clear();
     }
 
     private void removeInitializationViewTreeObservers() {
@@ -303,15 +849,13 @@ public class ScratchableLayoutDrawer implements ScratchPathPointsAggregator, Ani
     }
 
     public void clear(boolean animationEnabled) {
-        synchronized (pathManager) {
-            if (animationEnabled) {
-                performFadeOutClear();
-
-                return;
-            }
+        if (animationEnabled) {
+            performFadeOutClear();
 
-            hideAndMarkScratchableSurfaceViewCleared();
+            return;
         }
+
+        hideAndMarkScratchableSurfaceViewCleared();
     }
 
     protected void performFadeOutClear() {
@@ -321,7 +865,7 @@ public class ScratchableLayoutDrawer implements ScratchPathPointsAggregator, Ani
             return;
         }
 
-        this.state = State.CLEARING;
+        transitionState(State.CLEARING);
 
         claimClearAnimation(view, System.currentTimeMillis());
         performFadeOutClear(view);
@@ -362,17 +906,15 @@ public class ScratchableLayoutDrawer implements ScratchPathPointsAggregator, Ani
             return;
         }
 
-        synchronized (pathManager) {
-            if (ScratchableLayoutDrawer.this.state != State.CLEARING) {
-                return;
-            }
-
-            hideAndMarkScratchableSurfaceViewCleared();
+        if (!transitionState(State.CLEARING, State.CLEARED)) {
+            return;
         }
+
+        hideAndMarkScratchableSurfaceViewCleared();
     }
 
     protected void hideAndMarkScratchableSurfaceViewCleared() {
-        this.state = State.CLEARED;
+        transitionState(State.CLEARED);
 
         View view = scratchView.get();
 
@@ -446,6 +988,106 @@ public class ScratchableLayoutDrawer implements ScratchPathPointsAggregator, Ani
         return this;
     }
 
+    /**
+     * Set the {@link OverlayRenderMode} used to draw and erase the scratchable overlay.
+     * The default is {@link OverlayRenderMode#TILED_BITMAP}.
+     * <br><br>
+     * Note: this must be called before the scratchable View has been laid out or it will have no effect.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public ScratchableLayoutDrawer setOverlayRenderMode(OverlayRenderMode overlayRenderMode) {
+        this.overlayRenderMode = overlayRenderMode;
+
+        return this;
+    }
+
+    /**
+     * Set whether the content of an {@link OverlayRenderMode#ALPHA_MASK} overlay should be kept in a
+     * {@link android.graphics.Bitmap.Config#HARDWARE} Bitmap on API 26 and above, when the scratchable
+     * View is hardware-accelerated. The overlay can then no longer be drawn into a software Canvas, so
+     * this must not be enabled when {@link #drawOverlay(Canvas, Paint)} is used. The default is false.
+     * <br><br>
+     * Note: this must be called before the scratchable View has been laid out or it will have no effect.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public ScratchableLayoutDrawer setHardwareOverlayContentEnabled(boolean hardwareOverlayContentEnabled) {
+        this.hardwareOverlayContentEnabled = hardwareOverlayContentEnabled;
+
+        return this;
+    }
+
+    private boolean isHardwareOverlayContentEnabled(View scratchView) {
+        return hardwareOverlayContentEnabled
+            && 26 <= Build.VERSION.SDK_INT
+            && scratchView.isHardwareAccelerated();
+    }
+
+    /**
+     * Set the {@link BitmapPool} that the overlay's Bitmaps are obtained from, and released to
+     * when this drawer is destroyed. The default is {@link BitmapPool#UNPOOLED}.
+     * <br><br>
+     * Note: this must be called before the scratchable View has been laid out or it will have no effect.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public ScratchableLayoutDrawer setBitmapPool(BitmapPool bitmapPool) {
+        this.bitmapPool = bitmapPool;
+
+        return this;
+    }
+
+    /**
+     * Set the fraction of the scratchable View's size that the overlay is rendered and erased at,
+     * between 0 (exclusive) and 1. The overlay is filtered when drawn back at its original size.
+     * The default is 1, which implies no reduction in resolution.
+     * <br><br>
+     * Note: this must be called before the scratchable View has been laid out or it will have no effect.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public ScratchableLayoutDrawer setOverlayDrawingQuality(float overlayDrawingQuality) {
+        this.overlayDrawingQuality = Math.min(1f, Math.max(0.01f, overlayDrawingQuality));
+
+        return this;
+    }
+
+    /**
+     * Set the width and height of the tiles the scratchable overlay is split into. Smaller tiles
+     * are released sooner as the overlay is erased, at the cost of more draw calls per frame.
+     * The default is {@link TiledOverlayBitmap#DEFAULT_TILE_SIZE_PX}.
+     * This only applies to the {@link OverlayRenderMode#TILED_BITMAP} mode.
+     * <br><br>
+     * Note: this must be called before the scratchable View has been laid out or it will have no effect.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public ScratchableLayoutDrawer setOverlayTileSizePx(int overlayTileSizePx) {
+        this.overlayTileSizePx = overlayTileSizePx;
+
+        return this;
+    }
+
+    /**
+     * Set whether batches added while scratchable should be accumulated and drawn together
+     * once per {@link Choreographer} frame, with a single invalidation of the scratchable View,
+     * instead of being drawn immediately. The default for this value is false.
+     * <br><br>
+     * This has no effect below API 16, where the Choreographer is unavailable.
+     * <br><br>
+     * Note: this must be called before {@link #attach(int, View, View)} or it will have no effect.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public ScratchableLayoutDrawer setFrameSynchronizedDrawingEnabled(boolean frameSynchronizedDrawingEnabled) {
+        this.frameSynchronizedDrawingEnabled = frameSynchronizedDrawingEnabled;
+
+        return this;
+    }
+
+    /**
+     * @return true if batches are drawn once per frame, in which case this drawer
+     * invalidates the scratchable View itself
+     */
+    public boolean isFrameSynchronizedDrawingEnabled() {
+        return frameSynchronizedDrawingEnabled && 16 <= Build.VERSION.SDK_INT;
+    }
+
     @SuppressWarnings("WeakerAccess")
     public ScratchableLayoutDrawer setActivePathRecoveryEnabled(boolean activePathRecoveryEnabled) {
         this.activePathRecoveryEnabled = activePathRecoveryEnabled;
@@ -454,4 +1096,32 @@ public class ScratchableLayoutDrawer implements ScratchPathPointsAggregator, Ani
 
         return this;
     }
+
+    @TargetApi(16)
+    private static class FrameDrawCallback implements Choreographer.FrameCallback {
+
+        private final WeakReference<ScratchableLayoutDrawer> drawer;
+        private final Choreographer choreographer = Choreographer.getInstance();
+
+        FrameDrawCallback(ScratchableLayoutDrawer drawer) {
+            this.drawer = new WeakReference<>(drawer);
+        }
+
+        void post() {
+            choreographer.postFrameCallback(this);
+        }
+
+        void remove() {
+            choreographer.removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            ScratchableLayoutDrawer drawer = this.drawer.get();
+
+            if (drawer != null) {
+                drawer.drawFrameScratchPathBatches();
+            }
+        }
+    }
 }
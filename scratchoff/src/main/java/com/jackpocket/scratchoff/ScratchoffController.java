@@ -1,13 +1,16 @@
 package com.jackpocket.scratchoff;
 
 import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
 import android.app.Activity;
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Rect;
+import android.os.Build;
 import android.os.Parcelable;
+import android.view.Choreographer;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.View.OnTouchListener;
@@ -15,21 +18,39 @@ import android.view.ViewGroup;
 import android.view.animation.Interpolator;
 import android.view.animation.LinearInterpolator;
 
+import com.jackpocket.scratchoff.coverage.CoverageMask;
 import com.jackpocket.scratchoff.paths.ScratchPathPoint;
+import com.jackpocket.scratchoff.paths.ScratchPathPointBuffer;
+import com.jackpocket.scratchoff.paths.ScratchPathBatch;
+import com.jackpocket.scratchoff.paths.ScratchPathBatchAggregator;
+import com.jackpocket.scratchoff.paths.ScratchPathManager;
+import com.jackpocket.scratchoff.paths.ScratchPathPointCodec;
 import com.jackpocket.scratchoff.paths.ScratchPathPointsAggregator;
+import com.jackpocket.scratchoff.paths.ScratchPathSimplifier;
+import com.jackpocket.scratchoff.tools.BitmapPool;
+import com.jackpocket.scratchoff.tools.ThresholdCalculator;
+import com.jackpocket.scratchoff.tools.TiledOverlayBitmap;
 import com.jackpocket.scratchoff.views.ScratchableLayout;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ScratchoffController implements OnTouchListener,
     ScratchableLayoutDrawer.Delegate,
     ScratchoffThresholdProcessor.Delegate,
+    ScratchoffThresholdProcessor.SizedTargetRegionsProvider,
     ScratchPathPointsAggregator {
 
     public interface ThresholdChangedListener {
@@ -48,6 +69,30 @@ public class ScratchoffController implements OnTouchListener,
         public void onScratchThresholdReached(ScratchoffController controller);
     }
 
+    public interface ThresholdEvaluationPolicyFactory {
+
+        public ThresholdEvaluationPolicy create();
+    }
+
+    public static final int DEFAULT_JOURNALED_HISTORY_LIMIT = 4096;
+
+    public static final long DEFAULT_INCREMENTAL_STATE_RESTORATION_FRAME_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(4);
+
+    // The number of points replayed between checks of the frame budget
+    private static final int INCREMENTAL_STATE_RESTORATION_CHUNK_SIZE = 32;
+
+    // The number of restored points decoded into each buffer recorded in the history
+    private static final int RESTORED_HISTORY_RECORDING_CHUNK_SIZE = 1024;
+
+    // The number of journaled points merged into each buffer recorded in the history, and journaled again
+    private static final int JOURNAL_RESTORATION_CHUNK_SIZE = 1024;
+
+    public static final int DEFAULT_HISTORY_COMPACTION_INTERVAL_POINTS = 2048;
+
+    private static final long HISTORY_COMPACTION_IDLE_THREAD_TIMEOUT_MS = 10000;
+
+    private static Executor sharedHistoryCompactionExecutor;
+
     private final WeakReference<View> scratchableLayout;
     private WeakReference<View> behindView = new WeakReference<>(null);
 
@@ -60,6 +105,17 @@ public class ScratchoffController implements OnTouchListener,
     private ScratchoffThresholdProcessor thresholdProcessor;
     private ScratchoffThresholdProcessor.Quality thresholdAccuracyQuality = ScratchoffThresholdProcessor.Quality.HIGH;
     private ScratchoffThresholdProcessor.TargetRegionsProvider thresholdTargetRegionsProvider = new ScratchoffThresholdProcessor.SimpleTargetRegionsProvider();
+    private ScratchoffThresholdProcessor.CoverageMode thresholdCoverageMode = ScratchoffThresholdProcessor.CoverageMode.MARKER_BITMAP;
+    private int thresholdScanBufferSizeBytes = ThresholdCalculator.DEFAULT_SCAN_BUFFER_SIZE_BYTES;
+    private long thresholdProgressUpdateIntervalMs = 0L;
+    private int thresholdScanParallelism = 1;
+    private ThresholdEvaluationScheduler thresholdEvaluationScheduler = ThresholdEvaluationScheduler.getSharedInstance();
+    private ThresholdEvaluationPolicyFactory thresholdEvaluationPolicyFactory = new ThresholdEvaluationPolicyFactory() {
+        @Override
+        public ThresholdEvaluationPolicy create() {
+            return new AdaptiveThresholdEvaluationPolicy();
+        }
+    };
     private float thresholdCompletionPercent;
     private boolean thresholdReached = false;
 
@@ -76,10 +132,58 @@ public class ScratchoffController implements OnTouchListener,
     private final List<OnTouchListener> touchObservers = new ArrayList<>();
 
     private ScratchoffState statePendingReload;
-    private final LinkedBlockingQueue<ScratchPathPoint> history = new LinkedBlockingQueue<ScratchPathPoint>();
+    private Future<ScratchoffJournal.Recovery> journalRecoveryPending;
+    private final ScratchPathPointBuffer history = new ScratchPathPointBuffer();
+    // Reused for every MotionEvent received on the main Thread
+    private final ScratchPathPointBuffer touchPoints = new ScratchPathPointBuffer();
+    private final Rect invalidationBounds = new Rect();
+    private ScratchPathManager pathGeometry = new ScratchPathManager();
     private boolean stateRestorationEnabled;
 
     private boolean activePathRecoveryEnabled = false;
+    private boolean frameSynchronizedDrawingEnabled = false;
+    private ScratchableLayoutDrawer.OverlayRenderMode overlayRenderMode = ScratchableLayoutDrawer.OverlayRenderMode.TILED_BITMAP;
+    private int overlayTileSizePx = TiledOverlayBitmap.DEFAULT_TILE_SIZE_PX;
+    private float overlayDrawingQuality = 1f;
+    private BitmapPool bitmapPool = BitmapPool.UNPOOLED;
+    private boolean coverageMaskPersistenceEnabled = false;
+    private boolean coverageMaskHistoryRetained = true;
+    private int coverageMaskCellSizePx = 0;
+
+    private boolean incrementalStateRestorationEnabled = false;
+    private long incrementalStateRestorationFrameBudgetNanos = DEFAULT_INCREMENTAL_STATE_RESTORATION_FRAME_BUDGET_NANOS;
+    private IncrementalStateRestoration incrementalStateRestoration;
+    private IncrementalStateRestorationFrameCallback incrementalStateRestorationFrameCallback;
+    private boolean thresholdReachedHeld = false;
+    private boolean scratchPercentChangeHeld = false;
+    private float heldScratchPercent = 0f;
+
+    private ScratchoffJournal journal;
+    private boolean journalRecovered = false;
+    private int journaledHistoryLimit = DEFAULT_JOURNALED_HISTORY_LIMIT;
+
+    private boolean historyCompactionEnabled = false;
+    private float historyCompactionTolerancePx = ScratchPathSimplifier.DEFAULT_TOLERANCE_PX;
+    private int historyCompactionIntervalPoints = DEFAULT_HISTORY_COMPACTION_INTERVAL_POINTS;
+    private Executor historyCompactionExecutor;
+    private final AtomicBoolean historyCompactionScheduled = new AtomicBoolean(false);
+    private final Runnable historyCompactor = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                compactHistory();
+            }
+            finally {
+                historyCompactionScheduled.set(false);
+            }
+        }
+    };
+
+    // Guarded by the history: the number of leading points already compacted, the number of points
+    // ever removed from the front, and a generation incremented whenever the history is cleared
+    private int historyCompactedSize = 0;
+    private long historyRemovedCount = 0;
+    private int historyGeneration = 0;
 
     /**
      * Create a new {@link ScratchoffController} instance targeting a scratchable layout.
@@ -129,8 +233,8 @@ public class ScratchoffController implements OnTouchListener,
      * <br><br>
      * If the backing {@link #scratchableLayout} state is available, and
      * {@link #stateRestorationEnabled} is true, the history will be
-     * automatically restored on the condition that the layout is the
-     * same width/height.
+     * automatically restored, and rescaled if the layout's width/height
+     * have changed since it was saved.
      */
     public ScratchoffController attach() {
         View scratchableLayout = this.scratchableLayout.get();
@@ -139,7 +243,24 @@ public class ScratchoffController implements OnTouchListener,
             throw new IllegalStateException("Cannot attach to a null View!");
         }
 
-        this.history.clear();
+        cancelIncrementalStateRestoration();
+        recoverJournal();
+
+        synchronized (history) {
+            this.history.clear();
+            this.historyCompactedSize = 0;
+            this.historyGeneration += 1;
+        }
+
+        this.pathGeometry = new ScratchPathManager()
+            .setActivePathRecoveryEnabled(activePathRecoveryEnabled);
+
+        // Release the previous processor's hold on the evaluation scheduler when re-attaching
+        ScratchoffThresholdProcessor previousThresholdProcessor = this.thresholdProcessor;
+
+        if (previousThresholdProcessor != null) {
+            previousThresholdProcessor.destroy();
+        }
 
         this.layoutDrawer = createLayoutDrawer()
             .attach(this, scratchableLayout, behindView.get());
@@ -151,11 +272,46 @@ public class ScratchoffController implements OnTouchListener,
         return this;
     }
 
+    /**
+     * Begin reading back the state recorded by the {@link #journal} before the process last died,
+     * the first time this is attached with that journal. This doesn't block, as the journal is
+     * validated on its own Thread, and only awaited once the layout is available to restore it.
+     */
+    protected void recoverJournal() {
+        ScratchoffJournal journal = this.journal;
+
+        if (journal == null || journalRecovered) {
+            return;
+        }
+
+        this.journalRecovered = true;
+
+        if (stateRestorationEnabled) {
+            this.journalRecoveryPending = journal.openRecovery();
+        }
+    }
+
     protected ScratchableLayoutDrawer createLayoutDrawer() {
         return new ScratchableLayoutDrawer(this)
             .setClearAnimationDurationMs(clearAnimationDurationMs)
             .setClearAnimationInterpolator(clearAnimationInterpolator)
-            .setActivePathRecoveryEnabled(activePathRecoveryEnabled);
+            .setActivePathRecoveryEnabled(activePathRecoveryEnabled)
+            .setFrameSynchronizedDrawingEnabled(frameSynchronizedDrawingEnabled)
+            .setOverlayRenderMode(overlayRenderMode)
+            .setHardwareOverlayContentEnabled(isHardwareOverlayContentAllowed())
+            .setOverlayTileSizePx(overlayTileSizePx)
+            .setOverlayDrawingQuality(overlayDrawingQuality)
+            .setBitmapPool(bitmapPool);
+    }
+
+    /**
+     * The overlay's content can only be kept in graphics memory when nothing reads it
+     * back on the CPU, which both the {@link ScratchoffThresholdProcessor.CoverageMode#OVERLAY_ALPHA}
+     * mode and the {@link CoverageMask} persistence do.
+     */
+    protected boolean isHardwareOverlayContentAllowed() {
+        return thresholdCoverageMode != ScratchoffThresholdProcessor.CoverageMode.OVERLAY_ALPHA
+            && !coverageMaskPersistenceEnabled;
     }
 
     protected ScratchoffThresholdProcessor createThresholdProcessor() {
@@ -164,7 +320,15 @@ public class ScratchoffController implements OnTouchListener,
             getThresholdCompletionPercent(),
             getThresholdAccuracyQuality(),
             this
-        );
+        )
+            .setCoverageMode(thresholdCoverageMode)
+            .setScanBufferSizeBytes(thresholdScanBufferSizeBytes)
+            .setProgressUpdateIntervalMs(thresholdProgressUpdateIntervalMs)
+            .setScanParallelism(thresholdScanParallelism)
+            .setEvaluationScheduler(thresholdEvaluationScheduler)
+            .setOverlaySource(layoutDrawer)
+            .setBitmapPool(bitmapPool)
+            .setEvaluationPolicy(thresholdEvaluationPolicyFactory.create());
     }
 
     @Override
@@ -175,6 +339,14 @@ public class ScratchoffController implements OnTouchListener,
         this.thresholdReached = false;
 
         prepareThresholdProcessor();
+
+        // Restoration records the restored points again, so the journal must be reset before it
+        ScratchoffJournal journal = this.journal;
+
+        if (journal != null) {
+            journal.reset(width, height);
+        }
+
         performStateRestoration();
     }
 
@@ -201,9 +373,10 @@ public class ScratchoffController implements OnTouchListener,
             return false;
         }
 
-        List<ScratchPathPoint> events = ScratchPathPoint.create(event);
+        touchPoints.clear();
+        touchPoints.addAll(event);
 
-        addScratchPathPoints(events);
+        addScratchPathPoints(touchPoints);
 
         return true;
     }
@@ -218,14 +391,203 @@ public class ScratchoffController implements OnTouchListener,
      */
     @Override
     public void addScratchPathPoints(Collection<ScratchPathPoint> events) {
-        addScratchPathPoints(events, layoutDrawer);
-        addScratchPathPoints(events, thresholdProcessor);
+        ScratchPathPointBuffer points = new ScratchPathPointBuffer(events.size());
+        points.addAll(events);
+
+        addScratchPathPoints(points);
+    }
 
-        history.addAll(events);
+    /**
+     * Equivalent to {@link #addScratchPathPoints(Collection)}, without requiring a
+     * {@link ScratchPathPoint} instance per point. The buffer is copied where necessary
+     * and may be reused as soon as this returns.
+     */
+    public void addScratchPathPoints(ScratchPathPointBuffer points) {
+        // The Paths are built once, and shared between the drawer and the processor
+        ScratchPathBatch batch = pathGeometry.createBatch(points);
 
-        postInvalidateScratchableLayout();
+        recordHistory(batch);
+
+        drawScratchPathBatch(batch);
+
+        // Recycled once the drawer, the processor, and the journal are done with it too
+        batch.release();
+    }
+
+    /**
+     * Add the points to the history and append them to the {@link #journal}, if any,
+     * in which case only the most recent {@link #journaledHistoryLimit} points are kept
+     * in memory. The buffer must not be modified afterwards.
+     */
+    protected void recordHistory(ScratchPathPointBuffer points) {
+        recordHistory(points, null);
+    }
+
+    /**
+     * Equivalent to {@link #recordHistory(ScratchPathPointBuffer)} for the batch's points,
+     * with the batch retained by the journal until they have been journaled.
+     */
+    protected void recordHistory(ScratchPathBatch batch) {
+        recordHistory(batch.getPoints(), batch);
+    }
+
+    private void recordHistory(ScratchPathPointBuffer points, ScratchPathBatch batch) {
+        final boolean compactionRequired;
+
+        synchronized (history) {
+            history.addAll(points);
+
+            ScratchoffJournal journal = this.journal;
+
+            if (journal != null) {
+                if (journaledHistoryLimit < history.size()) {
+                    removeOldestHistory(history.size() - journaledHistoryLimit);
+                }
+
+                if (batch == null) {
+                    journal.append(points);
+                }
+                else {
+                    journal.append(batch);
+                }
+            }
+
+            compactionRequired = historyCompactionEnabled
+                && historyCompactionIntervalPoints <= history.size() - historyCompactedSize;
+        }
+
+        if (compactionRequired && historyCompactionScheduled.compareAndSet(false, true)) {
+            scheduleHistoryCompaction();
+        }
+    }
+
+    private void removeOldestHistory(int count) {
+        final int removed = Math.min(count, history.size());
+
+        history.removeFirst(removed);
+
+        this.historyCompactedSize = Math.max(0, historyCompactedSize - removed);
+        this.historyRemovedCount += removed;
+    }
+
+    protected void scheduleHistoryCompaction() {
+        Executor executor = this.historyCompactionExecutor;
+
+        if (executor == null) {
+            executor = getSharedHistoryCompactionExecutor();
+        }
+
+        executor.execute(historyCompactor);
+    }
+
+    /**
+     * Simplify the points added to the history since it was last compacted with the
+     * {@link ScratchPathSimplifier}, outside of the history's lock, then replace them
+     * with the result unless the history was cleared in the meantime. Points added while
+     * simplifying are left for the next compaction.
+     */
+    protected void compactHistory() {
+        final ScratchPathPointBuffer points = new ScratchPathPointBuffer(0);
+        final int generation;
+        final long removedCount;
+        final int start;
+        final int end;
+
+        synchronized (history) {
+            generation = historyGeneration;
+            removedCount = historyRemovedCount;
+            start = historyCompactedSize;
+            end = history.size();
+
+            if (end - start < 2) {
+                return;
+            }
+
+            points.addAll(history, start, end);
+        }
+
+        final ScratchPathPointBuffer simplified = ScratchPathSimplifier.simplify(points, historyCompactionTolerancePx);
+
+        synchronized (history) {
+            // Points trimmed from the front in the meantime shift the compacted range
+            final int removed = (int) (historyRemovedCount - removedCount);
+
+            if (generation != historyGeneration || start < removed) {
+                return;
+            }
+
+            final ScratchPathPointBuffer compacted = new ScratchPathPointBuffer(history.size() - (points.size() - simplified.size()));
+            compacted.addAll(history, 0, start - removed);
+            compacted.addAll(simplified);
+            compacted.addAll(history, end - removed, history.size());
+
+            history.clear();
+            history.addAll(compacted);
+
+            this.historyCompactedSize = start - removed + simplified.size();
+        }
+    }
+
+    private static synchronized Executor getSharedHistoryCompactionExecutor() {
+        if (sharedHistoryCompactionExecutor == null) {
+            // The Thread only lives while there is history to compact
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                1,
+                1,
+                HISTORY_COMPACTION_IDLE_THREAD_TIMEOUT_MS,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new HistoryCompactionThreadFactory()
+            );
+            executor.allowCoreThreadTimeOut(true);
+
+            sharedHistoryCompactionExecutor = executor;
+        }
+
+        return sharedHistoryCompactionExecutor;
+    }
+
+    /**
+     * Add the {@link ScratchPathBatch} to the {@link ScratchableLayoutDrawer} and the
+     * {@link ScratchoffThresholdProcessor}, without recording it in the history; then
+     * invalidate the {@link #scratchableLayout}.
+     */
+    protected void drawScratchPathBatch(ScratchPathBatch batch) {
+        addScratchPathBatch(batch, layoutDrawer);
+        addScratchPathBatch(batch, thresholdProcessor);
+
+        ScratchableLayoutDrawer layoutDrawer = this.layoutDrawer;
+
+        if (layoutDrawer == null) {
+            postInvalidateScratchableLayout();
+
+            return;
+        }
+
+        // Frame-synchronized drawers invalidate the layout once per frame themselves
+        if (layoutDrawer.isFrameSynchronizedDrawingEnabled()) {
+            return;
+        }
+
+        synchronized (invalidationBounds) {
+            if (layoutDrawer.takeDirtyBounds(invalidationBounds)) {
+                postInvalidateScratchableLayout(invalidationBounds);
+            }
+        }
+    }
+
+    protected void addScratchPathBatch(ScratchPathBatch batch, ScratchPathBatchAggregator listener) {
+        if (listener != null) {
+            listener.addScratchPathBatch(batch);
+        }
     }
 
+    /**
+     * @deprecated points are now shared with each listener as a {@link ScratchPathBatch} by
+     * {@link #addScratchPathBatch(ScratchPathBatch, ScratchPathBatchAggregator)}, so that their
+     * Paths are only built once. This is no longer called, so overriding it has no effect.
+     */
+    @Deprecated
     protected void addScratchPathPoints(Collection<ScratchPathPoint> events, ScratchPathPointsAggregator listener) {
         if (listener != null) {
             listener.addScratchPathPoints(events);
@@ -245,6 +607,14 @@ public class ScratchoffController implements OnTouchListener,
     }
 
     public ScratchoffController onDestroy() {
+        cancelIncrementalStateRestoration();
+
+        ScratchoffJournal journal = this.journal;
+
+        if (journal != null) {
+            journal.close();
+        }
+
         ScratchoffThresholdProcessor thresholdProcessor = this.thresholdProcessor;
 
         if (thresholdProcessor != null) {
@@ -265,6 +635,8 @@ public class ScratchoffController implements OnTouchListener,
     protected void onThresholdReached() {
         this.thresholdReached = true;
 
+        recordThresholdReached();
+
         if (clearOnThresholdReachedEnabled) {
             clear();
         }
@@ -288,11 +660,21 @@ public class ScratchoffController implements OnTouchListener,
     public ScratchoffController clear() {
         this.scratchableLayoutAvailable = false;
 
+        cancelIncrementalStateRestoration();
+
         clearLayoutDrawer(clearAnimationEnabled);
 
         return this;
     }
 
+    protected void recordThresholdReached() {
+        ScratchoffJournal journal = this.journal;
+
+        if (journal != null) {
+            journal.appendThresholdReached();
+        }
+    }
+
     protected void clearLayoutDrawer(boolean clearAnimationEnabled) {
         ScratchableLayoutDrawer layoutDrawer = this.layoutDrawer;
 
@@ -440,6 +822,114 @@ public class ScratchoffController implements OnTouchListener,
         return thresholdAccuracyQuality;
     }
 
+    /**
+     * Set the {@link ScratchoffThresholdProcessor.CoverageMode} used by the underlying
+     * {@link ScratchoffThresholdProcessor} to track the scratched area. The default is
+     * {@link ScratchoffThresholdProcessor.CoverageMode#MARKER_BITMAP}.
+     * <br><br>
+     * {@link ScratchoffThresholdProcessor.CoverageMode#BITSET} stores a single bit per pixel
+     * instead of an RGB_565 Bitmap, and keeps the scratched count up-to-date as each segment
+     * is marked. The resulting percentages may differ slightly from the Bitmap-based mode,
+     * as pixels are only considered scratched when their centers are covered.
+     * <br><br>
+     * {@link ScratchoffThresholdProcessor.CoverageMode#ANALYTIC} does not rasterize at all, and instead
+     * estimates the scratched area by sampling each target region on a fixed-size lattice. It is best
+     * paired with {@link ScratchoffThresholdProcessor.Quality#LOW} or
+     * {@link ScratchoffThresholdProcessor.Quality#MEDIUM}, where pixel-level accuracy is not expected.
+     * <br><br>
+     * {@link ScratchoffThresholdProcessor.CoverageMode#OVERLAY_ALPHA} reads the erased pixels from a
+     * downsampled ALPHA_8 snapshot of the scratchable layout, so each stroke is only drawn once.
+     * Areas of the scratchable layout that are transparent before scratching count as scratched,
+     * and should be excluded with a {@link ScratchoffThresholdProcessor.TargetRegionsProvider}.
+     * <br><br>
+     * Note: this must be called before {@link #attach()} or it will have no effect.
+     */
+    public ScratchoffController setThresholdCoverageMode(ScratchoffThresholdProcessor.CoverageMode thresholdCoverageMode) {
+        this.thresholdCoverageMode = thresholdCoverageMode;
+
+        return this;
+    }
+
+    public ScratchoffThresholdProcessor.CoverageMode getThresholdCoverageMode() {
+        return thresholdCoverageMode;
+    }
+
+    /**
+     * Set the maximum size, in bytes, of the buffer the {@link ScratchoffThresholdProcessor} reuses
+     * to read the pixels of its marker Bitmap. The default is
+     * {@link ThresholdCalculator#DEFAULT_SCAN_BUFFER_SIZE_BYTES}.
+     * <br><br>
+     * Regions are read in bands of rows that fit this budget, so no allocations are made
+     * while scratching once the buffer has been created.
+     * <br><br>
+     * Note: this must be called before {@link #attach()} or it will have no effect.
+     */
+    public ScratchoffController setThresholdScanBufferSizeBytes(int thresholdScanBufferSizeBytes) {
+        this.thresholdScanBufferSizeBytes = thresholdScanBufferSizeBytes;
+
+        return this;
+    }
+
+    /**
+     * Set the factory for the {@link ThresholdEvaluationPolicy} of each {@link ScratchoffThresholdProcessor}
+     * created by this controller. A new policy is created on every {@link #attach()}, as policies
+     * may track state for a single processor. The default creates an {@link AdaptiveThresholdEvaluationPolicy}.
+     * <br><br>
+     * Note: this must be called before {@link #attach()} or it will have no effect.
+     */
+    public ScratchoffController setThresholdEvaluationPolicyFactory(ThresholdEvaluationPolicyFactory thresholdEvaluationPolicyFactory) {
+        this.thresholdEvaluationPolicyFactory = thresholdEvaluationPolicyFactory;
+
+        return this;
+    }
+
+    /**
+     * Run this controller's threshold evaluations on the supplied executor instead of the
+     * single Thread shared by every {@link ScratchoffThresholdProcessor} in the process.
+     * The executor belongs to the caller and will never be shut down by this controller.
+     * <br><br>
+     * Note: this must be called before {@link #attach()} or it will have no effect.
+     */
+    public ScratchoffController setThresholdEvaluationExecutor(ScheduledExecutorService executor) {
+        this.thresholdEvaluationScheduler = new ThresholdEvaluationScheduler(executor);
+
+        return this;
+    }
+
+    /**
+     * Set the number of Threads the {@link ScratchoffThresholdProcessor} may split its pixel
+     * scans across. The default of 1 performs all scans on the threshold evaluation Thread.
+     * <br><br>
+     * Multiple target regions, or horizontal stripes of regions too large to scan efficiently
+     * on one Thread, are counted in parallel with results identical to the serial scan.
+     * The evaluation Thread takes part in each scan, and the rest are split across a bounded
+     * {@link com.jackpocket.scratchoff.tools.ThresholdScanPool} shared by every controller in the process.
+     * A value of <code>Runtime.getRuntime().availableProcessors()</code> will scale with the device.
+     * <br><br>
+     * Note: this must be called before {@link #attach()} or it will have no effect.
+     */
+    public ScratchoffController setThresholdScanParallelism(int thresholdScanParallelism) {
+        this.thresholdScanParallelism = thresholdScanParallelism;
+
+        return this;
+    }
+
+    /**
+     * Set the minimum duration between calls to
+     * {@link ThresholdChangedListener#onScratchPercentChanged(ScratchoffController, float)}.
+     * The default of 0 reports every change in the scratched percentage.
+     * <br><br>
+     * Between updates, the {@link ScratchoffThresholdProcessor} will only determine whether
+     * the threshold has been reached, stopping as soon as the outcome is decided.
+     * <br><br>
+     * Note: this must be called before {@link #attach()} or it will have no effect.
+     */
+    public ScratchoffController setThresholdProgressUpdateIntervalMs(long thresholdProgressUpdateIntervalMs) {
+        this.thresholdProgressUpdateIntervalMs = thresholdProgressUpdateIntervalMs;
+
+        return this;
+    }
+
     /**
      * Override the default {@link ScratchoffThresholdProcessor.TargetRegionsProvider} for the underlying
      * {@link ScratchoffThresholdProcessor} to define specific regions of the {@link Bitmap} that should
@@ -474,8 +964,8 @@ public class ScratchoffController implements OnTouchListener,
      * If the threshold has already been reached, the restoration will automatically
      * clear the scratchable View to review the behind View, regardless of clearing settings.
      * <br><br>
-     * If the scratchable View is restored with a different layout size, no restoration
-     * will be performed.
+     * If the scratchable View is restored with a different layout size, the history will be
+     * rescaled to the new size, and replayed with a touch radius scaled by the same amount.
      */
     public ScratchoffController setStateRestorationEnabled(boolean stateRestorationEnabled) {
         this.stateRestorationEnabled = stateRestorationEnabled;
@@ -484,83 +974,345 @@ public class ScratchoffController implements OnTouchListener,
     }
 
     /**
-     * Set whether or not to recover from a null active {@link android.graphics.Path} during
-     * a touch-move event, instead of allowing a {@link NullPointerException} to be thrown.
-     * This can occur when a move event arrives without a preceding down event,
-     * e.g. due to race conditions during layout callbacks.
-     * The default for this value is false for the original (crashing) behavior.
+     * Set whether a restored path history should be replayed in chunks over multiple display
+     * frames, spending no more than the {@link #setIncrementalStateRestorationFrameBudget(long, TimeUnit)}
+     * on each, instead of all at once while the scratchable layout is first laid out.
+     * The default for this value is false.
+     * <br><br>
+     * Threshold callbacks are held until the replay has finished, and touches made in the meantime
+     * are drawn immediately, independently of the paths being replayed.
+     * <br><br>
+     * This has no effect below API 16, where the Choreographer is unavailable.
      */
-    public ScratchoffController setActivePathRecoveryEnabled(
-        boolean activePathRecoveryEnabled
-    ) {
-
-        this.activePathRecoveryEnabled = activePathRecoveryEnabled;
+    public ScratchoffController setIncrementalStateRestorationEnabled(boolean incrementalStateRestorationEnabled) {
+        this.incrementalStateRestorationEnabled = incrementalStateRestorationEnabled;
 
         return this;
     }
 
-    public View getViewBehind() {
-        return behindView.get();
+    /**
+     * @return true if a restored path history will be replayed over multiple display frames
+     */
+    public boolean isIncrementalStateRestorationEnabled() {
+        return incrementalStateRestorationEnabled && 16 <= Build.VERSION.SDK_INT;
     }
 
-    public ScratchableLayoutDrawer getLayoutDrawer() {
-        return layoutDrawer;
+    /**
+     * Set the time spent replaying a restored path history in each display frame when
+     * {@link #setIncrementalStateRestorationEnabled(boolean)} is true. A small chunk of points
+     * is always replayed in each frame, regardless of the budget, so that the replay continues to progress.
+     * The default is {@link #DEFAULT_INCREMENTAL_STATE_RESTORATION_FRAME_BUDGET_NANOS}.
+     */
+    public ScratchoffController setIncrementalStateRestorationFrameBudget(long value, TimeUnit unit) {
+        this.incrementalStateRestorationFrameBudgetNanos = unit.toNanos(value);
+
+        return this;
     }
 
     /**
-     * Add an OnTouchListener to observe MotionEvents as they are passed
-     * into this ScratchoffController instance. Events will be forwarded regardless of
-     * the ScratchoffController's enabled state, and all return values will be ignored.
+     * @return true while a restored path history is being replayed over multiple display frames
+     */
+    public boolean isIncrementalStateRestorationInProgress() {
+        return incrementalStateRestoration != null;
+    }
+
+    /**
+     * Set the {@link ScratchoffJournal} that every scratched point is appended to from a background
+     * Thread, so that the scratched state survives the death of the process. The journal is recovered
+     * the first time this is attached after it was set, and preferred over any state restored from a
+     * Parcel, which no longer includes the path history. Only the most recent
+     * {@link #setJournaledHistoryLimit(int)} points are kept in memory.
+     * The journal is closed, but not deleted, by {@link #onDestroy()}. Call {@link ScratchoffJournal#delete()}
+     * once the scratched content is no longer needed.
      * <br><br>
-     * If adding observers (in Activity.onResume), you should also call
-     * {@link #removeTouchObservers} (in Activity.onPause).
-     *
-     * @param touchListener a non-null OnTouchListener
+     * Note: this must be called before {@link #attach()} or it will have no effect.
      */
-    public ScratchoffController addTouchObserver(OnTouchListener touchListener) {
-        this.touchObservers.add(touchListener);
+    public ScratchoffController setJournal(ScratchoffJournal journal) {
+        this.journal = journal;
+        this.journalRecovered = false;
 
         return this;
     }
 
+    public ScratchoffJournal getJournal() {
+        return journal;
+    }
+
     /**
-     * Remove a OnTouchListener from this ScratchoffController instance.
-     *
-     * @param touchListener a non-null OnTouchListener
+     * Set the maximum number of points kept in memory while a {@link ScratchoffJournal} is set.
+     * The default is {@link #DEFAULT_JOURNALED_HISTORY_LIMIT}.
      */
-    public ScratchoffController removeTouchObserver(OnTouchListener touchListener) {
-        this.touchObservers.remove(touchListener);
+    public ScratchoffController setJournaledHistoryLimit(int journaledHistoryLimit) {
+        this.journaledHistoryLimit = Math.max(0, journaledHistoryLimit);
 
         return this;
     }
 
     /**
-     * Remove all touch observers from this ScratchoffController instance.
+     * Set whether or not to periodically compact the path history on a background Thread, removing
+     * the points that don't change the scratched area by more than {@link #setHistoryCompactionTolerancePx(float)},
+     * e.g. runs of nearly-collinear or repeated move points. This reduces the memory held by the history,
+     * the size of the saved state, and the time taken to replay it when restoring.
+     * The default for this value is false.
+     * <br><br>
+     * A {@link ScratchoffJournal} still records every point, and is rewritten with its compacted history once recovered.
      */
-    public void removeTouchObservers() {
-        this.touchObservers.clear();
-    }
+    public ScratchoffController setHistoryCompactionEnabled(boolean historyCompactionEnabled) {
+        this.historyCompactionEnabled = historyCompactionEnabled;
 
-    protected List<OnTouchListener> getTouchObservers() {
-        return touchObservers;
+        return this;
     }
 
-    @Override
-    public List<Rect> createScratchableRegions(Bitmap source) {
-        return thresholdTargetRegionsProvider.createScratchableRegions(source);
+    /**
+     * Set the maximum distance, in pixels, that a removed point may lie from the
+     * compacted path. The default is {@link ScratchPathSimplifier#DEFAULT_TOLERANCE_PX}.
+     */
+    public ScratchoffController setHistoryCompactionTolerancePx(float historyCompactionTolerancePx) {
+        this.historyCompactionTolerancePx = Math.max(0f, historyCompactionTolerancePx);
+
+        return this;
     }
 
-    public int[] getScratchableLayoutSize() {
-        final int[] gridSize = this.gridSize;
+    /**
+     * Set the number of points that must be added to the history before it is compacted again.
+     * The default is {@link #DEFAULT_HISTORY_COMPACTION_INTERVAL_POINTS}.
+     */
+    public ScratchoffController setHistoryCompactionIntervalPoints(int historyCompactionIntervalPoints) {
+        this.historyCompactionIntervalPoints = Math.max(2, historyCompactionIntervalPoints);
 
-        return gridSize == null
-            ? new int[] { 0, 0 }
-            : new int[] { gridSize[0], gridSize[1] };
+        return this;
     }
 
-    public boolean isScratchableLayoutAvailable() {
-        return scratchableLayoutAvailable;
-    }
+    /**
+     * Compact the history on the supplied executor instead of the single Thread shared by every
+     * {@link ScratchoffController} in the process. A null executor restores the shared Thread.
+     */
+    public ScratchoffController setHistoryCompactionExecutor(Executor historyCompactionExecutor) {
+        this.historyCompactionExecutor = historyCompactionExecutor;
+
+        return this;
+    }
+
+    /**
+     * Set whether or not to recover from a null active {@link android.graphics.Path} during
+     * a touch-move event, instead of allowing a {@link NullPointerException} to be thrown.
+     * This can occur when a move event arrives without a preceding down event,
+     * e.g. due to race conditions during layout callbacks.
+     * The default for this value is false for the original (crashing) behavior.
+     */
+    public ScratchoffController setActivePathRecoveryEnabled(
+        boolean activePathRecoveryEnabled
+    ) {
+
+        this.activePathRecoveryEnabled = activePathRecoveryEnabled;
+
+        return this;
+    }
+
+    /**
+     * Set whether the scratched paths should be drawn once per display frame, with a single
+     * invalidation of the scratchable layout, instead of after every MotionEvent. This reduces
+     * the work done when multiple MotionEvents are delivered within the same frame.
+     * The default for this value is false.
+     * <br><br>
+     * This has no effect below API 16.
+     * <br><br>
+     * Note: this must be called before {@link #attach()} or it will have no effect.
+     */
+    public ScratchoffController setFrameSynchronizedDrawingEnabled(boolean frameSynchronizedDrawingEnabled) {
+        this.frameSynchronizedDrawingEnabled = frameSynchronizedDrawingEnabled;
+
+        return this;
+    }
+
+    /**
+     * Set the {@link ScratchableLayoutDrawer.OverlayRenderMode} used to draw and erase the scratchable
+     * layout's overlay. The default is {@link ScratchableLayoutDrawer.OverlayRenderMode#TILED_BITMAP}.
+     * <br><br>
+     * {@link ScratchableLayoutDrawer.OverlayRenderMode#ALPHA_MASK} keeps the rendered layout
+     * unmodified and only erases from an ALPHA_8 mask, leaving the blending of the two to a
+     * hardware-accelerated Canvas. On API 26 and above, the rendered layout is kept in graphics
+     * memory only, unless the {@link ScratchoffThresholdProcessor.CoverageMode#OVERLAY_ALPHA} mode
+     * or the {@link #setCoverageMaskPersistenceEnabled(boolean)} option need to read it back.
+     * <br><br>
+     * Note: this must be called before {@link #attach()} or it will have no effect.
+     */
+    public ScratchoffController setOverlayRenderMode(ScratchableLayoutDrawer.OverlayRenderMode overlayRenderMode) {
+        this.overlayRenderMode = overlayRenderMode;
+
+        return this;
+    }
+
+    /**
+     * Set the {@link BitmapPool} that the Bitmaps of the scratchable layout's overlay and the
+     * threshold evaluation are obtained from, and released to on {@link #destroy()}, so that
+     * re-attaching reuses them instead of allocating new ones. A single pool may be shared between
+     * every {@link ScratchoffController} of, for example, a RecyclerView, in which case its byte budget
+     * should cover at least the Bitmaps of one attached controller.
+     * The default is {@link BitmapPool#UNPOOLED}, which never holds onto any Bitmaps.
+     * <br><br>
+     * Note: this must be called before {@link #attach()} or it will have no effect.
+     */
+    public ScratchoffController setBitmapPool(BitmapPool bitmapPool) {
+        this.bitmapPool = bitmapPool;
+
+        return this;
+    }
+
+    /**
+     * Set the fraction of the scratchable layout's size that its overlay is captured and
+     * erased at, independently of the {@link ScratchoffThresholdProcessor.Quality} used
+     * for threshold evaluation. The overlay is filtered when drawn back at full size,
+     * so a value of 0.5f reduces its memory and the cost of erasing by roughly 75%
+     * at the cost of some sharpness. The default is 1f, which implies no reduction in quality.
+     * <br><br>
+     * Note: this must be called before {@link #attach()} or it will have no effect.
+     */
+    public ScratchoffController setOverlayDrawingQuality(float overlayDrawingQuality) {
+        this.overlayDrawingQuality = overlayDrawingQuality;
+
+        return this;
+    }
+
+    public float getOverlayDrawingQuality() {
+        return overlayDrawingQuality;
+    }
+
+    /**
+     * Set the width and height, in pixels, of the tiles that the scratchable layout's overlay
+     * is split into. Tiles without any visible content are never allocated, and tiles that
+     * have been fully scratched off are released.
+     * The default is {@link TiledOverlayBitmap#DEFAULT_TILE_SIZE_PX}.
+     * This only applies to the {@link ScratchableLayoutDrawer.OverlayRenderMode#TILED_BITMAP} mode.
+     * <br><br>
+     * Note: this must be called before {@link #attach()} or it will have no effect.
+     */
+    public ScratchoffController setOverlayTileSizePx(int overlayTileSizePx) {
+        this.overlayTileSizePx = overlayTileSizePx;
+
+        return this;
+    }
+
+    /**
+     * Set whether a {@link CoverageMask} of the scratched areas should be saved alongside the
+     * path history by {@link #parcelize(Parcelable)}. When restoring a state containing one, the mask
+     * is erased from the overlay and counted by the {@link ScratchoffThresholdProcessor} once,
+     * instead of replaying every point of the path history, so the cost of restoring no longer
+     * grows with how long the scratchable layout was scratched for.
+     * The path history is still saved, so that it can be included in subsequent states,
+     * unless {@link #setCoverageMaskHistoryRetained(boolean)} is false.
+     * The default for this value is false.
+     */
+    public ScratchoffController setCoverageMaskPersistenceEnabled(boolean coverageMaskPersistenceEnabled) {
+        this.coverageMaskPersistenceEnabled = coverageMaskPersistenceEnabled;
+
+        return this;
+    }
+
+    /**
+     * Set whether the path history should still be saved alongside a {@link CoverageMask}.
+     * When false, a state containing a mask holds no path history, so it's smaller and restored
+     * without decoding any points, but it can only be restored at the same layout size, as the
+     * mask can't be rescaled, and a state saved afterwards only contains the mask sampled again
+     * from the overlay. The history is still saved when no mask could be created.
+     * The default for this value is true.
+     */
+    public ScratchoffController setCoverageMaskHistoryRetained(boolean coverageMaskHistoryRetained) {
+        this.coverageMaskHistoryRetained = coverageMaskHistoryRetained;
+
+        return this;
+    }
+
+    /**
+     * Set the width and height, in pixels, of each cell of the saved {@link CoverageMask}.
+     * Smaller cells restore the edges of the scratched areas more accurately, at the cost of a
+     * larger state. The default of 0 uses a quarter of the {@link #touchRadiusPx}.
+     */
+    public ScratchoffController setCoverageMaskCellSizePx(int coverageMaskCellSizePx) {
+        this.coverageMaskCellSizePx = coverageMaskCellSizePx;
+
+        return this;
+    }
+
+    protected int getCoverageMaskCellSizePx() {
+        if (0 < coverageMaskCellSizePx) {
+            return coverageMaskCellSizePx;
+        }
+
+        return Math.max(1, touchRadiusPx / 4);
+    }
+
+    public View getViewBehind() {
+        return behindView.get();
+    }
+
+    public ScratchableLayoutDrawer getLayoutDrawer() {
+        return layoutDrawer;
+    }
+
+    /**
+     * Add an OnTouchListener to observe MotionEvents as they are passed
+     * into this ScratchoffController instance. Events will be forwarded regardless of
+     * the ScratchoffController's enabled state, and all return values will be ignored.
+     * <br><br>
+     * If adding observers (in Activity.onResume), you should also call
+     * {@link #removeTouchObservers} (in Activity.onPause).
+     *
+     * @param touchListener a non-null OnTouchListener
+     */
+    public ScratchoffController addTouchObserver(OnTouchListener touchListener) {
+        this.touchObservers.add(touchListener);
+
+        return this;
+    }
+
+    /**
+     * Remove a OnTouchListener from this ScratchoffController instance.
+     *
+     * @param touchListener a non-null OnTouchListener
+     */
+    public ScratchoffController removeTouchObserver(OnTouchListener touchListener) {
+        this.touchObservers.remove(touchListener);
+
+        return this;
+    }
+
+    /**
+     * Remove all touch observers from this ScratchoffController instance.
+     */
+    public void removeTouchObservers() {
+        this.touchObservers.clear();
+    }
+
+    protected List<OnTouchListener> getTouchObservers() {
+        return touchObservers;
+    }
+
+    @Override
+    public List<Rect> createScratchableRegions(Bitmap source) {
+        return thresholdTargetRegionsProvider.createScratchableRegions(source);
+    }
+
+    /**
+     * Only allocates a Bitmap for the {@link #thresholdTargetRegionsProvider} if it is not a
+     * {@link ScratchoffThresholdProcessor.SizedTargetRegionsProvider}.
+     */
+    @Override
+    public List<Rect> createScratchableRegions(int width, int height) {
+        return ScratchoffThresholdProcessor.createScratchableRegions(thresholdTargetRegionsProvider, width, height);
+    }
+
+    public int[] getScratchableLayoutSize() {
+        final int[] gridSize = this.gridSize;
+
+        return gridSize == null
+            ? new int[] { 0, 0 }
+            : new int[] { gridSize[0], gridSize[1] };
+    }
+
+    public boolean isScratchableLayoutAvailable() {
+        return scratchableLayoutAvailable;
+    }
 
     @Override
     public void postScratchPercentChanged(final float percent) {
@@ -572,6 +1324,13 @@ public class ScratchoffController implements OnTouchListener,
 
         post(new Runnable() {
             public void run() {
+                if (isIncrementalStateRestorationInProgress()) {
+                    scratchPercentChangeHeld = true;
+                    heldScratchPercent = percent;
+
+                    return;
+                }
+
                 thresholdChangedListener.onScratchPercentChanged(ScratchoffController.this, percent);
             }
         });
@@ -581,6 +1340,12 @@ public class ScratchoffController implements OnTouchListener,
     public void postScratchThresholdReached() {
         post(new Runnable() {
             public void run() {
+                if (isIncrementalStateRestorationInProgress()) {
+                    thresholdReachedHeld = true;
+
+                    return;
+                }
+
                 onThresholdReached();
             }
         });
@@ -594,6 +1359,30 @@ public class ScratchoffController implements OnTouchListener,
         }
     }
 
+    /**
+     * Invalidate only the area of the scratchable layout within the supplied bounds.
+     */
+    public void postInvalidateScratchableLayout(Rect dirtyBounds) {
+        View layout = getScratchImageLayout();
+
+        if (layout != null) {
+            layout.postInvalidate(dirtyBounds.left, dirtyBounds.top, dirtyBounds.right, dirtyBounds.bottom);
+        }
+    }
+
+    /**
+     * Copy the bounds of the area most recently erased from the scratchable layout, including
+     * the touch radius, into the supplied Rect. Custom layouts can use this to redraw only the
+     * affected area after {@link #draw(Canvas)}.
+     *
+     * @return false if nothing has been erased since the last call to {@link #attach()}
+     */
+    public boolean getLastDirtyBounds(Rect out) {
+        ScratchableLayoutDrawer layoutDrawer = this.layoutDrawer;
+
+        return layoutDrawer != null && layoutDrawer.getLastDirtyBounds(out);
+    }
+
     protected void post(Runnable runnable) {
         View layout = getScratchImageLayout();
 
@@ -613,16 +1402,52 @@ public class ScratchoffController implements OnTouchListener,
             return null;
         }
 
-        return new ScratchoffState(
-            state,
-            getScratchableLayoutSize(),
-            thresholdReached,
-            getClonedHistory()
+        final int[] size = getScratchableLayoutSize();
+        final CoverageMask coverageMask = createCoverageMask(size);
+
+        synchronized (history) {
+            // Encoded straight from the history, without copying each point
+            return new ScratchoffState(
+                state,
+                size,
+                thresholdReached,
+                isHistoryParcelled(coverageMask) ? history : new ScratchPathPointBuffer(0),
+                coverageMask
+            );
+        }
+    }
+
+    /**
+     * @return false if the history is recovered from the {@link #journal} instead, as it may be
+     * incomplete in memory, or if the mask is saved without it
+     */
+    private boolean isHistoryParcelled(CoverageMask coverageMask) {
+        return journal == null
+            && (coverageMask == null || coverageMaskHistoryRetained);
+    }
+
+    /**
+     * @return null if {@link #coverageMaskPersistenceEnabled} is false or the overlay is not available
+     */
+    protected CoverageMask createCoverageMask(int[] size) {
+        ScratchableLayoutDrawer layoutDrawer = this.layoutDrawer;
+
+        if (!coverageMaskPersistenceEnabled || layoutDrawer == null) {
+            return null;
+        }
+
+        return CoverageMask.createFromOverlay(
+            layoutDrawer,
+            size[0],
+            size[1],
+            getCoverageMaskCellSizePx()
         );
     }
 
     protected List<ScratchPathPoint> getClonedHistory() {
-        return Arrays.asList(history.toArray(new ScratchPathPoint[0]));
+        synchronized (history) {
+            return history.toList();
+        }
     }
 
     public void setStateRestorationParcel(Parcelable state) {
@@ -642,42 +1467,412 @@ public class ScratchoffController implements OnTouchListener,
     public ScratchoffController removePendingStateRestorationParcel() {
         this.statePendingReload = null;
 
+        ScratchoffJournal journal = this.journal;
+
+        if (journal != null && journalRecoveryPending != null) {
+            journal.deleteRecovery();
+        }
+
+        this.journalRecoveryPending = null;
+
         return this;
     }
 
     protected void performStateRestoration() {
-        ScratchoffState state = this.statePendingReload;
-
-        if (state == null || !stateRestorationEnabled || !scratchableLayoutAvailable) {
+        if (!stateRestorationEnabled || !scratchableLayoutAvailable) {
             return;
         }
 
+        // The journal is always at least as recent as a Parcel, which may not have a path history
+        final ScratchoffJournal.Recovery journalRecovery = takeJournalRecovery();
+        final ScratchoffState state = this.statePendingReload;
+
         this.statePendingReload = null;
 
-        performStateRestoration(state);
+        if (journalRecovery != null) {
+            performJournalRestoration(journalRecovery);
+
+            return;
+        }
+
+        if (state != null) {
+            performStateRestoration(state);
+        }
+    }
+
+    /**
+     * Wait for the {@link ScratchoffJournal.Recovery} begun by {@link #recoverJournal()}, if any,
+     * which has usually finished validating the journal by the time the layout is available.
+     */
+    protected ScratchoffJournal.Recovery takeJournalRecovery() {
+        final Future<ScratchoffJournal.Recovery> journalRecoveryPending = this.journalRecoveryPending;
+
+        if (journalRecoveryPending == null) {
+            return null;
+        }
+
+        this.journalRecoveryPending = null;
+
+        try {
+            return journalRecoveryPending.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            return null;
+        }
+        catch (ExecutionException e) {
+            e.printStackTrace();
+
+            return null;
+        }
     }
 
     protected void performStateRestoration(ScratchoffState state) {
+        if (state.isThresholdReached()) {
+            performThresholdReachedRestoration();
+
+            return;
+        }
+
         int[] historicalSize = state.getLayoutSize();
         int[] currentSize = getScratchableLayoutSize();
 
-        if (!(historicalSize[0] == currentSize[0] && historicalSize[1] == currentSize[1])) {
+        if (historicalSize[0] < 1 || historicalSize[1] < 1) {
             return;
         }
 
-        if (state.isThresholdReached()) {
-            final boolean clearAnimationEnabled = this.clearAnimationEnabled;
+        final float scaleX = (float) currentSize[0] / historicalSize[0];
+        final float scaleY = (float) currentSize[1] / historicalSize[1];
+
+        // The mask's cells can't be rescaled without distorting them, but the history always can be
+        if (scaleX == 1f && scaleY == 1f && state.hasCoverageMask() && performCoverageMaskRestoration(state)) {
+            return;
+        }
+
+        ScratchPathManager restorationPathGeometry = createRestorationPathGeometry(scaleX, scaleY);
+
+        if (isIncrementalStateRestorationEnabled()) {
+            startIncrementalStateRestoration(state, scaleX, scaleY, restorationPathGeometry);
+
+            return;
+        }
+
+        ScratchPathPointCodec.Decoder decoder = state.createPathHistoryDecoder();
+
+        // A batch per run of points sharing a stroke scale, as each batch is drawn at a single scale
+        while (decoder.hasNext()) {
+            ScratchPathPointBuffer points = new ScratchPathPointBuffer(decoder.getCount() - decoder.getDecodedCount());
+            decoder.decodeRunInto(points, decoder.getCount());
+            points.scale(scaleX, scaleY);
+
+            ScratchPathBatch batch = restorationPathGeometry.createBatch(points);
+
+            // The history keeps the radius the points were drawn at, so that saving it again doesn't lose the scale
+            points.scaleStroke(restorationPathGeometry.getStrokeScale());
+
+            recordHistory(points);
+
+            drawScratchPathBatch(batch);
+
+            batch.release();
+        }
+    }
+
+    protected void performThresholdReachedRestoration() {
+        recordThresholdReached();
+
+        final boolean clearAnimationEnabled = this.clearAnimationEnabled;
+
+        this.clearAnimationEnabled = false;
+        this.clear();
+        this.clearAnimationEnabled = clearAnimationEnabled;
+    }
+
+    /**
+     * Restore the points recovered from the {@link #journal} one record at a time, recording them again
+     * in larger chunks, simplified when {@link #historyCompactionEnabled}, so that the journal reset by
+     * {@link #onScratchableLayoutAvailable(int, int)} is rewritten as a compacted copy of the recovered one,
+     * which is deleted once every point has been recorded.
+     */
+    protected void performJournalRestoration(ScratchoffJournal.Recovery recovery) {
+        if (recovery.isThresholdReached()) {
+            performThresholdReachedRestoration();
+
+            recovery.delete();
+
+            return;
+        }
+
+        int[] historicalSize = recovery.getLayoutSize();
+        int[] currentSize = getScratchableLayoutSize();
+
+        if (historicalSize[0] < 1 || historicalSize[1] < 1) {
+            recovery.delete();
+
+            return;
+        }
+
+        final float scaleX = (float) currentSize[0] / historicalSize[0];
+        final float scaleY = (float) currentSize[1] / historicalSize[1];
+
+        ScratchPathManager restorationPathGeometry = createRestorationPathGeometry(scaleX, scaleY);
+
+        if (isIncrementalStateRestorationEnabled()) {
+            // The restored points must precede any live points in the history, so they're replayed by a second read
+            restoreJournaledPoints(recovery, scaleX, scaleY, restorationPathGeometry, false);
+
+            recovery.rewind();
+
+            this.incrementalStateRestoration = new IncrementalStateRestoration(
+                recovery,
+                scaleX,
+                scaleY,
+                restorationPathGeometry
+            );
+
+            scheduleIncrementalStateRestorationFrame();
+
+            return;
+        }
+
+        restoreJournaledPoints(recovery, scaleX, scaleY, restorationPathGeometry, true);
+
+        recovery.delete();
+    }
+
+    private void restoreJournaledPoints(
+        ScratchoffJournal.Recovery recovery,
+        float scaleX,
+        float scaleY,
+        ScratchPathManager pathGeometry,
+        boolean drawn
+    ) {
+
+        ScratchPathPointBuffer points = new ScratchPathPointBuffer(JOURNAL_RESTORATION_CHUNK_SIZE);
+        ScratchPathPointCodec.Decoder decoder;
+
+        while ((decoder = recovery.nextDecoder()) != null) {
+            while (decoder.hasNext()) {
+                if (isJournaledChunkComplete(points, decoder)) {
+                    restoreJournaledChunk(points, scaleX, scaleY, pathGeometry, drawn);
+
+                    // A new buffer per chunk, as recorded points may still be waiting to be journaled
+                    points = new ScratchPathPointBuffer(JOURNAL_RESTORATION_CHUNK_SIZE);
+                }
+
+                decoder.decodeRunInto(points, JOURNAL_RESTORATION_CHUNK_SIZE - points.size());
+            }
+        }
+
+        if (!points.isEmpty()) {
+            restoreJournaledChunk(points, scaleX, scaleY, pathGeometry, drawn);
+        }
+    }
+
+    /**
+     * @return true if the chunk is full, or the decoder's next point can't be drawn at the same stroke scale
+     */
+    private boolean isJournaledChunkComplete(ScratchPathPointBuffer points, ScratchPathPointCodec.Decoder decoder) {
+        return !points.isEmpty()
+            && (JOURNAL_RESTORATION_CHUNK_SIZE <= points.size() || decoder.peekStrokeScale() != points.getStrokeScale(0));
+    }
+
+    private void restoreJournaledChunk(
+        ScratchPathPointBuffer points,
+        float scaleX,
+        float scaleY,
+        ScratchPathManager pathGeometry,
+        boolean drawn
+    ) {
+
+        points.scale(scaleX, scaleY);
+
+        if (historyCompactionEnabled) {
+            points = ScratchPathSimplifier.simplify(points, historyCompactionTolerancePx);
+        }
+
+        ScratchPathBatch batch = drawn ? pathGeometry.createBatch(points) : null;
+
+        points.scaleStroke(pathGeometry.getStrokeScale());
+
+        recordHistory(points);
+
+        if (batch != null) {
+            drawScratchPathBatch(batch);
+
+            batch.release();
+        }
+    }
+
+    /**
+     * Create the {@link ScratchPathManager} that builds the Paths of a restored history,
+     * separately from those of any live touches. A history rescaled from a different layout size
+     * is drawn with the touch radius scaled by the square root of its area's scale, so that the
+     * scratched proportion of the layout is preserved. The stroke scale is recorded with each
+     * restored point in the history, so that it's preserved by any later save and restore.
+     */
+    protected ScratchPathManager createRestorationPathGeometry(float scaleX, float scaleY) {
+        return new ScratchPathManager()
+            .setActivePathRecoveryEnabled(activePathRecoveryEnabled)
+            .setStrokeScale((float) Math.sqrt(scaleX * scaleY));
+    }
+
+    /**
+     * Record the state's path history, then replay it over the following display frames.
+     * The points are scaled as they are decoded, so the encoded history is never held
+     * in full outside of the recorded history itself.
+     * The replay builds its own Paths, so that the paths of any live touches are left untouched.
+     */
+    protected void startIncrementalStateRestoration(
+        ScratchoffState state,
+        float scaleX,
+        float scaleY,
+        ScratchPathManager pathGeometry
+    ) {
+
+        // The restored points must precede any live points in the history, for it to be replayed in the same order
+        recordRestoredHistory(state.createPathHistoryDecoder(), scaleX, scaleY, pathGeometry.getStrokeScale());
+
+        this.incrementalStateRestoration = new IncrementalStateRestoration(
+            state.createPathHistoryDecoder(),
+            scaleX,
+            scaleY,
+            pathGeometry
+        );
+
+        scheduleIncrementalStateRestorationFrame();
+    }
+
+    /**
+     * Record the decoded points in the history without drawing them, decoding a chunk at a time,
+     * so that the history is never held twice in full.
+     */
+    private void recordRestoredHistory(
+        ScratchPathPointCodec.Decoder decoder,
+        float scaleX,
+        float scaleY,
+        float strokeScale
+    ) {
+
+        while (decoder.hasNext()) {
+            // A new buffer per chunk, as recorded points may still be waiting to be journaled
+            ScratchPathPointBuffer points = new ScratchPathPointBuffer(RESTORED_HISTORY_RECORDING_CHUNK_SIZE);
+            decoder.decodeInto(points, RESTORED_HISTORY_RECORDING_CHUNK_SIZE);
+            points.scale(scaleX, scaleY);
+            points.scaleStroke(strokeScale);
+
+            recordHistory(points);
+        }
+    }
+
+    @TargetApi(16)
+    protected void scheduleIncrementalStateRestorationFrame() {
+        if (incrementalStateRestorationFrameCallback == null) {
+            this.incrementalStateRestorationFrameCallback = new IncrementalStateRestorationFrameCallback(this);
+        }
+
+        incrementalStateRestorationFrameCallback.post();
+    }
+
+    /**
+     * Replay chunks of the restored path history until the frame budget has been spent,
+     * then either schedule the next frame or release the held threshold callbacks.
+     * This must be called on the main Thread.
+     */
+    protected void performIncrementalStateRestorationFrame() {
+        IncrementalStateRestoration restoration = this.incrementalStateRestoration;
+
+        if (restoration == null) {
+            return;
+        }
+
+        final long deadlineNanos = System.nanoTime() + incrementalStateRestorationFrameBudgetNanos;
+
+        do {
+            ScratchPathBatch batch = restoration.createNextBatch();
+
+            drawScratchPathBatch(batch);
+
+            batch.release();
+        }
+        while (restoration.hasNext() && System.nanoTime() < deadlineNanos);
 
-            this.clearAnimationEnabled = false;
-            this.clear();
-            this.clearAnimationEnabled = clearAnimationEnabled;
+        if (restoration.hasNext()) {
+            scheduleIncrementalStateRestorationFrame();
 
             return;
         }
 
-        List<ScratchPathPoint> history = state.getPathHistory();
+        this.incrementalStateRestoration = null;
+
+        restoration.release();
+
+        releaseHeldThresholdCallbacks();
+    }
+
+    protected void cancelIncrementalStateRestoration() {
+        IncrementalStateRestoration restoration = this.incrementalStateRestoration;
+
+        if (restoration != null) {
+            restoration.release();
+        }
+
+        this.incrementalStateRestoration = null;
+        this.thresholdReachedHeld = false;
+        this.scratchPercentChangeHeld = false;
+
+        IncrementalStateRestorationFrameCallback callback = this.incrementalStateRestorationFrameCallback;
 
-        addScratchPathPoints(history);
+        if (callback != null) {
+            callback.remove();
+        }
+    }
+
+    private void releaseHeldThresholdCallbacks() {
+        if (scratchPercentChangeHeld) {
+            this.scratchPercentChangeHeld = false;
+
+            ThresholdChangedListener thresholdChangedListener = this.thresholdChangedListener.get();
+
+            if (thresholdChangedListener != null) {
+                thresholdChangedListener.onScratchPercentChanged(this, heldScratchPercent);
+            }
+        }
+
+        if (thresholdReachedHeld) {
+            this.thresholdReachedHeld = false;
+
+            onThresholdReached();
+        }
+    }
+
+    /**
+     * Erase and count the {@link CoverageMask} of the state once, instead of replaying its
+     * path history, which is only recorded so that it can be saved again, and may have been
+     * omitted when the mask was saved.
+     *
+     * @return false if the overlay was not available to erase the mask from
+     */
+    protected boolean performCoverageMaskRestoration(ScratchoffState state) {
+        ScratchableLayoutDrawer layoutDrawer = this.layoutDrawer;
+        CoverageMask mask = state.getCoverageMask();
+
+        if (layoutDrawer == null || !layoutDrawer.eraseCoverageMask(mask)) {
+            return false;
+        }
+
+        ScratchoffThresholdProcessor thresholdProcessor = this.thresholdProcessor;
+
+        if (thresholdProcessor != null) {
+            thresholdProcessor.addCoverageMask(mask);
+        }
+
+        recordRestoredHistory(state.createPathHistoryDecoder(), 1f, 1f, 1f);
+
+        postInvalidateScratchableLayout();
+
+        return true;
     }
 
     /**
@@ -718,4 +1913,125 @@ public class ScratchoffController implements OnTouchListener,
         return ((ScratchableLayout) scratchableLayout)
             .getScratchoffController();
     }
+
+    private static class IncrementalStateRestoration {
+
+        // Null unless the points are replayed from the journal, one record at a time
+        private final ScratchoffJournal.Recovery journalRecovery;
+        private ScratchPathPointCodec.Decoder decoder;
+        private final float scaleX;
+        private final float scaleY;
+        private final ScratchPathManager pathGeometry;
+        private final ScratchPathPointBuffer chunk = new ScratchPathPointBuffer(INCREMENTAL_STATE_RESTORATION_CHUNK_SIZE);
+
+        IncrementalStateRestoration(
+            ScratchPathPointCodec.Decoder decoder,
+            float scaleX,
+            float scaleY,
+            ScratchPathManager pathGeometry
+        ) {
+
+            this(null, decoder, scaleX, scaleY, pathGeometry);
+        }
+
+        IncrementalStateRestoration(
+            ScratchoffJournal.Recovery journalRecovery,
+            float scaleX,
+            float scaleY,
+            ScratchPathManager pathGeometry
+        ) {
+
+            this(journalRecovery, journalRecovery.nextDecoder(), scaleX, scaleY, pathGeometry);
+        }
+
+        private IncrementalStateRestoration(
+            ScratchoffJournal.Recovery journalRecovery,
+            ScratchPathPointCodec.Decoder decoder,
+            float scaleX,
+            float scaleY,
+            ScratchPathManager pathGeometry
+        ) {
+
+            this.journalRecovery = journalRecovery;
+            this.decoder = decoder;
+            this.scaleX = scaleX;
+            this.scaleY = scaleY;
+            this.pathGeometry = pathGeometry;
+        }
+
+        boolean hasNext() {
+            return isDecoderRemaining()
+                || (journalRecovery != null && journalRecovery.hasNext());
+        }
+
+        private boolean isDecoderRemaining() {
+            return decoder != null && decoder.hasNext();
+        }
+
+        ScratchPathBatch createNextBatch() {
+            chunk.clear();
+
+            if (!isDecoderRemaining() && journalRecovery != null) {
+                this.decoder = journalRecovery.nextDecoder();
+            }
+
+            if (decoder != null) {
+                decoder.decodeRunInto(chunk, INCREMENTAL_STATE_RESTORATION_CHUNK_SIZE);
+            }
+            chunk.scale(scaleX, scaleY);
+
+            return pathGeometry.createBatch(chunk);
+        }
+
+        /**
+         * Delete the journal's recovered records, which have all been recorded again before the replay began.
+         */
+        void release() {
+            if (journalRecovery != null) {
+                journalRecovery.delete();
+            }
+        }
+    }
+
+    @TargetApi(16)
+    private static class IncrementalStateRestorationFrameCallback implements Choreographer.FrameCallback {
+
+        private final WeakReference<ScratchoffController> controller;
+        private final Choreographer choreographer = Choreographer.getInstance();
+
+        IncrementalStateRestorationFrameCallback(ScratchoffController controller) {
+            this.controller = new WeakReference<>(controller);
+        }
+
+        void post() {
+            choreographer.postFrameCallback(this);
+        }
+
+        void remove() {
+            choreographer.removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            ScratchoffController controller = this.controller.get();
+
+            if (controller != null) {
+                controller.performIncrementalStateRestorationFrame();
+            }
+        }
+    }
+
+    private static class HistoryCompactionThreadFactory implements ThreadFactory {
+
+        private final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = defaultFactory.newThread(runnable);
+            thread.setName("scratchoff-history-compaction");
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    }
 }
@@ -0,0 +1,797 @@
+package com.jackpocket.scratchoff;
+
+import android.view.AbsSavedState;
+
+import com.jackpocket.scratchoff.paths.ScratchPathBatch;
+import com.jackpocket.scratchoff.paths.ScratchPathPointBuffer;
+import com.jackpocket.scratchoff.paths.ScratchPathPointCodec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only file recording the scratched points of a {@link ScratchoffController}, so that
+ * they can be recovered after the process has died without being held in memory or in a Parcel.
+ * <br><br>
+ * Records are encoded with {@link ScratchPathPointCodec} and written from a single background
+ * Thread, buffered into as few writes as possible. Written records reach the OS as soon as the
+ * queue has been drained, which is enough to survive the death of the process, while the file is
+ * only synced to the disk at most once per sync interval, which bounds what can be lost if the
+ * device itself loses power.
+ * <br><br>
+ * Each record is a type, a payload length, the payload, and a CRC32 of the payload, so that a
+ * record torn by the process dying mid-write is discarded on recovery, along with anything after it.
+ * <br><br>
+ * The file is only ever read back through a small buffer, one record at a time. {@link #openRecovery()}
+ * moves it aside without blocking the caller, so that its points can be restored in chunks while
+ * the restored history is recorded again in a new file, in place of the original.
+ * <br><br>
+ * A single instance must only be used by one {@link ScratchoffController} at a time. This class is Thread-safe.
+ */
+public class ScratchoffJournal {
+
+    public static final long DEFAULT_SYNC_INTERVAL_MS = 1000;
+
+    private static final byte RECORD_LAYOUT_SIZE = 1;
+    private static final byte RECORD_POINTS = 2;
+    private static final byte RECORD_THRESHOLD_REACHED = 3;
+
+    private static final String RECOVERY_FILE_SUFFIX = ".recovery";
+
+    // Type, payload length, and CRC32
+    private static final int RECORD_OVERHEAD_BYTES = 1 + 4 + 4;
+
+    private static final int WRITE_BUFFER_SIZE_BYTES = 16 * 1024;
+    private static final long IDLE_THREAD_TIMEOUT_MS = 10000;
+
+    private static final int OPERATION_APPEND = 0;
+    private static final int OPERATION_RESET = 1;
+    private static final int OPERATION_CLOSE = 2;
+    private static final int OPERATION_DELETE = 3;
+    private static final int OPERATION_RECOVER = 4;
+    private static final int OPERATION_DELETE_RECOVERY = 5;
+
+    private static class Operation {
+
+        final int operation;
+        final byte type;
+        final byte[] payload;
+        final ScratchPathPointBuffer points;
+        // Released once its points have been encoded
+        final ScratchPathBatch batch;
+        final FutureTask<Recovery> recovery;
+
+        Operation(int operation, byte type, byte[] payload, ScratchPathPointBuffer points) {
+            this(operation, type, payload, points, null);
+        }
+
+        Operation(int operation, byte type, byte[] payload, ScratchPathPointBuffer points, ScratchPathBatch batch) {
+            this(operation, type, payload, points, batch, null);
+        }
+
+        Operation(FutureTask<Recovery> recovery) {
+            this(OPERATION_RECOVER, (byte) 0, null, null, null, recovery);
+        }
+
+        private Operation(
+            int operation,
+            byte type,
+            byte[] payload,
+            ScratchPathPointBuffer points,
+            ScratchPathBatch batch,
+            FutureTask<Recovery> recovery
+        ) {
+
+            this.operation = operation;
+            this.type = type;
+            this.payload = payload;
+            this.points = points;
+            this.batch = batch;
+            this.recovery = recovery;
+        }
+    }
+
+    private final File file;
+    private final File recoveryFile;
+    private final long syncIntervalMs;
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    private final ConcurrentLinkedQueue<Operation> pendingOperations = new ConcurrentLinkedQueue<Operation>();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+
+    private final Runnable drainer = new Runnable() {
+        @Override
+        public void run() {
+            drainPendingOperations();
+        }
+    };
+
+    private final Runnable syncer = new Runnable() {
+        @Override
+        public void run() {
+            syncScheduled = false;
+
+            try {
+                performPendingOperations();
+                sync();
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    };
+
+    // Only accessed from the executor's Thread
+    private FileChannel channel;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE_BYTES);
+    private final CRC32 crc = new CRC32();
+    private boolean unsyncedWrites = false;
+    private boolean syncScheduled = false;
+    private long lastSyncTimeMs = 0;
+
+    public ScratchoffJournal(File file) {
+        this(file, DEFAULT_SYNC_INTERVAL_MS);
+    }
+
+    /**
+     * @param syncIntervalMs the minimum time between syncs of the file to the disk
+     */
+    public ScratchoffJournal(File file, long syncIntervalMs) {
+        this.file = file;
+        this.recoveryFile = new File(file.getPath() + RECOVERY_FILE_SUFFIX);
+        this.syncIntervalMs = Math.max(0, syncIntervalMs);
+
+        // The Thread only lives while there are records to write
+        this.executor = new ScheduledThreadPoolExecutor(1, new JournalThreadFactory());
+        this.executor.setKeepAliveTime(IDLE_THREAD_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the File that {@link #openRecovery()} moves the journal to while it's being recovered
+     */
+    public File getRecoveryFile() {
+        return recoveryFile;
+    }
+
+    /**
+     * Discard every record and begin a new journal for a scratchable layout of the supplied size.
+     */
+    public void reset(int width, int height) {
+        ByteBuffer payload = ByteBuffer.allocate(8);
+        payload.putInt(width);
+        payload.putInt(height);
+
+        enqueue(new Operation(OPERATION_RESET, RECORD_LAYOUT_SIZE, payload.array(), null));
+    }
+
+    /**
+     * Append the points, which are encoded on the background Thread.
+     * The buffer must not be modified afterwards.
+     */
+    public void append(ScratchPathPointBuffer points) {
+        if (points.isEmpty()) {
+            return;
+        }
+
+        enqueue(new Operation(OPERATION_APPEND, RECORD_POINTS, null, points));
+    }
+
+    /**
+     * Append the points of the batch, which is retained until they have been encoded on the background Thread.
+     */
+    public void append(ScratchPathBatch batch) {
+        if (batch.getPoints().isEmpty()) {
+            return;
+        }
+
+        enqueue(new Operation(OPERATION_APPEND, RECORD_POINTS, null, batch.getPoints(), batch.retain()));
+    }
+
+    public void appendThresholdReached() {
+        enqueue(new Operation(OPERATION_APPEND, RECORD_THRESHOLD_REACHED, new byte[0], null));
+    }
+
+    /**
+     * Write and sync every pending record, then close the file until the next record is appended.
+     */
+    public void close() {
+        enqueue(new Operation(OPERATION_CLOSE, (byte) 0, null, null));
+    }
+
+    /**
+     * Delete the file, along with every record appended before this call and any unfinished
+     * {@link Recovery}, e.g. once the scratched content is no longer needed.
+     * Any record appended afterwards begins a new file.
+     */
+    public void delete() {
+        enqueue(new Operation(OPERATION_DELETE, (byte) 0, null, null));
+    }
+
+    /**
+     * Write every pending record, then move the file aside to be read back by a {@link Recovery},
+     * so that any record appended afterwards begins a new file. This does not block: the returned
+     * Future completes once the records have been validated on the background Thread, without their
+     * points being decoded or held in memory.
+     * <br><br>
+     * If a previous {@link Recovery} was never deleted, e.g. as the process died while restoring it,
+     * it's recovered again instead, and anything recorded since is discarded.
+     *
+     * @return a Future of the {@link Recovery}, or of null if there is no journal, or it does not contain a layout size
+     */
+    public Future<Recovery> openRecovery() {
+        FutureTask<Recovery> recovery = new FutureTask<Recovery>(new Callable<Recovery>() {
+            @Override
+            public Recovery call() throws Exception {
+                return moveAsideForRecovery();
+            }
+        });
+
+        enqueue(new Operation(recovery));
+
+        return recovery;
+    }
+
+    /**
+     * Delete the file moved aside by a {@link #openRecovery()} call made before this one,
+     * once it's no longer needed, without waiting for that Future to complete.
+     */
+    public void deleteRecovery() {
+        enqueue(new Operation(OPERATION_DELETE_RECOVERY, (byte) 0, null, null));
+    }
+
+    /**
+     * Write every pending record, then read back the state recorded since the last {@link #reset(int, int)}.
+     * This blocks until the file has been read, and decodes every point into memory at once, so
+     * {@link #openRecovery()} should be preferred for restoring a large journal.
+     *
+     * @return null if there is no journal, or it does not contain a layout size
+     */
+    public ScratchoffState recover() {
+        try {
+            return executor.submit(new Callable<ScratchoffState>() {
+                @Override
+                public ScratchoffState call() throws Exception {
+                    performPendingOperations();
+
+                    return readState();
+                }
+            }).get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            return null;
+        }
+        catch (ExecutionException e) {
+            e.printStackTrace();
+
+            return null;
+        }
+    }
+
+    private void enqueue(Operation operation) {
+        pendingOperations.add(operation);
+
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(drainer);
+        }
+    }
+
+    private void drainPendingOperations() {
+        try {
+            performPendingOperations();
+            syncOrScheduleSync();
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+        finally {
+            draining.set(false);
+
+            // An operation may have been enqueued after the queue was drained, but before the flag was cleared
+            if (!pendingOperations.isEmpty() && draining.compareAndSet(false, true)) {
+                executor.execute(drainer);
+            }
+        }
+    }
+
+    /**
+     * Perform every queued operation, and write any buffered records to the file.
+     * Must only be called from the executor's Thread.
+     */
+    private void performPendingOperations() throws IOException {
+        Operation operation;
+
+        while ((operation = pendingOperations.poll()) != null) {
+            switch (operation.operation) {
+                case OPERATION_RESET:
+                    writeBuffer.clear();
+
+                    obtainChannel().truncate(0);
+
+                    writeRecord(operation.type, operation.payload);
+
+                    break;
+                case OPERATION_CLOSE:
+                    closeChannel();
+
+                    break;
+                case OPERATION_DELETE:
+                    writeBuffer.clear();
+
+                    if (channel != null) {
+                        channel.close();
+
+                        this.channel = null;
+                    }
+
+                    this.unsyncedWrites = false;
+
+                    file.delete();
+                    recoveryFile.delete();
+
+                    break;
+                case OPERATION_RECOVER:
+                    operation.recovery.run();
+
+                    break;
+                case OPERATION_DELETE_RECOVERY:
+                    recoveryFile.delete();
+
+                    break;
+                default:
+                    final byte[] payload = operation.points == null
+                        ? operation.payload
+                        : ScratchPathPointCodec.encode(operation.points);
+
+                    if (operation.batch != null) {
+                        operation.batch.release();
+                    }
+
+                    writeRecord(operation.type, payload);
+
+                    break;
+            }
+        }
+
+        flushWriteBuffer();
+    }
+
+    private void writeRecord(byte type, byte[] payload) throws IOException {
+        final int recordSize = RECORD_OVERHEAD_BYTES + payload.length;
+
+        if (writeBuffer.remaining() < recordSize) {
+            flushWriteBuffer();
+        }
+
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+
+        // Larger records are written on their own, bypassing the buffer
+        ByteBuffer target = recordSize <= writeBuffer.capacity()
+            ? writeBuffer
+            : ByteBuffer.allocate(recordSize);
+
+        target.put(type);
+        target.putInt(payload.length);
+        target.put(payload);
+        target.putInt((int) crc.getValue());
+
+        if (target != writeBuffer) {
+            target.flip();
+
+            writeFully(obtainChannel(), target);
+        }
+    }
+
+    private void flushWriteBuffer() throws IOException {
+        if (writeBuffer.position() == 0) {
+            return;
+        }
+
+        writeBuffer.flip();
+
+        writeFully(obtainChannel(), writeBuffer);
+
+        writeBuffer.clear();
+    }
+
+    private void writeFully(FileChannel channel, ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+
+        this.unsyncedWrites = true;
+    }
+
+    private void syncOrScheduleSync() throws IOException {
+        if (!unsyncedWrites || syncScheduled) {
+            return;
+        }
+
+        final long elapsedMs = System.currentTimeMillis() - lastSyncTimeMs;
+
+        if (syncIntervalMs <= elapsedMs) {
+            sync();
+
+            return;
+        }
+
+        this.syncScheduled = true;
+
+        executor.schedule(syncer, syncIntervalMs - elapsedMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void sync() throws IOException {
+        if (!unsyncedWrites || channel == null) {
+            return;
+        }
+
+        channel.force(false);
+
+        this.unsyncedWrites = false;
+        this.lastSyncTimeMs = System.currentTimeMillis();
+    }
+
+    private FileChannel obtainChannel() throws IOException {
+        if (channel == null) {
+            final FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+            channel.position(channel.size());
+
+            this.channel = channel;
+        }
+
+        return channel;
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel == null) {
+            return;
+        }
+
+        flushWriteBuffer();
+        sync();
+
+        channel.close();
+
+        this.channel = null;
+    }
+
+    /**
+     * Read every valid record, and truncate any torn record at the end of the file,
+     * so that new records are not appended after it.
+     */
+    private ScratchoffState readState() throws IOException {
+        if (channel == null && !file.exists()) {
+            return null;
+        }
+
+        final FileChannel channel = obtainChannel();
+        final RecordReader reader = new RecordReader(channel, 0);
+
+        int[] size = null;
+        boolean thresholdReached = false;
+        ScratchPathPointBuffer points = new ScratchPathPointBuffer();
+
+        while (reader.next()) {
+            if (reader.type == RECORD_LAYOUT_SIZE) {
+                size = readLayoutSize(reader.payload);
+            }
+            else if (reader.type == RECORD_POINTS) {
+                ScratchPathPointCodec.decode(reader.payload, points);
+            }
+            else if (reader.type == RECORD_THRESHOLD_REACHED) {
+                thresholdReached = true;
+            }
+        }
+
+        if (reader.position < channel.size()) {
+            channel.truncate(reader.position);
+            channel.position(reader.position);
+        }
+
+        if (size == null) {
+            return null;
+        }
+
+        return new ScratchoffState(AbsSavedState.EMPTY_STATE, size, thresholdReached, points);
+    }
+
+    /**
+     * Move the file aside, unless an unfinished recovery already was, then validate its records
+     * without decoding their points. Must only be called from the executor's Thread.
+     */
+    private Recovery moveAsideForRecovery() throws IOException {
+        flushWriteBuffer();
+        closeChannel();
+
+        // A restoration interrupted before it finished is more complete than anything recorded since
+        if (recoveryFile.exists()) {
+            file.delete();
+        }
+        else if (!file.exists() || !file.renameTo(recoveryFile)) {
+            return null;
+        }
+
+        final FileChannel channel = new RandomAccessFile(recoveryFile, "r").getChannel();
+
+        int[] size = null;
+        boolean thresholdReached = false;
+        long pointsStart = 0;
+        long pointsEnd = 0;
+
+        try {
+            final RecordReader reader = new RecordReader(channel, 0);
+
+            while (reader.next()) {
+                if (reader.type == RECORD_LAYOUT_SIZE) {
+                    size = readLayoutSize(reader.payload);
+                    pointsStart = reader.position;
+                    pointsEnd = reader.position;
+                }
+                else if (reader.type == RECORD_POINTS) {
+                    pointsEnd = reader.position;
+                }
+                else if (reader.type == RECORD_THRESHOLD_REACHED) {
+                    thresholdReached = true;
+                }
+            }
+        }
+        finally {
+            channel.close();
+        }
+
+        if (size == null) {
+            recoveryFile.delete();
+
+            return null;
+        }
+
+        return new Recovery(recoveryFile, size, thresholdReached, pointsStart, pointsEnd);
+    }
+
+    private static int[] readLayoutSize(byte[] payload) {
+        ByteBuffer sizePayload = ByteBuffer.wrap(payload);
+
+        return new int[] { sizePayload.getInt(), sizePayload.getInt() };
+    }
+
+    /**
+     * The records of a journal moved aside by {@link ScratchoffJournal#openRecovery()}, whose points
+     * are read back on the calling Thread one record at a time, so that they're never held in memory at once.
+     * <br><br>
+     * The file is kept until {@link #delete()} is called, so that a restoration interrupted by the death
+     * of the process is recovered again, rather than the partial journal recorded while restoring it.
+     * <br><br>
+     * This class is not Thread-safe.
+     */
+    public static class Recovery {
+
+        private final File file;
+        private final int[] layoutSize;
+        private final boolean thresholdReached;
+        private final long pointsStart;
+        private final long pointsEnd;
+
+        private FileChannel channel;
+        private RecordReader reader;
+        private long position;
+
+        Recovery(File file, int[] layoutSize, boolean thresholdReached, long pointsStart, long pointsEnd) {
+            this.file = file;
+            this.layoutSize = layoutSize;
+            this.thresholdReached = thresholdReached;
+            this.pointsStart = pointsStart;
+            this.pointsEnd = pointsEnd;
+            this.position = pointsStart;
+        }
+
+        public int[] getLayoutSize() {
+            return layoutSize;
+        }
+
+        public boolean isThresholdReached() {
+            return thresholdReached;
+        }
+
+        /**
+         * @return true if another record of points remains to be read
+         */
+        public boolean hasNext() {
+            return position < pointsEnd;
+        }
+
+        /**
+         * Read the next record of points, skipping any other record.
+         *
+         * @return a {@link ScratchPathPointCodec.Decoder} of its points, or null once every record has been read
+         */
+        public ScratchPathPointCodec.Decoder nextDecoder() {
+            try {
+                while (hasNext()) {
+                    final RecordReader reader = obtainReader();
+
+                    // Only if the file was changed since it was validated
+                    if (!reader.next()) {
+                        break;
+                    }
+
+                    this.position = reader.position;
+
+                    if (reader.type == RECORD_POINTS) {
+                        return new ScratchPathPointCodec.Decoder(reader.payload);
+                    }
+                }
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+
+            // Nothing more can be read
+            this.position = pointsEnd;
+
+            return null;
+        }
+
+        /**
+         * Read the records again from the first, e.g. to replay the points after recording them.
+         */
+        public void rewind() {
+            this.position = pointsStart;
+
+            if (reader != null) {
+                reader.position = pointsStart;
+            }
+        }
+
+        /**
+         * Close and delete the file, once its points have been restored or are no longer needed.
+         */
+        public void delete() {
+            closeChannel();
+
+            file.delete();
+        }
+
+        private RecordReader obtainReader() throws IOException {
+            if (reader == null) {
+                this.channel = new RandomAccessFile(file, "r").getChannel();
+                this.reader = new RecordReader(channel, position);
+            }
+
+            return reader;
+        }
+
+        private void closeChannel() {
+            if (channel == null) {
+                return;
+            }
+
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+
+            this.channel = null;
+            this.reader = null;
+        }
+    }
+
+    /**
+     * Reads the records of a file in order through a small buffer, validating each one,
+     * with a payload allocated per record.
+     */
+    private static class RecordReader {
+
+        private final FileChannel channel;
+        private final ByteBuffer header = ByteBuffer.allocate(1 + 4);
+        private final ByteBuffer checksum = ByteBuffer.allocate(4);
+        private final CRC32 crc = new CRC32();
+
+        // The end of the last valid record
+        long position;
+
+        byte type;
+        byte[] payload;
+
+        RecordReader(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        /**
+         * @return false at the end of the file, or at the first torn record
+         */
+        boolean next() throws IOException {
+            header.clear();
+
+            if (!readFully(header, position)) {
+                return false;
+            }
+
+            header.flip();
+
+            final byte type = header.get();
+            final int length = header.getInt();
+
+            // Checked before allocating, as the length of a torn record can't be trusted
+            if (length < 0 || channel.size() - position < RECORD_OVERHEAD_BYTES + (long) length) {
+                return false;
+            }
+
+            final byte[] payload = new byte[length];
+            final long payloadPosition = position + header.capacity();
+
+            if (!readFully(ByteBuffer.wrap(payload), payloadPosition)) {
+                return false;
+            }
+
+            checksum.clear();
+
+            if (!readFully(checksum, payloadPosition + length)) {
+                return false;
+            }
+
+            checksum.flip();
+
+            crc.reset();
+            crc.update(payload, 0, length);
+
+            if ((int) crc.getValue() != checksum.getInt()) {
+                return false;
+            }
+
+            this.type = type;
+            this.payload = payload;
+            this.position += RECORD_OVERHEAD_BYTES + length;
+
+            return true;
+        }
+
+        private boolean readFully(ByteBuffer target, long position) throws IOException {
+            while (target.hasRemaining()) {
+                if (channel.read(target, position + target.position()) < 0) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    private static class JournalThreadFactory implements ThreadFactory {
+
+        private final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = defaultFactory.newThread(runnable);
+            thread.setName("scratchoff-journal");
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    }
+}
@@ -4,16 +4,25 @@ import android.os.Parcel;
 import android.os.Parcelable;
 import android.view.View;
 
+import com.jackpocket.scratchoff.coverage.CoverageMask;
 import com.jackpocket.scratchoff.paths.ScratchPathPoint;
+import com.jackpocket.scratchoff.paths.ScratchPathPointBuffer;
+import com.jackpocket.scratchoff.paths.ScratchPathPointCodec;
 
 import java.util.List;
 
+/**
+ * The saved state of a {@link ScratchoffController}, whose path history is held and
+ * parcelled in the compact encoding of {@link ScratchPathPointCodec}, optionally
+ * alongside an encoded {@link CoverageMask}.
+ */
 public class ScratchoffState extends View.BaseSavedState {
 
     private final int[] size;
     private final boolean thresholdReached;
 
-    private final List<ScratchPathPoint> events;
+    private final byte[] encodedHistory;
+    private final byte[] encodedCoverageMask;
 
     public ScratchoffState(
         Parcelable state,
@@ -22,11 +31,64 @@ public class ScratchoffState extends View.BaseSavedState {
         List<ScratchPathPoint> events
     ) {
 
+        this(state, size, thresholdReached, ScratchPathPointCodec.encode(events));
+    }
+
+    public ScratchoffState(
+        Parcelable state,
+        int[] size,
+        boolean thresholdReached,
+        ScratchPathPointBuffer events
+    ) {
+
+        this(state, size, thresholdReached, events, null);
+    }
+
+    /**
+     * @param coverageMask the {@link CoverageMask} to restore from instead of replaying the
+     * path history, or null if the path history should be replayed
+     */
+    public ScratchoffState(
+        Parcelable state,
+        int[] size,
+        boolean thresholdReached,
+        ScratchPathPointBuffer events,
+        CoverageMask coverageMask
+    ) {
+
+        this(
+            state,
+            size,
+            thresholdReached,
+            ScratchPathPointCodec.encode(events),
+            coverageMask == null ? null : coverageMask.encode()
+        );
+    }
+
+    protected ScratchoffState(
+        Parcelable state,
+        int[] size,
+        boolean thresholdReached,
+        byte[] encodedHistory
+    ) {
+
+        this(state, size, thresholdReached, encodedHistory, null);
+    }
+
+    protected ScratchoffState(
+        Parcelable state,
+        int[] size,
+        boolean thresholdReached,
+        byte[] encodedHistory,
+        byte[] encodedCoverageMask
+    ) {
+
         super(state);
 
         this.size = size;
         this.thresholdReached = thresholdReached;
-        this.events = events;
+        this.encodedHistory = encodedHistory;
+        this.encodedCoverageMask = encodedCoverageMask;
     }
 
     public ScratchoffState(Parcel in) {
@@ -34,7 +96,8 @@ public class ScratchoffState extends View.BaseSavedState {
 
         this.size = new int[] { in.readInt(), in.readInt() };
         this.thresholdReached = in.readInt() == 1;
-        this.events = in.createTypedArrayList(ScratchPathPoint.CREATOR);
+        this.encodedHistory = in.createByteArray();
+        this.encodedCoverageMask = in.createByteArray();
     }
 
     public int[] getLayoutSize() {
@@ -45,8 +108,50 @@ public class ScratchoffState extends View.BaseSavedState {
         return thresholdReached;
     }
 
+    /**
+     * @return a new List containing every decoded point of the path history. Prefer
+     * {@link #createPathHistoryDecoder()} to avoid allocating for each point.
+     */
     public List<ScratchPathPoint> getPathHistory() {
-        return events;
+        return getPathHistoryBuffer().toList();
+    }
+
+    /**
+     * @return a new {@link ScratchPathPointBuffer} containing every decoded point of the path history
+     */
+    public ScratchPathPointBuffer getPathHistoryBuffer() {
+        ScratchPathPointCodec.Decoder decoder = createPathHistoryDecoder();
+
+        ScratchPathPointBuffer points = new ScratchPathPointBuffer(decoder.getCount());
+        decoder.decodeInto(points, decoder.getCount());
+
+        return points;
+    }
+
+    /**
+     * @return a new {@link ScratchPathPointCodec.Decoder} streaming the points of the path history
+     */
+    public ScratchPathPointCodec.Decoder createPathHistoryDecoder() {
+        return new ScratchPathPointCodec.Decoder(encodedHistory);
+    }
+
+    protected byte[] getEncodedPathHistory() {
+        return encodedHistory;
+    }
+
+    public boolean hasCoverageMask() {
+        return encodedCoverageMask != null;
+    }
+
+    /**
+     * @return a new decoded {@link CoverageMask}, or null if none was saved
+     */
+    public CoverageMask getCoverageMask() {
+        if (encodedCoverageMask == null) {
+            return null;
+        }
+
+        return CoverageMask.decode(encodedCoverageMask);
     }
 
     @Override
@@ -56,7 +161,8 @@ public class ScratchoffState extends View.BaseSavedState {
         dest.writeInt(size[0]);
         dest.writeInt(size[1]);
         dest.writeInt(thresholdReached ? 1 : 0);
-        dest.writeTypedList(events);
+        dest.writeByteArray(encodedHistory);
+        dest.writeByteArray(encodedCoverageMask);
     }
 
     public static final Parcelable.Creator<ScratchoffState> CREATOR = new Parcelable.Creator<ScratchoffState>() {
@@ -1,32 +1,45 @@
 package com.jackpocket.scratchoff;
 
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Paint;
 import android.graphics.Rect;
 
+import com.jackpocket.scratchoff.coverage.BitsetCoverage;
+import com.jackpocket.scratchoff.coverage.CapsuleCoverage;
+import com.jackpocket.scratchoff.coverage.CoverageMask;
+import com.jackpocket.scratchoff.coverage.MarkerBitmapCoverage;
+import com.jackpocket.scratchoff.coverage.OverlayAlphaCoverage;
+import com.jackpocket.scratchoff.coverage.ScratchCoverage;
+import com.jackpocket.scratchoff.paths.ScratchPathBatch;
+import com.jackpocket.scratchoff.paths.ScratchPathBatchAggregator;
 import com.jackpocket.scratchoff.paths.ScratchPathManager;
 import com.jackpocket.scratchoff.paths.ScratchPathPoint;
 import com.jackpocket.scratchoff.paths.ScratchPathPointsAggregator;
+import com.jackpocket.scratchoff.tools.BitmapPool;
+import com.jackpocket.scratchoff.tools.SingleProducerSingleConsumerQueue;
 import com.jackpocket.scratchoff.tools.ThresholdCalculator;
 
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicLong;
 
-public class ScratchoffThresholdProcessor implements ScratchPathPointsAggregator, Runnable {
+public class ScratchoffThresholdProcessor implements ScratchPathPointsAggregator, ScratchPathBatchAggregator, Runnable {
 
     public interface TargetRegionsProvider {
 
         public List<Rect> createScratchableRegions(Bitmap source);
     }
 
+    /**
+     * A {@link TargetRegionsProvider} that only requires the size of the backing store, so that
+     * {@link ScratchCoverage} implementations without a Bitmap of their own don't have to allocate one.
+     */
+    public interface SizedTargetRegionsProvider extends TargetRegionsProvider {
+
+        public List<Rect> createScratchableRegions(int width, int height);
+    }
+
     public interface Delegate extends TargetRegionsProvider {
 
         public void postScratchPercentChanged(float percent);
@@ -40,32 +53,76 @@ public class ScratchoffThresholdProcessor implements ScratchPathPointsAggregator
         HIGH
     }
 
-    private static final int MARKER_UNTOUCHED = 0xFFFFFFFF;
-    private static final int MARKER_SCRATCHED = 0xFF000000;
+    public enum CoverageMode {
+        /**
+         * Draw the scratched paths into an RGB_565 marker Bitmap and count its pixels.
+         */
+        MARKER_BITMAP,
+
+        /**
+         * Rasterize the scratched paths directly into a grid storing one bit per pixel,
+         * keeping a live count of the scratched pixels.
+         */
+        BITSET,
+
+        /**
+         * Estimate the scratched area from the stroke geometry alone, by sampling each target
+         * region on a fixed-size lattice, without rasterizing anything.
+         * The estimate's resolution is independent of the {@link Quality}.
+         */
+        ANALYTIC,
+
+        /**
+         * Read the erased pixels directly from a downsampled snapshot of the scratchable overlay's
+         * alpha channel, so that each stroke is only ever rasterized once.
+         * Requires an {@link OverlayAlphaCoverage.OverlaySource}, and otherwise
+         * falls back to {@link #MARKER_BITMAP}.
+         */
+        OVERLAY_ALPHA
+    }
 
     private static final int PERCENT_SCRATCHED_UNTOUCHED = -1;
 
     private final WeakReference<Delegate> delegate;
 
-    private Bitmap currentBitmap;
-    private Canvas canvas;
-    private final Paint markerPaint;
+    // Held by the evaluation Thread for the duration of each evaluation,
+    // so it must never be acquired while adding points
+    private final Object coverageLock = new Object();
+    private volatile ScratchCoverage coverage;
+    private CoverageMode coverageMode = CoverageMode.MARKER_BITMAP;
+    private int scanBufferSizeBytes = ThresholdCalculator.DEFAULT_SCAN_BUFFER_SIZE_BYTES;
+    private int scanParallelism = 1;
+    private OverlayAlphaCoverage.OverlaySource overlaySource;
+    private BitmapPool bitmapPool = BitmapPool.UNPOOLED;
 
     private double lastPercentScratched = PERCENT_SCRATCHED_UNTOUCHED;
+    private long progressUpdateIntervalMs = 0L;
+    private long lastProgressUpdateMs = 0L;
+    // Set when an evaluation skipped a progress update that wasn't due, so that the
+    // latest percentage is still posted once it is, even if nothing else is drawn
+    private boolean progressUpdatePending = false;
 
     private final float completionThreshold;
-    private boolean thresholdReached = false;
+    private volatile boolean thresholdReached = false;
 
+    // Consumed by the evaluation Thread, under the coverageLock
+    private final SingleProducerSingleConsumerQueue<ScratchPathBatch> queue = new SingleProducerSingleConsumerQueue<ScratchPathBatch>();
+    // Restored masks, applied by the evaluation Thread ahead of any queued batches
+    private final ConcurrentLinkedQueue<CoverageMask> coverageMasks = new ConcurrentLinkedQueue<CoverageMask>();
+    // Serializes producers, and is never held by the evaluation Thread
+    private final Object producerLock = new Object();
+
+    // Only used to build batches for points added directly
     private final ScratchPathManager pathManager = new ScratchPathManager();
-    private final LinkedBlockingQueue<ScratchPathPoint> queue = new LinkedBlockingQueue<ScratchPathPoint>();
 
     private final int originalTouchRadius;
     private final Quality accuracyQuality;
-    private final ThresholdCalculator calculator = new ThresholdCalculator(MARKER_UNTOUCHED);
-    private List<Rect> thresholdRegions = new ArrayList<Rect>();
 
-    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
-    private final long evaluationDebounceDurationMs = 50L;
+    private final Object schedulerLock = new Object();
+    private ThresholdEvaluationScheduler scheduler = ThresholdEvaluationScheduler.getSharedInstance();
+    private boolean schedulerAcquired = false;
+    private boolean schedulerReleased = false;
+    private ThresholdEvaluationPolicy evaluationPolicy = new AdaptiveThresholdEvaluationPolicy();
     private final AtomicLong nextScheduledEvaluation = new AtomicLong(0L);
 
     @SuppressWarnings("WeakerAccess")
@@ -80,14 +137,114 @@ public class ScratchoffThresholdProcessor implements ScratchPathPointsAggregator
         this.completionThreshold = completionThreshold;
         this.accuracyQuality = accuracyQuality;
         this.delegate = new WeakReference<>(delegate);
+    }
+
+    /**
+     * Set the {@link ThresholdEvaluationScheduler} that evaluations will be run on. The default
+     * is the process-wide {@link ThresholdEvaluationScheduler#getSharedInstance()}.
+     * <br><br>
+     * Note: this must be called before any {@link ScratchPathPoint} instances are added
+     * or it will have no effect.
+     */
+    public ScratchoffThresholdProcessor setEvaluationScheduler(ThresholdEvaluationScheduler scheduler) {
+        synchronized (schedulerLock) {
+            if (!schedulerAcquired) {
+                this.scheduler = scheduler;
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * Set the {@link ThresholdEvaluationPolicy} that determines when evaluations are
+     * performed. The default is an {@link AdaptiveThresholdEvaluationPolicy}.
+     */
+    public ScratchoffThresholdProcessor setEvaluationPolicy(ThresholdEvaluationPolicy evaluationPolicy) {
+        this.evaluationPolicy = evaluationPolicy;
+
+        return this;
+    }
+
+    /**
+     * Set the {@link CoverageMode} used to track the scratched area. The default
+     * is {@link CoverageMode#MARKER_BITMAP}.
+     * <br><br>
+     * Note: this must be called before {@link #prepare(int[])} or it will have no effect.
+     */
+    public ScratchoffThresholdProcessor setCoverageMode(CoverageMode coverageMode) {
+        this.coverageMode = coverageMode;
+
+        return this;
+    }
+
+    /**
+     * Set the maximum size, in bytes, of the buffer reused to scan the pixels of the
+     * {@link CoverageMode#MARKER_BITMAP} and {@link CoverageMode#OVERLAY_ALPHA} coverages. Larger buffers read the Bitmap in
+     * fewer bands, at the cost of memory that is held until this processor is destroyed.
+     * <br><br>
+     * Note: this must be called before {@link #prepare(int[])} or it will have no effect.
+     */
+    public ScratchoffThresholdProcessor setScanBufferSizeBytes(int scanBufferSizeBytes) {
+        this.scanBufferSizeBytes = scanBufferSizeBytes;
+
+        return this;
+    }
+
+    /**
+     * Set the {@link OverlayAlphaCoverage.OverlaySource} read by the {@link CoverageMode#OVERLAY_ALPHA} coverage.
+     * <br><br>
+     * Note: this must be called before {@link #prepare(int[])} or it will have no effect.
+     */
+    public ScratchoffThresholdProcessor setOverlaySource(OverlayAlphaCoverage.OverlaySource overlaySource) {
+        this.overlaySource = overlaySource;
+
+        return this;
+    }
+
+    /**
+     * Set the {@link BitmapPool} that the Bitmaps of the {@link CoverageMode#MARKER_BITMAP} and
+     * {@link CoverageMode#OVERLAY_ALPHA} coverages are obtained from, and released to when
+     * this processor is destroyed. The default is {@link BitmapPool#UNPOOLED}.
+     * <br><br>
+     * Note: this must be called before {@link #prepare(int[])} or it will have no effect.
+     */
+    public ScratchoffThresholdProcessor setBitmapPool(BitmapPool bitmapPool) {
+        this.bitmapPool = bitmapPool;
+
+        return this;
+    }
+
+    /**
+     * Set the number of Threads that pixel scans of the {@link CoverageMode#MARKER_BITMAP}
+     * and {@link CoverageMode#OVERLAY_ALPHA} coverages are split across. The default of 1 scans on the evaluation Thread only.
+     * <br><br>
+     * Note: this must be called before {@link #prepare(int[])} or it will have no effect.
+     */
+    public ScratchoffThresholdProcessor setScanParallelism(int scanParallelism) {
+        this.scanParallelism = scanParallelism;
 
-        this.markerPaint = ScratchPathManager.createBaseScratchoffPaint(touchRadiusPx);
-        this.markerPaint.setColor(MARKER_SCRATCHED);
-        this.markerPaint.setAntiAlias(false);
+        return this;
+    }
+
+    /**
+     * Set the minimum duration between calls to {@link Delegate#postScratchPercentChanged(float)}.
+     * The default of 0 calculates and posts the exact percentage on every evaluation.
+     * <br><br>
+     * Evaluations performed before the next progress update is due will only determine
+     * whether the completion threshold has been reached, which allows the
+     * {@link ScratchCoverage} to stop as soon as the outcome has been decided.
+     * The exact percentage is always posted before the threshold is reported as reached,
+     * and once the interval has elapsed after a skipped update, even if no more points are added.
+     */
+    public ScratchoffThresholdProcessor setProgressUpdateIntervalMs(long progressUpdateIntervalMs) {
+        this.progressUpdateIntervalMs = progressUpdateIntervalMs;
+
+        return this;
     }
 
     public void prepare(int[] layoutSize) {
-        synchronized (pathManager) {
+        synchronized (coverageLock) {
             Delegate delegate = this.delegate.get();
 
             if (delegate == null || layoutSize[0] < 1 || layoutSize[1] < 1) {
@@ -105,30 +262,33 @@ public class ScratchoffThresholdProcessor implements ScratchPathPointsAggregator
             float height = width * aspectRatio;
             float touchRadius = originalTouchRadius * accuracyQuality;
 
-            this.currentBitmap = Bitmap.createBitmap(
+            ScratchCoverage coverage = createCoverage(coverageMode);
+            coverage.prepare(
                 (int) width,
                 (int) height,
-                Bitmap.Config.RGB_565
+                accuracyQuality,
+                touchRadius,
+                delegate
             );
 
-            this.markerPaint.setStrokeWidth(touchRadius * 2);
-            this.pathManager.setScale(accuracyQuality);
-
-            this.thresholdRegions = delegate.createScratchableRegions(currentBitmap);
+            this.coverage = coverage;
+        }
+    }
 
-            this.canvas = new Canvas(currentBitmap);
-            this.canvas.drawColor(MARKER_UNTOUCHED);
+    protected ScratchCoverage createCoverage(CoverageMode coverageMode) {
+        switch (coverageMode) {
+            case BITSET:
+                return new BitsetCoverage();
+            case ANALYTIC:
+                return new CapsuleCoverage();
+            case OVERLAY_ALPHA:
+                if (overlaySource != null) {
+                    return new OverlayAlphaCoverage(overlaySource, scanBufferSizeBytes, scanParallelism, bitmapPool);
+                }
 
-            // The continuous drawing of incomplete Path elements affects the
-            // drawing at the pixel-level, and the result may differ from the single-redraw
-            // performed when restoring the Path elements from the history.
-            // Thus, we cannot expect the threshold calculated from a historical reload
-            // to be exactly equal to the original, without emulating the original drawing
-            // of the MotionEvents as they came in. Since that would be super-inefficient,
-            // I have no more tears to give this problem, the ThresholdProcessor instances are
-            // not re-used after resets, and the loss is limited to less than 0.001%,
-            // we can just pretend that doesn't really happen and move on with our lives...
-            pathManager.drawAndReset(canvas, markerPaint);
+                // Without an overlay to read, fall back to the marker Bitmap
+            default:
+                return new MarkerBitmapCoverage(scanBufferSizeBytes, scanParallelism, bitmapPool);
         }
     }
 
@@ -161,79 +321,186 @@ public class ScratchoffThresholdProcessor implements ScratchPathPointsAggregator
 
     @Override
     public void addScratchPathPoints(Collection<ScratchPathPoint> events) {
-        synchronized (pathManager) {
-            if (currentBitmap == null || thresholdReached) {
-                return;
-            }
+        ScratchPathBatch batch = pathManager.createBatch(events);
+
+        addScratchPathBatch(batch);
+
+        batch.release();
+    }
+
+    /**
+     * Queue a {@link ScratchPathBatch}, whose Paths are in the coordinate space of the
+     * scratchable layout, for the next evaluation. The batch may be shared with other consumers,
+     * and is retained until it has been evaluated.
+     * <br><br>
+     * This never waits on an evaluation in progress.
+     */
+    @Override
+    public void addScratchPathBatch(ScratchPathBatch batch) {
+        if (coverage == null || thresholdReached) {
+            return;
+        }
+
+        synchronized (producerLock) {
+            queue.offer(batch.retain());
+        }
+
+        debounceThresholdEvaluationScheduling(
+            evaluationPolicy.isImmediateEvaluationRequired(batch.getPoints())
+                ? 0L
+                : evaluationPolicy.getEvaluationDelayMs()
+        );
+    }
+
+    /**
+     * Mark the erased cells of a restored {@link CoverageMask} as scratched on the
+     * evaluation Thread, and evaluate the threshold immediately afterwards.
+     */
+    public void addCoverageMask(CoverageMask mask) {
+        if (coverage == null || thresholdReached) {
+            return;
         }
 
-        queue.addAll(events);
+        coverageMasks.add(mask);
 
-        debounceThresholdEvaluationScheduling();
+        debounceThresholdEvaluationScheduling(0L);
     }
 
+    /**
+     * @deprecated the delay now comes from the {@link ThresholdEvaluationPolicy}, so this delegates to
+     * {@link #debounceThresholdEvaluationScheduling(long)} with the policy's current delay.
+     * This is no longer called, so overriding it has no effect.
+     */
+    @Deprecated
     protected void debounceThresholdEvaluationScheduling() {
-        long currentScheduledEvaluation = nextScheduledEvaluation.getAndSet(System.currentTimeMillis() + evaluationDebounceDurationMs);
+        debounceThresholdEvaluationScheduling(evaluationPolicy.getEvaluationDelayMs());
+    }
 
-        // If the next check has already been scheduled for some time
-        // in the future, drop this schedule request
-        if (System.currentTimeMillis() < currentScheduledEvaluation) {
-            nextScheduledEvaluation.set(currentScheduledEvaluation);
+    protected void debounceThresholdEvaluationScheduling(long delayMs) {
+        long scheduledEvaluation = System.currentTimeMillis() + delayMs;
 
-            return;
+        while (true) {
+            long currentScheduledEvaluation = nextScheduledEvaluation.get();
+
+            // If an evaluation that has not yet started is already scheduled
+            // to happen no later than this one, drop this schedule request
+            if (currentScheduledEvaluation != 0L && currentScheduledEvaluation <= scheduledEvaluation) {
+                return;
+            }
+
+            if (nextScheduledEvaluation.compareAndSet(currentScheduledEvaluation, scheduledEvaluation)) {
+                break;
+            }
         }
 
-        scheduleNextThresholdEvaluation();
+        scheduleNextThresholdEvaluation(delayMs);
     }
 
+    /**
+     * @deprecated the delay now comes from the {@link ThresholdEvaluationPolicy}, so this delegates to
+     * {@link #scheduleNextThresholdEvaluation(long)} with the policy's current delay.
+     * This is no longer called, so overriding it has no effect.
+     */
+    @Deprecated
     protected void scheduleNextThresholdEvaluation() {
-        executor.schedule(this, evaluationDebounceDurationMs, TimeUnit.MILLISECONDS);
+        scheduleNextThresholdEvaluation(evaluationPolicy.getEvaluationDelayMs());
+    }
+
+    protected void scheduleNextThresholdEvaluation(long delayMs) {
+        synchronized (schedulerLock) {
+            if (schedulerReleased) {
+                return;
+            }
+
+            // The scheduler is only acquired once there is something to evaluate, so that
+            // processors which are never scratched don't keep its Thread alive
+            if (!schedulerAcquired) {
+                this.schedulerAcquired = true;
+
+                scheduler.acquire();
+            }
+
+            scheduler.schedule(this, delayMs);
+        }
     }
 
     @Override
     public void run() {
-        synchronized (pathManager) {
-            if (currentBitmap == null || thresholdReached) {
+        // Cleared before the queue is drained, so that any points added from here on
+        // are guaranteed to schedule another evaluation (i.e. the trailing edge)
+        nextScheduledEvaluation.set(0L);
+
+        long startNs = System.nanoTime();
+
+        synchronized (coverageLock) {
+            if (coverage == null || thresholdReached) {
                 return;
             }
 
-            if (!(drawQueuedScratchMotionEvents() || lastPercentScratched == PERCENT_SCRATCHED_UNTOUCHED)) {
+            if (!(drawQueuedScratchMotionEvents() || progressUpdatePending || lastPercentScratched == PERCENT_SCRATCHED_UNTOUCHED)) {
                 return;
             }
 
             processScratchedImagePercent();
         }
+
+        evaluationPolicy.onEvaluationCompleted(System.nanoTime() - startNs);
     }
 
     protected boolean drawQueuedScratchMotionEvents() {
-        List<ScratchPathPoint> dequeuedEvents = new ArrayList<ScratchPathPoint>();
+        ScratchCoverage coverage = this.coverage;
+        boolean drawn = false;
 
-        queue.drainTo(dequeuedEvents);
+        CoverageMask mask;
 
-        if (dequeuedEvents.size() < 1) {
-            return false;
+        while ((mask = coverageMasks.poll()) != null) {
+            coverage.addCoverageMask(mask);
+
+            drawn = true;
         }
 
-        pathManager.addScratchPathPoints(dequeuedEvents);
-        pathManager.drawAndReset(canvas, markerPaint);
+        ScratchPathBatch batch;
+
+        while ((batch = queue.poll()) != null) {
+            coverage.addScratchPathBatch(batch);
+
+            batch.release();
 
-        return true;
+            drawn = true;
+        }
+
+        return drawn;
     }
 
     protected void processScratchedImagePercent() {
         Delegate delegate = this.delegate.get();
-        Bitmap currentBitmap = this.currentBitmap;
+        ScratchCoverage coverage = this.coverage;
 
-        if (delegate == null || currentBitmap == null || thresholdReached) {
+        if (delegate == null || coverage == null || thresholdReached) {
             return;
         }
 
-        float percentScratched = calculator.calculate(currentBitmap, thresholdRegions);
+        long now = System.currentTimeMillis();
+
+        if (!isProgressUpdateDue(now) && !coverage.isThresholdReached(completionThreshold)) {
+            this.progressUpdatePending = true;
+
+            // A trailing evaluation posts the latest percentage once it's due, in case scratching stops before then
+            debounceThresholdEvaluationScheduling(Math.max(0L, lastProgressUpdateMs + progressUpdateIntervalMs - now));
+
+            return;
+        }
+
+        float percentScratched = coverage.calculate();
+
+        this.progressUpdatePending = false;
 
         if (this.lastPercentScratched < percentScratched) {
             delegate.postScratchPercentChanged(percentScratched);
         }
 
+        this.lastProgressUpdateMs = now;
+
         if (completionThreshold <= percentScratched) {
             this.thresholdReached = true;
 
@@ -243,17 +510,29 @@ public class ScratchoffThresholdProcessor implements ScratchPathPointsAggregator
         this.lastPercentScratched = percentScratched;
     }
 
+    protected boolean isProgressUpdateDue(long now) {
+        return progressUpdateIntervalMs < 1
+            || lastPercentScratched == PERCENT_SCRATCHED_UNTOUCHED
+            || progressUpdateIntervalMs <= now - lastProgressUpdateMs;
+    }
+
     public void destroy() {
+        synchronized (schedulerLock) {
+            if (schedulerAcquired && !schedulerReleased) {
+                scheduler.release();
+            }
+
+            this.schedulerReleased = true;
+        }
+
         try {
-            synchronized (pathManager) {
-                if (currentBitmap == null) {
+            synchronized (coverageLock) {
+                if (coverage == null) {
                     return;
                 }
 
-                currentBitmap.recycle();
-                currentBitmap = null;
-
-                canvas = null;
+                coverage.destroy();
+                coverage = null;
             }
         }
         catch (Exception e) {
@@ -265,11 +544,44 @@ public class ScratchoffThresholdProcessor implements ScratchPathPointsAggregator
         return delegate.get();
     }
 
-    public static class SimpleTargetRegionsProvider implements TargetRegionsProvider {
+    /**
+     * Request the target regions for a backing store of the supplied size from a
+     * {@link TargetRegionsProvider}, for {@link ScratchCoverage} implementations
+     * that do not have a Bitmap of their own.
+     * <br><br>
+     * A {@link SizedTargetRegionsProvider} is only supplied the size. Any other provider is supplied
+     * a blank Bitmap of the smallest config, which is recycled immediately afterwards.
+     */
+    public static List<Rect> createScratchableRegions(
+        TargetRegionsProvider provider,
+        int width,
+        int height
+    ) {
+
+        if (provider instanceof SizedTargetRegionsProvider) {
+            return ((SizedTargetRegionsProvider) provider).createScratchableRegions(width, height);
+        }
+
+        Bitmap source = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+
+        try {
+            return provider.createScratchableRegions(source);
+        }
+        finally {
+            source.recycle();
+        }
+    }
+
+    public static class SimpleTargetRegionsProvider implements SizedTargetRegionsProvider {
 
         @Override
         public List<Rect> createScratchableRegions(Bitmap source) {
             return ThresholdCalculator.createFullSizeThresholdRegion(source);
         }
+
+        @Override
+        public List<Rect> createScratchableRegions(int width, int height) {
+            return ThresholdCalculator.createFullSizeThresholdRegion(width, height);
+        }
     }
 }
@@ -0,0 +1,33 @@
+package com.jackpocket.scratchoff;
+
+import com.jackpocket.scratchoff.paths.ScratchPathPoint;
+import com.jackpocket.scratchoff.paths.ScratchPathPointBuffer;
+
+/**
+ * Determines when a {@link ScratchoffThresholdProcessor} should evaluate the scratched
+ * percentage after receiving new {@link ScratchPathPoint} instances.
+ * <br><br>
+ * Regardless of the policy, the processor guarantees that points received while an
+ * evaluation is in progress will always be followed by another evaluation.
+ * <br><br>
+ * Methods may be called from both the main Thread and the evaluation Thread.
+ */
+public interface ThresholdEvaluationPolicy {
+
+    /**
+     * @return the delay, in milliseconds, before evaluating newly-received points
+     */
+    public long getEvaluationDelayMs();
+
+    /**
+     * @return true if the supplied points should be evaluated without any delay
+     */
+    public boolean isImmediateEvaluationRequired(ScratchPathPointBuffer points);
+
+    /**
+     * Called on the evaluation Thread after every evaluation.
+     *
+     * @param durationNs the time spent performing the evaluation, in nanoseconds
+     */
+    public void onEvaluationCompleted(long durationNs);
+}
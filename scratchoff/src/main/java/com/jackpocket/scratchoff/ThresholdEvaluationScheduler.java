@@ -0,0 +1,183 @@
+package com.jackpocket.scratchoff;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Schedules the threshold evaluations of any number of {@link ScratchoffThresholdProcessor}
+ * instances on a single {@link ScheduledExecutorService}.
+ * <br><br>
+ * Evaluations whose delay has elapsed are run one at a time, in the order they became
+ * ready, so an expensive or frequently-scheduled processor can't starve the others.
+ * <br><br>
+ * The lifecycle is reference-counted: an owned executor is created on the first call to
+ * {@link #acquire()} and shut down once every acquisition has been released. Executors
+ * supplied to {@link #ThresholdEvaluationScheduler(ScheduledExecutorService)} belong to
+ * the caller and are never shut down.
+ */
+public class ThresholdEvaluationScheduler {
+
+    private static final ThresholdEvaluationScheduler SHARED_INSTANCE = new ThresholdEvaluationScheduler();
+
+    private final ScheduledExecutorService injectedExecutor;
+    private ScheduledExecutorService executor;
+    private int references = 0;
+
+    private final ConcurrentLinkedQueue<Runnable> readyEvaluations = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicBoolean dispatching = new AtomicBoolean(false);
+    private final Runnable dispatcher = new Runnable() {
+        @Override
+        public void run() {
+            dispatchNextReadyEvaluation();
+        }
+    };
+
+    public ThresholdEvaluationScheduler() {
+        this(null);
+    }
+
+    /**
+     * Create a scheduler that runs all evaluations on the supplied executor,
+     * which will not be shut down when this scheduler is no longer referenced.
+     */
+    public ThresholdEvaluationScheduler(ScheduledExecutorService executor) {
+        this.injectedExecutor = executor;
+        this.executor = executor;
+    }
+
+    public synchronized void acquire() {
+        this.references += 1;
+
+        if (executor == null) {
+            this.executor = Executors.newSingleThreadScheduledExecutor(new EvaluationThreadFactory());
+        }
+    }
+
+    public synchronized void release() {
+        this.references = Math.max(0, references - 1);
+
+        if (0 < references || injectedExecutor != null || executor == null) {
+            return;
+        }
+
+        executor.shutdownNow();
+        executor = null;
+
+        readyEvaluations.clear();
+        dispatching.set(false);
+    }
+
+    /**
+     * Run the evaluation once the delay has elapsed and all evaluations
+     * that became ready before it have been run.
+     * <br><br>
+     * Evaluations scheduled while this scheduler is not acquired are dropped.
+     */
+    public synchronized void schedule(final Runnable evaluation, long delayMs) {
+        if (executor == null) {
+            return;
+        }
+
+        try {
+            executor.schedule(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        enqueueReadyEvaluation(evaluation);
+                    }
+                },
+                delayMs,
+                TimeUnit.MILLISECONDS
+            );
+        }
+        catch (RejectedExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    protected void enqueueReadyEvaluation(Runnable evaluation) {
+        if (!readyEvaluations.contains(evaluation)) {
+            readyEvaluations.add(evaluation);
+        }
+
+        if (dispatching.compareAndSet(false, true)) {
+            dispatcher.run();
+        }
+    }
+
+    protected void dispatchNextReadyEvaluation() {
+        Runnable evaluation = readyEvaluations.poll();
+
+        if (evaluation != null) {
+            try {
+                evaluation.run();
+            }
+            catch (Throwable e) {
+                e.printStackTrace();
+            }
+        }
+
+        if (readyEvaluations.isEmpty()) {
+            dispatching.set(false);
+
+            // An evaluation may have become ready after the check, but before the flag was cleared
+            if (readyEvaluations.isEmpty() || !dispatching.compareAndSet(false, true)) {
+                return;
+            }
+        }
+
+        // Yield to any timers that fired during the evaluation before dispatching the
+        // next one, so that they are queued in turn behind the already-ready evaluations
+        executeDispatcher();
+    }
+
+    private synchronized void executeDispatcher() {
+        if (executor == null) {
+            dispatching.set(false);
+
+            return;
+        }
+
+        try {
+            executor.execute(dispatcher);
+        }
+        catch (RejectedExecutionException e) {
+            dispatching.set(false);
+        }
+    }
+
+    protected synchronized int getReferenceCount() {
+        return references;
+    }
+
+    protected synchronized ScheduledExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return the process-wide scheduler shared by every {@link ScratchoffThresholdProcessor}
+     * that has not been supplied its own
+     */
+    public static ThresholdEvaluationScheduler getSharedInstance() {
+        return SHARED_INSTANCE;
+    }
+
+    private static class EvaluationThreadFactory implements ThreadFactory {
+
+        private final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = defaultFactory.newThread(runnable);
+            thread.setName("scratchoff-threshold-evaluation");
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    }
+}
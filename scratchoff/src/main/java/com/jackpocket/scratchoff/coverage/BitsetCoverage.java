@@ -0,0 +1,66 @@
+package com.jackpocket.scratchoff.coverage;
+
+import android.graphics.Rect;
+
+import com.jackpocket.scratchoff.ScratchoffThresholdProcessor;
+import com.jackpocket.scratchoff.tools.BitsetCoverageGrid;
+import com.jackpocket.scratchoff.tools.ThresholdCalculator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link ScratchCoverage} that rasterizes the round-capped stroke segments directly
+ * into a {@link BitsetCoverageGrid}, using one bit per cell instead of a marker Bitmap.
+ * <br><br>
+ * Since the scratched counts are updated as each segment is marked, calculating
+ * the scratched percentage does not require any further scanning.
+ */
+public class BitsetCoverage extends SegmentCoverage {
+
+    private BitsetCoverageGrid grid;
+
+    private final ThresholdCalculator calculator = new ThresholdCalculator(0);
+    private List<Rect> thresholdRegions = new ArrayList<Rect>();
+
+    @Override
+    public void prepare(
+        int width,
+        int height,
+        float scale,
+        float touchRadius,
+        ScratchoffThresholdProcessor.TargetRegionsProvider regionsProvider
+    ) {
+
+        this.grid = new BitsetCoverageGrid(width, height);
+        this.thresholdRegions = ScratchoffThresholdProcessor.createScratchableRegions(regionsProvider, width, height);
+
+        setScale(scale, touchRadius);
+
+        grid.setRegions(flattenRegionBounds(thresholdRegions));
+    }
+
+    @Override
+    protected void markSegment(float x0, float y0, float x1, float y1, float radius) {
+        grid.markSegment(x0, y0, x1, y1, radius);
+    }
+
+    @Override
+    public float calculate() {
+        return calculator.calculate(grid.getRegionScratchedCounts(), thresholdRegions);
+    }
+
+    @Override
+    public boolean isThresholdReached(float threshold) {
+        return calculator.isThresholdReached(grid.getRegionScratchedCounts(), thresholdRegions, threshold);
+    }
+
+    @Override
+    public void destroy() {
+        this.grid = null;
+    }
+
+    protected BitsetCoverageGrid getGrid() {
+        return grid;
+    }
+}
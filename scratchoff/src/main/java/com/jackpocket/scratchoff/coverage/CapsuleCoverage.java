@@ -0,0 +1,60 @@
+package com.jackpocket.scratchoff.coverage;
+
+import com.jackpocket.scratchoff.ScratchoffThresholdProcessor;
+import com.jackpocket.scratchoff.tools.CapsuleCoverageEstimator;
+
+/**
+ * A {@link ScratchCoverage} that estimates the scratched area from the stroke geometry
+ * with a {@link CapsuleCoverageEstimator}, without rasterizing anything.
+ */
+public class CapsuleCoverage extends SegmentCoverage {
+
+    private final int sampleBudget;
+
+    private CapsuleCoverageEstimator estimator;
+
+    public CapsuleCoverage() {
+        this(CapsuleCoverageEstimator.DEFAULT_SAMPLE_BUDGET);
+    }
+
+    public CapsuleCoverage(int sampleBudget) {
+        this.sampleBudget = sampleBudget;
+    }
+
+    @Override
+    public void prepare(
+        int width,
+        int height,
+        float scale,
+        float touchRadius,
+        ScratchoffThresholdProcessor.TargetRegionsProvider regionsProvider
+    ) {
+
+        this.estimator = new CapsuleCoverageEstimator(
+            flattenRegionBounds(ScratchoffThresholdProcessor.createScratchableRegions(regionsProvider, width, height)),
+            sampleBudget
+        );
+
+        setScale(scale, touchRadius);
+    }
+
+    @Override
+    protected void markSegment(float x0, float y0, float x1, float y1, float radius) {
+        estimator.addSegment(x0, y0, x1, y1, radius);
+    }
+
+    @Override
+    public float calculate() {
+        return estimator.calculate();
+    }
+
+    @Override
+    public boolean isThresholdReached(float threshold) {
+        return threshold <= estimator.calculate();
+    }
+
+    @Override
+    public void destroy() {
+        this.estimator = null;
+    }
+}
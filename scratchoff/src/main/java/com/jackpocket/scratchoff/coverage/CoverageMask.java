@@ -0,0 +1,220 @@
+package com.jackpocket.scratchoff.coverage;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import com.jackpocket.scratchoff.tools.VarintReader;
+import com.jackpocket.scratchoff.tools.VarintWriter;
+
+import java.util.BitSet;
+
+/**
+ * A low-resolution record of which areas of the scratchable overlay have been erased,
+ * stored as one bit per square cell of {@link #getCellSizePx()} pixels.
+ * <br><br>
+ * Unlike the path history, its size and the cost of restoring it are independent of
+ * how long the overlay was scratched for. It is encoded as alternating run lengths of
+ * unerased and erased cells, in row-major order, starting with an unerased run.
+ */
+public class CoverageMask {
+
+    public static final int VERSION = 1;
+
+    private static final int MASK_ERASED = 0xFF000000;
+
+    private final int columns;
+    private final int rows;
+    private final float cellSizePx;
+
+    private final BitSet erasedCells;
+
+    public CoverageMask(int columns, int rows, float cellSizePx) {
+        this(columns, rows, cellSizePx, new BitSet(columns * rows));
+    }
+
+    private CoverageMask(int columns, int rows, float cellSizePx, BitSet erasedCells) {
+        this.columns = columns;
+        this.rows = rows;
+        this.cellSizePx = cellSizePx;
+        this.erasedCells = erasedCells;
+    }
+
+    /**
+     * Sample the center of each cell of the overlay drawn by the {@link OverlayAlphaCoverage.OverlaySource},
+     * treating any cell whose center is fully transparent as erased.
+     *
+     * @param width the width of the overlay, in the coordinate space of the scratchable layout
+     * @param height the height of the overlay, in the coordinate space of the scratchable layout
+     * @return null if the overlay is not currently available
+     */
+    public static CoverageMask createFromOverlay(
+        OverlayAlphaCoverage.OverlaySource source,
+        int width,
+        int height,
+        float cellSizePx
+    ) {
+
+        final int columns = Math.max(1, (int) Math.ceil(width / cellSizePx));
+        final int rows = Math.max(1, (int) Math.ceil(height / cellSizePx));
+
+        Bitmap samples = Bitmap.createBitmap(columns, rows, Bitmap.Config.ALPHA_8);
+
+        try {
+            Canvas canvas = new Canvas(samples);
+            canvas.scale(1 / cellSizePx, 1 / cellSizePx);
+
+            Paint paint = new Paint();
+            paint.setFilterBitmap(false);
+
+            if (!source.drawOverlay(canvas, paint)) {
+                return null;
+            }
+
+            CoverageMask mask = new CoverageMask(columns, rows, cellSizePx);
+            int[] rowPixels = new int[columns];
+
+            for (int row = 0; row < rows; row++) {
+                samples.getPixels(rowPixels, 0, columns, 0, row, columns, 1);
+
+                for (int column = 0; column < columns; column++) {
+                    if ((rowPixels[column] >>> 24) == 0) {
+                        mask.setErased(column, row);
+                    }
+                }
+            }
+
+            return mask;
+        }
+        finally {
+            samples.recycle();
+        }
+    }
+
+    public void setErased(int column, int row) {
+        erasedCells.set((row * columns) + column);
+    }
+
+    public boolean isErased(int column, int row) {
+        return erasedCells.get((row * columns) + column);
+    }
+
+    /**
+     * @return the column after the end of the run of erased cells starting at the supplied column,
+     * which is the supplied column itself if that cell is not erased
+     */
+    public int findErasedRunEnd(int column, int row) {
+        final int start = (row * columns) + column;
+        final int end = erasedCells.nextClearBit(start);
+
+        return Math.min(columns, column + (end - start));
+    }
+
+    /**
+     * @return the number of erased cells
+     */
+    public int getErasedCount() {
+        return erasedCells.cardinality();
+    }
+
+    /**
+     * Create an ALPHA_8 Bitmap of one pixel per cell, where erased cells are fully opaque,
+     * to be scaled up by {@link #getCellSizePx()} when drawn.
+     */
+    public Bitmap createBitmap() {
+        Bitmap bitmap = Bitmap.createBitmap(columns, rows, Bitmap.Config.ALPHA_8);
+        int[] rowPixels = new int[columns];
+
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                rowPixels[column] = isErased(column, row) ? MASK_ERASED : 0;
+            }
+
+            bitmap.setPixels(rowPixels, 0, columns, 0, row, columns, 1);
+        }
+
+        return bitmap;
+    }
+
+    public byte[] encode() {
+        final int cellCount = columns * rows;
+
+        VarintWriter writer = new VarintWriter(16);
+        writer.write(VERSION);
+        writer.write(columns);
+        writer.write(rows);
+        writer.write(Float.floatToIntBits(cellSizePx));
+
+        int position = 0;
+
+        while (position < cellCount) {
+            final int erasedStart = Math.min(cellCount, nextSetBit(position));
+            final int erasedEnd = Math.min(cellCount, erasedCells.nextClearBit(erasedStart));
+
+            writer.write(erasedStart - position);
+            writer.write(erasedEnd - erasedStart);
+
+            position = erasedEnd;
+        }
+
+        return writer.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the data is not a valid encoded {@link CoverageMask}
+     */
+    public static CoverageMask decode(byte[] data) {
+        VarintReader reader = new VarintReader(data);
+
+        final int version = reader.read();
+
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported coverage mask version: " + version);
+        }
+
+        final int columns = reader.read();
+        final int rows = reader.read();
+        final float cellSizePx = Float.intBitsToFloat(reader.read());
+        final int cellCount = columns * rows;
+
+        BitSet erasedCells = new BitSet(cellCount);
+        int position = 0;
+
+        while (reader.hasRemaining()) {
+            position += reader.read();
+
+            final int erasedEnd = position + reader.read();
+
+            if (cellCount < erasedEnd) {
+                throw new IllegalArgumentException("Coverage mask runs exceed its " + cellCount + " cells");
+            }
+
+            erasedCells.set(position, erasedEnd);
+
+            position = erasedEnd;
+        }
+
+        return new CoverageMask(columns, rows, cellSizePx, erasedCells);
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the width and height of each cell, in the coordinate space of the scratchable layout
+     */
+    public float getCellSizePx() {
+        return cellSizePx;
+    }
+
+    private int nextSetBit(int position) {
+        final int next = erasedCells.nextSetBit(position);
+
+        return next < 0 ? Integer.MAX_VALUE : next;
+    }
+}
@@ -0,0 +1,284 @@
+package com.jackpocket.scratchoff.coverage;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import com.jackpocket.scratchoff.ScratchoffThresholdProcessor;
+import com.jackpocket.scratchoff.paths.ScratchPathBatch;
+import com.jackpocket.scratchoff.paths.ScratchPathManager;
+import com.jackpocket.scratchoff.paths.ScratchPathPoint;
+import com.jackpocket.scratchoff.tools.BitmapPool;
+import com.jackpocket.scratchoff.tools.ParallelThresholdCalculator;
+import com.jackpocket.scratchoff.tools.ThresholdCalculator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A {@link ScratchCoverage} that draws the scratched paths into an RGB_565 marker
+ * Bitmap and counts the marked pixels.
+ * <br><br>
+ * Batches are retained until the next {@link #calculate()} or {@link #isThresholdReached(float)},
+ * which draws all of them at once and re-counts the union of their dirty bounds once before
+ * and once after, rather than scanning the bounds of each batch twice as it's added.
+ */
+public class MarkerBitmapCoverage implements ScratchCoverage {
+
+    private static final int MARKER_UNTOUCHED = 0xFFFFFFFF;
+    private static final int MARKER_SCRATCHED = 0xFF000000;
+
+    private Bitmap currentBitmap;
+    private Canvas canvas;
+    private final Paint markerPaint;
+    private final Paint maskPaint;
+    private final RectF maskBounds = new RectF();
+
+    // Only used to build batches for points added directly
+    private final ScratchPathManager pathManager = new ScratchPathManager();
+    private float scale = 1f;
+
+    private final ThresholdCalculator calculator;
+    private final BitmapPool bitmapPool;
+    private List<Rect> thresholdRegions = new ArrayList<Rect>();
+    private int[] thresholdRegionScratchedCounts = new int[0];
+    private int[] dirtyRegionScratchedCounts = new int[0];
+
+    private final RectF batchBounds = new RectF();
+    private final Rect batchDirtyBounds = new Rect();
+    private final Rect dirtyBounds = new Rect();
+    private boolean dirtyBoundsAvailable = false;
+    private List<Rect> dirtyRegionIntersections = new ArrayList<Rect>();
+
+    private final ArrayList<ScratchPathBatch> pendingBatches = new ArrayList<ScratchPathBatch>();
+
+    public MarkerBitmapCoverage() {
+        this(ThresholdCalculator.DEFAULT_SCAN_BUFFER_SIZE_BYTES);
+    }
+
+    /**
+     * @param scanBufferSizeBytes the maximum size of the buffer reused for every pixel scan
+     */
+    public MarkerBitmapCoverage(int scanBufferSizeBytes) {
+        this(scanBufferSizeBytes, 1);
+    }
+
+    /**
+     * @param scanBufferSizeBytes the maximum size of the buffer reused for every pixel scan
+     * @param scanParallelism the number of Threads to split pixel scans across
+     */
+    public MarkerBitmapCoverage(int scanBufferSizeBytes, int scanParallelism) {
+        this(scanBufferSizeBytes, scanParallelism, BitmapPool.UNPOOLED);
+    }
+
+    /**
+     * @param scanBufferSizeBytes the maximum size of the buffer reused for every pixel scan
+     * @param scanParallelism the number of Threads to split pixel scans across
+     * @param bitmapPool the {@link BitmapPool} the marker Bitmap is obtained from and released to
+     */
+    public MarkerBitmapCoverage(int scanBufferSizeBytes, int scanParallelism, BitmapPool bitmapPool) {
+        this.bitmapPool = bitmapPool;
+        this.calculator = scanParallelism < 2
+            ? new ThresholdCalculator(MARKER_UNTOUCHED, scanBufferSizeBytes)
+            : new ParallelThresholdCalculator(MARKER_UNTOUCHED, scanBufferSizeBytes, scanParallelism);
+        this.markerPaint = ScratchPathManager.createBaseScratchoffPaint(1);
+        this.markerPaint.setColor(MARKER_SCRATCHED);
+        this.markerPaint.setAntiAlias(false);
+
+        // Drawing an ALPHA_8 mask fills its opaque pixels with the Paint's color
+        this.maskPaint = new Paint();
+        this.maskPaint.setColor(MARKER_SCRATCHED);
+        this.maskPaint.setAntiAlias(false);
+        this.maskPaint.setFilterBitmap(false);
+    }
+
+    @Override
+    public void prepare(
+        int width,
+        int height,
+        float scale,
+        float touchRadius,
+        ScratchoffThresholdProcessor.TargetRegionsProvider regionsProvider
+    ) {
+
+        this.currentBitmap = bitmapPool.obtain(
+            width,
+            height,
+            Bitmap.Config.RGB_565
+        );
+
+        // Batches are drawn in the coordinate space of the scratchable layout through
+        // the Canvas transform, so the stroke width must be in that space as well
+        this.scale = scale;
+        this.markerPaint.setStrokeWidth(touchRadius * 2 / scale);
+
+        this.thresholdRegions = regionsProvider.createScratchableRegions(currentBitmap);
+
+        this.canvas = new Canvas(currentBitmap);
+        this.canvas.drawColor(MARKER_UNTOUCHED);
+        this.canvas.scale(scale, scale);
+
+        // Only the initial counts require a full scan of each region. Every subsequent
+        // evaluation only re-counts the area affected by the newly-drawn segments
+        this.thresholdRegionScratchedCounts = new int[thresholdRegions.size()];
+        this.dirtyRegionScratchedCounts = new int[thresholdRegions.size()];
+        this.dirtyRegionIntersections = new ArrayList<Rect>(thresholdRegions.size());
+
+        for (int i = 0; i < thresholdRegions.size(); i++) {
+            dirtyRegionIntersections.add(new Rect());
+        }
+
+        calculator.countNotMatching(currentBitmap, thresholdRegions, thresholdRegionScratchedCounts);
+    }
+
+    @Override
+    public void addScratchPathPoints(Collection<ScratchPathPoint> events) {
+        ScratchPathBatch batch = pathManager.createBatch(events);
+
+        addScratchPathBatch(batch);
+
+        batch.release();
+    }
+
+    @Override
+    public void addScratchPathBatch(ScratchPathBatch batch) {
+        if (!batch.getBounds(batchBounds)) {
+            return;
+        }
+
+        float padding = (markerPaint.getStrokeWidth() / 2) * batch.getStrokeScale() * scale + 1;
+
+        batchDirtyBounds.set(
+            (int) Math.floor(batchBounds.left * scale - padding),
+            (int) Math.floor(batchBounds.top * scale - padding),
+            (int) Math.ceil(batchBounds.right * scale + padding),
+            (int) Math.ceil(batchBounds.bottom * scale + padding)
+        );
+
+        if (!dirtyBoundsAvailable) {
+            dirtyBounds.set(batchDirtyBounds);
+
+            this.dirtyBoundsAvailable = true;
+        }
+
+        dirtyBounds.union(batchDirtyBounds);
+
+        pendingBatches.add(batch.retain());
+    }
+
+    /**
+     * Draw every pending batch, re-counting only the union of their dirty bounds.
+     */
+    private void drawPendingBatches() {
+        if (pendingBatches.isEmpty()) {
+            return;
+        }
+
+        for (int i = 0; i < thresholdRegions.size(); i++) {
+            Rect intersection = dirtyRegionIntersections.get(i);
+
+            // Regions outside the dirty bounds are left empty, which counts as 0
+            if (!intersection.setIntersect(dirtyBounds, thresholdRegions.get(i))) {
+                intersection.setEmpty();
+            }
+        }
+
+        calculator.countNotMatching(currentBitmap, dirtyRegionIntersections, dirtyRegionScratchedCounts);
+
+        for (int i = 0; i < thresholdRegions.size(); i++) {
+            thresholdRegionScratchedCounts[i] -= dirtyRegionScratchedCounts[i];
+        }
+
+        // The continuous drawing of incomplete Path elements affects the
+        // drawing at the pixel-level, and the result may differ from the single-redraw
+        // performed when restoring the Path elements from the history.
+        // Thus, we cannot expect the threshold calculated from a historical reload
+        // to be exactly equal to the original, without emulating the original drawing
+        // of the MotionEvents as they came in. Since that would be super-inefficient,
+        // I have no more tears to give this problem, the ThresholdProcessor instances are
+        // not re-used after resets, and the loss is limited to less than 0.001%,
+        // we can just pretend that doesn't really happen and move on with our lives...
+        drawAndReleasePendingBatches();
+
+        calculator.countNotMatching(currentBitmap, dirtyRegionIntersections, dirtyRegionScratchedCounts);
+
+        for (int i = 0; i < thresholdRegions.size(); i++) {
+            thresholdRegionScratchedCounts[i] += dirtyRegionScratchedCounts[i];
+        }
+    }
+
+    private void drawAndReleasePendingBatches() {
+        for (int i = 0; i < pendingBatches.size(); i++) {
+            pendingBatches.get(i).draw(canvas, markerPaint);
+        }
+
+        releasePendingBatches();
+    }
+
+    private void releasePendingBatches() {
+        for (int i = 0; i < pendingBatches.size(); i++) {
+            pendingBatches.get(i).release();
+        }
+
+        pendingBatches.clear();
+
+        this.dirtyBoundsAvailable = false;
+    }
+
+    /**
+     * Draw the mask into the marker Bitmap at once, then re-count each region in full.
+     */
+    @Override
+    public void addCoverageMask(CoverageMask mask) {
+        // Counted along with the mask
+        drawAndReleasePendingBatches();
+
+        final Bitmap maskBitmap = mask.createBitmap();
+
+        maskBounds.set(
+            0,
+            0,
+            mask.getColumns() * mask.getCellSizePx(),
+            mask.getRows() * mask.getCellSizePx()
+        );
+
+        canvas.drawBitmap(maskBitmap, null, maskBounds, maskPaint);
+
+        maskBitmap.recycle();
+
+        calculator.countNotMatching(currentBitmap, thresholdRegions, thresholdRegionScratchedCounts);
+    }
+
+    @Override
+    public float calculate() {
+        drawPendingBatches();
+
+        return calculator.calculate(thresholdRegionScratchedCounts, thresholdRegions);
+    }
+
+    @Override
+    public boolean isThresholdReached(float threshold) {
+        drawPendingBatches();
+
+        return calculator.isThresholdReached(thresholdRegionScratchedCounts, thresholdRegions, threshold);
+    }
+
+    @Override
+    public void destroy() {
+        if (currentBitmap == null) {
+            return;
+        }
+
+        releasePendingBatches();
+
+        calculator.destroy();
+
+        bitmapPool.release(currentBitmap);
+        currentBitmap = null;
+
+        canvas = null;
+    }
+}
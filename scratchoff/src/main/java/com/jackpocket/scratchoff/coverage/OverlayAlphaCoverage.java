@@ -0,0 +1,218 @@
+package com.jackpocket.scratchoff.coverage;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+
+import com.jackpocket.scratchoff.ScratchoffThresholdProcessor;
+import com.jackpocket.scratchoff.paths.ScratchPathBatch;
+import com.jackpocket.scratchoff.paths.ScratchPathPoint;
+import com.jackpocket.scratchoff.tools.BitmapPool;
+import com.jackpocket.scratchoff.tools.ParallelThresholdCalculator;
+import com.jackpocket.scratchoff.tools.ThresholdCalculator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A {@link ScratchCoverage} that reads the erased pixels directly from the alpha channel of
+ * the scratchable overlay, instead of rasterizing the scratched paths a second time.
+ * <br><br>
+ * The overlay is copied into a downsampled ALPHA_8 snapshot, at the scale supplied to
+ * {@link #prepare(int, int, float, float, ScratchoffThresholdProcessor.TargetRegionsProvider)},
+ * whenever new points have been added since the last calculation. Any pixel with a
+ * non-zero alpha is considered unscratched, so pixels of the overlay that were transparent
+ * to begin with are counted as scratched.
+ * <br><br>
+ * If the source is an {@link IncrementalOverlaySource}, only the first snapshot is drawn in full,
+ * and each refresh after it only redraws the area erased since the previous one.
+ */
+public class OverlayAlphaCoverage implements ScratchCoverage {
+
+    public interface OverlaySource {
+
+        /**
+         * Draw the current state of the scratchable overlay, at its original size, into the supplied Canvas.
+         *
+         * @return true if the overlay was drawn, or false if it is not currently available
+         */
+        public boolean drawOverlay(Canvas canvas, Paint paint);
+    }
+
+    public interface IncrementalOverlaySource extends OverlaySource {
+
+        /**
+         * Draw only the area of the scratchable overlay erased since the last call into the
+         * supplied Canvas, at its original size, leaving the rest of the Canvas untouched.
+         *
+         * @return true if the changes were drawn, or there were none, or false if the overlay is not currently available
+         */
+        public boolean drawOverlayChanges(Canvas canvas, Paint paint);
+    }
+
+    private static final int SNAPSHOT_UNSCRATCHED = 0xFF000000;
+
+    private final OverlaySource source;
+    private final ThresholdCalculator calculator;
+    private final BitmapPool bitmapPool;
+
+    private Bitmap snapshot;
+    private Canvas snapshotCanvas;
+    private final Paint snapshotPaint;
+    private boolean snapshotStale = true;
+    private boolean snapshotDrawn = false;
+
+    private List<Rect> thresholdRegions = new ArrayList<Rect>();
+
+    public OverlayAlphaCoverage(OverlaySource source) {
+        this(source, ThresholdCalculator.DEFAULT_SCAN_BUFFER_SIZE_BYTES, 1);
+    }
+
+    /**
+     * @param scanBufferSizeBytes the maximum size of the buffer reused for every pixel scan
+     * @param scanParallelism the number of Threads to split pixel scans across
+     */
+    public OverlayAlphaCoverage(OverlaySource source, int scanBufferSizeBytes, int scanParallelism) {
+        this(source, scanBufferSizeBytes, scanParallelism, BitmapPool.UNPOOLED);
+    }
+
+    /**
+     * @param scanBufferSizeBytes the maximum size of the buffer reused for every pixel scan
+     * @param scanParallelism the number of Threads to split pixel scans across
+     * @param bitmapPool the {@link BitmapPool} the snapshot Bitmap is obtained from and released to
+     */
+    public OverlayAlphaCoverage(OverlaySource source, int scanBufferSizeBytes, int scanParallelism, BitmapPool bitmapPool) {
+        this.source = source;
+        this.bitmapPool = bitmapPool;
+        this.calculator = scanParallelism < 2
+            ? new ThresholdCalculator(SNAPSHOT_UNSCRATCHED, scanBufferSizeBytes)
+            : new ParallelThresholdCalculator(SNAPSHOT_UNSCRATCHED, scanBufferSizeBytes, scanParallelism);
+        this.snapshotPaint = createSnapshotPaint();
+    }
+
+    /**
+     * Create the Paint that saturates any non-zero alpha to fully opaque, so that each
+     * snapshot pixel is either scratched (0x00) or unscratched (0xFF). The SRC mode replaces
+     * the previous snapshot entirely without needing to erase it first.
+     */
+    protected Paint createSnapshotPaint() {
+        ColorMatrix saturateAlpha = new ColorMatrix(
+            new float[] {
+                0, 0, 0, 0, 0,
+                0, 0, 0, 0, 0,
+                0, 0, 0, 0, 0,
+                0, 0, 0, 255, 0
+            }
+        );
+
+        Paint paint = new Paint();
+        paint.setAntiAlias(false);
+        paint.setFilterBitmap(false);
+        paint.setColorFilter(new ColorMatrixColorFilter(saturateAlpha));
+        paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+
+        return paint;
+    }
+
+    @Override
+    public void prepare(
+        int width,
+        int height,
+        float scale,
+        float touchRadius,
+        ScratchoffThresholdProcessor.TargetRegionsProvider regionsProvider
+    ) {
+
+        this.snapshot = bitmapPool.obtain(
+            width,
+            height,
+            Bitmap.Config.ALPHA_8
+        );
+
+        this.snapshotCanvas = new Canvas(snapshot);
+        this.snapshotCanvas.scale(scale, scale);
+        this.snapshotStale = true;
+        this.snapshotDrawn = false;
+
+        // Until the first snapshot has been taken, the overlay is assumed to be untouched
+        this.snapshot.eraseColor(SNAPSHOT_UNSCRATCHED);
+
+        this.thresholdRegions = regionsProvider.createScratchableRegions(snapshot);
+    }
+
+    @Override
+    public void addScratchPathPoints(Collection<ScratchPathPoint> events) {
+        this.snapshotStale = true;
+    }
+
+    @Override
+    public void addScratchPathBatch(ScratchPathBatch batch) {
+        this.snapshotStale = true;
+    }
+
+    /**
+     * The mask is expected to have been erased from the overlay as well, so the
+     * next snapshot will include it.
+     */
+    @Override
+    public void addCoverageMask(CoverageMask mask) {
+        this.snapshotStale = true;
+    }
+
+    @Override
+    public float calculate() {
+        refreshSnapshot();
+
+        return calculator.calculate(snapshot, thresholdRegions);
+    }
+
+    @Override
+    public boolean isThresholdReached(float threshold) {
+        refreshSnapshot();
+
+        return calculator.isThresholdReached(snapshot, thresholdRegions, threshold);
+    }
+
+    protected void refreshSnapshot() {
+        if (!snapshotStale) {
+            return;
+        }
+
+        if (drawSnapshot()) {
+            this.snapshotStale = false;
+            this.snapshotDrawn = true;
+        }
+    }
+
+    private boolean drawSnapshot() {
+        if (snapshotDrawn && source instanceof IncrementalOverlaySource) {
+            return ((IncrementalOverlaySource) source).drawOverlayChanges(snapshotCanvas, snapshotPaint);
+        }
+
+        return source.drawOverlay(snapshotCanvas, snapshotPaint);
+    }
+
+    @Override
+    public void destroy() {
+        calculator.destroy();
+
+        if (snapshot == null) {
+            return;
+        }
+
+        bitmapPool.release(snapshot);
+        snapshot = null;
+
+        snapshotCanvas = null;
+    }
+
+    protected Bitmap getSnapshot() {
+        return snapshot;
+    }
+}
@@ -0,0 +1,59 @@
+package com.jackpocket.scratchoff.coverage;
+
+import com.jackpocket.scratchoff.ScratchoffThresholdProcessor;
+import com.jackpocket.scratchoff.paths.ScratchPathBatch;
+import com.jackpocket.scratchoff.paths.ScratchPathBatchAggregator;
+import com.jackpocket.scratchoff.paths.ScratchPathPointsAggregator;
+
+/**
+ * A backing store for the area scratched away, as seen by the {@link ScratchoffThresholdProcessor}.
+ * <br><br>
+ * The {@link com.jackpocket.scratchoff.paths.ScratchPathPoint} instances supplied to
+ * {@link #addScratchPathPoints(java.util.Collection)} are in the coordinate space of the
+ * scratchable layout, and it is the responsibility of the implementation to apply the
+ * scale supplied to {@link #prepare(int, int, float, float, ScratchoffThresholdProcessor.TargetRegionsProvider)}.
+ * <br><br>
+ * The Paths of any {@link ScratchPathBatch} supplied to {@link #addScratchPathBatch(ScratchPathBatch)}
+ * are also in the coordinate space of the scratchable layout, and may be shared with other consumers,
+ * so implementations must never modify them.
+ * <br><br>
+ * Implementations are not expected to be thread-safe.
+ */
+public interface ScratchCoverage extends ScratchPathPointsAggregator, ScratchPathBatchAggregator {
+
+    /**
+     * Allocate the backing store and determine the target regions.
+     *
+     * @param width the scaled width of the backing store
+     * @param height the scaled height of the backing store
+     * @param scale the scale to apply to all incoming points
+     * @param touchRadius the scaled touch radius
+     * @param regionsProvider the provider for the scaled target regions
+     */
+    public void prepare(
+        int width,
+        int height,
+        float scale,
+        float touchRadius,
+        ScratchoffThresholdProcessor.TargetRegionsProvider regionsProvider
+    );
+
+    /**
+     * @return the average scratched percentage of all target regions, in the range [0.0, 1.0]
+     */
+    public float calculate();
+
+    /**
+     * Determine whether {@link #calculate()} would be at least the supplied threshold,
+     * doing no more work than is necessary to decide the outcome.
+     */
+    public boolean isThresholdReached(float threshold);
+
+    /**
+     * Mark every erased cell of a restored {@link CoverageMask} as scratched, in place of replaying
+     * the history that produced it. Cells are in the coordinate space of the scratchable layout.
+     */
+    public void addCoverageMask(CoverageMask mask);
+
+    public void destroy();
+}
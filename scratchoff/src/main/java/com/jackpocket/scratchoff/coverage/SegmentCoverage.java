@@ -0,0 +1,137 @@
+package com.jackpocket.scratchoff.coverage;
+
+import android.graphics.Rect;
+
+import com.jackpocket.scratchoff.paths.ScratchPathBatch;
+import com.jackpocket.scratchoff.paths.ScratchPathPoint;
+import com.jackpocket.scratchoff.paths.ScratchPathPointBuffer;
+import com.jackpocket.scratchoff.tools.StrokeSegmenter;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A base {@link ScratchCoverage} for implementations that consume the strokes as
+ * scaled line segments, rather than as drawn Paths.
+ * <br><br>
+ * This only adapts the Android types to the plain geometry of a {@link StrokeSegmenter},
+ * which connects the segments of each stroke across calls to {@link #addScratchPathPoints(Collection)}.
+ */
+public abstract class SegmentCoverage implements ScratchCoverage {
+
+    private float scale = 1f;
+    private float touchRadius = 1f;
+    private float strokeScale = 1f;
+
+    private final StrokeSegmenter segmenter = new StrokeSegmenter(new StrokeSegmenter.SegmentAggregator() {
+        @Override
+        public void addSegment(float x0, float y0, float x1, float y1, float radius) {
+            markSegment(x0, y0, x1, y1, radius);
+        }
+    });
+
+    protected void setScale(float scale, float touchRadius) {
+        this.scale = scale;
+        this.touchRadius = touchRadius;
+    }
+
+    @Override
+    public void addScratchPathPoints(Collection<ScratchPathPoint> events) {
+        for (ScratchPathPoint event : events) {
+            addScratchPathPoint(event);
+        }
+    }
+
+    /**
+     * Segments are built directly from the points of the batch, as the shared
+     * Paths would need to be flattened to be of any use here.
+     */
+    @Override
+    public void addScratchPathBatch(ScratchPathBatch batch) {
+        final ScratchPathPointBuffer points = batch.getPoints();
+        final int count = points.size();
+
+        this.strokeScale = batch.getStrokeScale();
+
+        for (int i = 0; i < count; i++) {
+            addScratchPathPoint(
+                points.getPointerIndex(i),
+                points.getX(i),
+                points.getY(i),
+                points.getAction(i)
+            );
+        }
+
+        this.strokeScale = 1f;
+    }
+
+    /**
+     * Each horizontal run of erased cells is marked as a single segment, whose radius is half
+     * of the cell size, so that it spans the run with only the corners of its ends left out.
+     */
+    @Override
+    public void addCoverageMask(CoverageMask mask) {
+        final float cellSize = mask.getCellSizePx() * scale;
+        final float radius = cellSize / 2;
+
+        for (int row = 0; row < mask.getRows(); row++) {
+            final float y = (row * cellSize) + radius;
+
+            int column = 0;
+
+            while (column < mask.getColumns()) {
+                final int runEnd = mask.findErasedRunEnd(column, row);
+
+                if (runEnd == column) {
+                    column++;
+
+                    continue;
+                }
+
+                markSegment(
+                    (column * cellSize) + radius,
+                    y,
+                    (runEnd * cellSize) - radius,
+                    y,
+                    radius
+                );
+
+                column = runEnd;
+            }
+        }
+    }
+
+    protected void addScratchPathPoint(ScratchPathPoint event) {
+        addScratchPathPoint(event.pointerIndex, event.x, event.y, event.action);
+    }
+
+    protected void addScratchPathPoint(int pointerIndex, float unscaledX, float unscaledY, int action) {
+        segmenter.addPoint(
+            pointerIndex,
+            unscaledX * scale,
+            unscaledY * scale,
+            action,
+            touchRadius * strokeScale
+        );
+    }
+
+    /**
+     * Mark the area covered by a scaled line segment with round caps.
+     */
+    protected abstract void markSegment(float x0, float y0, float x1, float y1, float radius);
+
+    static int[] flattenRegionBounds(List<Rect> regions) {
+        int[] bounds = new int[regions.size() * 4];
+
+        for (int i = 0; i < regions.size(); i++) {
+            Rect region = regions.get(i);
+
+            bounds[i * 4] = region.left;
+            bounds[i * 4 + 1] = region.top;
+            bounds[i * 4 + 2] = region.right;
+            bounds[i * 4 + 3] = region.bottom;
+        }
+
+        return bounds;
+    }
+}
@@ -0,0 +1,181 @@
+package com.jackpocket.scratchoff.paths;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An immutable batch of scratched geometry, built once by a {@link ScratchPathManager}
+ * and shared between every consumer of the same points.
+ * <br><br>
+ * The Paths are in the coordinate space of the {@link ScratchPathManager} that created
+ * the batch (the scratchable layout's, unless a scale was set), and consumers drawing
+ * at a different scale are expected to apply their own transform to the Canvas.
+ * <br><br>
+ * The Paths are drawn with the Paint's stroke width multiplied by the batch's {@link #getStrokeScale()},
+ * which differs from 1 only when the points were rescaled from a different layout size.
+ * <br><br>
+ * Neither the Paths nor the points are modified after the batch has been created, and the
+ * bounds are computed up-front, so the batch may be read from multiple Threads at once.
+ * Consumers must not modify them either.
+ * <br><br>
+ * A batch is recycled by the {@link ScratchPathManager} that created it, along with its points
+ * and Paths, once every reference to it has been released. The creator's reference is released
+ * with {@link #release()}, and a consumer that holds onto the batch beyond the call it was
+ * supplied in must {@link #retain()} it first, and release it once it's done with it.
+ * A batch that is never released is left to the garbage collector instead.
+ */
+public final class ScratchPathBatch {
+
+    private final ScratchPathManager owner;
+
+    private final ScratchPathPointBuffer points = new ScratchPathPointBuffer();
+    private final ArrayList<Path> paths = new ArrayList<Path>();
+    private final List<Path> unmodifiablePaths = Collections.unmodifiableList(paths);
+    private float strokeScale;
+
+    private final RectF bounds = new RectF();
+    private final RectF pathBounds = new RectF();
+    private boolean boundsAvailable;
+
+    private final Paint scaledPaint = new Paint();
+
+    private final AtomicInteger references = new AtomicInteger();
+
+    ScratchPathBatch(ScratchPathManager owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Populate this batch, taking ownership of the Paths, and hold the creator's reference.
+     * Must only be called by the owner while it has no references.
+     */
+    void set(ScratchPathPointBuffer points, List<Path> paths, float strokeScale) {
+        this.points.clear();
+        this.points.addAll(points);
+        this.paths.addAll(paths);
+        this.strokeScale = strokeScale;
+        this.boundsAvailable = computeBounds(paths, bounds);
+
+        references.set(1);
+    }
+
+    /**
+     * Hand the Paths over to the supplied List and empty this batch, for the owner to reuse.
+     */
+    void drainPaths(List<Path> out) {
+        out.addAll(paths);
+
+        paths.clear();
+    }
+
+    private boolean computeBounds(List<Path> paths, RectF out) {
+        boolean available = false;
+
+        for (Path path : paths) {
+            path.computeBounds(pathBounds, true);
+
+            if (available) {
+                out.union(pathBounds);
+
+                continue;
+            }
+
+            out.set(pathBounds);
+
+            available = true;
+        }
+
+        return available;
+    }
+
+    /**
+     * Add a reference to this batch, which must be released with {@link #release()}.
+     */
+    public ScratchPathBatch retain() {
+        references.incrementAndGet();
+
+        return this;
+    }
+
+    /**
+     * Release a reference to this batch, returning it to its {@link ScratchPathManager} to be
+     * reused once no references remain. The batch must not be used after releasing it.
+     */
+    public void release() {
+        if (references.decrementAndGet() == 0) {
+            owner.recycle(this);
+        }
+    }
+
+    /**
+     * Draw every Path in this batch with the supplied Paint, whose stroke width is
+     * scaled by the {@link #getStrokeScale()} without modifying the supplied instance.
+     */
+    public void draw(Canvas canvas, Paint paint) {
+        if (strokeScale == 1f) {
+            drawPaths(canvas, paint);
+
+            return;
+        }
+
+        // Only restored batches are scaled, so live touches never wait on the reused Paint
+        synchronized (scaledPaint) {
+            scaledPaint.set(paint);
+            scaledPaint.setStrokeWidth(paint.getStrokeWidth() * strokeScale);
+
+            drawPaths(canvas, scaledPaint);
+        }
+    }
+
+    private void drawPaths(Canvas canvas, Paint paint) {
+        for (Path path : paths) {
+            canvas.drawPath(path, paint);
+        }
+    }
+
+    /**
+     * @return the points this batch was created from
+     */
+    public ScratchPathPointBuffer getPoints() {
+        return points;
+    }
+
+    public List<Path> getPaths() {
+        return unmodifiablePaths;
+    }
+
+    /**
+     * @return the factor that the touch radius should be multiplied by when consuming this batch
+     */
+    public float getStrokeScale() {
+        return strokeScale;
+    }
+
+    /**
+     * Copy the bounds of every point in this batch into the supplied RectF. The bounds
+     * do not include the stroke width used to draw the Paths.
+     *
+     * @return false if this batch contains no geometry, in which case
+     * the supplied RectF is left untouched
+     */
+    public boolean getBounds(RectF out) {
+        if (!boundsAvailable) {
+            return false;
+        }
+
+        out.set(bounds);
+
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return paths.isEmpty();
+    }
+}
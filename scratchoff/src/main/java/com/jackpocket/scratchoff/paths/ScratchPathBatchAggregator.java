@@ -0,0 +1,11 @@
+package com.jackpocket.scratchoff.paths;
+
+public interface ScratchPathBatchAggregator {
+
+    /**
+     * The batch is only guaranteed to remain unchanged for the duration of this call, so an
+     * implementation holding onto it afterwards must {@link ScratchPathBatch#retain()} it,
+     * and {@link ScratchPathBatch#release()} it once it's done with it.
+     */
+    public void addScratchPathBatch(ScratchPathBatch batch);
+}
@@ -12,11 +12,23 @@ public class ScratchPathManager implements ScratchPathPointsAggregator {
 
     private static final int POINTER_LIMIT = 10;
 
+    // Enough to cover the batches queued between threshold evaluations
+    private static final int RECYCLED_BATCH_LIMIT = 16;
+    private static final int RECYCLED_PATH_LIMIT = 32;
+
     private Path[] activePaths = new Path[POINTER_LIMIT];
+    // Whether each active Path is in the paths list, instead of searching it for every move
+    private boolean[] activePathsListed = new boolean[POINTER_LIMIT];
     private int[] lastActiveActions = new int[POINTER_LIMIT];
 
     private final ArrayList<Path> paths = new ArrayList<>();
+    private final ArrayList<Path> batchPaths = new ArrayList<>();
+
+    // Guarded by the paths lock
+    private final ArrayList<ScratchPathBatch> recycledBatches = new ArrayList<>();
+    private final ArrayList<Path> recycledPaths = new ArrayList<>();
     private float scale = 1f;
+    private float strokeScale = 1f;
 
     private boolean activePathRecoveryEnabled = false;
 
@@ -29,6 +41,21 @@ public class ScratchPathManager implements ScratchPathPointsAggregator {
         return this;
     }
 
+    /**
+     * Set the {@link ScratchPathBatch#getStrokeScale()} of every batch created from here on,
+     * which is further multiplied by the {@link ScratchPathPointBuffer#getStrokeScale(int)}
+     * of the batch's points.
+     */
+    public ScratchPathManager setStrokeScale(float strokeScale) {
+        this.strokeScale = strokeScale;
+
+        return this;
+    }
+
+    public float getStrokeScale() {
+        return strokeScale;
+    }
+
     public ScratchPathManager setActivePathRecoveryEnabled(boolean activePathRecoveryEnabled) {
         this.activePathRecoveryEnabled = activePathRecoveryEnabled;
 
@@ -42,13 +69,30 @@ public class ScratchPathManager implements ScratchPathPointsAggregator {
         }
     }
 
+    public void addScratchPathPoints(ScratchPathPointBuffer points) {
+        final int count = points.size();
+
+        for (int i = 0; i < count; i++) {
+            addScratchPathPoint(
+                points.getPointerIndex(i),
+                points.getX(i),
+                points.getY(i),
+                points.getAction(i)
+            );
+        }
+    }
+
     public void addScratchPathPoint(ScratchPathPoint event) {
-        if (POINTER_LIMIT <= event.pointerIndex) {
+        addScratchPathPoint(event.pointerIndex, event.x, event.y, event.action);
+    }
+
+    public void addScratchPathPoint(int pointerIndex, float x, float y, int action) {
+        if (POINTER_LIMIT <= pointerIndex) {
             return;
         }
 
         synchronized (paths) {
-            switch (event.action) {
+            switch (action) {
                 case MotionEvent.ACTION_UP:
                 case MotionEvent.ACTION_POINTER_UP:
                 case MotionEvent.ACTION_CANCEL:
@@ -56,23 +100,23 @@ public class ScratchPathManager implements ScratchPathPointsAggregator {
                 case MotionEvent.ACTION_DOWN:
                 case MotionEvent.ACTION_POINTER_DOWN:
                     handleTouchDown(
-                        event.pointerIndex,
-                        event.x * scale,
-                        event.y * scale
+                        pointerIndex,
+                        x * scale,
+                        y * scale
                     );
 
                     break;
                 default:
                     handleTouchMove(
-                        event.pointerIndex,
-                        event.x * scale,
-                        event.y * scale
+                        pointerIndex,
+                        x * scale,
+                        y * scale
                     );
 
                     break;
             }
 
-            lastActiveActions[event.pointerIndex] = event.action;
+            lastActiveActions[pointerIndex] = action;
         }
     }
 
@@ -101,21 +145,29 @@ public class ScratchPathManager implements ScratchPathPointsAggregator {
             activePath = this.activePaths[pointerIndex];
         }
 
-        // If the active Path has been drawn, it would have been reset to an empty state
+        // If the active Path has been drawn, it would have been reset to an empty state,
+        // or replaced entirely if it was handed off in a ScratchPathBatch
         if (activePath.isEmpty()) {
             activePath.moveTo(x, y);
+
+            if (!activePathsListed[pointerIndex]) {
+                paths.add(activePath);
+
+                activePathsListed[pointerIndex] = true;
+            }
         }
 
         activePath.lineTo(x, y);
     }
 
     protected void createPath(int pointerIndex, float x, float y) {
-        Path activePath = new Path();
+        Path activePath = obtainPath();
         activePath.moveTo(x, y);
 
         this.activePaths[pointerIndex] = activePath;
 
         this.paths.add(activePath);
+        this.activePathsListed[pointerIndex] = true;
     }
 
     /**
@@ -134,9 +186,110 @@ public class ScratchPathManager implements ScratchPathPointsAggregator {
         }
     }
 
+    /**
+     * Add the supplied points and hand off all un-rendered Path segments as an immutable
+     * {@link ScratchPathBatch}, instead of drawing them.
+     * <br><br>
+     * The points are expected to share a single {@link ScratchPathPointBuffer#getStrokeScale(int)},
+     * as only the first point's is applied to the batch.
+     * <br><br>
+     * The handed-off Paths are not modified again until the batch has been released:
+     * pointers that remain active continue on new Paths with the same behavior as after
+     * {@link #drawAndReset(Canvas, Paint)}.
+     * <br><br>
+     * Once the returned batch is no longer needed by the caller, it should be released with
+     * {@link ScratchPathBatch#release()}, so that it can be reused for a later batch.
+     */
+    public ScratchPathBatch createBatch(Collection<ScratchPathPoint> events) {
+        ScratchPathPointBuffer points = new ScratchPathPointBuffer(events.size());
+        points.addAll(events);
+
+        return createBatch(points);
+    }
+
+    /**
+     * Equivalent to {@link #createBatch(Collection)}, with the batch holding a copy of
+     * the supplied points, so that the buffer can be reused as soon as this returns.
+     */
+    public ScratchPathBatch createBatch(ScratchPathPointBuffer points) {
+        synchronized (paths) {
+            addScratchPathPoints(points);
+
+            for (Path path : paths) {
+                if (!path.isEmpty()) {
+                    batchPaths.add(path);
+
+                    continue;
+                }
+
+                if (recycledPaths.size() < RECYCLED_PATH_LIMIT) {
+                    path.rewind();
+
+                    recycledPaths.add(path);
+                }
+            }
+
+            this.paths.clear();
+
+            for (int i = 0; i < POINTER_LIMIT; i++) {
+                activePathsListed[i] = false;
+
+                if (activePaths[i] != null) {
+                    activePaths[i] = obtainPath();
+                }
+            }
+
+            final float pointsStrokeScale = points.isEmpty() ? 1f : points.getStrokeScale(0);
+
+            ScratchPathBatch batch = recycledBatches.isEmpty()
+                ? new ScratchPathBatch(this)
+                : recycledBatches.remove(recycledBatches.size() - 1);
+
+            batch.set(points, batchPaths, strokeScale * pointsStrokeScale);
+
+            batchPaths.clear();
+
+            return batch;
+        }
+    }
+
+    /**
+     * Take back a batch that's no longer referenced, rewinding its Paths so that
+     * their storage is reused by the next ones.
+     */
+    void recycle(ScratchPathBatch batch) {
+        synchronized (paths) {
+            final int start = recycledPaths.size();
+
+            batch.drainPaths(recycledPaths);
+
+            while (RECYCLED_PATH_LIMIT < recycledPaths.size()) {
+                recycledPaths.remove(recycledPaths.size() - 1);
+            }
+
+            for (int i = start; i < recycledPaths.size(); i++) {
+                recycledPaths.get(i).rewind();
+            }
+
+            if (recycledBatches.size() < RECYCLED_BATCH_LIMIT) {
+                recycledBatches.add(batch);
+            }
+        }
+    }
+
+    /**
+     * Must be called while holding the paths lock.
+     */
+    private Path obtainPath() {
+        return recycledPaths.isEmpty()
+            ? new Path()
+            : recycledPaths.remove(recycledPaths.size() - 1);
+    }
+
     public void clear() {
         synchronized (paths) {
             this.activePaths = new Path[POINTER_LIMIT];
+            this.activePathsListed = new boolean[POINTER_LIMIT];
             this.lastActiveActions = new int[POINTER_LIMIT];
             this.paths.clear();
         }
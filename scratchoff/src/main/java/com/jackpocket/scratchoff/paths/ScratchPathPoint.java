@@ -4,7 +4,6 @@ import android.os.Parcel;
 import android.os.Parcelable;
 import android.view.MotionEvent;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class ScratchPathPoint implements Parcelable {
@@ -60,37 +59,19 @@ public class ScratchPathPoint implements Parcelable {
             && another.action == this.action;
     }
 
+    /**
+     * Create a {@link ScratchPathPoint} for every historical and current position of each
+     * pointer in the MotionEvent. Use a {@link ScratchPathPointBuffer} instead to avoid
+     * allocating an instance per point.
+     */
     public static List<ScratchPathPoint> create(MotionEvent event) {
-        final int historySize = event.getHistorySize();
-        final int pointersCount = event.getPointerCount();
-
-        ArrayList<ScratchPathPoint> events = new ArrayList<ScratchPathPoint>((historySize * pointersCount) + pointersCount);
-
-        for (int historyIndex = 0; historyIndex < historySize; historyIndex++) {
-            for (int pointerIndex = 0; pointerIndex < pointersCount; pointerIndex++) {
-                events.add(
-                    new ScratchPathPoint(
-                        pointerIndex,
-                        event.getHistoricalX(pointerIndex, historyIndex),
-                        event.getHistoricalY(pointerIndex, historyIndex),
-                        MotionEvent.ACTION_MOVE
-                    )
-                );
-            }
-        }
+        ScratchPathPointBuffer points = new ScratchPathPointBuffer(
+            (event.getHistorySize() * event.getPointerCount()) + event.getPointerCount()
+        );
 
-        for (int pointerIndex = 0; pointerIndex < pointersCount; pointerIndex++) {
-            events.add(
-                new ScratchPathPoint(
-                    pointerIndex,
-                    event.getX(pointerIndex),
-                    event.getY(pointerIndex),
-                    event.getActionMasked()
-                )
-            );
-        }
+        points.addAll(event);
 
-        return events;
+        return points.toList();
     }
 
     public static final Creator<ScratchPathPoint> CREATOR = new Creator<ScratchPathPoint>() {
@@ -0,0 +1,295 @@
+package com.jackpocket.scratchoff.paths;
+
+import android.view.MotionEvent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A growable ring of points stored in parallel primitive arrays, so that they can be
+ * collected and read back without allocating a {@link ScratchPathPoint} for each one.
+ * <br><br>
+ * Each point also carries the factor its touch radius was scaled by when it was drawn,
+ * which is 1 unless it was restored from a different layout size, so that it can be
+ * drawn at the same radius again however many times it's saved and restored.
+ * <br><br>
+ * The capacity doubles whenever it is exceeded and is retained by {@link #clear()} and
+ * {@link #removeFirst(int)}, so a buffer that is reused for every MotionEvent stops
+ * allocating once it has grown to fit the largest one.
+ * <br><br>
+ * This class is not Thread-safe.
+ */
+public class ScratchPathPointBuffer {
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private int[] pointerIndices;
+    private float[] xs;
+    private float[] ys;
+    private int[] actions;
+    private float[] strokeScales;
+
+    private int head = 0;
+    private int size = 0;
+
+    public ScratchPathPointBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ScratchPathPointBuffer(int initialCapacity) {
+        allocate(roundUpToPowerOfTwo(initialCapacity));
+    }
+
+    private void allocate(int capacity) {
+        this.pointerIndices = new int[capacity];
+        this.xs = new float[capacity];
+        this.ys = new float[capacity];
+        this.actions = new int[capacity];
+        this.strokeScales = new float[capacity];
+    }
+
+    public void add(int pointerIndex, float x, float y, int action) {
+        add(pointerIndex, x, y, action, 1f);
+    }
+
+    public void add(int pointerIndex, float x, float y, int action, float strokeScale) {
+        ensureCapacity(size + 1);
+
+        final int position = (head + size) & (xs.length - 1);
+
+        pointerIndices[position] = pointerIndex;
+        xs[position] = x;
+        ys[position] = y;
+        actions[position] = action;
+        strokeScales[position] = strokeScale;
+
+        this.size += 1;
+    }
+
+    public void add(ScratchPathPoint point) {
+        add(point.pointerIndex, point.x, point.y, point.action);
+    }
+
+    public void addAll(Collection<ScratchPathPoint> points) {
+        ensureCapacity(size + points.size());
+
+        for (ScratchPathPoint point : points) {
+            add(point);
+        }
+    }
+
+    public void addAll(ScratchPathPointBuffer points) {
+        addAll(points, 0, points.size());
+    }
+
+    /**
+     * Add the points of the supplied buffer from fromIndex, inclusive, to toIndex, exclusive.
+     */
+    public void addAll(ScratchPathPointBuffer points, int fromIndex, int toIndex) {
+        ensureCapacity(size + (toIndex - fromIndex));
+
+        for (int i = fromIndex; i < toIndex; i++) {
+            add(
+                points.getPointerIndex(i),
+                points.getX(i),
+                points.getY(i),
+                points.getAction(i),
+                points.getStrokeScale(i)
+            );
+        }
+    }
+
+    /**
+     * Add every historical and current position of each pointer in the MotionEvent,
+     * in the same order as {@link ScratchPathPoint#create(MotionEvent)}.
+     */
+    public void addAll(MotionEvent event) {
+        final int historySize = event.getHistorySize();
+        final int pointersCount = event.getPointerCount();
+
+        ensureCapacity(size + (historySize * pointersCount) + pointersCount);
+
+        for (int historyIndex = 0; historyIndex < historySize; historyIndex++) {
+            for (int pointerIndex = 0; pointerIndex < pointersCount; pointerIndex++) {
+                add(
+                    pointerIndex,
+                    event.getHistoricalX(pointerIndex, historyIndex),
+                    event.getHistoricalY(pointerIndex, historyIndex),
+                    MotionEvent.ACTION_MOVE
+                );
+            }
+        }
+
+        final int action = event.getActionMasked();
+
+        for (int pointerIndex = 0; pointerIndex < pointersCount; pointerIndex++) {
+            add(
+                pointerIndex,
+                event.getX(pointerIndex),
+                event.getY(pointerIndex),
+                action
+            );
+        }
+    }
+
+    public int getPointerIndex(int index) {
+        return pointerIndices[toPosition(index)];
+    }
+
+    public float getX(int index) {
+        return xs[toPosition(index)];
+    }
+
+    public float getY(int index) {
+        return ys[toPosition(index)];
+    }
+
+    public int getAction(int index) {
+        return actions[toPosition(index)];
+    }
+
+    /**
+     * @return the factor that the touch radius is multiplied by when drawing the point at the supplied index
+     */
+    public float getStrokeScale(int index) {
+        return strokeScales[toPosition(index)];
+    }
+
+    /**
+     * @return a new {@link ScratchPathPoint} holding the values at the supplied index
+     */
+    public ScratchPathPoint get(int index) {
+        final int position = toPosition(index);
+
+        return new ScratchPathPoint(
+            pointerIndices[position],
+            xs[position],
+            ys[position],
+            actions[position]
+        );
+    }
+
+    /**
+     * @return a new List containing a {@link ScratchPathPoint} for every point in this buffer
+     */
+    public List<ScratchPathPoint> toList() {
+        ArrayList<ScratchPathPoint> points = new ArrayList<ScratchPathPoint>(size);
+
+        for (int i = 0; i < size; i++) {
+            points.add(get(i));
+        }
+
+        return points;
+    }
+
+    /**
+     * @return a new buffer containing the points of this buffer, with no more capacity than is required
+     */
+    public ScratchPathPointBuffer copy() {
+        ScratchPathPointBuffer copy = new ScratchPathPointBuffer(size);
+        copy.addAll(this);
+
+        return copy;
+    }
+
+    /**
+     * Multiply the position of every point in this buffer by the supplied factors.
+     */
+    public void scale(float scaleX, float scaleY) {
+        for (int i = 0; i < size; i++) {
+            final int position = (head + i) & (xs.length - 1);
+
+            xs[position] *= scaleX;
+            ys[position] *= scaleY;
+        }
+    }
+
+    /**
+     * Multiply the stroke scale of every point in this buffer by the supplied factor.
+     */
+    public void scaleStroke(float strokeScale) {
+        for (int i = 0; i < size; i++) {
+            strokeScales[(head + i) & (xs.length - 1)] *= strokeScale;
+        }
+    }
+
+    /**
+     * Remove the oldest points from this buffer, without releasing the capacity they occupied.
+     */
+    public void removeFirst(int count) {
+        final int removed = Math.min(size, Math.max(0, count));
+
+        this.head = (head + removed) & (xs.length - 1);
+        this.size -= removed;
+    }
+
+    public void clear() {
+        this.head = 0;
+        this.size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    protected int getCapacity() {
+        return xs.length;
+    }
+
+    private int toPosition(int index) {
+        if (index < 0 || size <= index) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+
+        return (head + index) & (xs.length - 1);
+    }
+
+    private void ensureCapacity(int required) {
+        final int capacity = xs.length;
+
+        if (required <= capacity) {
+            return;
+        }
+
+        final int[] pointerIndices = this.pointerIndices;
+        final float[] xs = this.xs;
+        final float[] ys = this.ys;
+        final int[] actions = this.actions;
+        final float[] strokeScales = this.strokeScales;
+
+        allocate(roundUpToPowerOfTwo(required));
+
+        // Unroll the ring so that the oldest point is at the start of the new arrays
+        final int leading = Math.min(size, capacity - head);
+        final int trailing = size - leading;
+
+        System.arraycopy(pointerIndices, head, this.pointerIndices, 0, leading);
+        System.arraycopy(xs, head, this.xs, 0, leading);
+        System.arraycopy(ys, head, this.ys, 0, leading);
+        System.arraycopy(actions, head, this.actions, 0, leading);
+        System.arraycopy(strokeScales, head, this.strokeScales, 0, leading);
+
+        System.arraycopy(pointerIndices, 0, this.pointerIndices, leading, trailing);
+        System.arraycopy(xs, 0, this.xs, leading, trailing);
+        System.arraycopy(ys, 0, this.ys, leading, trailing);
+        System.arraycopy(actions, 0, this.actions, leading, trailing);
+        System.arraycopy(strokeScales, 0, this.strokeScales, leading, trailing);
+
+        this.head = 0;
+    }
+
+    private static int roundUpToPowerOfTwo(int value) {
+        int capacity = 1;
+
+        while (capacity < value) {
+            capacity <<= 1;
+        }
+
+        return capacity;
+    }
+}
@@ -0,0 +1,335 @@
+package com.jackpocket.scratchoff.paths;
+
+import com.jackpocket.scratchoff.tools.VarintReader;
+import com.jackpocket.scratchoff.tools.VarintWriter;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A compact binary encoding for a history of {@link ScratchPathPoint} instances.
+ * <br><br>
+ * Coordinates are quantized to 1/{@link #QUANTIZATION_STEPS_PER_PX} of a pixel and stored as the
+ * difference from the previous point of the same pointer. Consecutive points sharing a pointer
+ * index and action are grouped into a single run that stores them only once, and every value
+ * is written as a variable-length integer, so that the common case of a continuous move takes
+ * 2 to 4 bytes per point.
+ * <br><br>
+ * The layout is: the format version, the quantization steps per pixel, and the total point count,
+ * followed by runs of the point count, pointer index, and action, each followed by the
+ * zig-zag encoded x and y deltas of its points.
+ * <br><br>
+ * Since version 2, the pointer index is shifted left by one, with the low bit set when the run's
+ * {@link ScratchPathPointBuffer#getStrokeScale(int)} differs from the previous run's, in which case
+ * the bits of the new stroke scale follow the action. The stroke scale starts at 1, so that it
+ * takes no space unless the history was restored from a different layout size.
+ * Version 1 histories are still decoded, with every point at a stroke scale of 1.
+ */
+public class ScratchPathPointCodec {
+
+    public static final int VERSION = 2;
+
+    private static final int VERSION_WITHOUT_STROKE_SCALE = 1;
+
+    public static final int QUANTIZATION_STEPS_PER_PX = 8;
+
+    /**
+     * Reads the points of an encoded history one at a time, without allocating for each point.
+     * <br><br>
+     * This class is not Thread-safe.
+     */
+    public static class Decoder {
+
+        private final VarintReader reader;
+
+        private final int version;
+        private final float quantizationStepsPerPx;
+        private final int count;
+        private int decodedCount = 0;
+
+        private int runRemaining = 0;
+        private int runPointerIndex = 0;
+        private int runAction = 0;
+        private float runStrokeScale = 1f;
+
+        private int[] lastXs = new int[4];
+        private int[] lastYs = new int[4];
+
+        private int pointerIndex;
+        private float x;
+        private float y;
+        private int action;
+        private float strokeScale = 1f;
+
+        public Decoder(byte[] data) {
+            this.reader = new VarintReader(data);
+            this.version = reader.read();
+
+            if (version != VERSION && version != VERSION_WITHOUT_STROKE_SCALE) {
+                throw new IllegalArgumentException("Unsupported history version: " + version);
+            }
+
+            this.quantizationStepsPerPx = reader.read();
+            this.count = reader.read();
+        }
+
+        public boolean hasNext() {
+            return decodedCount < count;
+        }
+
+        /**
+         * Advance to the next point, whose values are then available from the getters.
+         */
+        public void next() {
+            if (!hasNext()) {
+                throw new IndexOutOfBoundsException("Index: " + decodedCount + ", Size: " + count);
+            }
+
+            if (runRemaining == 0) {
+                readRunHeader();
+            }
+
+            final int quantizedX = lastXs[runPointerIndex] + reader.readSigned();
+            final int quantizedY = lastYs[runPointerIndex] + reader.readSigned();
+
+            lastXs[runPointerIndex] = quantizedX;
+            lastYs[runPointerIndex] = quantizedY;
+
+            this.pointerIndex = runPointerIndex;
+            this.x = quantizedX / quantizationStepsPerPx;
+            this.y = quantizedY / quantizationStepsPerPx;
+            this.action = runAction;
+            this.strokeScale = runStrokeScale;
+
+            this.runRemaining -= 1;
+            this.decodedCount += 1;
+        }
+
+        private void readRunHeader() {
+            this.runRemaining = reader.read();
+
+            final int pointerIndex = reader.read();
+
+            this.runAction = reader.read();
+
+            if (version == VERSION_WITHOUT_STROKE_SCALE) {
+                this.runPointerIndex = pointerIndex;
+            }
+            else {
+                this.runPointerIndex = pointerIndex >>> 1;
+
+                if ((pointerIndex & 1) != 0) {
+                    this.runStrokeScale = Float.intBitsToFloat(reader.read());
+                }
+            }
+
+            ensurePointerCapacity(runPointerIndex);
+        }
+
+        /**
+         * @return the stroke scale of the next point, without decoding it
+         */
+        public float peekStrokeScale() {
+            if (0 < runRemaining) {
+                return runStrokeScale;
+            }
+
+            readRunHeader();
+
+            return runStrokeScale;
+        }
+
+        /**
+         * Decode up to the supplied number of points into the buffer.
+         *
+         * @return the number of points decoded
+         */
+        public int decodeInto(ScratchPathPointBuffer points, int maxCount) {
+            int decoded = 0;
+
+            while (decoded < maxCount && hasNext()) {
+                next();
+
+                points.add(pointerIndex, x, y, action, strokeScale);
+
+                decoded += 1;
+            }
+
+            return decoded;
+        }
+
+        /**
+         * Equivalent to {@link #decodeInto(ScratchPathPointBuffer, int)}, stopping before the first point
+         * whose stroke scale differs from the first decoded point's, so that every point decoded
+         * by a single call can be drawn at the same stroke scale.
+         *
+         * @return the number of points decoded
+         */
+        public int decodeRunInto(ScratchPathPointBuffer points, int maxCount) {
+            if (maxCount < 1 || !hasNext()) {
+                return 0;
+            }
+
+            final float strokeScale = peekStrokeScale();
+
+            int decoded = 0;
+
+            while (decoded < maxCount && hasNext() && peekStrokeScale() == strokeScale) {
+                next();
+
+                points.add(pointerIndex, x, y, action, strokeScale);
+
+                decoded += 1;
+            }
+
+            return decoded;
+        }
+
+        public int getPointerIndex() {
+            return pointerIndex;
+        }
+
+        public float getX() {
+            return x;
+        }
+
+        public float getY() {
+            return y;
+        }
+
+        public int getAction() {
+            return action;
+        }
+
+        public float getStrokeScale() {
+            return strokeScale;
+        }
+
+        /**
+         * @return the total number of points in the encoded history
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return the number of points decoded so far
+         */
+        public int getDecodedCount() {
+            return decodedCount;
+        }
+
+        private void ensurePointerCapacity(int pointerIndex) {
+            if (pointerIndex < lastXs.length) {
+                return;
+            }
+
+            this.lastXs = Arrays.copyOf(lastXs, pointerIndex + 1);
+            this.lastYs = Arrays.copyOf(lastYs, pointerIndex + 1);
+        }
+    }
+
+    private final VarintWriter writer;
+
+    private int[] lastXs = new int[4];
+    private int[] lastYs = new int[4];
+    private float lastStrokeScale = 1f;
+
+    private ScratchPathPointCodec(int pointCount) {
+        // Enough for the header and a continuous single-pointer move
+        this.writer = new VarintWriter(16 + (pointCount * 3));
+    }
+
+    public static byte[] encode(Collection<ScratchPathPoint> points) {
+        ScratchPathPointBuffer buffer = new ScratchPathPointBuffer(points.size());
+        buffer.addAll(points);
+
+        return encode(buffer);
+    }
+
+    public static byte[] encode(ScratchPathPointBuffer points) {
+        final int count = points.size();
+
+        ScratchPathPointCodec codec = new ScratchPathPointCodec(count);
+        codec.writer.write(VERSION);
+        codec.writer.write(QUANTIZATION_STEPS_PER_PX);
+        codec.writer.write(count);
+
+        int runStart = 0;
+
+        while (runStart < count) {
+            final int pointerIndex = points.getPointerIndex(runStart);
+            final int action = points.getAction(runStart);
+            final float strokeScale = points.getStrokeScale(runStart);
+
+            int runEnd = runStart + 1;
+
+            while (runEnd < count && isSameRun(points, runEnd, pointerIndex, action, strokeScale)) {
+                runEnd++;
+            }
+
+            codec.writeRun(points, runStart, runEnd, pointerIndex, action, strokeScale);
+
+            runStart = runEnd;
+        }
+
+        return codec.writer.toByteArray();
+    }
+
+    private static boolean isSameRun(ScratchPathPointBuffer points, int index, int pointerIndex, int action, float strokeScale) {
+        return points.getPointerIndex(index) == pointerIndex
+            && points.getAction(index) == action
+            && points.getStrokeScale(index) == strokeScale;
+    }
+
+    /**
+     * Decode every point of an encoded history into the supplied buffer.
+     *
+     * @return the number of points decoded
+     */
+    public static int decode(byte[] data, ScratchPathPointBuffer points) {
+        Decoder decoder = new Decoder(data);
+
+        return decoder.decodeInto(points, decoder.getCount());
+    }
+
+    private void writeRun(ScratchPathPointBuffer points, int start, int end, int pointerIndex, int action, float strokeScale) {
+        final boolean strokeScaleChanged = strokeScale != lastStrokeScale;
+
+        writer.write(end - start);
+        writer.write((pointerIndex << 1) | (strokeScaleChanged ? 1 : 0));
+        writer.write(action);
+
+        if (strokeScaleChanged) {
+            writer.write(Float.floatToIntBits(strokeScale));
+
+            this.lastStrokeScale = strokeScale;
+        }
+
+        ensurePointerCapacity(pointerIndex);
+
+        for (int i = start; i < end; i++) {
+            final int quantizedX = quantize(points.getX(i));
+            final int quantizedY = quantize(points.getY(i));
+
+            writer.writeSigned(quantizedX - lastXs[pointerIndex]);
+            writer.writeSigned(quantizedY - lastYs[pointerIndex]);
+
+            lastXs[pointerIndex] = quantizedX;
+            lastYs[pointerIndex] = quantizedY;
+        }
+    }
+
+    private void ensurePointerCapacity(int pointerIndex) {
+        if (pointerIndex < lastXs.length) {
+            return;
+        }
+
+        this.lastXs = Arrays.copyOf(lastXs, pointerIndex + 1);
+        this.lastYs = Arrays.copyOf(lastYs, pointerIndex + 1);
+    }
+
+    private static int quantize(float value) {
+        return Math.round(value * QUANTIZATION_STEPS_PER_PX);
+    }
+}
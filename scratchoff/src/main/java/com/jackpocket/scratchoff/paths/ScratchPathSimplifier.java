@@ -0,0 +1,211 @@
+package com.jackpocket.scratchoff.paths;
+
+import android.view.MotionEvent;
+
+import java.util.Arrays;
+
+/**
+ * Removes the move points of a history that add nothing to its coverage, using the
+ * Ramer-Douglas-Peucker algorithm on each stroke, with the distance of each point measured
+ * to the simplified segment itself rather than to its infinite line.
+ * <br><br>
+ * As every stroke is drawn as a polyline with round caps and joins, and each removed point is
+ * within the tolerance of the segment replacing it, the covered area of the simplified history
+ * differs from the original by no more than the tolerance at its edges. Runs of repeated or
+ * jittering points within the tolerance of each other are merged in the same way.
+ * <br><br>
+ * Only move points are ever removed, and the first and last point of every stroke are kept,
+ * so the strokes of each pointer start, continue, and end exactly as before, and the points
+ * of different pointers keep their relative order.
+ */
+public class ScratchPathSimplifier {
+
+    public static final float DEFAULT_TOLERANCE_PX = 0.25f;
+
+    private static final int POINTER_LIMIT = 10;
+
+    private final ScratchPathPointBuffer points;
+    private final float toleranceSquared;
+
+    private final boolean[] kept;
+
+    // The indices of the points of the current stroke of each pointer
+    private final int[][] strokes = new int[POINTER_LIMIT][];
+    private final int[] strokeSizes = new int[POINTER_LIMIT];
+    private final int[] lastActions = new int[POINTER_LIMIT];
+
+    private int[] pendingRanges = new int[32];
+
+    private ScratchPathSimplifier(ScratchPathPointBuffer points, float tolerancePx) {
+        this.points = points;
+        this.toleranceSquared = tolerancePx * tolerancePx;
+        this.kept = new boolean[points.size()];
+
+        for (int i = 0; i < POINTER_LIMIT; i++) {
+            strokes[i] = new int[16];
+        }
+    }
+
+    /**
+     * @return a new buffer containing the points of the supplied buffer that remain after simplification
+     */
+    public static ScratchPathPointBuffer simplify(ScratchPathPointBuffer points, float tolerancePx) {
+        ScratchPathSimplifier simplifier = new ScratchPathSimplifier(points, tolerancePx);
+        simplifier.markKeptPoints();
+
+        final int count = points.size();
+
+        ScratchPathPointBuffer simplified = new ScratchPathPointBuffer(count);
+
+        for (int i = 0; i < count; i++) {
+            if (simplifier.kept[i]) {
+                simplified.addAll(points, i, i + 1);
+            }
+        }
+
+        return simplified;
+    }
+
+    private void markKeptPoints() {
+        final int count = points.size();
+
+        for (int i = 0; i < count; i++) {
+            final int pointerIndex = points.getPointerIndex(i);
+            final int action = points.getAction(i);
+
+            // The ScratchPathManager ignores pointers beyond its limit, so they're kept as-is
+            if (POINTER_LIMIT <= pointerIndex) {
+                kept[i] = true;
+
+                continue;
+            }
+
+            switch (action) {
+                case MotionEvent.ACTION_DOWN:
+                case MotionEvent.ACTION_POINTER_DOWN:
+                    endStroke(pointerIndex);
+                    addToStroke(pointerIndex, i);
+
+                    break;
+                case MotionEvent.ACTION_MOVE:
+                    // A move after the pointer went up starts a new Path in the ScratchPathManager
+                    if (MotionEvent.ACTION_POINTER_UP == lastActions[pointerIndex]) {
+                        endStroke(pointerIndex);
+                    }
+
+                    addToStroke(pointerIndex, i);
+
+                    break;
+                default:
+                    endStroke(pointerIndex);
+
+                    kept[i] = true;
+
+                    break;
+            }
+
+            lastActions[pointerIndex] = action;
+        }
+
+        for (int pointerIndex = 0; pointerIndex < POINTER_LIMIT; pointerIndex++) {
+            endStroke(pointerIndex);
+        }
+    }
+
+    private void addToStroke(int pointerIndex, int index) {
+        final int size = strokeSizes[pointerIndex];
+
+        if (strokes[pointerIndex].length == size) {
+            strokes[pointerIndex] = Arrays.copyOf(strokes[pointerIndex], size * 2);
+        }
+
+        strokes[pointerIndex][size] = index;
+        strokeSizes[pointerIndex] = size + 1;
+    }
+
+    private void endStroke(int pointerIndex) {
+        final int[] stroke = strokes[pointerIndex];
+        final int size = strokeSizes[pointerIndex];
+
+        strokeSizes[pointerIndex] = 0;
+
+        if (size == 0) {
+            return;
+        }
+
+        kept[stroke[0]] = true;
+        kept[stroke[size - 1]] = true;
+
+        // Iterative, as a stroke may be far longer than the stack would allow recursing into
+        int pending = pushRange(0, 0, size - 1);
+
+        while (0 < pending) {
+            pending -= 2;
+
+            final int start = pendingRanges[pending];
+            final int end = pendingRanges[pending + 1];
+
+            final int farthest = findFarthestPoint(stroke, start, end);
+
+            if (farthest < 0) {
+                continue;
+            }
+
+            kept[stroke[farthest]] = true;
+
+            pending = pushRange(pending, start, farthest);
+            pending = pushRange(pending, farthest, end);
+        }
+    }
+
+    private int pushRange(int pending, int start, int end) {
+        if (end - start < 2) {
+            return pending;
+        }
+
+        if (pendingRanges.length < pending + 2) {
+            this.pendingRanges = Arrays.copyOf(pendingRanges, pendingRanges.length * 2);
+        }
+
+        pendingRanges[pending] = start;
+        pendingRanges[pending + 1] = end;
+
+        return pending + 2;
+    }
+
+    /**
+     * @return the position within the stroke of the point between start and end that is farthest
+     * from the segment joining them, or -1 if every point is within the tolerance
+     */
+    private int findFarthestPoint(int[] stroke, int start, int end) {
+        final float x0 = points.getX(stroke[start]);
+        final float y0 = points.getY(stroke[start]);
+        final float dx = points.getX(stroke[end]) - x0;
+        final float dy = points.getY(stroke[end]) - y0;
+        final float lengthSquared = dx * dx + dy * dy;
+
+        float farthestDistanceSquared = toleranceSquared;
+        int farthest = -1;
+
+        for (int i = start + 1; i < end; i++) {
+            final float px = points.getX(stroke[i]) - x0;
+            final float py = points.getY(stroke[i]) - y0;
+
+            // The projection is clamped to the segment, so that points doubling back beyond its ends are kept
+            final float t = lengthSquared == 0
+                ? 0
+                : Math.max(0, Math.min(1, (px * dx + py * dy) / lengthSquared));
+
+            final float ox = px - t * dx;
+            final float oy = py - t * dy;
+            final float distanceSquared = ox * ox + oy * oy;
+
+            if (farthestDistanceSquared < distanceSquared) {
+                farthestDistanceSquared = distanceSquared;
+                farthest = i;
+            }
+        }
+
+        return farthest;
+    }
+}
@@ -0,0 +1,255 @@
+package com.jackpocket.scratchoff.tools;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Shader;
+import android.view.View;
+
+import com.jackpocket.scratchoff.paths.ScratchPathBatch;
+
+/**
+ * A scratchable overlay that never modifies the rendered content of the View. Instead, the
+ * content is kept in an ARGB_8888 Bitmap that is never drawn to again, and the scratched paths
+ * are erased from an ALPHA_8 mask of the same size, which takes a quarter of the content's memory.
+ * <br><br>
+ * The two are composited when drawing, by drawing the mask with a Paint whose
+ * {@link BitmapShader} samples the content. As the content never changes, a hardware-accelerated
+ * Canvas only needs to upload it once, and each frame only re-uploads the mask and performs the
+ * blending itself, rather than the CPU erasing from a full ARGB_8888 copy.
+ * <br><br>
+ * On API 26 and above, the content may instead be kept in a {@link Bitmap.Config#HARDWARE} Bitmap,
+ * which only lives in graphics memory, leaving the mask as the only Bitmap in the heap. Such an
+ * overlay can then only be drawn into a hardware-accelerated Canvas.
+ * <br><br>
+ * Both Bitmaps may also be stored at a fraction of the original resolution, in which case
+ * the mask is erased through a scaled Canvas and the content is filtered when drawn.
+ * <br><br>
+ * This class is not Thread-safe, except for {@link #draw(Canvas, Paint)} with a null Paint.
+ */
+public class AlphaMaskOverlay implements ScratchableOverlay {
+
+    private static final int MASK_VISIBLE = 0xFF000000;
+
+    private final int width;
+    private final int height;
+    private final float scale;
+    private final BitmapPool bitmapPool;
+
+    private final Bitmap content;
+    private final Bitmap mask;
+    private final Canvas maskCanvas;
+
+    private final BitmapShader contentShader;
+    private final Paint revealPaint;
+
+    // Only used for draws with a supplied Paint, which are not expected to happen concurrently
+    private final Paint compositePaint = new Paint();
+
+    private volatile boolean recycled = false;
+
+    /**
+     * @param content the rendered content, which must never be modified after being supplied
+     */
+    public AlphaMaskOverlay(Bitmap content) {
+        this(content, content.getWidth(), content.getHeight(), 1f);
+    }
+
+    /**
+     * @param content the rendered content, which must never be modified after being supplied
+     * @param width the width of the overlay, in the coordinate space of the scratchable layout
+     * @param height the height of the overlay, in the coordinate space of the scratchable layout
+     * @param scale the fraction of the original size that the content was rendered at
+     */
+    public AlphaMaskOverlay(Bitmap content, int width, int height, float scale) {
+        this(content, width, height, scale, BitmapPool.UNPOOLED);
+    }
+
+    /**
+     * @param bitmapPool the {@link BitmapPool} the mask is obtained from and released to
+     */
+    public AlphaMaskOverlay(Bitmap content, int width, int height, float scale, BitmapPool bitmapPool) {
+        this.width = width;
+        this.height = height;
+        this.scale = scale;
+        this.bitmapPool = bitmapPool;
+
+        this.content = content;
+        this.mask = bitmapPool.obtain(content.getWidth(), content.getHeight(), Bitmap.Config.ALPHA_8);
+        this.mask.eraseColor(MASK_VISIBLE);
+        this.maskCanvas = new Canvas(mask);
+        this.maskCanvas.scale(scale, scale);
+
+        this.contentShader = new BitmapShader(content, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+
+        this.revealPaint = new Paint();
+        this.revealPaint.setShader(contentShader);
+
+        // Content stored at a reduced resolution is filtered when scaled back up
+        this.revealPaint.setFilterBitmap(scale != 1f);
+    }
+
+    /**
+     * Render the View into the immutable content of a new {@link AlphaMaskOverlay} of the same size.
+     */
+    public static AlphaMaskOverlay createFromView(View view) {
+        return createFromView(view, 1f);
+    }
+
+    /**
+     * Render the View into the immutable content of a new {@link AlphaMaskOverlay} of the same size,
+     * stored at the supplied fraction of its original resolution.
+     */
+    public static AlphaMaskOverlay createFromView(View view, float scale) {
+        return createFromView(view, scale, BitmapPool.UNPOOLED);
+    }
+
+    /**
+     * Render the View into the content of a new {@link AlphaMaskOverlay} of the same size,
+     * stored at the supplied fraction of its original resolution. The content and the mask
+     * are obtained from the {@link BitmapPool}.
+     */
+    public static AlphaMaskOverlay createFromView(View view, float scale, BitmapPool bitmapPool) {
+        Bitmap content = renderView(view, scale, bitmapPool);
+
+        // Rendered straight into the content, which is never drawn to again, so hardware-accelerated
+        // Canvases cache its texture for as long as it's drawn, as they would for an immutable copy
+        return new AlphaMaskOverlay(content, view.getWidth(), view.getHeight(), scale, bitmapPool);
+    }
+
+    /**
+     * Equivalent to {@link #createFromView(View, float, BitmapPool)}, with the content copied into
+     * a {@link Bitmap.Config#HARDWARE} Bitmap, and the Bitmap the View was rendered into released
+     * back to the {@link BitmapPool}. The overlay must then only be drawn into hardware-accelerated Canvases.
+     */
+    @TargetApi(26)
+    public static AlphaMaskOverlay createHardwareFromView(View view, float scale, BitmapPool bitmapPool) {
+        Bitmap rendered = renderView(view, scale, bitmapPool);
+        Bitmap content = rendered.copy(Bitmap.Config.HARDWARE, false);
+
+        bitmapPool.release(rendered);
+
+        return new AlphaMaskOverlay(content, view.getWidth(), view.getHeight(), scale, bitmapPool);
+    }
+
+    private static Bitmap renderView(View view, float scale, BitmapPool bitmapPool) {
+        Bitmap rendered = bitmapPool.obtain(
+            Math.max(1, (int) Math.ceil(view.getWidth() * scale)),
+            Math.max(1, (int) Math.ceil(view.getHeight() * scale)),
+            Bitmap.Config.ARGB_8888
+        );
+
+        Canvas canvas = new Canvas(rendered);
+        canvas.scale(scale, scale);
+
+        view.draw(canvas);
+
+        return rendered;
+    }
+
+    /**
+     * Draw the content through the mask, so that only the areas that have not been erased are drawn.
+     * Any Shader of the supplied Paint is replaced with the one sampling the content.
+     */
+    @Override
+    public void draw(Canvas canvas, Paint paint) {
+        if (recycled) {
+            return;
+        }
+
+        Paint drawPaint = revealPaint;
+
+        if (paint != null) {
+            compositePaint.set(paint);
+            compositePaint.setShader(contentShader);
+
+            drawPaint = compositePaint;
+        }
+
+        if (scale == 1f) {
+            // Drawing an ALPHA_8 Bitmap fills its alpha with the Paint's Shader
+            canvas.drawBitmap(mask, 0, 0, drawPaint);
+
+            return;
+        }
+
+        canvas.save();
+        canvas.scale(1 / scale, 1 / scale);
+        canvas.drawBitmap(mask, 0, 0, drawPaint);
+        canvas.restore();
+    }
+
+    @Override
+    public void erase(ScratchPathBatch batch, Paint clearPaint, Rect bounds) {
+        if (recycled) {
+            return;
+        }
+
+        batch.draw(maskCanvas, clearPaint);
+
+        mask.prepareToDraw();
+    }
+
+    @Override
+    public void eraseMask(Bitmap erasedMask, RectF bounds, Paint maskPaint) {
+        if (recycled) {
+            return;
+        }
+
+        maskCanvas.drawBitmap(erasedMask, null, bounds, maskPaint);
+
+        mask.prepareToDraw();
+    }
+
+    @Override
+    public void trim() {
+        // The content and mask always span the entire overlay, so there is nothing to release
+    }
+
+    @Override
+    public void recycle() {
+        this.recycled = true;
+
+        bitmapPool.release(mask);
+
+        if (!content.isMutable()) {
+            // A hardware or supplied immutable Bitmap can never be pooled
+            content.recycle();
+
+            return;
+        }
+
+        bitmapPool.release(content);
+    }
+
+    @Override
+    public boolean isRecycled() {
+        return recycled;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    public float getScale() {
+        return scale;
+    }
+
+    protected Bitmap getContent() {
+        return content;
+    }
+
+    protected Bitmap getMask() {
+        return mask;
+    }
+}
@@ -0,0 +1,175 @@
+package com.jackpocket.scratchoff.tools;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * A pool of mutable Bitmaps, bucketed by their width, height, and {@link Bitmap.Config},
+ * so that the Bitmaps released by one attach/destroy cycle can be reused by the next
+ * instead of being allocated again.
+ * <br><br>
+ * The pool holds onto no more than its byte budget. When a released Bitmap would exceed it,
+ * the least-recently released Bitmaps are recycled to make room, and a Bitmap larger than
+ * the entire budget is recycled immediately. A pool with a budget of 0 therefore behaves as
+ * if there were no pool at all.
+ * <br><br>
+ * A single instance may be shared between any number of controllers. This class is Thread-safe.
+ */
+public class BitmapPool {
+
+    /**
+     * A pool that never holds onto any Bitmaps
+     */
+    public static final BitmapPool UNPOOLED = new BitmapPool(0);
+
+    private final long budgetBytes;
+
+    private final HashMap<Long, ArrayDeque<Bitmap>> buckets = new HashMap<Long, ArrayDeque<Bitmap>>();
+
+    // Every pooled Bitmap, in the order they were released, for evicting the oldest first
+    private final LinkedHashSet<Bitmap> releaseOrder = new LinkedHashSet<Bitmap>();
+
+    private long pooledBytes = 0;
+
+    /**
+     * @param budgetBytes the maximum number of bytes held by the Bitmaps in this pool
+     */
+    public BitmapPool(long budgetBytes) {
+        this.budgetBytes = Math.max(0, budgetBytes);
+    }
+
+    /**
+     * Take a pooled Bitmap of exactly the supplied size and {@link Bitmap.Config}, or create one
+     * if there are none. A pooled Bitmap is erased to fully transparent before being returned.
+     */
+    public Bitmap obtain(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = takePooled(width, height, config);
+
+        if (bitmap == null) {
+            return Bitmap.createBitmap(width, height, config);
+        }
+
+        bitmap.eraseColor(Color.TRANSPARENT);
+
+        return bitmap;
+    }
+
+    private synchronized Bitmap takePooled(int width, int height, Bitmap.Config config) {
+        ArrayDeque<Bitmap> bucket = buckets.get(createBucketKey(width, height, config));
+
+        if (bucket == null) {
+            return null;
+        }
+
+        Bitmap bitmap = bucket.pollLast();
+
+        if (bitmap == null) {
+            return null;
+        }
+
+        releaseOrder.remove(bitmap);
+
+        this.pooledBytes -= bitmap.getByteCount();
+
+        return bitmap;
+    }
+
+    /**
+     * Return a Bitmap that is no longer in use to the pool, or recycle it if it does not fit in the budget.
+     * The Bitmap must not be drawn or modified by the caller afterwards.
+     */
+    public void release(Bitmap bitmap) {
+        if (!offer(bitmap) && bitmap != null) {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Return a Bitmap that is no longer in use to the pool, without recycling it if it does not
+     * fit in the budget. A pooled Bitmap may be handed out, erased, or recycled at any time,
+     * so it must no longer be read or drawn anywhere, even on another Thread.
+     *
+     * @return false if the Bitmap was not pooled, in which case it is left to the garbage collector
+     */
+    public boolean offer(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return false;
+        }
+
+        final int byteCount = bitmap.getByteCount();
+
+        if (!bitmap.isMutable() || bitmap.getConfig() == null || budgetBytes < byteCount) {
+            return false;
+        }
+
+        final Long key = createBucketKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+
+        synchronized (this) {
+            // Already pooled by an earlier release
+            if (releaseOrder.contains(bitmap)) {
+                return true;
+            }
+
+            trimToSize(budgetBytes - byteCount);
+
+            ArrayDeque<Bitmap> bucket = buckets.get(key);
+
+            if (bucket == null) {
+                bucket = new ArrayDeque<Bitmap>();
+
+                buckets.put(key, bucket);
+            }
+
+            bucket.addLast(bitmap);
+            releaseOrder.add(bitmap);
+
+            this.pooledBytes += byteCount;
+        }
+
+        return true;
+    }
+
+    /**
+     * Recycle every pooled Bitmap.
+     */
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * @return the number of bytes currently held by the pooled Bitmaps
+     */
+    public synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    private void trimToSize(long maxBytes) {
+        Iterator<Bitmap> iterator = releaseOrder.iterator();
+
+        while (maxBytes < pooledBytes && iterator.hasNext()) {
+            Bitmap oldest = iterator.next();
+
+            iterator.remove();
+
+            buckets.get(createBucketKey(oldest.getWidth(), oldest.getHeight(), oldest.getConfig()))
+                .remove(oldest);
+
+            this.pooledBytes -= oldest.getByteCount();
+
+            oldest.recycle();
+        }
+    }
+
+    private static Long createBucketKey(int width, int height, Bitmap.Config config) {
+        return ((long) config.ordinal() << 56) | ((long) width << 28) | height;
+    }
+}
@@ -0,0 +1,252 @@
+package com.jackpocket.scratchoff.tools;
+
+/**
+ * A grid of cells, stored as one bit per cell, that keeps a live count of the
+ * cells marked as scratched, both overall and within each of the target regions.
+ * <br><br>
+ * A cell is considered covered by a shape when its center is inside that shape.
+ * <br><br>
+ * This class has no dependencies on android.graphics and is not thread-safe.
+ */
+public class BitsetCoverageGrid {
+
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final long[] cells;
+
+    private int scratchedCount = 0;
+
+    private int[] regionBounds = new int[0];
+    private int[] regionScratchedCounts = new int[0];
+
+    private double bandStart;
+    private double bandEnd;
+
+    public BitsetCoverageGrid(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.cells = new long[wordsPerRow * height];
+    }
+
+    /**
+     * Set the regions whose scratched counts should be tracked, re-counting
+     * any cells that have already been marked.
+     *
+     * @param regionBounds the flattened bounds of each region, as
+     * [left, top, right, bottom] with exclusive right and bottom values
+     */
+    public void setRegions(int[] regionBounds) {
+        this.regionBounds = regionBounds;
+        this.regionScratchedCounts = new int[regionBounds.length / 4];
+
+        for (int i = 0; i < regionScratchedCounts.length; i++) {
+            regionScratchedCounts[i] = countScratched(
+                regionBounds[i * 4],
+                regionBounds[i * 4 + 1],
+                regionBounds[i * 4 + 2],
+                regionBounds[i * 4 + 3]
+            );
+        }
+    }
+
+    /**
+     * Mark all cells covered by a line segment with round caps.
+     * A segment whose ends are equal marks a circle.
+     */
+    public void markSegment(float x0, float y0, float x1, float y1, float radius) {
+        final double dx = x1 - x0;
+        final double dy = y1 - y0;
+        final double length = Math.sqrt(dx * dx + dy * dy);
+        final double ux = 0 < length ? dx / length : 0;
+        final double uy = 0 < length ? dy / length : 0;
+
+        final int rowStart = Math.max(0, (int) Math.ceil(Math.min(y0, y1) - radius - 0.5));
+        final int rowEnd = Math.min(height - 1, (int) Math.floor(Math.max(y0, y1) + radius - 0.5));
+
+        for (int row = rowStart; row <= rowEnd; row++) {
+            final double cy = row + 0.5;
+
+            double spanStart = Double.POSITIVE_INFINITY;
+            double spanEnd = Double.NEGATIVE_INFINITY;
+
+            double capOffset = circleHalfSpan(cy - y0, radius);
+
+            if (0 <= capOffset) {
+                spanStart = Math.min(spanStart, x0 - capOffset);
+                spanEnd = Math.max(spanEnd, x0 + capOffset);
+            }
+
+            capOffset = circleHalfSpan(cy - y1, radius);
+
+            if (0 <= capOffset) {
+                spanStart = Math.min(spanStart, x1 - capOffset);
+                spanEnd = Math.max(spanEnd, x1 + capOffset);
+            }
+
+            // Restrict to the band within radius of the infinite line (normal = [-uy, ux]),
+            // then to the band between both ends along the segment's direction
+            if (0 < length
+                && solveLinearBand(-uy, (cy - y0) * ux, -radius, radius, x0)) {
+
+                double bodyStart = bandStart;
+                double bodyEnd = bandEnd;
+
+                if (solveLinearBand(ux, (cy - y0) * uy, 0, length, x0)) {
+                    bodyStart = Math.max(bodyStart, bandStart);
+                    bodyEnd = Math.min(bodyEnd, bandEnd);
+
+                    if (bodyStart <= bodyEnd) {
+                        spanStart = Math.min(spanStart, bodyStart);
+                        spanEnd = Math.max(spanEnd, bodyEnd);
+                    }
+                }
+            }
+
+            if (spanEnd < spanStart) {
+                continue;
+            }
+
+            int colStart = Math.max(0, (int) Math.ceil(spanStart - 0.5));
+            int colEnd = Math.min(width - 1, (int) Math.floor(spanEnd - 0.5));
+
+            if (colStart <= colEnd) {
+                markRow(row, colStart, colEnd);
+            }
+        }
+    }
+
+    private static double circleHalfSpan(double distance, double radius) {
+        double remainder = radius * radius - distance * distance;
+
+        return remainder < 0 ? -1 : Math.sqrt(remainder);
+    }
+
+    /**
+     * Solve min <= (x - originX) * coefficient + offset <= max for x, storing
+     * the inclusive range in {@link #bandStart} and {@link #bandEnd}.
+     *
+     * @return false if there is no solution
+     */
+    private boolean solveLinearBand(double coefficient, double offset, double min, double max, double originX) {
+        if (coefficient == 0) {
+            this.bandStart = Double.NEGATIVE_INFINITY;
+            this.bandEnd = Double.POSITIVE_INFINITY;
+
+            return min <= offset && offset <= max;
+        }
+
+        double a = originX + (min - offset) / coefficient;
+        double b = originX + (max - offset) / coefficient;
+
+        this.bandStart = Math.min(a, b);
+        this.bandEnd = Math.max(a, b);
+
+        return true;
+    }
+
+    /**
+     * Mark the cells in [colStart, colEnd] of the row, inclusive, updating the live counts
+     * with only the cells that were not already marked.
+     */
+    protected void markRow(int row, int colStart, int colEnd) {
+        final int rowOffset = row * wordsPerRow;
+
+        for (int i = 0; i < regionScratchedCounts.length; i++) {
+            final int offset = i * 4;
+
+            if (row < regionBounds[offset + 1] || regionBounds[offset + 3] <= row) {
+                continue;
+            }
+
+            int start = Math.max(colStart, regionBounds[offset]);
+            int end = Math.min(colEnd, regionBounds[offset + 2] - 1);
+
+            if (start <= end) {
+                regionScratchedCounts[i] += countInRow(rowOffset, start, end, false);
+            }
+        }
+
+        final int firstWord = colStart >>> 6;
+        final int lastWord = colEnd >>> 6;
+
+        for (int word = firstWord; word <= lastWord; word++) {
+            long mask = createWordMask(word, firstWord, lastWord, colStart, colEnd);
+            long current = cells[rowOffset + word];
+
+            scratchedCount += Long.bitCount(mask & ~current);
+
+            cells[rowOffset + word] = current | mask;
+        }
+    }
+
+    private int countInRow(int rowOffset, int colStart, int colEnd, boolean scratched) {
+        final int firstWord = colStart >>> 6;
+        final int lastWord = colEnd >>> 6;
+
+        int count = 0;
+
+        for (int word = firstWord; word <= lastWord; word++) {
+            long mask = createWordMask(word, firstWord, lastWord, colStart, colEnd);
+            long current = cells[rowOffset + word];
+
+            count += Long.bitCount(mask & (scratched ? current : ~current));
+        }
+
+        return count;
+    }
+
+    private static long createWordMask(int word, int firstWord, int lastWord, int colStart, int colEnd) {
+        int low = word == firstWord ? colStart & 63 : 0;
+        int high = word == lastWord ? colEnd & 63 : 63;
+
+        return (-1L << low) & (-1L >>> (63 - high));
+    }
+
+    /**
+     * Count the marked cells inside the supplied bounds, with exclusive right and bottom values.
+     */
+    public int countScratched(int left, int top, int right, int bottom) {
+        left = Math.max(0, left);
+        top = Math.max(0, top);
+        right = Math.min(width, right);
+        bottom = Math.min(height, bottom);
+
+        if (right <= left) {
+            return 0;
+        }
+
+        int count = 0;
+
+        for (int row = top; row < bottom; row++) {
+            count += countInRow(row * wordsPerRow, left, right - 1, true);
+        }
+
+        return count;
+    }
+
+    public boolean isScratched(int x, int y) {
+        return (cells[y * wordsPerRow + (x >>> 6)] & (1L << (x & 63))) != 0;
+    }
+
+    public int getScratchedCount() {
+        return scratchedCount;
+    }
+
+    /**
+     * @return the live scratched counts for each region supplied to {@link #setRegions(int[])}.
+     * The returned array is owned by this grid and must not be modified.
+     */
+    public int[] getRegionScratchedCounts() {
+        return regionScratchedCounts;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,186 @@
+package com.jackpocket.scratchoff.tools;
+
+/**
+ * Estimates the scratched percentage of a set of target regions directly from the
+ * stroke geometry, treating each segment as a capsule (a line segment with round caps)
+ * and sampling each region on a fixed-size lattice.
+ * <br><br>
+ * The sample budget is shared by the regions in proportion to their area, so that every pixel
+ * carries roughly the same weight wherever it is, but no region is ever sampled with fewer than
+ * {@link #MIN_SAMPLES_PER_REGION}, or it would reach its threshold in coarse jumps.
+ * <br><br>
+ * Segments are applied to the lattice as they arrive, so they are never retained and the
+ * memory used is bounded by the sample budget and the number of regions, regardless of the
+ * size of the regions or the number of segments.
+ * <br><br>
+ * Points can be supplied directly through a {@link StrokeSegmenter}, which connects them into segments.
+ * <br><br>
+ * This class has no dependencies on the Android framework and is not thread-safe.
+ */
+public class CapsuleCoverageEstimator implements StrokeSegmenter.SegmentAggregator {
+
+    public static final int DEFAULT_SAMPLE_BUDGET = 4096;
+    public static final int MIN_SAMPLES_PER_REGION = 256;
+
+    private final int[] regionBounds;
+    private final int[] sampleColumns;
+    private final int[] sampleRows;
+    private final float[] sampleSpacingX;
+    private final float[] sampleSpacingY;
+    private final long[][] coveredSamples;
+    private final int[] coveredSampleCounts;
+
+    /**
+     * @param regionBounds the flattened bounds of each region, as
+     * [left, top, right, bottom] with exclusive right and bottom values
+     * @param sampleBudget the number of samples shared by all regions in proportion to their area,
+     * which is exceeded only to keep {@link #MIN_SAMPLES_PER_REGION} in each region
+     */
+    public CapsuleCoverageEstimator(int[] regionBounds, int sampleBudget) {
+        final int regionCount = regionBounds.length / 4;
+
+        long totalArea = 0;
+
+        for (int i = 0; i < regionCount; i++) {
+            totalArea += getRegionWidth(regionBounds, i) * (long) getRegionHeight(regionBounds, i);
+        }
+
+        this.regionBounds = regionBounds;
+        this.sampleColumns = new int[regionCount];
+        this.sampleRows = new int[regionCount];
+        this.sampleSpacingX = new float[regionCount];
+        this.sampleSpacingY = new float[regionCount];
+        this.coveredSamples = new long[regionCount][];
+        this.coveredSampleCounts = new int[regionCount];
+
+        for (int i = 0; i < regionCount; i++) {
+            int width = getRegionWidth(regionBounds, i);
+            int height = getRegionHeight(regionBounds, i);
+
+            // Regions smaller than the minimum are still capped at one sample per pixel below
+            int regionSampleBudget = (int) Math.max(
+                MIN_SAMPLES_PER_REGION,
+                Math.round(sampleBudget * ((width * (double) height) / totalArea))
+            );
+
+            int columns = (int) Math.round(Math.sqrt(regionSampleBudget * width / (double) height));
+            columns = Math.max(1, Math.min(width, columns));
+
+            int rows = Math.max(1, Math.min(height, regionSampleBudget / columns));
+
+            sampleColumns[i] = columns;
+            sampleRows[i] = rows;
+            sampleSpacingX[i] = width / (float) columns;
+            sampleSpacingY[i] = height / (float) rows;
+            coveredSamples[i] = new long[((columns * rows) + 63) >>> 6];
+        }
+    }
+
+    private static int getRegionWidth(int[] regionBounds, int regionIndex) {
+        return Math.max(1, regionBounds[regionIndex * 4 + 2] - regionBounds[regionIndex * 4]);
+    }
+
+    private static int getRegionHeight(int[] regionBounds, int regionIndex) {
+        return Math.max(1, regionBounds[regionIndex * 4 + 3] - regionBounds[regionIndex * 4 + 1]);
+    }
+
+    /**
+     * Mark all samples covered by a line segment with round caps.
+     * A segment whose ends are equal marks a circle.
+     */
+    @Override
+    public void addSegment(float x0, float y0, float x1, float y1, float radius) {
+        final float dx = x1 - x0;
+        final float dy = y1 - y0;
+        final float lengthSquared = dx * dx + dy * dy;
+        final float radiusSquared = radius * radius;
+
+        final float minX = Math.min(x0, x1) - radius;
+        final float maxX = Math.max(x0, x1) + radius;
+        final float minY = Math.min(y0, y1) - radius;
+        final float maxY = Math.max(y0, y1) + radius;
+
+        for (int i = 0; i < coveredSampleCounts.length; i++) {
+            final int left = regionBounds[i * 4];
+            final int top = regionBounds[i * 4 + 1];
+            final float spacingX = sampleSpacingX[i];
+            final float spacingY = sampleSpacingY[i];
+
+            // Sample centers are at left + (column + 0.5) * spacingX
+            final int columnStart = Math.max(0, (int) Math.ceil((minX - left) / spacingX - 0.5f));
+            final int columnEnd = Math.min(sampleColumns[i] - 1, (int) Math.floor((maxX - left) / spacingX - 0.5f));
+            final int rowStart = Math.max(0, (int) Math.ceil((minY - top) / spacingY - 0.5f));
+            final int rowEnd = Math.min(sampleRows[i] - 1, (int) Math.floor((maxY - top) / spacingY - 0.5f));
+
+            for (int row = rowStart; row <= rowEnd; row++) {
+                final float sampleY = top + (row + 0.5f) * spacingY;
+
+                for (int column = columnStart; column <= columnEnd; column++) {
+                    final float sampleX = left + (column + 0.5f) * spacingX;
+
+                    if (radiusSquared < distanceToSegmentSquared(sampleX, sampleY, x0, y0, dx, dy, lengthSquared)) {
+                        continue;
+                    }
+
+                    markSample(i, row * sampleColumns[i] + column);
+                }
+            }
+        }
+    }
+
+    private void markSample(int region, int sample) {
+        final long[] samples = coveredSamples[region];
+        final long mask = 1L << (sample & 63);
+
+        if ((samples[sample >>> 6] & mask) != 0) {
+            return;
+        }
+
+        samples[sample >>> 6] |= mask;
+        coveredSampleCounts[region]++;
+    }
+
+    static float distanceToSegmentSquared(
+        float x,
+        float y,
+        float x0,
+        float y0,
+        float dx,
+        float dy,
+        float lengthSquared
+    ) {
+
+        float t = lengthSquared == 0
+            ? 0
+            : Math.max(0, Math.min(1, ((x - x0) * dx + (y - y0) * dy) / lengthSquared));
+
+        float nearestX = x0 + t * dx - x;
+        float nearestY = y0 + t * dy - y;
+
+        return nearestX * nearestX + nearestY * nearestY;
+    }
+
+    /**
+     * @return the estimated scratched percentage of a single region, in the range [0.0, 1.0]
+     */
+    public float calculate(int regionIndex) {
+        return coveredSampleCounts[regionIndex] / (float) (sampleColumns[regionIndex] * sampleRows[regionIndex]);
+    }
+
+    /**
+     * @return the average estimated scratched percentage of all regions, in the range [0.0, 1.0]
+     */
+    public float calculate() {
+        float sum = 0F;
+
+        for (int i = 0; i < coveredSampleCounts.length; i++) {
+            sum += calculate(i);
+        }
+
+        return sum / coveredSampleCounts.length;
+    }
+
+    public int getSampleCount(int regionIndex) {
+        return sampleColumns[regionIndex] * sampleRows[regionIndex];
+    }
+}
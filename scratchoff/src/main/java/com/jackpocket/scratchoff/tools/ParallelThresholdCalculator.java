@@ -0,0 +1,466 @@
+package com.jackpocket.scratchoff.tools;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A {@link ThresholdCalculator} that splits the regions being counted, or horizontal
+ * stripes of regions large enough to be worth splitting, across the Threads of a
+ * {@link ThresholdScanPool} shared by every instance in the process.
+ * <br><br>
+ * The calling Thread scans stripes alongside the workers rather than waiting on them, and
+ * takes on any stripes that no worker has claimed, so a scan completes even when the pool
+ * is busy with other calculators. The per-stripe counts are summed in region order, so
+ * the results are identical to the serial calculator's.
+ * <br><br>
+ * The stripes are a work-sharing queue over a fixed pool, rather than the work-stealing
+ * ForkJoinPool they would otherwise be suited to, as its common pool is only available
+ * from API 21 while this library supports API 14. The stripes and their counts are built
+ * once per set of regions and reused by every scan of the same regions, so repeated
+ * evaluations only allocate when the regions change.
+ * <br><br>
+ * Instances must be destroyed to release the pool.
+ */
+public class ParallelThresholdCalculator extends ThresholdCalculator {
+
+    /**
+     * The minimum number of pixels scanned by a single task. Anything smaller
+     * costs more to hand off to a worker than it does to scan directly.
+     */
+    public static final int MIN_PIXELS_PER_TASK = 128 * 128;
+
+    private final int parallelism;
+    private final ThresholdScanPool pool;
+    private boolean poolReleased = false;
+
+    // One per helper, as the calling Thread scans with this calculator's own buffer
+    private final ConcurrentLinkedQueue<ThresholdCalculator> workerCalculators = new ConcurrentLinkedQueue<ThresholdCalculator>();
+
+    // The scan of the most recent set of regions, or null if they weren't worth splitting, reused until they change
+    private Scan scan;
+    private boolean scanBuilt = false;
+    private int[] scanRegionBounds = new int[0];
+    private int[] regionCounts = new int[0];
+
+    public ParallelThresholdCalculator(int unscratchedColor, int parallelism) {
+        this(unscratchedColor, DEFAULT_SCAN_BUFFER_SIZE_BYTES, parallelism);
+    }
+
+    /**
+     * @param scanBufferSizeBytes the maximum size of the buffer of each Thread
+     * @param parallelism the maximum number of Threads a single scan is split across, including the calling Thread
+     */
+    public ParallelThresholdCalculator(int unscratchedColor, int scanBufferSizeBytes, int parallelism) {
+        this(unscratchedColor, scanBufferSizeBytes, parallelism, ThresholdScanPool.getSharedInstance());
+    }
+
+    public ParallelThresholdCalculator(int unscratchedColor, int scanBufferSizeBytes, int parallelism, ThresholdScanPool pool) {
+        super(unscratchedColor, scanBufferSizeBytes);
+
+        this.parallelism = Math.max(1, parallelism);
+        this.pool = pool;
+
+        for (int i = 1; i < this.parallelism; i++) {
+            workerCalculators.add(new ThresholdCalculator(unscratchedColor, scanBufferSizeBytes));
+        }
+
+        if (1 < this.parallelism) {
+            pool.acquire();
+        }
+        else {
+            this.poolReleased = true;
+        }
+    }
+
+    @Override
+    public float calculate(Bitmap bitmap, List<Rect> regions) {
+        if (regionCounts.length < regions.size()) {
+            this.regionCounts = new int[regions.size()];
+        }
+
+        countNotMatching(bitmap, regions, regionCounts);
+
+        return calculate(regionCounts, regions);
+    }
+
+    @Override
+    public void countNotMatching(Bitmap bitmap, List<Rect> regions, int[] counts) {
+        Scan scan = obtainScan(regions);
+
+        if (scan == null) {
+            super.countNotMatching(bitmap, regions, counts);
+
+            return;
+        }
+
+        if (!perform(scan, bitmap, null, 0)) {
+            super.countNotMatching(bitmap, regions, counts);
+
+            return;
+        }
+
+        scan.sumRegionCounts(counts);
+    }
+
+    /**
+     * Split the decision scan across the pool, stopping every Thread as soon as the stripes
+     * counted so far decide the outcome, with the same margin as the serial calculator.
+     */
+    @Override
+    public boolean isThresholdReached(Bitmap bitmap, List<Rect> regions, float threshold) {
+        Scan scan = obtainScan(regions);
+
+        if (scan == null || !perform(scan, bitmap, regions, threshold)) {
+            return super.isThresholdReached(bitmap, regions, threshold);
+        }
+
+        if (scan.decided) {
+            return scan.decision;
+        }
+
+        if (regionCounts.length < regions.size()) {
+            this.regionCounts = new int[regions.size()];
+        }
+
+        scan.sumRegionCounts(regionCounts);
+
+        return isThresholdReached(regionCounts, regions, threshold);
+    }
+
+    /**
+     * @return false if the scan was interrupted, in which case it's abandoned and no result is available
+     */
+    private boolean perform(Scan scan, Bitmap bitmap, List<Rect> decisionRegions, float threshold) {
+        scan.reset(bitmap, decisionRegions, threshold);
+
+        final int helpers = Math.min(parallelism - 1, scan.tasks.size() - 1);
+
+        for (int i = 0; i < helpers; i++) {
+            if (!pool.execute(scan)) {
+                break;
+            }
+        }
+
+        scan.scanUnclaimedStripes(this);
+
+        try {
+            // Only stripes claimed by workers may still be in progress
+            scan.awaitCompletion();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            // Workers may still be scanning it, so it can't be reused
+            this.scan = null;
+            this.scanBuilt = false;
+
+            return false;
+        }
+
+        Throwable failure = scan.failure.get();
+
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+
+        if (failure != null) {
+            throw new IllegalStateException(failure);
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the scan of the supplied regions, which is only rebuilt when they differ from the
+     * previous call's, or null if they are not worth splitting
+     */
+    private Scan obtainScan(List<Rect> regions) {
+        if (scanBuilt && isScanOfRegions(regions)) {
+            return scan;
+        }
+
+        List<StripeTask> tasks = createStripeTasks(null, regions);
+
+        if (scanRegionBounds.length != regions.size() * 4) {
+            this.scanRegionBounds = new int[regions.size() * 4];
+        }
+
+        for (int i = 0; i < regions.size(); i++) {
+            Rect region = regions.get(i);
+
+            scanRegionBounds[i * 4] = region.left;
+            scanRegionBounds[i * 4 + 1] = region.top;
+            scanRegionBounds[i * 4 + 2] = region.right;
+            scanRegionBounds[i * 4 + 3] = region.bottom;
+        }
+
+        this.scan = tasks.size() < 2
+            ? null
+            : new Scan(tasks, regions.size());
+
+        this.scanBuilt = true;
+
+        return scan;
+    }
+
+    private boolean isScanOfRegions(List<Rect> regions) {
+        if (scanRegionBounds.length != regions.size() * 4) {
+            return false;
+        }
+
+        for (int i = 0; i < regions.size(); i++) {
+            if (!isScanOfRegion(i, regions.get(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean isScanOfRegion(int index, Rect region) {
+        return scanRegionBounds[index * 4] == region.left
+            && scanRegionBounds[index * 4 + 1] == region.top
+            && scanRegionBounds[index * 4 + 2] == region.right
+            && scanRegionBounds[index * 4 + 3] == region.bottom;
+    }
+
+    /**
+     * Split the regions into stripes of at least {@link #MIN_PIXELS_PER_TASK}.
+     * The stripes only depend on the regions, so the Bitmap may be null.
+     */
+    protected List<StripeTask> createStripeTasks(Bitmap bitmap, List<Rect> regions) {
+        List<StripeTask> tasks = new ArrayList<StripeTask>();
+
+        long totalPixels = 0;
+
+        for (Rect region : regions) {
+            totalPixels += Math.max(0, region.width()) * (long) Math.max(0, region.height());
+        }
+
+        if (parallelism < 2 || totalPixels < MIN_PIXELS_PER_TASK * 2L) {
+            return tasks;
+        }
+
+        long pixelsPerTask = Math.max(MIN_PIXELS_PER_TASK, (totalPixels + parallelism - 1) / parallelism);
+
+        for (int i = 0; i < regions.size(); i++) {
+            Rect region = regions.get(i);
+
+            if (region.width() < 1 || region.height() < 1) {
+                continue;
+            }
+
+            int rowsPerStripe = (int) Math.max(1, Math.min(region.height(), pixelsPerTask / region.width()));
+
+            for (int top = region.top; top < region.bottom; top += rowsPerStripe) {
+                tasks.add(
+                    new StripeTask(
+                        new Rect(region.left, top, region.right, Math.min(region.bottom, top + rowsPerStripe)),
+                        i,
+                        1d / ((double) region.width() * region.height())
+                    )
+                );
+            }
+        }
+
+        return tasks;
+    }
+
+    @Override
+    public void destroy() {
+        super.destroy();
+
+        synchronized (this) {
+            if (!poolReleased) {
+                pool.release();
+            }
+
+            this.poolReleased = true;
+        }
+
+        for (ThresholdCalculator calculator : workerCalculators) {
+            calculator.destroy();
+        }
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    protected static class StripeTask {
+
+        private final Rect stripe;
+        private final int regionIndex;
+        private final double pixelWeight;
+
+        StripeTask(Rect stripe, int regionIndex, double pixelWeight) {
+            this.stripe = stripe;
+            this.regionIndex = regionIndex;
+            this.pixelWeight = pixelWeight;
+        }
+
+        public Rect getStripe() {
+            return stripe;
+        }
+
+        public int getRegionIndex() {
+            return regionIndex;
+        }
+    }
+
+    /**
+     * The stripes of a set of regions, claimed one at a time by the calling Thread and any
+     * workers that start before they run out. Reset and reused by each scan of the same regions,
+     * which only ever happens once every stripe of the previous scan has been counted.
+     * <br><br>
+     * A decision scan also sums the weighted counts as each stripe completes, in the same
+     * way as {@link ThresholdCalculator#isThresholdReached(Bitmap, List, float)}, and
+     * skips the stripes that remain once the outcome has been decided.
+     */
+    private class Scan implements Runnable {
+
+        private final List<StripeTask> tasks;
+        private final int[] stripeCounts;
+        private final int regionCount;
+
+        private volatile Bitmap bitmap;
+
+        private final AtomicInteger nextTask = new AtomicInteger();
+        private final AtomicInteger remainingTasks = new AtomicInteger();
+        private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        private boolean deciding;
+        private double target;
+        // Guarded by this Scan
+        private double scannedSum;
+        private double unscannedSum;
+
+        private volatile boolean decided;
+        private boolean decision;
+
+        Scan(List<StripeTask> tasks, int regionCount) {
+            this.tasks = tasks;
+            this.stripeCounts = new int[tasks.size()];
+            this.regionCount = regionCount;
+
+            // Claimed in full, until the first reset
+            nextTask.set(tasks.size());
+        }
+
+        /**
+         * @param decisionRegions the regions to decide the threshold of, or null to count every stripe
+         */
+        void reset(Bitmap bitmap, List<Rect> decisionRegions, float threshold) {
+            this.bitmap = bitmap;
+            this.deciding = decisionRegions != null;
+            this.decided = false;
+            this.decision = false;
+
+            failure.set(null);
+
+            synchronized (this) {
+                this.target = (double) threshold * regionCount;
+                this.scannedSum = 0;
+                this.unscannedSum = 0;
+
+                if (deciding) {
+                    for (Rect region : decisionRegions) {
+                        if (0 < region.width() && 0 < region.height()) {
+                            unscannedSum += 1;
+                        }
+                    }
+                }
+            }
+
+            remainingTasks.set(tasks.size());
+
+            // Published last, so that workers claiming a stripe see everything above
+            nextTask.set(0);
+        }
+
+        @Override
+        public void run() {
+            // Workers starting after the calling Thread has claimed every stripe have nothing to do
+            if (tasks.size() <= nextTask.get()) {
+                return;
+            }
+
+            ThresholdCalculator calculator = workerCalculators.poll();
+
+            if (calculator == null) {
+                return;
+            }
+
+            try {
+                scanUnclaimedStripes(calculator);
+            }
+            finally {
+                workerCalculators.add(calculator);
+            }
+        }
+
+        void scanUnclaimedStripes(ThresholdCalculator calculator) {
+            int index;
+
+            while ((index = nextTask.getAndIncrement()) < tasks.size()) {
+                try {
+                    if (!decided) {
+                        StripeTask task = tasks.get(index);
+
+                        stripeCounts[index] = calculator.countNotMatching(bitmap, task.stripe);
+
+                        if (deciding) {
+                            includeDecisionCount(task, stripeCounts[index]);
+                        }
+                    }
+                }
+                catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+                finally {
+                    if (remainingTasks.decrementAndGet() == 0) {
+                        synchronized (this) {
+                            notifyAll();
+                        }
+                    }
+                }
+            }
+        }
+
+        private synchronized void includeDecisionCount(StripeTask task, int scratched) {
+            if (decided) {
+                return;
+            }
+
+            scannedSum += scratched * task.pixelWeight;
+            unscannedSum -= task.stripe.width() * (double) task.stripe.height() * task.pixelWeight;
+
+            if (isThresholdDecided(scannedSum, unscannedSum, target)) {
+                this.decision = target < scannedSum;
+                this.decided = true;
+            }
+        }
+
+        synchronized void awaitCompletion() throws InterruptedException {
+            while (0 < remainingTasks.get()) {
+                wait();
+            }
+        }
+
+        void sumRegionCounts(int[] counts) {
+            for (int i = 0; i < regionCount; i++) {
+                counts[i] = 0;
+            }
+
+            for (int i = 0; i < tasks.size(); i++) {
+                counts[tasks.get(i).regionIndex] += stripeCounts[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.jackpocket.scratchoff.tools;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import com.jackpocket.scratchoff.paths.ScratchPathBatch;
+
+/**
+ * The rendered content of a scratchable View, from which {@link ScratchPathBatch} instances are erased.
+ * <br><br>
+ * Implementations are not expected to be thread-safe, except for {@link #draw(Canvas, Paint)}
+ * with a null Paint, which must be safe to call while the overlay is being erased.
+ */
+public interface ScratchableOverlay {
+
+    /**
+     * Draw the remaining content of the overlay into the supplied Canvas, at its original size.
+     * Areas that have been erased are left untouched, rather than cleared.
+     *
+     * @param paint the Paint to draw with, or null for the default
+     */
+    public void draw(Canvas canvas, Paint paint);
+
+    /**
+     * Erase the batch from the overlay with the supplied Paint.
+     *
+     * @param bounds the area affected by drawing the batch with the supplied Paint
+     */
+    public void erase(ScratchPathBatch batch, Paint clearPaint, Rect bounds);
+
+    /**
+     * Erase the opaque areas of an ALPHA_8 mask, drawn with the supplied Paint into the supplied bounds.
+     *
+     * @param bounds the area to draw the mask into, in the coordinate space of the scratchable layout
+     */
+    public void eraseMask(Bitmap mask, RectF bounds, Paint maskPaint);
+
+    /**
+     * Release any memory that is no longer needed after erasing.
+     */
+    public void trim();
+
+    public void recycle();
+
+    public boolean isRecycled();
+
+    public int getWidth();
+
+    public int getHeight();
+}
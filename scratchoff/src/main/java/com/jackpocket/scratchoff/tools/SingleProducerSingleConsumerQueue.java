@@ -0,0 +1,127 @@
+package com.jackpocket.scratchoff.tools;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An unbounded, lock-free queue for handing off items from exactly one producer Thread
+ * to exactly one consumer Thread, without either ever waiting on the other.
+ * <br><br>
+ * Items are stored in a ring whose slots are claimed and released with a pair of
+ * sequence counters. When the producer catches up with the consumer, it links a ring
+ * of twice the size instead of waiting, and the consumer follows the link once it
+ * reaches it. A ring that has grown to fit the largest backlog is then reused
+ * without allocating.
+ * <br><br>
+ * Callers are responsible for ensuring that {@link #offer(Object)} and {@link #poll()}
+ * are each only ever called from one Thread at a time.
+ */
+public class SingleProducerSingleConsumerQueue<T> {
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    // Marks a slot whose item was written to the next, larger ring instead
+    private static final Object JUMP = new Object();
+
+    // The number of items ever offered, published by the producer
+    private final AtomicLong producerSequence = new AtomicLong(0L);
+    // The number of items ever polled, published by the consumer
+    private final AtomicLong consumerSequence = new AtomicLong(0L);
+
+    // Each ring has a power of two capacity, followed by one extra slot linking the next ring
+    private Object[] producerRing;
+    private Object[] consumerRing;
+
+    public SingleProducerSingleConsumerQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SingleProducerSingleConsumerQueue(int initialCapacity) {
+        int capacity = 2;
+
+        while (capacity < initialCapacity) {
+            capacity <<= 1;
+        }
+
+        this.producerRing = new Object[capacity + 1];
+        this.consumerRing = producerRing;
+    }
+
+    /**
+     * Add an item to the end of the queue. Must only be called from the producer Thread.
+     */
+    public void offer(T item) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+
+        final long sequence = producerSequence.get();
+        final Object[] ring = this.producerRing;
+        final int capacity = ring.length - 1;
+
+        // One slot is always kept free, so that there is room to mark the jump to a larger ring
+        if (sequence - consumerSequence.get() < capacity - 1) {
+            ring[(int) (sequence & (capacity - 1))] = item;
+        }
+        else {
+            final int nextCapacity = capacity * 2;
+            final Object[] nextRing = new Object[nextCapacity + 1];
+
+            nextRing[(int) (sequence & (nextCapacity - 1))] = item;
+
+            ring[capacity] = nextRing;
+            ring[(int) (sequence & (capacity - 1))] = JUMP;
+
+            this.producerRing = nextRing;
+        }
+
+        // Publishes the slot writes above to the consumer
+        producerSequence.lazySet(sequence + 1);
+    }
+
+    /**
+     * Remove and return the item at the front of the queue. Must only be called from the consumer Thread.
+     *
+     * @return null if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        final long sequence = consumerSequence.get();
+
+        if (producerSequence.get() <= sequence) {
+            return null;
+        }
+
+        Object[] ring = this.consumerRing;
+        int capacity = ring.length - 1;
+        int position = (int) (sequence & (capacity - 1));
+
+        Object item = ring[position];
+
+        if (item == JUMP) {
+            ring[position] = null;
+
+            ring = (Object[]) ring[capacity];
+            capacity = ring.length - 1;
+            position = (int) (sequence & (capacity - 1));
+
+            item = ring[position];
+
+            this.consumerRing = ring;
+        }
+
+        ring[position] = null;
+
+        // Releases the slot back to the producer
+        consumerSequence.lazySet(sequence + 1);
+
+        return (T) item;
+    }
+
+    /**
+     * @return true if no items are waiting to be polled. This may be called from any Thread,
+     * but the result is only a snapshot.
+     */
+    public boolean isEmpty() {
+        return producerSequence.get() <= consumerSequence.get();
+    }
+}
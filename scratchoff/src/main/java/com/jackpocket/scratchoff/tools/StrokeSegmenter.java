@@ -0,0 +1,102 @@
+package com.jackpocket.scratchoff.tools;
+
+/**
+ * Connects a stream of scratched points into the line segments of each pointer's stroke,
+ * following the same rules as the drawn Paths, so that geometry-based estimators such as the
+ * {@link CapsuleCoverageEstimator} can consume the points directly.
+ * <br><br>
+ * Unlike the {@link com.jackpocket.scratchoff.paths.ScratchPathManager}, segments are connected
+ * across calls, as there are no partially-drawn Paths to reset.
+ * <br><br>
+ * This class has no dependencies on the Android framework and is not thread-safe.
+ */
+public class StrokeSegmenter {
+
+    public interface SegmentAggregator {
+
+        /**
+         * Add a line segment with round caps. A segment whose ends are equal is a circle.
+         */
+        public void addSegment(float x0, float y0, float x1, float y1, float radius);
+    }
+
+    // The values of the MotionEvent actions, which can't be referenced without the Android framework
+    public static final int ACTION_DOWN = 0;
+    public static final int ACTION_UP = 1;
+    public static final int ACTION_MOVE = 2;
+    public static final int ACTION_CANCEL = 3;
+    public static final int ACTION_POINTER_DOWN = 5;
+    public static final int ACTION_POINTER_UP = 6;
+
+    private static final int POINTER_LIMIT = 10;
+
+    private final SegmentAggregator aggregator;
+
+    private final float[] lastPositions = new float[POINTER_LIMIT * 2];
+    private final boolean[] activePointers = new boolean[POINTER_LIMIT];
+    private final int[] lastActiveActions = new int[POINTER_LIMIT];
+
+    public StrokeSegmenter(SegmentAggregator aggregator) {
+        this.aggregator = aggregator;
+    }
+
+    /**
+     * Add the next point of a pointer, which is connected to its previous point by a segment
+     * of the supplied radius if it moved while the pointer was down.
+     *
+     * @param action one of the MotionEvent actions, any other than those declared here being treated as a move
+     */
+    public void addPoint(int pointerIndex, float x, float y, int action, float radius) {
+        if (POINTER_LIMIT <= pointerIndex) {
+            return;
+        }
+
+        switch (action) {
+            case ACTION_UP:
+            case ACTION_CANCEL:
+                activePointers[pointerIndex] = false;
+
+                break;
+            case ACTION_POINTER_UP:
+                break;
+            case ACTION_DOWN:
+            case ACTION_POINTER_DOWN:
+                startPointer(pointerIndex, x, y);
+
+                break;
+            default:
+                // The position may have changed after ACTION_POINTER_UP,
+                // so the segment must not be connected to the previous position
+                if (ACTION_POINTER_UP == lastActiveActions[pointerIndex]) {
+                    startPointer(pointerIndex, x, y);
+                }
+
+                if (!activePointers[pointerIndex]) {
+                    break;
+                }
+
+                final int offset = pointerIndex * 2;
+
+                aggregator.addSegment(
+                    lastPositions[offset],
+                    lastPositions[offset + 1],
+                    x,
+                    y,
+                    radius
+                );
+
+                lastPositions[offset] = x;
+                lastPositions[offset + 1] = y;
+
+                break;
+        }
+
+        lastActiveActions[pointerIndex] = action;
+    }
+
+    private void startPointer(int pointerIndex, float x, float y) {
+        lastPositions[pointerIndex * 2] = x;
+        lastPositions[pointerIndex * 2 + 1] = y;
+        activePointers[pointerIndex] = true;
+    }
+}
@@ -8,10 +8,32 @@ import java.util.List;
 
 public class ThresholdCalculator {
 
+    /**
+     * The default maximum size, in bytes, of the buffer used to scan pixels.
+     */
+    public static final int DEFAULT_SCAN_BUFFER_SIZE_BYTES = 64 * 1024;
+
+    private static final double DECISION_MARGIN = 1e-4;
+
     private final int unscratchedColor;
+    private final int scanBufferCapacity;
+
+    private int[] scanBuffer = new int[0];
 
     public ThresholdCalculator(int unscratchedColor) {
+        this(unscratchedColor, DEFAULT_SCAN_BUFFER_SIZE_BYTES);
+    }
+
+    /**
+     * Create a ThresholdCalculator that scans regions in bands of rows read into a single,
+     * reusable buffer of at most scanBufferSizeBytes. The buffer is only ever
+     * enlarged beyond that to fit a single row of the widest region scanned.
+     * <br><br>
+     * As the buffer is shared between calls, instances are not thread-safe.
+     */
+    public ThresholdCalculator(int unscratchedColor, int scanBufferSizeBytes) {
         this.unscratchedColor = unscratchedColor;
+        this.scanBufferCapacity = Math.max(1, scanBufferSizeBytes / 4);
     }
 
     public float calculate(Bitmap bitmap, List<Rect> regions) {
@@ -28,32 +50,190 @@ public class ThresholdCalculator {
         return matchesSum / regions.size();
     }
 
+    /**
+     * Calculate the average scratched percentage of the supplied regions from
+     * previously-counted values, where scratchedCounts[i] is the number of
+     * scratched pixels inside regions.get(i).
+     */
+    public float calculate(int[] scratchedCounts, List<Rect> regions) {
+        float matchesSum = 0F;
+
+        for (int i = 0; i < regions.size(); i++) {
+            Rect region = regions.get(i);
+
+            matchesSum += calculate(
+                scratchedCounts[i],
+                region.width(),
+                region.height()
+            );
+        }
+
+        return matchesSum / regions.size();
+    }
+
     public float calculate(int scratchedCount, int width, int height) {
         return Math.min(1, Math.max(0, ((float) scratchedCount) / (width * height)));
     }
 
+    /**
+     * Determine whether the average scratched percentage of the supplied regions
+     * has reached the threshold, without necessarily scanning every pixel.
+     * <br><br>
+     * Scanning stops as soon as the pixels counted so far prove the threshold has been
+     * reached, or as soon as too few unscanned pixels remain for it to be reached.
+     * When the entire area must be scanned, the outcome is identical to comparing
+     * the threshold against {@link #calculate(Bitmap, List)}.
+     */
+    public boolean isThresholdReached(Bitmap bitmap, List<Rect> regions, float threshold) {
+        final int regionCount = regions.size();
+        final double target = (double) threshold * regionCount;
+
+        float matchesSum = 0F;
+        double unscannedSum = 0;
+
+        for (Rect region : regions) {
+            if (0 < region.width() && 0 < region.height()) {
+                unscannedSum += 1;
+            }
+        }
+
+        for (Rect region : regions) {
+            final int width = region.width();
+            final int height = region.height();
+
+            if (width < 1 || height < 1) {
+                continue;
+            }
+
+            final double pixelWeight = 1d / ((double) width * height);
+            final int rowsPerBand = calculateRowsPerBand(width, height);
+            final int[] pixels = obtainScanBuffer(rowsPerBand * width);
+
+            int scratched = 0;
+
+            for (int top = region.top; top < region.bottom; top += rowsPerBand) {
+                int rows = Math.min(rowsPerBand, region.bottom - top);
+                int bandSize = rows * width;
+
+                scratched += bandSize - countMatching(bitmap, region.left, top, width, rows, pixels);
+                unscannedSum -= bandSize * pixelWeight;
+
+                double scannedSum = matchesSum + scratched * pixelWeight;
+
+                if (isThresholdDecided(scannedSum, unscannedSum, target)) {
+                    return target < scannedSum;
+                }
+            }
+
+            matchesSum += calculate(scratched, width, height);
+        }
+
+        return threshold <= matchesSum / regionCount;
+    }
+
+    /**
+     * Determine whether the average scratched percentage of the supplied regions
+     * has reached the threshold from previously-counted values, where scratchedCounts[i]
+     * is the number of scratched pixels inside regions.get(i).
+     * <br><br>
+     * Regions stop being considered as soon as the outcome has been decided.
+     */
+    public boolean isThresholdReached(int[] scratchedCounts, List<Rect> regions, float threshold) {
+        final int regionCount = regions.size();
+        final double target = (double) threshold * regionCount;
+
+        float matchesSum = 0F;
+
+        for (int i = 0; i < regionCount; i++) {
+            Rect region = regions.get(i);
+
+            matchesSum += calculate(scratchedCounts[i], region.width(), region.height());
+
+            if (isThresholdDecided(matchesSum, regionCount - i - 1, target)) {
+                return target < matchesSum;
+            }
+        }
+
+        return threshold <= matchesSum / regionCount;
+    }
+
+    /**
+     * The outcome is only decided early when it is clear of the target by more than
+     * the rounding error of the float arithmetic in {@link #calculate(int[], List)},
+     * so that early decisions never disagree with the exact percentage.
+     */
+    static boolean isThresholdDecided(double scannedSum, double unscannedSum, double target) {
+        return target + DECISION_MARGIN < scannedSum
+            || scannedSum + unscannedSum + DECISION_MARGIN < target;
+    }
+
+    /**
+     * Count the pixels not matching the unscratched color inside each of the supplied
+     * regions, where the count for regions.get(i) is written to counts[i].
+     */
+    public void countNotMatching(Bitmap bitmap, List<Rect> regions, int[] counts) {
+        for (int i = 0; i < regions.size(); i++) {
+            counts[i] = countNotMatching(bitmap, regions.get(i));
+        }
+    }
+
     public int countNotMatching(Bitmap bitmap, Rect region) {
-        int pixelCount = region.width() * region.height();
-        int[] pixels = new int[pixelCount];
+        final int width = region.width();
+        final int height = region.height();
+
+        if (width < 1 || height < 1) {
+            return 0;
+        }
+
+        final int rowsPerBand = calculateRowsPerBand(width, height);
+        final int[] pixels = obtainScanBuffer(rowsPerBand * width);
+
+        int matching = 0;
 
+        for (int top = region.top; top < region.bottom; top += rowsPerBand) {
+            int rows = Math.min(rowsPerBand, region.bottom - top);
+
+            matching += countMatching(bitmap, region.left, top, width, rows, pixels);
+        }
+
+        return (width * height) - matching;
+    }
+
+    private int calculateRowsPerBand(int width, int height) {
+        return Math.max(1, Math.min(height, scanBufferCapacity / width));
+    }
+
+    private int countMatching(Bitmap bitmap, int left, int top, int width, int rows, int[] pixels) {
         bitmap.getPixels(
             pixels,
             0,
-            region.width(),
-            region.left,
-            region.top,
-            region.width(),
-            region.height()
+            width,
+            left,
+            top,
+            width,
+            rows
         );
 
-        return pixelCount - countMatching(pixels);
+        return countMatching(pixels, rows * width);
+    }
+
+    private int[] obtainScanBuffer(int size) {
+        if (scanBuffer.length < size) {
+            this.scanBuffer = new int[size];
+        }
+
+        return scanBuffer;
     }
 
     int countMatching(int[] pixels) {
+        return countMatching(pixels, pixels.length);
+    }
+
+    int countMatching(int[] pixels, int length) {
         int scratched = 0;
 
-        for (int pixel : pixels) {
-            if (pixel == unscratchedColor) {
+        for (int i = 0; i < length; i++) {
+            if (pixels[i] == unscratchedColor) {
                 scratched++;
             }
         }
@@ -61,9 +241,25 @@ public class ThresholdCalculator {
         return scratched;
     }
 
+    /**
+     * Release the scan buffer. The instance remains usable, and will
+     * re-allocate its buffer on the next scan.
+     */
+    public void destroy() {
+        this.scanBuffer = new int[0];
+    }
+
+    int getScanBufferLength() {
+        return scanBuffer.length;
+    }
+
     public static List<Rect> createFullSizeThresholdRegion(Bitmap source) {
+        return createFullSizeThresholdRegion(source.getWidth(), source.getHeight());
+    }
+
+    public static List<Rect> createFullSizeThresholdRegion(int width, int height) {
         ArrayList<Rect> regions = new ArrayList<Rect>();
-        regions.add(new Rect(0, 0, source.getWidth(), source.getHeight()));
+        regions.add(new Rect(0, 0, width, height));
 
         return regions;
     }
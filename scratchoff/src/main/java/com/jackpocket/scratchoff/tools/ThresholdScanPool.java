@@ -0,0 +1,116 @@
+package com.jackpocket.scratchoff.tools;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A bounded pool of Threads that the pixel scans of any number of {@link ParallelThresholdCalculator}
+ * instances are split across, so that the number of scan Threads stays the same however many
+ * scratchable layouts are shown at once.
+ * <br><br>
+ * The lifecycle is reference-counted: an owned executor is created on the first call to
+ * {@link #acquire()} and shut down once every acquisition has been released. Executors
+ * supplied to {@link #ThresholdScanPool(Executor)} belong to the caller and are never shut down.
+ */
+public class ThresholdScanPool {
+
+    /**
+     * The number of Threads owned by the shared pool. The Thread requesting a scan
+     * always takes part in it, so one core is left for it.
+     */
+    public static final int DEFAULT_THREAD_COUNT = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+    private static final ThresholdScanPool SHARED_INSTANCE = new ThresholdScanPool(DEFAULT_THREAD_COUNT);
+
+    private final int threadCount;
+    private final Executor injectedExecutor;
+    private Executor executor;
+    private int references = 0;
+
+    public ThresholdScanPool(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+        this.injectedExecutor = null;
+    }
+
+    /**
+     * Create a pool that runs all scans on the supplied executor,
+     * which will not be shut down when this pool is no longer referenced.
+     */
+    public ThresholdScanPool(Executor executor) {
+        this.threadCount = 0;
+        this.injectedExecutor = executor;
+        this.executor = executor;
+    }
+
+    public synchronized void acquire() {
+        this.references += 1;
+
+        if (executor == null) {
+            this.executor = Executors.newFixedThreadPool(threadCount, new ScanThreadFactory());
+        }
+    }
+
+    public synchronized void release() {
+        this.references = Math.max(0, references - 1);
+
+        if (0 < references || injectedExecutor != null || executor == null) {
+            return;
+        }
+
+        ((ExecutorService) executor).shutdownNow();
+        executor = null;
+    }
+
+    /**
+     * Run the task on one of this pool's Threads.
+     *
+     * @return false if the task was not accepted, e.g. because this pool is not acquired
+     */
+    public synchronized boolean execute(Runnable task) {
+        if (executor == null) {
+            return false;
+        }
+
+        try {
+            executor.execute(task);
+
+            return true;
+        }
+        catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    protected synchronized int getReferenceCount() {
+        return references;
+    }
+
+    protected synchronized Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return the process-wide pool shared by every {@link ParallelThresholdCalculator}
+     * that has not been supplied its own
+     */
+    public static ThresholdScanPool getSharedInstance() {
+        return SHARED_INSTANCE;
+    }
+
+    private static class ScanThreadFactory implements ThreadFactory {
+
+        private final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = defaultFactory.newThread(runnable);
+            thread.setName("scratchoff-threshold-scan");
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,460 @@
+package com.jackpocket.scratchoff.tools;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.view.View;
+
+import com.jackpocket.scratchoff.paths.ScratchPathBatch;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A scratchable overlay split into fixed-size ARGB_8888 tiles, of which only the tiles
+ * that still have visible content are kept in memory.
+ * <br><br>
+ * Tiles that are fully transparent when rendered are never allocated, and tiles that become
+ * fully transparent while being erased are dropped, so the memory held shrinks as the overlay
+ * is scratched off. A dropped tile is only returned to the {@link BitmapPool} once a draw without
+ * a Paint, as the scratchable View performs, has started and completed after it was dropped, with no
+ * other draw still in progress, so that no draw can still be reading it when the pool hands it out again. As no single Bitmap spans the whole overlay, it may also
+ * be larger than the maximum Bitmap or texture size.
+ * <br><br>
+ * The tiles may also be stored at a fraction of the original resolution, in which case
+ * they are erased through a scaled Canvas and filtered when drawn back at full size.
+ * <br><br>
+ * Erasing is assumed to only ever reduce the alpha of a pixel, which allows each tile's
+ * transparency check to resume from where the previous one found a visible pixel.
+ * <br><br>
+ * This class is not Thread-safe, except for {@link #draw(Canvas, Paint)}, which only
+ * ever draws tiles that have not been recycled while others are being released.
+ */
+public class TiledOverlayBitmap implements ScratchableOverlay {
+
+    public static final int DEFAULT_TILE_SIZE_PX = 256;
+
+    private final int width;
+    private final int height;
+    private final float scale;
+    private final int scaledWidth;
+    private final int scaledHeight;
+    private final int tileSize;
+    private final BitmapPool bitmapPool;
+    private final int columns;
+    private final int rows;
+
+    private final Bitmap[] tiles;
+    private final Canvas[] tileCanvases;
+    private final boolean[] tilesErased;
+
+    // The index of the first pixel, in row-major order, that may still be visible in each tile
+    private final int[] tileScanPositions;
+
+    private final int[] rowPixels;
+
+    // Only used to filter the tiles when scaling them back up to the original size
+    private final Paint scaledDrawPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    // Tiles dropped while erasing, in the order they were dropped, that have not yet been returned to the BitmapPool
+    private final ConcurrentLinkedQueue<Bitmap> retiredTiles = new ConcurrentLinkedQueue<Bitmap>();
+    private final AtomicInteger retiredTileCount = new AtomicInteger(0);
+    private final AtomicInteger releasedRetiredTileCount = new AtomicInteger(0);
+    private final AtomicInteger activeDraws = new AtomicInteger(0);
+
+    private int tileCount = 0;
+    private boolean recycled = false;
+
+    public TiledOverlayBitmap(int width, int height, int tileSize) {
+        this(width, height, tileSize, 1f);
+    }
+
+    /**
+     * @param width the width of the overlay, in the coordinate space of the scratchable layout
+     * @param height the height of the overlay, in the coordinate space of the scratchable layout
+     * @param scale the fraction of the original size that the tiles are stored at
+     */
+    public TiledOverlayBitmap(int width, int height, int tileSize, float scale) {
+        this(width, height, tileSize, scale, BitmapPool.UNPOOLED);
+    }
+
+    /**
+     * @param bitmapPool the {@link BitmapPool} tiles are obtained from and released to
+     */
+    public TiledOverlayBitmap(int width, int height, int tileSize, float scale, BitmapPool bitmapPool) {
+        this.width = width;
+        this.height = height;
+        this.scale = scale;
+        this.scaledWidth = Math.max(1, (int) Math.ceil(width * scale));
+        this.scaledHeight = Math.max(1, (int) Math.ceil(height * scale));
+        this.tileSize = Math.max(1, tileSize);
+        this.bitmapPool = bitmapPool;
+        this.columns = (scaledWidth + this.tileSize - 1) / this.tileSize;
+        this.rows = (scaledHeight + this.tileSize - 1) / this.tileSize;
+
+        this.tiles = new Bitmap[columns * rows];
+        this.tileCanvases = new Canvas[tiles.length];
+        this.tilesErased = new boolean[tiles.length];
+        this.tileScanPositions = new int[tiles.length];
+        this.rowPixels = new int[this.tileSize];
+    }
+
+    /**
+     * Render the View into a new {@link TiledOverlayBitmap} of the same size, one row of tiles at
+     * a time, so that tiles without visible content are never allocated.
+     */
+    public static TiledOverlayBitmap createFromView(View view, int tileSize) {
+        return createFromView(view, tileSize, 1f);
+    }
+
+    /**
+     * Render the View into a new {@link TiledOverlayBitmap} of the same size, stored at the
+     * supplied fraction of its original resolution.
+     */
+    public static TiledOverlayBitmap createFromView(View view, int tileSize, float scale) {
+        return createFromView(view, tileSize, scale, BitmapPool.UNPOOLED);
+    }
+
+    /**
+     * Render the View into a new {@link TiledOverlayBitmap} of the same size, stored at the
+     * supplied fraction of its original resolution, in tiles obtained from the {@link BitmapPool}.
+     */
+    public static TiledOverlayBitmap createFromView(View view, int tileSize, float scale, BitmapPool bitmapPool) {
+        TiledOverlayBitmap overlay = new TiledOverlayBitmap(view.getWidth(), view.getHeight(), tileSize, scale, bitmapPool);
+        overlay.renderTiles(view);
+
+        return overlay;
+    }
+
+    /**
+     * Draw the View once per row of tiles into a band spanning the overlay's width, then copy
+     * each tile with visible content out of it, so that the View is only drawn once per row
+     * and no tile is allocated without visible content.
+     */
+    protected void renderTiles(View view) {
+        final Rect source = new Rect();
+        final Rect destination = new Rect();
+
+        Bitmap band = null;
+
+        try {
+            for (int row = 0; row < rows; row++) {
+                final int top = row * tileSize;
+                final int bandHeight = Math.min(tileSize, scaledHeight - top);
+
+                if (band == null || band.getHeight() != bandHeight) {
+                    // Only the last row differs in height
+                    bitmapPool.release(band);
+
+                    band = bitmapPool.obtain(scaledWidth, bandHeight, Bitmap.Config.ARGB_8888);
+                }
+                else {
+                    band.eraseColor(Color.TRANSPARENT);
+                }
+
+                Canvas bandCanvas = new Canvas(band);
+                bandCanvas.translate(0, -top);
+                bandCanvas.scale(scale, scale);
+
+                view.draw(bandCanvas);
+
+                for (int column = 0; column < columns; column++) {
+                    final int index = (row * columns) + column;
+                    final int left = column * tileSize;
+                    final int tileWidth = Math.min(tileSize, scaledWidth - left);
+
+                    if (isTransparent(index, band, left, tileWidth, bandHeight)) {
+                        continue;
+                    }
+
+                    source.set(left, 0, left + tileWidth, bandHeight);
+                    destination.set(0, 0, tileWidth, bandHeight);
+
+                    Bitmap tile = bitmapPool.obtain(tileWidth, bandHeight, Bitmap.Config.ARGB_8888);
+
+                    // Drawn over a fully transparent tile, so the pixels are copied as-is
+                    Canvas canvas = new Canvas(tile);
+                    canvas.drawBitmap(band, source, destination, null);
+                    canvas.translate(-left, -top);
+                    canvas.scale(scale, scale);
+
+                    this.tiles[index] = tile;
+                    this.tileCanvases[index] = canvas;
+                    this.tileCount += 1;
+                }
+            }
+        }
+        finally {
+            bitmapPool.release(band);
+        }
+    }
+
+    /**
+     * Draw every remaining tile into the supplied Canvas at its position in the overlay,
+     * scaled back up to the original size. Without a supplied Paint, scaled tiles are filtered.
+     * <br><br>
+     * Once a draw without a Paint completes, and no other draw is in progress, the tiles
+     * dropped before it started are returned to the {@link BitmapPool}.
+     */
+    @Override
+    public void draw(Canvas canvas, Paint paint) {
+        activeDraws.incrementAndGet();
+
+        // Read after joining the active draws, so that every tile counted here was dropped
+        // before this draw started and is neither drawn by it nor by any draw started later
+        final int retiredBeforeDraw = retiredTileCount.get();
+
+        try {
+            drawScaled(canvas, paint);
+        }
+        finally {
+            if (activeDraws.decrementAndGet() == 0 && paint == null) {
+                releaseRetiredTiles(retiredBeforeDraw);
+            }
+        }
+    }
+
+    private void drawScaled(Canvas canvas, Paint paint) {
+        final Bitmap[] tiles = this.tiles;
+
+        if (scale == 1f) {
+            drawTiles(canvas, tiles, paint);
+
+            return;
+        }
+
+        canvas.save();
+        canvas.scale(1 / scale, 1 / scale);
+
+        drawTiles(canvas, tiles, paint == null ? scaledDrawPaint : paint);
+
+        canvas.restore();
+    }
+
+    /**
+     * Return the dropped tiles, up to the supplied number dropped in total, to the {@link BitmapPool}.
+     */
+    private void releaseRetiredTiles(int retiredCount) {
+        while (true) {
+            final int released = releasedRetiredTileCount.get();
+
+            if (retiredCount <= released) {
+                return;
+            }
+
+            if (!releasedRetiredTileCount.compareAndSet(released, released + 1)) {
+                continue;
+            }
+
+            Bitmap tile = retiredTiles.poll();
+
+            if (tile == null) {
+                return;
+            }
+
+            // Already fully transparent, so erasing it for reuse is harmless
+            bitmapPool.offer(tile);
+        }
+    }
+
+    private void drawTiles(Canvas canvas, Bitmap[] tiles, Paint paint) {
+        for (int index = 0; index < tiles.length; index++) {
+            Bitmap tile = tiles[index];
+
+            if (tile == null || tile.isRecycled()) {
+                continue;
+            }
+
+            canvas.drawBitmap(tile, getTileLeft(index), getTileTop(index), paint);
+        }
+    }
+
+    /**
+     * Draw the batch into each remaining tile that intersects the supplied bounds.
+     *
+     * @param bounds the area affected by drawing the batch with the supplied Paint,
+     * in the coordinate space of the scratchable layout
+     */
+    @Override
+    public void erase(ScratchPathBatch batch, Paint clearPaint, Rect bounds) {
+        final int firstColumn = Math.max(0, (int) Math.floor(bounds.left * scale) / tileSize);
+        final int lastColumn = Math.min(columns - 1, ((int) Math.ceil(bounds.right * scale) - 1) / tileSize);
+        final int firstRow = Math.max(0, (int) Math.floor(bounds.top * scale) / tileSize);
+        final int lastRow = Math.min(rows - 1, ((int) Math.ceil(bounds.bottom * scale) - 1) / tileSize);
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                final int index = (row * columns) + column;
+                final Canvas canvas = tileCanvases[index];
+
+                if (canvas == null) {
+                    continue;
+                }
+
+                batch.draw(canvas, clearPaint);
+
+                tiles[index].prepareToDraw();
+                tilesErased[index] = true;
+            }
+        }
+    }
+
+    /**
+     * Draw the mask into every remaining tile, each of which then has its transparency checked
+     * on the next call to {@link #releaseTransparentTiles()}.
+     */
+    @Override
+    public void eraseMask(Bitmap mask, RectF bounds, Paint maskPaint) {
+        for (int index = 0; index < tiles.length; index++) {
+            final Canvas canvas = tileCanvases[index];
+
+            if (canvas == null) {
+                continue;
+            }
+
+            canvas.drawBitmap(mask, null, bounds, maskPaint);
+
+            tiles[index].prepareToDraw();
+            tilesErased[index] = true;
+        }
+    }
+
+    @Override
+    public void trim() {
+        releaseTransparentTiles();
+    }
+
+    /**
+     * Release every tile that has become fully transparent since the last call.
+     *
+     * @return the number of tiles released
+     */
+    public int releaseTransparentTiles() {
+        int released = 0;
+
+        for (int index = 0; index < tiles.length; index++) {
+            if (!tilesErased[index]) {
+                continue;
+            }
+
+            tilesErased[index] = false;
+
+            Bitmap tile = tiles[index];
+
+            if (tile == null || !isTransparent(index, tile)) {
+                continue;
+            }
+
+            this.tiles[index] = null;
+            this.tileCanvases[index] = null;
+            this.tileCount -= 1;
+
+            // Never recycled or pooled here, as it may still be in the middle of being drawn
+            // on another Thread. It's only returned to the pool once no draw can still read it
+            retiredTiles.add(tile);
+            retiredTileCount.incrementAndGet();
+
+            released += 1;
+        }
+
+        return released;
+    }
+
+    /**
+     * Scan the tile for a visible pixel, starting from the last one found.
+     */
+    protected boolean isTransparent(int index, Bitmap tile) {
+        return isTransparent(index, tile, 0, tile.getWidth(), tile.getHeight());
+    }
+
+    /**
+     * Scan the area of the source Bitmap holding the tile's pixels, which starts at the
+     * supplied left edge, for a visible pixel, starting from the last one found.
+     */
+    private boolean isTransparent(int index, Bitmap source, int left, int tileWidth, int tileHeight) {
+        int position = tileScanPositions[index];
+
+        for (int y = position / tileWidth; y < tileHeight; y++) {
+            source.getPixels(rowPixels, 0, tileWidth, left, y, tileWidth, 1);
+
+            for (int x = position - (y * tileWidth); x < tileWidth; x++) {
+                if ((rowPixels[x] >>> 24) != 0) {
+                    tileScanPositions[index] = (y * tileWidth) + x;
+
+                    return false;
+                }
+            }
+
+            position = (y + 1) * tileWidth;
+        }
+
+        tileScanPositions[index] = tileWidth * tileHeight;
+
+        return true;
+    }
+
+    /**
+     * Release every remaining tile, including those dropped while erasing, to the {@link BitmapPool}.
+     */
+    @Override
+    public void recycle() {
+        for (int index = 0; index < tiles.length; index++) {
+            Bitmap tile = tiles[index];
+
+            bitmapPool.release(tile);
+
+            tiles[index] = null;
+            tileCanvases[index] = null;
+        }
+
+        Bitmap retired;
+
+        while ((retired = retiredTiles.poll()) != null) {
+            bitmapPool.release(retired);
+        }
+
+        this.tileCount = 0;
+        this.recycled = true;
+    }
+
+    @Override
+    public boolean isRecycled() {
+        return recycled;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    public float getScale() {
+        return scale;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * @return the number of tiles currently held in memory, excluding those dropped while erasing
+     */
+    public int getTileCount() {
+        return tileCount;
+    }
+
+    private int getTileLeft(int index) {
+        return (index % columns) * tileSize;
+    }
+
+    private int getTileTop(int index) {
+        return (index / columns) * tileSize;
+    }
+}
@@ -0,0 +1,49 @@
+package com.jackpocket.scratchoff.tools;
+
+/**
+ * Reads the values written by a {@link VarintWriter} back in order.
+ * <br><br>
+ * This class is not Thread-safe.
+ */
+public class VarintReader {
+
+    private final byte[] data;
+    private int position = 0;
+
+    public VarintReader(byte[] data) {
+        this.data = data;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the data ends before the value does, or the value does not fit in 32 bits
+     */
+    public int read() {
+        int value = 0;
+
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (data.length <= position) {
+                throw new IllegalArgumentException("Truncated data at byte " + position);
+            }
+
+            final byte next = data[position++];
+
+            value |= (next & 0x7F) << shift;
+
+            if ((next & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IllegalArgumentException("Malformed varint at byte " + position);
+    }
+
+    public int readSigned() {
+        final int value = read();
+
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public boolean hasRemaining() {
+        return position < data.length;
+    }
+}
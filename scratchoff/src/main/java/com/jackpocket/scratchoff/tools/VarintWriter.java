@@ -0,0 +1,56 @@
+package com.jackpocket.scratchoff.tools;
+
+import java.util.Arrays;
+
+/**
+ * A growable byte array that values are appended to as variable-length integers, taking
+ * one byte for every 7 bits of the value, so that small values take a single byte.
+ * <br><br>
+ * This class is not Thread-safe.
+ */
+public class VarintWriter {
+
+    private byte[] data;
+    private int size = 0;
+
+    public VarintWriter(int initialCapacity) {
+        this.data = new byte[Math.max(5, initialCapacity)];
+    }
+
+    /**
+     * Append a value, which is treated as unsigned. Use {@link #writeSigned(int)}
+     * for values that may be negative.
+     */
+    public void write(int value) {
+        // At most 5 bytes for a 32-bit value
+        if (data.length < size + 5) {
+            this.data = Arrays.copyOf(data, Math.max(data.length * 2, size + 5));
+        }
+
+        while ((value & ~0x7F) != 0) {
+            data[size++] = (byte) ((value & 0x7F) | 0x80);
+
+            value >>>= 7;
+        }
+
+        data[size++] = (byte) value;
+    }
+
+    /**
+     * Append a value zig-zag encoded, so that values close to 0 take a single byte regardless of their sign.
+     */
+    public void writeSigned(int value) {
+        write((value << 1) ^ (value >> 31));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return a copy of the bytes written so far
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(data, size);
+    }
+}
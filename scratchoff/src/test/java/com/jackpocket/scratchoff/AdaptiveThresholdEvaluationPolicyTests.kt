@@ -0,0 +1,93 @@
+package com.jackpocket.scratchoff
+
+import android.view.MotionEvent
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.jackpocket.scratchoff.paths.ScratchPathPointBuffer
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+class AdaptiveThresholdEvaluationPolicyTests {
+
+    @Test
+    fun testInitialDelayConstrainedToRange() {
+        assertEquals(50L, AdaptiveThresholdEvaluationPolicy().evaluationDelayMs)
+        assertEquals(20L, AdaptiveThresholdEvaluationPolicy(20, 10, 100, 4f).evaluationDelayMs)
+        assertEquals(100L, AdaptiveThresholdEvaluationPolicy(20, 500, 100, 4f).evaluationDelayMs)
+    }
+
+    @Test
+    fun testSlowEvaluationsStretchDelayUntilMaximum() {
+        val policy = AdaptiveThresholdEvaluationPolicy(20, 40, 100, 4f)
+
+        policy.onEvaluationCompleted(toNanos(20))
+
+        assertEquals(80L, policy.evaluationDelayMs)
+
+        0
+            .until(10)
+            .forEach({
+                policy.onEvaluationCompleted(toNanos(100))
+            })
+
+        assertEquals(100L, policy.evaluationDelayMs)
+    }
+
+    @Test
+    fun testCheapEvaluationsShrinkDelayUntilMinimum() {
+        val policy = AdaptiveThresholdEvaluationPolicy(20, 40, 100, 4f)
+
+        policy.onEvaluationCompleted(toNanos(10))
+
+        assertEquals(40L, policy.evaluationDelayMs)
+
+        0
+            .until(20)
+            .forEach({
+                policy.onEvaluationCompleted(toNanos(1))
+            })
+
+        assertEquals(20L, policy.evaluationDelayMs)
+    }
+
+    @Test
+    fun testCostSmoothedAcrossEvaluations() {
+        val policy = AdaptiveThresholdEvaluationPolicy(1, 40, 1000, 4f)
+
+        policy.onEvaluationCompleted(toNanos(10))
+        policy.onEvaluationCompleted(toNanos(50))
+
+        // 10 + ((50 - 10) * 0.25) = 20ms
+        assertEquals(80L, policy.evaluationDelayMs)
+    }
+
+    @Test
+    fun testImmediateEvaluationRequiredOnlyForActionUp() {
+        val policy = AdaptiveThresholdEvaluationPolicy()
+
+        assertFalse(
+            policy.isImmediateEvaluationRequired(
+                ScratchPathPointBuffer().apply({
+                    add(0, 0f, 0f, MotionEvent.ACTION_DOWN)
+                    add(0, 0f, 0f, MotionEvent.ACTION_MOVE)
+                })
+            )
+        )
+
+        assertTrue(
+            policy.isImmediateEvaluationRequired(
+                ScratchPathPointBuffer().apply({
+                    add(0, 0f, 0f, MotionEvent.ACTION_MOVE)
+                    add(0, 0f, 0f, MotionEvent.ACTION_UP)
+                })
+            )
+        )
+    }
+
+    private fun toNanos(ms: Long): Long {
+        return ms * 1_000_000L
+    }
+}
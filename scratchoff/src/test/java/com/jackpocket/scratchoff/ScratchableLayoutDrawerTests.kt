@@ -5,6 +5,7 @@ import android.graphics.Bitmap
 import android.graphics.Canvas
 import android.graphics.Color
 import android.graphics.Paint
+import android.graphics.Rect
 import android.view.MotionEvent
 import android.view.View
 import android.view.ViewGroup
@@ -15,6 +16,8 @@ import com.jackpocket.scratchoff.paths.ScratchPathPoint
 import com.jackpocket.scratchoff.tools.ThresholdCalculator
 import com.jackpocket.scratchoff.views.ScratchableLinearLayout
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
 import org.junit.Test
 import org.junit.runner.RunWith
 import org.robolectric.annotation.GraphicsMode
@@ -101,6 +104,339 @@ class ScratchableLayoutDrawerTests {
         assertEquals(0.1f, ThresholdCalculator(Color.WHITE).calculate(result, fullSizeRegion))
     }
 
+    @Test
+    fun testDrawOverlayOnlyAvailableWhileLaidOut() {
+        val result = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888)
+        val resultCanvas = Canvas(result)
+
+        val view = View(context)
+        view.setBackgroundColor(Color.WHITE)
+        view.layout(0, 0, 10, 10)
+
+        val drawer = ScratchableLayoutDrawer(null)
+
+        assertFalse(drawer.drawOverlay(resultCanvas, Paint()))
+
+        drawer.attach(1, view, null)
+
+        view.viewTreeObserver.dispatchOnGlobalLayout()
+
+        assertTrue(drawer.drawOverlay(resultCanvas, Paint()))
+        assertEquals(Color.WHITE, result.getPixel(5, 5))
+
+        drawer.destroy()
+
+        assertFalse(drawer.drawOverlay(resultCanvas, Paint()))
+    }
+
+    @Test
+    fun testDrawOverlayChangesOnlyDrawsErasedArea() {
+        val result = Bitmap.createBitmap(20, 20, Bitmap.Config.ARGB_8888)
+        val resultCanvas = Canvas(result)
+
+        val view = View(context)
+        view.setBackgroundColor(Color.WHITE)
+        view.layout(0, 0, 20, 20)
+
+        val drawer = ScratchableLayoutDrawer(null)
+
+        assertFalse(drawer.drawOverlayChanges(resultCanvas, Paint()))
+
+        drawer.attach(1, view, null)
+
+        view.viewTreeObserver.dispatchOnGlobalLayout()
+
+        result.eraseColor(Color.RED)
+
+        assertTrue(drawer.drawOverlayChanges(resultCanvas, Paint()))
+        assertEquals(Color.RED, result.getPixel(0, 5))
+
+        drawer.addScratchPathPoints(
+            listOf(
+                ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_DOWN),
+                ScratchPathPoint(0, 0f, 10f, MotionEvent.ACTION_MOVE)
+            )
+        )
+
+        assertTrue(drawer.drawOverlayChanges(resultCanvas, Paint()))
+        assertEquals(Color.TRANSPARENT, result.getPixel(0, 5))
+        assertEquals(Color.RED, result.getPixel(10, 5))
+        assertEquals(Color.RED, result.getPixel(0, 15))
+
+        // Nothing was erased since the last call, so nothing is drawn
+        result.eraseColor(Color.RED)
+
+        assertTrue(drawer.drawOverlayChanges(resultCanvas, Paint()))
+        assertEquals(Color.RED, result.getPixel(0, 5))
+
+        drawer.destroy()
+    }
+
+    @Test
+    fun testStateTransitionsAndPointsAddedWhilePreparingDrawnOnceScratchable() {
+        val result = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888)
+        val resultCanvas = Canvas(result)
+        val fullSizeRegion = ThresholdCalculator.createFullSizeThresholdRegion(result)
+
+        val view = View(context)
+        view.setBackgroundColor(Color.WHITE)
+        view.layout(0, 0, 10, 10)
+
+        lateinit var drawer: ScratchableLayoutDrawer
+
+        // Mimic a restoration being performed from the layout callback
+        val delegate = ScratchableLayoutDrawer.Delegate({ _, _ ->
+            assertEquals(ScratchableLayoutDrawer.State.PREPARING, drawer.state)
+
+            drawer.addScratchPathPoints(
+                listOf(
+                    ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_DOWN),
+                    ScratchPathPoint(0, 0f, 10f, MotionEvent.ACTION_MOVE)
+                )
+            )
+        })
+
+        drawer = object: ScratchableLayoutDrawer(delegate) {
+            override fun createClearPaint(touchRadiusPx: Int): Paint {
+                return ScratchPathManager
+                    .createBaseScratchoffPaint(touchRadiusPx)
+                    .apply({ this.color = Color.BLACK })
+            }
+        }
+
+        assertEquals(ScratchableLayoutDrawer.State.UNATTACHED, drawer.state)
+
+        drawer.attach(1, view, null)
+
+        assertEquals(ScratchableLayoutDrawer.State.PREPARING, drawer.state)
+
+        drawer.addScratchPathPoints(
+            listOf(
+                ScratchPathPoint(0, 10f, 0f, MotionEvent.ACTION_DOWN),
+                ScratchPathPoint(0, 10f, 10f, MotionEvent.ACTION_MOVE)
+            )
+        )
+
+        view.viewTreeObserver.dispatchOnGlobalLayout()
+
+        assertEquals(ScratchableLayoutDrawer.State.SCRATCHABLE, drawer.state)
+
+        drawer.draw(resultCanvas)
+
+        assertEquals(0.2f, ThresholdCalculator(Color.WHITE).calculate(result, fullSizeRegion))
+
+        drawer.clear(false)
+
+        assertEquals(ScratchableLayoutDrawer.State.CLEARED, drawer.state)
+
+        // A late animation callback must not move the State backwards
+        drawer.onAnimationEnd(null)
+
+        assertEquals(ScratchableLayoutDrawer.State.CLEARED, drawer.state)
+    }
+
+    @Test
+    fun testFrameSynchronizedDrawingDrawsAccumulatedBatchesOncePerFrame() {
+        val result = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888)
+        val resultCanvas = Canvas(result)
+        val fullSizeRegion = ThresholdCalculator.createFullSizeThresholdRegion(result)
+
+        var invalidateCount: Int = 0
+        var scheduleCount: Int = 0
+        val invalidatedBounds = Rect()
+
+        val view = object: View(context) {
+            override fun invalidate() {
+                invalidateCount += 1
+
+                super.invalidate()
+            }
+
+            @Deprecated("Deprecated in Java")
+            override fun invalidate(l: Int, t: Int, r: Int, b: Int) {
+                invalidateCount += 1
+                invalidatedBounds.set(l, t, r, b)
+
+                super.invalidate(l, t, r, b)
+            }
+        }
+        view.setBackgroundColor(Color.WHITE)
+        view.layout(0, 0, 10, 10)
+
+        val drawer = object: ScratchableLayoutDrawer(null) {
+            override fun createClearPaint(touchRadiusPx: Int): Paint {
+                return ScratchPathManager
+                    .createBaseScratchoffPaint(touchRadiusPx)
+                    .apply({ this.color = Color.BLACK })
+            }
+
+            override fun scheduleFrameDraw() {
+                scheduleCount += 1
+            }
+        }
+        drawer.setFrameSynchronizedDrawingEnabled(true)
+        drawer.attach(1, view, null)
+
+        view.viewTreeObserver.dispatchOnGlobalLayout()
+
+        val invalidateCountBeforeScratching = invalidateCount
+
+        listOf(0f, 10f)
+            .forEach({ x ->
+                drawer.addScratchPathPoints(
+                    listOf(
+                        ScratchPathPoint(0, x, 0f, MotionEvent.ACTION_DOWN),
+                        ScratchPathPoint(0, x, 10f, MotionEvent.ACTION_MOVE)
+                    )
+                )
+            })
+
+        drawer.draw(resultCanvas)
+
+        assertEquals(2, scheduleCount)
+        assertEquals(0.0f, ThresholdCalculator(Color.WHITE).calculate(result, fullSizeRegion))
+
+        drawer.drawFrameScratchPathBatches()
+        drawer.draw(resultCanvas)
+
+        assertEquals(0.2f, ThresholdCalculator(Color.WHITE).calculate(result, fullSizeRegion))
+        assertEquals(invalidateCountBeforeScratching + 1, invalidateCount)
+        assertEquals(Rect(-2, -2, 12, 12), invalidatedBounds)
+
+        // Nothing left to draw, so nothing to invalidate
+        drawer.drawFrameScratchPathBatches()
+
+        assertEquals(invalidateCountBeforeScratching + 1, invalidateCount)
+    }
+
+    @Test
+    fun testPackedDirtyBoundsClampedToShortRange() {
+        val packed = ScratchableLayoutDrawer.packDirtyBounds(-3, -40000, 1080, 70000)
+
+        assertEquals(-3, ScratchableLayoutDrawer.unpackDirtyBoundsEdge(packed, 0))
+        assertEquals(Short.MIN_VALUE.toInt(), ScratchableLayoutDrawer.unpackDirtyBoundsEdge(packed, 1))
+        assertEquals(1080, ScratchableLayoutDrawer.unpackDirtyBoundsEdge(packed, 2))
+        assertEquals(Short.MAX_VALUE.toInt(), ScratchableLayoutDrawer.unpackDirtyBoundsEdge(packed, 3))
+    }
+
+    @Test
+    fun testDirtyBoundsCoverErasedSegmentsExpandedByStrokeRadius() {
+        val view = View(context)
+        view.setBackgroundColor(Color.WHITE)
+        view.layout(0, 0, 100, 100)
+
+        val drawer = ScratchableLayoutDrawer(null)
+        drawer.attach(5, view, null)
+
+        view.viewTreeObserver.dispatchOnGlobalLayout()
+
+        val dirtyBounds = Rect()
+
+        assertFalse(drawer.takeDirtyBounds(dirtyBounds))
+        assertFalse(drawer.getLastDirtyBounds(dirtyBounds))
+
+        drawer.addScratchPathPoints(
+            listOf(
+                ScratchPathPoint(0, 20f, 30f, MotionEvent.ACTION_DOWN),
+                ScratchPathPoint(0, 40f, 30f, MotionEvent.ACTION_MOVE)
+            )
+        )
+        drawer.addScratchPathPoints(
+            listOf(
+                ScratchPathPoint(0, 40f, 50f, MotionEvent.ACTION_MOVE)
+            )
+        )
+
+        // Expanded by the touch radius, plus a pixel for anti-aliasing
+        assertTrue(drawer.takeDirtyBounds(dirtyBounds))
+        assertEquals(Rect(14, 24, 46, 56), dirtyBounds)
+
+        assertFalse(drawer.takeDirtyBounds(Rect()))
+
+        val lastDirtyBounds = Rect()
+
+        assertTrue(drawer.getLastDirtyBounds(lastDirtyBounds))
+        assertEquals(dirtyBounds, lastDirtyBounds)
+
+        drawer.destroy()
+
+        assertFalse(drawer.getLastDirtyBounds(lastDirtyBounds))
+    }
+
+    @Test
+    fun testAlphaMaskRenderModeDrawsAndErasesOverlay() {
+        val result = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888)
+        val resultCanvas = Canvas(result)
+        val fullSizeRegion = ThresholdCalculator.createFullSizeThresholdRegion(result)
+
+        val view = View(context)
+        view.setBackgroundColor(Color.WHITE)
+        view.layout(0, 0, 10, 10)
+
+        val drawer = ScratchableLayoutDrawer(null)
+            .setOverlayRenderMode(ScratchableLayoutDrawer.OverlayRenderMode.ALPHA_MASK)
+        drawer.attach(1, view, null)
+
+        view.viewTreeObserver.dispatchOnGlobalLayout()
+
+        drawer.addScratchPathPoints(
+            listOf(
+                ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_DOWN),
+                ScratchPathPoint(0, 0f, 10f, MotionEvent.ACTION_MOVE)
+            )
+        )
+        drawer.draw(resultCanvas)
+
+        assertEquals(0.1f, ThresholdCalculator(Color.WHITE).calculate(result, fullSizeRegion))
+
+        // The overlay read for threshold evaluation is composited the same way
+        result.eraseColor(Color.RED)
+
+        assertTrue(drawer.drawOverlay(resultCanvas, Paint()))
+        assertEquals(Color.TRANSPARENT, result.getPixel(0, 5))
+        assertEquals(Color.WHITE, result.getPixel(5, 5))
+
+        drawer.destroy()
+
+        assertFalse(drawer.drawOverlay(resultCanvas, Paint()))
+    }
+
+    @Test
+    fun testReducedOverlayDrawingQualityErasesScaledOverlay() {
+        val result = Bitmap.createBitmap(20, 20, Bitmap.Config.ARGB_8888)
+        val resultCanvas = Canvas(result)
+
+        val view = View(context)
+        view.setBackgroundColor(Color.WHITE)
+        view.layout(0, 0, 20, 20)
+
+        val drawer = ScratchableLayoutDrawer(null)
+            .setOverlayDrawingQuality(0.5f)
+        drawer.attach(2, view, null)
+
+        view.viewTreeObserver.dispatchOnGlobalLayout()
+
+        drawer.addScratchPathPoints(
+            listOf(
+                ScratchPathPoint(0, 10f, 0f, MotionEvent.ACTION_DOWN),
+                ScratchPathPoint(0, 10f, 20f, MotionEvent.ACTION_MOVE)
+            )
+        )
+        drawer.draw(resultCanvas)
+
+        assertEquals(Color.WHITE, result.getPixel(2, 10))
+        assertEquals(Color.TRANSPARENT, result.getPixel(10, 10))
+        assertEquals(Color.WHITE, result.getPixel(17, 10))
+
+        // Expanded by the touch radius, plus two of the overlay's pixels for filtering
+        val dirtyBounds = Rect()
+
+        assertTrue(drawer.takeDirtyBounds(dirtyBounds))
+        assertEquals(Rect(4, -6, 16, 26), dirtyBounds)
+
+        drawer.destroy()
+    }
+
     @Test
     fun testRemovesGlobalLayoutInitListenerOnDestroy() {
         val result = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888)
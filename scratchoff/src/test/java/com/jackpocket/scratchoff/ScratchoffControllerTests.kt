@@ -9,15 +9,23 @@ import android.view.View
 import android.widget.FrameLayout
 import androidx.test.ext.junit.runners.AndroidJUnit4
 import androidx.test.platform.app.InstrumentationRegistry
+import com.jackpocket.scratchoff.coverage.CoverageMask
 import com.jackpocket.scratchoff.paths.ScratchPathPoint
-import com.jackpocket.scratchoff.paths.ScratchPathPointsAggregator
+import com.jackpocket.scratchoff.paths.ScratchPathPointBuffer
+import com.jackpocket.scratchoff.paths.ScratchPathBatch
+import com.jackpocket.scratchoff.paths.ScratchPathBatchAggregator
+import com.jackpocket.scratchoff.paths.ScratchPathManager
 import com.jackpocket.scratchoff.views.ScratchableLayout
 import com.jackpocket.scratchoff.views.ScratchableLinearLayout
 import com.jackpocket.scratchoff.views.ScratchableRelativeLayout
 import org.junit.Assert.assertEquals
 import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
 import org.junit.Test
 import org.junit.runner.RunWith
+import java.io.File
+import java.util.concurrent.Executor
+import java.util.concurrent.TimeUnit
 
 @RunWith(AndroidJUnit4::class)
 class ScratchoffControllerTests {
@@ -167,7 +175,7 @@ class ScratchoffControllerTests {
         val event = MotionEvent.obtain(0, 0, MotionEvent.ACTION_DOWN, 0f, 0f, 0)
 
         val controller = object: ScratchoffController(mockScratchableLayout) {
-            override fun addScratchPathPoints(events: MutableCollection<ScratchPathPoint>?) {
+            override fun addScratchPathPoints(points: ScratchPathPointBuffer?) {
                 enqueueCallCount += 1
             }
         }
@@ -187,15 +195,15 @@ class ScratchoffControllerTests {
         var enqueueSpecificListenerCallCount: Int = 0
 
         val controller = object: ScratchoffController(mockScratchableLayout) {
-            override fun addScratchPathPoints(events: MutableCollection<ScratchPathPoint>?) {
+            override fun addScratchPathPoints(points: ScratchPathPointBuffer?) {
                 enqueueCallCount += 1
 
-                super.addScratchPathPoints(events)
+                super.addScratchPathPoints(points)
             }
 
-            override fun addScratchPathPoints(
-                events: MutableCollection<ScratchPathPoint>?,
-                listener: ScratchPathPointsAggregator?,
+            override fun addScratchPathBatch(
+                batch: ScratchPathBatch?,
+                listener: ScratchPathBatchAggregator?,
             ) {
                 // This should be called twice; once with the ScratchableLayoutDrawer, and once
                 // with the ThresholdProcessor
@@ -285,6 +293,332 @@ class ScratchoffControllerTests {
         assertEquals(expectedPoint, controller.clonedHistory[0])
     }
 
+    @Test
+    fun testCoverageMaskRestorationFallsBackToHistoryWithoutOverlay() {
+        var maskRestorationCount: Int = 0
+        val expectedPoint = ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_DOWN)
+
+        val controller = object: ScratchoffController(mockScratchableLayout) {
+            override fun performCoverageMaskRestoration(state: ScratchoffState): Boolean {
+                maskRestorationCount += 1
+
+                return super.performCoverageMaskRestoration(state)
+            }
+        }
+        controller.setStateRestorationParcel(
+            ScratchoffState(
+                AbsSavedState.EMPTY_STATE,
+                intArrayOf(10, 20),
+                false,
+                ScratchPathPointBuffer().apply({ this.add(expectedPoint) }),
+                CoverageMask(1, 2, 10f).apply({ this.setErased(0, 0) })
+            )
+        )
+        controller.onScratchableLayoutAvailable(10, 20)
+
+        assertEquals(1, maskRestorationCount)
+        assertEquals(expectedPoint, controller.clonedHistory[0])
+    }
+
+    @Test
+    fun testHistoryOmittedAlongsideCoverageMaskUnlessRetained() {
+        val controller = object: ScratchoffController(mockScratchableLayout) {
+            override fun createCoverageMask(size: IntArray?): CoverageMask? {
+                return CoverageMask(1, 2, 10f).apply({ this.setErased(0, 0) })
+            }
+        }
+        controller.onScratchableLayoutAvailable(10, 20)
+        controller.addScratchPathPoints(listOf(ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_DOWN)))
+
+        assertEquals(1, controller.parcelize(AbsSavedState.EMPTY_STATE).pathHistory.size)
+
+        controller.setCoverageMaskHistoryRetained(false)
+
+        val state = controller.parcelize(AbsSavedState.EMPTY_STATE)
+
+        assertTrue(state.hasCoverageMask())
+        assertEquals(0, state.pathHistory.size)
+    }
+
+    @Test
+    fun testIncrementalRestorationReplaysHistoryInChunksAndHoldsThresholdCallbacks() {
+        var scheduleCount: Int = 0
+        val livePoint = ScratchPathPoint(1, 5f, 5f, MotionEvent.ACTION_DOWN)
+
+        val controller = object: ScratchoffController(mockScratchableLayout) {
+            override fun post(runnable: Runnable?) {
+                runnable?.run()
+            }
+
+            override fun scheduleIncrementalStateRestorationFrame() {
+                scheduleCount += 1
+            }
+
+            override fun clearLayoutDrawer(clearAnimationEnabled: Boolean) { }
+        }
+        controller.setThresholdChangedListener(loggingDelegate)
+        controller.setIncrementalStateRestorationEnabled(true)
+        controller.setIncrementalStateRestorationFrameBudget(0, TimeUnit.NANOSECONDS)
+
+        val history = ScratchPathPointBuffer()
+
+        0.until(100)
+            .forEach({ history.add(0, it.toFloat(), 0f, if (it == 0) MotionEvent.ACTION_DOWN else MotionEvent.ACTION_MOVE) })
+
+        controller.setStateRestorationParcel(
+            ScratchoffState(
+                AbsSavedState.EMPTY_STATE,
+                intArrayOf(10, 20),
+                false,
+                history
+            )
+        )
+        controller.onScratchableLayoutAvailable(10, 20)
+
+        assertTrue(controller.isIncrementalStateRestorationInProgress)
+        assertEquals(1, scheduleCount)
+
+        // Live touches are recorded after the restored history, while it's still being replayed
+        controller.addScratchPathPoints(listOf(livePoint))
+
+        assertEquals(101, controller.clonedHistory.size)
+        assertEquals(livePoint, controller.clonedHistory[100])
+
+        controller.postScratchPercentChanged(50f)
+        controller.postScratchThresholdReached()
+
+        assertEquals(0f, loggingDelegate.threshold)
+        assertEquals(0, loggingDelegate.completions)
+
+        while (controller.isIncrementalStateRestorationInProgress) {
+            controller.performIncrementalStateRestorationFrame()
+        }
+
+        // One chunk per frame when the budget is exhausted
+        assertEquals(4, scheduleCount)
+        assertEquals(50f, loggingDelegate.threshold)
+        assertEquals(1, loggingDelegate.completions)
+    }
+
+    @Test
+    fun testHistoryRescaledWhenRestoredAtDifferentLayoutSize() {
+        val controller = ScratchoffController(mockScratchableLayout)
+        controller.setStateRestorationParcel(
+            ScratchoffState(
+                AbsSavedState.EMPTY_STATE,
+                intArrayOf(10, 20),
+                false,
+                listOf(
+                    ScratchPathPoint(0, 5f, 5f, MotionEvent.ACTION_DOWN),
+                    ScratchPathPoint(0, 10f, 20f, MotionEvent.ACTION_MOVE)
+                )
+            )
+        )
+        controller.onScratchableLayoutAvailable(20, 10)
+
+        assertEquals(
+            listOf(
+                ScratchPathPoint(0, 10f, 2.5f, MotionEvent.ACTION_DOWN),
+                ScratchPathPoint(0, 20f, 10f, MotionEvent.ACTION_MOVE)
+            ),
+            controller.clonedHistory
+        )
+    }
+
+    @Test
+    fun testIncrementalRestorationScalesEachDecodedChunk() {
+        val replayed = ScratchPathPointBuffer()
+
+        val controller = object: ScratchoffController(mockScratchableLayout) {
+            override fun scheduleIncrementalStateRestorationFrame() { }
+
+            override fun drawScratchPathBatch(batch: ScratchPathBatch) {
+                replayed.addAll(batch.points)
+            }
+        }
+        controller.setIncrementalStateRestorationEnabled(true)
+        controller.setIncrementalStateRestorationFrameBudget(0, TimeUnit.NANOSECONDS)
+
+        val history = ScratchPathPointBuffer()
+
+        0.until(40)
+            .forEach({ history.add(0, it.toFloat(), 1f, if (it == 0) MotionEvent.ACTION_DOWN else MotionEvent.ACTION_MOVE) })
+
+        controller.setStateRestorationParcel(
+            ScratchoffState(
+                AbsSavedState.EMPTY_STATE,
+                intArrayOf(10, 20),
+                false,
+                history
+            )
+        )
+        controller.onScratchableLayoutAvailable(20, 60)
+
+        while (controller.isIncrementalStateRestorationInProgress) {
+            controller.performIncrementalStateRestorationFrame()
+        }
+
+        val recorded = controller.clonedHistory
+
+        assertEquals(40, replayed.size())
+        assertEquals(40, recorded.size)
+
+        0.until(40)
+            .forEach({
+                assertEquals(it * 2f, replayed.getX(it))
+                assertEquals(3f, replayed.getY(it))
+                assertEquals(ScratchPathPoint(0, it * 2f, 3f, history.getAction(it)), recorded[it])
+            })
+    }
+
+    @Test
+    fun testRestorationPathGeometryScalesStrokeByAreaScale() {
+        val controller = object: ScratchoffController(mockScratchableLayout) {
+            public override fun createRestorationPathGeometry(scaleX: Float, scaleY: Float): ScratchPathManager {
+                return super.createRestorationPathGeometry(scaleX, scaleY)
+            }
+        }
+
+        val batch = controller.createRestorationPathGeometry(2f, 8f)
+            .createBatch(listOf(ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_DOWN)))
+
+        assertEquals(4f, batch.strokeScale)
+    }
+
+    @Test
+    fun testRescaledStrokeScalePreservedWhenSavedAndRestoredAgain() {
+        val strokeScales = mutableListOf<Float>()
+
+        val createController = {
+            object: ScratchoffController(mockScratchableLayout) {
+                override fun drawScratchPathBatch(batch: ScratchPathBatch) {
+                    strokeScales.add(batch.strokeScale)
+                }
+            }
+        }
+
+        val controller = createController()
+        controller.setStateRestorationParcel(
+            ScratchoffState(
+                AbsSavedState.EMPTY_STATE,
+                intArrayOf(10, 10),
+                false,
+                listOf(
+                    ScratchPathPoint(0, 5f, 5f, MotionEvent.ACTION_DOWN),
+                    ScratchPathPoint(0, 10f, 10f, MotionEvent.ACTION_MOVE)
+                )
+            )
+        )
+        controller.onScratchableLayoutAvailable(20, 20)
+
+        val restoredController = createController()
+        restoredController.setStateRestorationParcel(controller.parcelize(AbsSavedState.EMPTY_STATE))
+        restoredController.onScratchableLayoutAvailable(20, 20)
+
+        assertEquals(listOf(2f, 2f), strokeScales)
+    }
+
+    @Test
+    fun testJournaledHistoryBoundedInMemoryAndExcludedFromParcel() {
+        val file = File.createTempFile("scratchoff", ".journal")
+        val journal = ScratchoffJournal(file)
+
+        try {
+            val controller = ScratchoffController(mockScratchableLayout)
+                .setJournal(journal)
+                .setJournaledHistoryLimit(2)
+
+            controller.onScratchableLayoutAvailable(10, 20)
+            controller.addScratchPathPoints(
+                listOf(
+                    ScratchPathPoint(0, 1f, 1f, MotionEvent.ACTION_DOWN),
+                    ScratchPathPoint(0, 2f, 2f, MotionEvent.ACTION_MOVE),
+                    ScratchPathPoint(0, 3f, 3f, MotionEvent.ACTION_UP)
+                )
+            )
+
+            assertEquals(2, controller.clonedHistory.size)
+            assertEquals(0, controller.parcelize(AbsSavedState.EMPTY_STATE).pathHistory.size)
+            assertEquals(3, journal.recover()!!.pathHistory.size)
+        }
+        finally {
+            journal.delete()
+            journal.recover()
+        }
+    }
+
+    @Test
+    fun testJournalRestoredRecordByRecordAndRewrittenInFewerRecords() {
+        val file = File.createTempFile("scratchoff", ".journal")
+        val journal = ScratchoffJournal(file)
+
+        try {
+            journal.reset(10, 20)
+
+            listOf(
+                ScratchPathPoint(0, 1f, 1f, MotionEvent.ACTION_DOWN),
+                ScratchPathPoint(0, 2f, 2f, MotionEvent.ACTION_MOVE),
+                ScratchPathPoint(0, 3f, 3f, MotionEvent.ACTION_UP)
+            ).forEach({
+                val points = ScratchPathPointBuffer()
+                points.add(it)
+
+                journal.append(points)
+            })
+
+            // Waits for the pending records to be written
+            journal.recover()
+
+            val journaledLength = file.length()
+
+            val controller = ScratchoffController(mockScratchableLayout)
+                .setJournal(journal)
+                .attach()
+
+            controller.onScratchableLayoutAvailable(10, 20)
+
+            assertEquals(listOf(1f, 2f, 3f), controller.clonedHistory.map({ it.x }))
+            assertFalse(journal.recoveryFile.exists())
+
+            // The three records are journaled again as one
+            assertEquals(listOf(1f, 2f, 3f), journal.recover()!!.pathHistory.map({ it.x }))
+            assertTrue(file.length() < journaledLength)
+        }
+        finally {
+            journal.delete()
+            journal.recover()
+        }
+    }
+
+    @Test
+    fun testHistoryCompactedOnceIntervalReached() {
+        val controller = ScratchoffController(mockScratchableLayout)
+            .setHistoryCompactionEnabled(true)
+            .setHistoryCompactionIntervalPoints(12)
+            .setHistoryCompactionExecutor(Executor({ it.run() }))
+
+        controller.onScratchableLayoutAvailable(10, 20)
+        controller.addScratchPathPoints(listOf(ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_DOWN)))
+
+        1.until(6)
+            .forEach({ controller.addScratchPathPoints(listOf(ScratchPathPoint(0, it * 1f, 0f, MotionEvent.ACTION_MOVE))) })
+
+        // Below the interval, nothing has been compacted
+        assertEquals(6, controller.clonedHistory.size)
+
+        6.until(11)
+            .forEach({ controller.addScratchPathPoints(listOf(ScratchPathPoint(0, it * 1f, 0f, MotionEvent.ACTION_MOVE))) })
+
+        controller.addScratchPathPoints(listOf(ScratchPathPoint(0, 10f, 0f, MotionEvent.ACTION_UP)))
+
+        val history = controller.clonedHistory
+
+        assertEquals(3, history.size)
+        assertEquals(MotionEvent.ACTION_DOWN, history[0].action)
+        assertEquals(10f, history[1].x)
+        assertEquals(MotionEvent.ACTION_UP, history[2].action)
+    }
+
     @Test
     fun testRestoreNotAttemptedWhenPendingStateRemovedOnLayoutAvailable() {
         var restoreAttemptCount: Int = 0
@@ -0,0 +1,180 @@
+package com.jackpocket.scratchoff
+
+import android.view.MotionEvent
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.jackpocket.scratchoff.paths.ScratchPathPoint
+import com.jackpocket.scratchoff.paths.ScratchPathPointBuffer
+import com.jackpocket.scratchoff.paths.ScratchPathPointCodec
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.io.File
+import java.io.RandomAccessFile
+
+@RunWith(AndroidJUnit4::class)
+class ScratchoffJournalTests {
+
+    private val file: File = File.createTempFile("scratchoff", ".journal")
+        .apply({ this.delete() })
+
+    @After
+    fun cleanup() {
+        file.delete()
+        File(file.path + ".recovery").delete()
+    }
+
+    @Test
+    fun testRecordsRecoveredByNewInstance() {
+        val journal = ScratchoffJournal(file)
+        journal.reset(10, 20)
+        journal.append(createPoints(0f, 1f))
+        journal.append(createPoints(2f, 3f))
+        journal.appendThresholdReached()
+
+        // Waits for the pending records to be written
+        journal.recover()
+
+        val state = ScratchoffJournal(file).recover()!!
+
+        assertEquals(listOf(10, 20), state.layoutSize.toList())
+        assertTrue(state.isThresholdReached)
+        assertEquals(
+            listOf(0f, 1f, 2f, 3f),
+            state.pathHistory.map({ it.x })
+        )
+    }
+
+    @Test
+    fun testResetDiscardsEarlierRecords() {
+        val journal = ScratchoffJournal(file)
+        journal.reset(10, 20)
+        journal.append(createPoints(0f, 1f))
+        journal.appendThresholdReached()
+        journal.reset(30, 40)
+        journal.append(createPoints(5f))
+
+        val state = journal.recover()!!
+
+        assertEquals(listOf(30, 40), state.layoutSize.toList())
+        assertFalse(state.isThresholdReached)
+        assertEquals(listOf(5f), state.pathHistory.map({ it.x }))
+    }
+
+    @Test
+    fun testTornRecordDiscardedAndTruncated() {
+        val journal = ScratchoffJournal(file)
+        journal.reset(10, 20)
+        journal.append(createPoints(0f, 1f))
+        journal.recover()
+
+        val validLength = file.length()
+
+        // A record whose payload was never fully written
+        RandomAccessFile(file, "rw").use({
+            it.seek(validLength)
+            it.write(byteArrayOf(2, 0, 0, 0, 100, 1, 2, 3))
+        })
+
+        val state = ScratchoffJournal(file).recover()!!
+
+        assertEquals(listOf(0f, 1f), state.pathHistory.map({ it.x }))
+        assertEquals(validLength, file.length())
+    }
+
+    @Test
+    fun testMissingOrDeletedJournalRecoversNothing() {
+        val journal = ScratchoffJournal(file)
+
+        assertNull(journal.recover())
+
+        journal.reset(10, 20)
+        journal.delete()
+
+        assertNull(journal.recover())
+        assertFalse(file.exists())
+    }
+
+    @Test
+    fun testRecoveryReadsOneRecordAtATimeWhileNewRecordsBeginANewFile() {
+        val journal = ScratchoffJournal(file)
+        journal.reset(10, 20)
+        journal.append(createPoints(0f, 1f))
+        journal.append(createPoints(2f))
+
+        val recovery = journal.openRecovery().get()!!
+
+        assertEquals(listOf(10, 20), recovery.layoutSize.toList())
+        assertFalse(recovery.isThresholdReached)
+        assertFalse(file.exists())
+
+        assertEquals(listOf(0f, 1f), decodeXs(recovery.nextDecoder()!!))
+        assertEquals(listOf(2f), decodeXs(recovery.nextDecoder()!!))
+        assertFalse(recovery.hasNext())
+        assertNull(recovery.nextDecoder())
+
+        recovery.rewind()
+
+        assertEquals(listOf(0f, 1f), decodeXs(recovery.nextDecoder()!!))
+
+        journal.reset(30, 40)
+        journal.append(createPoints(5f))
+
+        assertEquals(listOf(5f), journal.recover()!!.pathHistory.map({ it.x }))
+
+        recovery.delete()
+
+        assertFalse(journal.recoveryFile.exists())
+    }
+
+    @Test
+    fun testUnfinishedRecoveryRecoveredAgainInsteadOfItsPartialRewrite() {
+        val journal = ScratchoffJournal(file)
+        journal.reset(10, 20)
+        journal.append(createPoints(0f, 1f))
+        journal.openRecovery().get()!!
+
+        // The process dies part-way through recording the recovered points again
+        journal.reset(10, 20)
+        journal.append(createPoints(0f))
+        journal.recover()
+
+        val recovery = ScratchoffJournal(file).openRecovery().get()!!
+
+        assertEquals(listOf(0f, 1f), decodeXs(recovery.nextDecoder()!!))
+        assertFalse(file.exists())
+
+        recovery.delete()
+    }
+
+    @Test
+    fun testDeletedRecoveryNotRecoveredAgain() {
+        val journal = ScratchoffJournal(file)
+        journal.reset(10, 20)
+        journal.append(createPoints(0f, 1f))
+        journal.openRecovery()
+        journal.deleteRecovery()
+
+        assertNull(journal.openRecovery().get())
+        assertFalse(journal.recoveryFile.exists())
+    }
+
+    private fun decodeXs(decoder: ScratchPathPointCodec.Decoder): List<Float> {
+        val points = ScratchPathPointBuffer()
+
+        decoder.decodeInto(points, decoder.count)
+
+        return points.toList().map({ it.x })
+    }
+
+    private fun createPoints(vararg xs: Float): ScratchPathPointBuffer {
+        val points = ScratchPathPointBuffer()
+
+        xs.forEach({ points.add(ScratchPathPoint(0, it, 0f, MotionEvent.ACTION_MOVE)) })
+
+        return points
+    }
+}
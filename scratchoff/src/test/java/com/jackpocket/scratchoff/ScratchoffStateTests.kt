@@ -4,8 +4,13 @@ import android.os.Parcel
 import android.view.AbsSavedState
 import android.view.MotionEvent
 import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.jackpocket.scratchoff.coverage.CoverageMask
 import com.jackpocket.scratchoff.paths.ScratchPathPoint
+import com.jackpocket.scratchoff.paths.ScratchPathPointBuffer
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
 import org.junit.Test
 import org.junit.runner.RunWith
 
@@ -31,6 +36,70 @@ class ScratchoffStateTests {
         assertEquals(expectedPathPoint, state.pathHistory[0])
     }
 
+    @Test
+    fun testPathHistoryParcelledInCompactEncoding() {
+        val history = ScratchPathPointBuffer()
+
+        0.until(500)
+            .forEach({ history.add(0, 100f + it, 100f + (it / 2f), MotionEvent.ACTION_MOVE) })
+
+        val origin = ScratchoffState(
+            AbsSavedState.EMPTY_STATE,
+            intArrayOf(10, 20),
+            false,
+            history
+        )
+
+        val parcel = parcelizeForRead(origin)
+
+        // Far below the 16 bytes per point of the ScratchPathPoint fields alone
+        assertTrue(parcel.dataSize() < history.size() * 4)
+
+        val state = ScratchoffState.CREATOR.createFromParcel(parcel)
+        val restored = state.pathHistoryBuffer
+
+        assertEquals(500, restored.size())
+        assertEquals(history.getX(499), restored.getX(499))
+        assertEquals(history.getY(499), restored.getY(499))
+    }
+
+    @Test
+    fun testCoverageMaskRestoredFromParcel() {
+        val mask = CoverageMask(10, 20, 2f)
+        mask.setErased(3, 7)
+
+        val origin = ScratchoffState(
+            AbsSavedState.EMPTY_STATE,
+            intArrayOf(20, 40),
+            false,
+            ScratchPathPointBuffer(),
+            mask
+        )
+
+        val state = ScratchoffState.CREATOR.createFromParcel(parcelizeForRead(origin))
+        val restored = state.coverageMask!!
+
+        assertTrue(state.hasCoverageMask())
+        assertEquals(1, restored.erasedCount)
+        assertTrue(restored.isErased(3, 7))
+        assertEquals(0, state.pathHistoryBuffer.size())
+    }
+
+    @Test
+    fun testCoverageMaskAbsentByDefault() {
+        val origin = ScratchoffState(
+            AbsSavedState.EMPTY_STATE,
+            intArrayOf(20, 40),
+            false,
+            ScratchPathPointBuffer()
+        )
+
+        val state = ScratchoffState.CREATOR.createFromParcel(parcelizeForRead(origin))
+
+        assertFalse(state.hasCoverageMask())
+        assertNull(state.coverageMask)
+    }
+
     private fun parcelizeForRead(state: ScratchoffState): Parcel {
         val parcel = Parcel.obtain()
 
@@ -4,12 +4,18 @@ import android.graphics.Bitmap
 import android.graphics.Rect
 import android.view.MotionEvent
 import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.jackpocket.scratchoff.coverage.MarkerBitmapCoverage
+import com.jackpocket.scratchoff.coverage.OverlayAlphaCoverage
 import com.jackpocket.scratchoff.paths.ScratchPathPoint
 import com.jackpocket.scratchoff.tools.ThresholdCalculator
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
 import org.junit.Test
 import org.junit.runner.RunWith
 import org.robolectric.annotation.GraphicsMode
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
 
 @RunWith(AndroidJUnit4::class)
 @GraphicsMode(GraphicsMode.Mode.NATIVE)
@@ -53,7 +59,7 @@ class ScratchoffThresholdProcessorTests {
         val processor = object: ScratchoffThresholdProcessor(
             5, 1f, ScratchoffThresholdProcessor.Quality.HIGH, LoggingDelegate()
         ) {
-            override fun scheduleNextThresholdEvaluation() {}
+            override fun scheduleNextThresholdEvaluation(delayMs: Long) {}
         }
 
         val events = listOf(
@@ -73,7 +79,7 @@ class ScratchoffThresholdProcessorTests {
         val processor = object: ScratchoffThresholdProcessor(
             2, 0.5f, ScratchoffThresholdProcessor.Quality.HIGH, LoggingDelegate()
         ) {
-            override fun scheduleNextThresholdEvaluation() {}
+            override fun scheduleNextThresholdEvaluation(delayMs: Long) {}
         }
 
         val events = listOf(
@@ -101,7 +107,7 @@ class ScratchoffThresholdProcessorTests {
         val processor = object: ScratchoffThresholdProcessor(
             1, 0.5f, ScratchoffThresholdProcessor.Quality.HIGH, LoggingDelegate()
         ) {
-            override fun scheduleNextThresholdEvaluation() {}
+            override fun scheduleNextThresholdEvaluation(delayMs: Long) {}
         }
 
         processor.prepare(intArrayOf(1, 10));
@@ -146,7 +152,7 @@ class ScratchoffThresholdProcessorTests {
         val processor = object: ScratchoffThresholdProcessor(
             30, 1f, ScratchoffThresholdProcessor.Quality.HIGH, LoggingDelegate()
         ) {
-            override fun scheduleNextThresholdEvaluation() {}
+            override fun scheduleNextThresholdEvaluation(delayMs: Long) {}
         }
 
         val events: List<ScratchPathPoint> = listOf(
@@ -365,6 +371,47 @@ class ScratchoffThresholdProcessorTests {
         assertEquals(expectedResult, processor.loggingDelegate.scratchPercent)
     }
 
+    @Test
+    fun testDirtyRegionCountsOnlyAffectIntersectingRegions() {
+        val delegate = object: LoggingDelegate() {
+            override fun createScratchableRegions(source: Bitmap): MutableList<Rect> {
+                return mutableListOf(
+                    Rect(0, 0, 5, 10),
+                    Rect(5, 0, 10, 10)
+                )
+            }
+        }
+
+        val processor = object: ScratchoffThresholdProcessor(
+            5, 1f, ScratchoffThresholdProcessor.Quality.HIGH, delegate
+        ) {
+            override fun scheduleNextThresholdEvaluation(delayMs: Long) {}
+        }
+
+        processor.prepare(intArrayOf(10, 10))
+        processor.addScratchPathPoints(
+            listOf(
+                ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_DOWN),
+                ScratchPathPoint(0, 0f, 10f, MotionEvent.ACTION_MOVE)
+            )
+        )
+        processor.drawQueuedScratchMotionEvents()
+        processor.processScratchedImagePercent()
+
+        assertEquals(0.5f, processor.loggingDelegate.scratchPercent)
+
+        processor.addScratchPathPoints(
+            listOf(
+                ScratchPathPoint(0, 10f, 0f, MotionEvent.ACTION_DOWN),
+                ScratchPathPoint(0, 10f, 10f, MotionEvent.ACTION_MOVE)
+            )
+        )
+        processor.drawQueuedScratchMotionEvents()
+        processor.processScratchedImagePercent()
+
+        assertEquals(1.0f, processor.loggingDelegate.scratchPercent)
+    }
+
     @Test
     fun constrainAccuracyQualityBoundedToMinMax() {
         assertEquals(
@@ -450,7 +497,7 @@ class ScratchoffThresholdProcessorTests {
             .values()
             .map({
                 object: ScratchoffThresholdProcessor(10, 1f, it, LoggingDelegate()) {
-                    override fun scheduleNextThresholdEvaluation() {}
+                    override fun scheduleNextThresholdEvaluation(delayMs: Long) {}
                 }
             })
 
@@ -471,12 +518,85 @@ class ScratchoffThresholdProcessorTests {
         })
     }
 
+    @Test
+    fun testRasterCoverageModesDoNotAffectThresholdOfPerfectSquare() {
+        listOf(
+            ScratchoffThresholdProcessor.CoverageMode.MARKER_BITMAP,
+            ScratchoffThresholdProcessor.CoverageMode.BITSET
+        )
+            .forEach({ mode ->
+                val processors = ScratchoffThresholdProcessor.Quality
+                    .values()
+                    .map({
+                        object: ScratchoffThresholdProcessor(10, 1f, it, LoggingDelegate()) {
+                            override fun scheduleNextThresholdEvaluation(delayMs: Long) {}
+                        }
+                            .setCoverageMode(mode)
+                    })
+
+                val events = listOf(
+                    ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_DOWN),
+                    ScratchPathPoint(0, 0f, 100f, MotionEvent.ACTION_MOVE)
+                )
+
+                processors.forEach({
+                    it.prepare(intArrayOf(100, 100))
+                    it.addScratchPathPoints(events)
+                    it.drawQueuedScratchMotionEvents()
+                    it.processScratchedImagePercent()
+                })
+
+                processors.forEach({
+                    assertEquals(.1f, it.loggingDelegate.scratchPercent)
+                })
+            })
+    }
+
+    @Test
+    fun testAnalyticCoverageModeEstimatesThresholdOfPerfectSquare() {
+        val processors = ScratchoffThresholdProcessor.Quality
+            .values()
+            .map({
+                object: ScratchoffThresholdProcessor(10, 1f, it, LoggingDelegate()) {
+                    override fun scheduleNextThresholdEvaluation(delayMs: Long) {}
+                }
+                    .setCoverageMode(ScratchoffThresholdProcessor.CoverageMode.ANALYTIC)
+            })
+
+        val events = listOf(
+            ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_DOWN),
+            ScratchPathPoint(0, 0f, 100f, MotionEvent.ACTION_MOVE)
+        )
+
+        processors.forEach({
+            it.prepare(intArrayOf(100, 100))
+            it.addScratchPathPoints(events)
+            it.drawQueuedScratchMotionEvents()
+            it.processScratchedImagePercent()
+        })
+
+        processors.forEach({
+            assertEquals(.1f, it.loggingDelegate.scratchPercent, 0.01f)
+        })
+    }
+
+    @Test
+    fun testOverlayAlphaCoverageModeFallsBackToMarkerBitmapWithoutSource() {
+        val processor = ScratchoffThresholdProcessor(1, 1f, ScratchoffThresholdProcessor.Quality.HIGH, LoggingDelegate())
+
+        assertTrue(processor.createCoverage(ScratchoffThresholdProcessor.CoverageMode.OVERLAY_ALPHA) is MarkerBitmapCoverage)
+
+        processor.setOverlaySource({ _, _ -> false })
+
+        assertTrue(processor.createCoverage(ScratchoffThresholdProcessor.CoverageMode.OVERLAY_ALPHA) is OverlayAlphaCoverage)
+    }
+
     @Test
     fun testDebounceSchedulingCallsScheduleOnlyOnceInRange() {
         var count: Int = 0
 
         val processor = object: ScratchoffThresholdProcessor(10, 1f, Quality.HIGH, LoggingDelegate()) {
-            override fun scheduleNextThresholdEvaluation() {
+            override fun scheduleNextThresholdEvaluation(delayMs: Long) {
                 count += 1
             }
         }
@@ -496,7 +616,236 @@ class ScratchoffThresholdProcessorTests {
         assertEquals(1, count)
     }
 
-    private class LoggingDelegate: ScratchoffThresholdProcessor.Delegate {
+    @Test
+    fun testActionUpSchedulesImmediateEvaluation() {
+        val delays = mutableListOf<Long>()
+
+        val processor = object: ScratchoffThresholdProcessor(10, 1f, Quality.HIGH, LoggingDelegate()) {
+            override fun scheduleNextThresholdEvaluation(delayMs: Long) {
+                delays.add(delayMs)
+            }
+        }
+
+        processor.setEvaluationPolicy(AdaptiveThresholdEvaluationPolicy(20, 40, 100, 4f))
+        processor.prepare(intArrayOf(1, 1))
+        processor.addScratchPathPoints(listOf(ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_DOWN)))
+        processor.addScratchPathPoints(listOf(ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_MOVE)))
+        processor.addScratchPathPoints(listOf(ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_UP)))
+        processor.addScratchPathPoints(listOf(ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_DOWN)))
+
+        assertEquals(listOf(40L, 0L), delays)
+    }
+
+    @Test
+    fun testPointsAddedAfterEvaluationStartedScheduleAnotherEvaluation() {
+        var count: Int = 0
+
+        val processor = object: ScratchoffThresholdProcessor(10, 1f, Quality.HIGH, LoggingDelegate()) {
+            override fun scheduleNextThresholdEvaluation(delayMs: Long) {
+                count += 1
+            }
+        }
+
+        val events = listOf(
+            ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_DOWN)
+        )
+
+        processor.prepare(intArrayOf(1, 1))
+        processor.addScratchPathPoints(events)
+        processor.addScratchPathPoints(events)
+
+        assertEquals(1, count)
+
+        processor.run()
+        processor.addScratchPathPoints(events)
+
+        assertEquals(2, count)
+    }
+
+    @Test
+    fun testAddingPointsDoesNotWaitOnEvaluationInProgress() {
+        val evaluationStarted = CountDownLatch(1)
+        val evaluationReleased = CountDownLatch(1)
+
+        val processor = object: ScratchoffThresholdProcessor(1, 1f, Quality.HIGH, LoggingDelegate()) {
+            override fun scheduleNextThresholdEvaluation(delayMs: Long) {}
+
+            override fun processScratchedImagePercent() {
+                evaluationStarted.countDown()
+                evaluationReleased.await(10, TimeUnit.SECONDS)
+            }
+        }
+
+        processor.prepare(intArrayOf(10, 10))
+
+        val evaluation = Thread(processor)
+        evaluation.start()
+
+        assertTrue(evaluationStarted.await(10, TimeUnit.SECONDS))
+
+        processor.addScratchPathPoints(
+            listOf(
+                ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_DOWN),
+                ScratchPathPoint(0, 5f, 5f, MotionEvent.ACTION_MOVE)
+            )
+        )
+
+        // Still blocked, so the points were queued without waiting on the evaluation
+        assertEquals(1L, evaluationReleased.count)
+
+        evaluationReleased.countDown()
+        evaluation.join()
+
+        assertTrue(processor.drawQueuedScratchMotionEvents())
+    }
+
+    @Test
+    fun testDestroyReleasesEvaluationScheduler() {
+        val scheduler = ThresholdEvaluationScheduler()
+        val processor = ScratchoffThresholdProcessor(1, 1f, ScratchoffThresholdProcessor.Quality.HIGH, LoggingDelegate())
+            .setEvaluationScheduler(scheduler)
+
+        processor.prepare(intArrayOf(10, 10))
+
+        assertEquals(0, scheduler.referenceCount)
+
+        processor.addScratchPathPoints(
+            listOf(
+                ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_DOWN)
+            )
+        )
+
+        assertEquals(1, scheduler.referenceCount)
+
+        processor.destroy()
+
+        assertEquals(0, scheduler.referenceCount)
+        assertNull(scheduler.executor)
+
+        processor.destroy()
+
+        assertEquals(0, scheduler.referenceCount)
+    }
+
+    @Test
+    fun testProgressUpdatesDeferredUntilDueOrThresholdReached() {
+        val processor = object: ScratchoffThresholdProcessor(
+            1, 0.9f, ScratchoffThresholdProcessor.Quality.HIGH, LoggingDelegate()
+        ) {
+            override fun scheduleNextThresholdEvaluation(delayMs: Long) {}
+        }
+
+        processor.setProgressUpdateIntervalMs(60_000L)
+        processor.prepare(intArrayOf(1, 10));
+        processor.addScratchPathPoints(
+            listOf(
+                ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_DOWN),
+                ScratchPathPoint(0, 0f, 2f, MotionEvent.ACTION_MOVE)
+            )
+        )
+        processor.drawQueuedScratchMotionEvents()
+        processor.processScratchedImagePercent()
+
+        assertEquals(0.3f, processor.loggingDelegate.scratchPercent)
+
+        processor.addScratchPathPoints(
+            listOf(
+                ScratchPathPoint(0, 0f, 2f, MotionEvent.ACTION_DOWN),
+                ScratchPathPoint(0, 0f, 5f, MotionEvent.ACTION_MOVE)
+            )
+        )
+        processor.drawQueuedScratchMotionEvents()
+        processor.processScratchedImagePercent()
+
+        assertEquals(0.3f, processor.loggingDelegate.scratchPercent)
+        assertEquals(0, processor.loggingDelegate.thresholdReachedCount)
+
+        processor.addScratchPathPoints(
+            listOf(
+                ScratchPathPoint(0, 0f, 5f, MotionEvent.ACTION_DOWN),
+                ScratchPathPoint(0, 0f, 9f, MotionEvent.ACTION_MOVE)
+            )
+        )
+        processor.drawQueuedScratchMotionEvents()
+        processor.processScratchedImagePercent()
+
+        assertTrue(0.9f <= processor.loggingDelegate.scratchPercent)
+        assertEquals(1, processor.loggingDelegate.thresholdReachedCount)
+    }
+
+    @Test
+    fun testSkippedProgressUpdatePostedOnceDueAfterScratchingStops() {
+        val delays = mutableListOf<Long>()
+
+        val processor = object: ScratchoffThresholdProcessor(
+            1, 0.9f, ScratchoffThresholdProcessor.Quality.HIGH, LoggingDelegate()
+        ) {
+            override fun scheduleNextThresholdEvaluation(delayMs: Long) {
+                delays.add(delayMs)
+            }
+        }
+
+        processor.setProgressUpdateIntervalMs(50L)
+        processor.prepare(intArrayOf(1, 10))
+        processor.addScratchPathPoints(
+            listOf(
+                ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_DOWN),
+                ScratchPathPoint(0, 0f, 2f, MotionEvent.ACTION_MOVE)
+            )
+        )
+        processor.run()
+
+        assertEquals(0.3f, processor.loggingDelegate.scratchPercent)
+
+        processor.addScratchPathPoints(
+            listOf(
+                ScratchPathPoint(0, 0f, 2f, MotionEvent.ACTION_DOWN),
+                ScratchPathPoint(0, 0f, 5f, MotionEvent.ACTION_MOVE)
+            )
+        )
+        delays.clear()
+        processor.run()
+
+        // Skipped within the interval, with a trailing evaluation scheduled for when it's due
+        assertEquals(0.3f, processor.loggingDelegate.scratchPercent)
+        assertEquals(1, delays.size)
+        assertTrue(delays[0] in 1L..50L)
+
+        Thread.sleep(60L)
+
+        // Scratching has stopped, so the trailing evaluation has nothing new to draw
+        processor.run()
+
+        assertEquals(0.6f, processor.loggingDelegate.scratchPercent)
+        assertEquals(0, processor.loggingDelegate.thresholdReachedCount)
+    }
+
+    @Test
+    fun testSizedTargetRegionsProviderNotSuppliedBitmap() {
+        val provider = object: ScratchoffThresholdProcessor.SizedTargetRegionsProvider {
+            override fun createScratchableRegions(source: Bitmap): MutableList<Rect> {
+                throw IllegalStateException("A Bitmap should not have been allocated")
+            }
+
+            override fun createScratchableRegions(width: Int, height: Int): MutableList<Rect> {
+                return mutableListOf(Rect(0, 0, width / 2, height))
+            }
+        }
+
+        assertEquals(
+            listOf(Rect(0, 0, 5, 20)),
+            ScratchoffThresholdProcessor.createScratchableRegions(provider, 10, 20)
+        )
+    }
+
+    @Test
+    fun testBitmapTargetRegionsProviderSuppliedBitmapOfSize() {
+        val regions = ScratchoffThresholdProcessor.createScratchableRegions(LoggingDelegate(), 10, 20)
+
+        assertEquals(listOf(Rect(0, 0, 10, 20)), regions)
+    }
+
+    private open class LoggingDelegate: ScratchoffThresholdProcessor.Delegate {
 
         var scratchPercent: Float = -1F
             private set
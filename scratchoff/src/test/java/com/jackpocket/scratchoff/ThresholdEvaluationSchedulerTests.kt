@@ -0,0 +1,99 @@
+package com.jackpocket.scratchoff
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class ThresholdEvaluationSchedulerTests {
+
+    @Test
+    fun testOwnedExecutorShutDownOnceAllReferencesReleased() {
+        val scheduler = ThresholdEvaluationScheduler()
+
+        assertNull(scheduler.executor)
+
+        scheduler.acquire()
+        scheduler.acquire()
+
+        val executor = scheduler.executor
+
+        assertNotNull(executor)
+        assertEquals(2, scheduler.referenceCount)
+
+        scheduler.release()
+
+        assertFalse(executor.isShutdown)
+
+        scheduler.release()
+
+        assertTrue(executor.isShutdown)
+        assertNull(scheduler.executor)
+        assertEquals(0, scheduler.referenceCount)
+    }
+
+    @Test
+    fun testInjectedExecutorNeverShutDown() {
+        val executor = Executors.newSingleThreadScheduledExecutor()
+        val scheduler = ThresholdEvaluationScheduler(executor)
+
+        scheduler.acquire()
+        scheduler.release()
+
+        assertFalse(executor.isShutdown)
+
+        executor.shutdown()
+    }
+
+    @Test
+    fun testScheduledEvaluationsAlternateBetweenProcessors() {
+        val scheduler = ThresholdEvaluationScheduler()
+        val order = Collections.synchronizedList(mutableListOf<String>())
+        val latch = CountDownLatch(6)
+
+        val evaluations = listOf("a", "b")
+            .map({ name ->
+                object: Runnable {
+                    var runs = 0
+
+                    override fun run() {
+                        order.add(name)
+                        runs += 1
+                        latch.countDown()
+
+                        if (runs < 3) {
+                            scheduler.schedule(this, 0)
+                        }
+                    }
+                }
+            })
+
+        scheduler.acquire()
+
+        evaluations.forEach({
+            scheduler.schedule(it, 0)
+        })
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS))
+        assertEquals(listOf("a", "b", "a", "b", "a", "b"), order)
+
+        scheduler.release()
+    }
+
+    @Test
+    fun testEvaluationsScheduledWhileUnacquiredAreDropped() {
+        val scheduler = ThresholdEvaluationScheduler()
+        var runs = 0
+
+        scheduler.schedule({ runs += 1 }, 0)
+
+        assertNull(scheduler.executor)
+        assertEquals(0, runs)
+    }
+}
@@ -0,0 +1,81 @@
+package com.jackpocket.scratchoff.coverage
+
+import android.graphics.Rect
+import android.view.MotionEvent
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.jackpocket.scratchoff.ScratchoffThresholdProcessor
+import com.jackpocket.scratchoff.paths.ScratchPathPoint
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.annotation.GraphicsMode
+
+@RunWith(AndroidJUnit4::class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+class BitsetCoverageTests {
+
+    @Test
+    fun testActionDownWithoutMoveDoesNotMark() {
+        val coverage = BitsetCoverage()
+        coverage.prepare(10, 10, 1f, 5f, ScratchoffThresholdProcessor.SimpleTargetRegionsProvider())
+        coverage.addScratchPathPoints(
+            listOf(
+                ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_DOWN)
+            )
+        )
+
+        assertEquals(0f, coverage.calculate())
+    }
+
+    @Test
+    fun testMovesAreConnectedAcrossBatchesAndScaled() {
+        val coverage = BitsetCoverage()
+        coverage.prepare(10, 10, 0.5f, 5f, ScratchoffThresholdProcessor.SimpleTargetRegionsProvider())
+        coverage.addScratchPathPoints(
+            listOf(
+                ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_DOWN)
+            )
+        )
+        coverage.addScratchPathPoints(
+            listOf(
+                ScratchPathPoint(0, 0f, 20f, MotionEvent.ACTION_MOVE)
+            )
+        )
+
+        assertEquals(0.5f, coverage.calculate())
+    }
+
+    @Test
+    fun testMoveAfterUpIsIgnoredUntilNextDown() {
+        val coverage = BitsetCoverage()
+        coverage.prepare(10, 10, 1f, 5f, ScratchoffThresholdProcessor.SimpleTargetRegionsProvider())
+        coverage.addScratchPathPoints(
+            listOf(
+                ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_DOWN),
+                ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_UP),
+                ScratchPathPoint(0, 10f, 10f, MotionEvent.ACTION_MOVE)
+            )
+        )
+
+        assertEquals(0f, coverage.calculate())
+    }
+
+    @Test
+    fun testCustomRegionsAreAveraged() {
+        val coverage = BitsetCoverage()
+        coverage.prepare(10, 10, 1f, 5f, {
+            listOf(
+                Rect(0, 0, 5, 10),
+                Rect(5, 0, 10, 10),
+            )
+        })
+        coverage.addScratchPathPoints(
+            listOf(
+                ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_DOWN),
+                ScratchPathPoint(0, 0f, 10f, MotionEvent.ACTION_MOVE)
+            )
+        )
+
+        assertEquals(0.5f, coverage.calculate())
+    }
+}
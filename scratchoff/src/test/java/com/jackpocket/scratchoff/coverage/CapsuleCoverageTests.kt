@@ -0,0 +1,62 @@
+package com.jackpocket.scratchoff.coverage
+
+import android.graphics.Rect
+import android.view.MotionEvent
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.jackpocket.scratchoff.paths.ScratchPathPoint
+import com.jackpocket.scratchoff.tools.StrokeSegmenter
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.annotation.GraphicsMode
+
+@RunWith(AndroidJUnit4::class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+class CapsuleCoverageTests {
+
+    @Test
+    fun testSegmenterActionsMatchMotionEventActions() {
+        assertEquals(MotionEvent.ACTION_DOWN, StrokeSegmenter.ACTION_DOWN)
+        assertEquals(MotionEvent.ACTION_UP, StrokeSegmenter.ACTION_UP)
+        assertEquals(MotionEvent.ACTION_MOVE, StrokeSegmenter.ACTION_MOVE)
+        assertEquals(MotionEvent.ACTION_CANCEL, StrokeSegmenter.ACTION_CANCEL)
+        assertEquals(MotionEvent.ACTION_POINTER_DOWN, StrokeSegmenter.ACTION_POINTER_DOWN)
+        assertEquals(MotionEvent.ACTION_POINTER_UP, StrokeSegmenter.ACTION_POINTER_UP)
+    }
+
+    @Test
+    fun testMultiRegionCardMatchesMarkerBitmapNearThreshold() {
+        // A 10x10 grid of 20px regions, which would have left each region
+        // only 40 samples if the default budget were split evenly
+        val regions = (0 until 100).map({
+            Rect((it % 10) * 20, (it / 10) * 20, (it % 10) * 20 + 20, (it / 10) * 20 + 20)
+        })
+
+        val points = mutableListOf(ScratchPathPoint(0, 0f, 5f, MotionEvent.ACTION_DOWN))
+
+        for (row in 0 until 10) {
+            points.add(ScratchPathPoint(0, if (row % 2 == 0) 200f else 0f, row * 20f + 15f, MotionEvent.ACTION_MOVE))
+        }
+
+        points.add(ScratchPathPoint(0, 0f, 195f, MotionEvent.ACTION_UP))
+
+        val capsule = CapsuleCoverage()
+        capsule.prepare(200, 200, 1f, 6f, { regions })
+        capsule.addScratchPathPoints(points)
+
+        val marker = MarkerBitmapCoverage()
+        marker.prepare(200, 200, 1f, 6f, { regions })
+        marker.addScratchPathPoints(points)
+
+        val expected = marker.calculate()
+
+        assertEquals(expected, capsule.calculate(), 0.01f)
+
+        for (threshold in listOf(expected - 0.02f, expected + 0.02f)) {
+            assertEquals(marker.isThresholdReached(threshold), capsule.isThresholdReached(threshold))
+        }
+
+        marker.destroy()
+        capsule.destroy()
+    }
+}
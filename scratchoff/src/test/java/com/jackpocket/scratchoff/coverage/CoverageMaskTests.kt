@@ -0,0 +1,130 @@
+package com.jackpocket.scratchoff.coverage
+
+import android.graphics.*
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.jackpocket.scratchoff.ScratchoffThresholdProcessor
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.annotation.GraphicsMode
+
+@RunWith(AndroidJUnit4::class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+class CoverageMaskTests {
+
+    @Test
+    fun testEncodedMaskDecodesToSameCells() {
+        val mask = CoverageMask(10, 4, 2.5f)
+        mask.setErased(0, 0)
+        mask.setErased(3, 1)
+        mask.setErased(4, 1)
+        mask.setErased(9, 3)
+
+        val decoded = CoverageMask.decode(mask.encode())
+
+        assertEquals(10, decoded.columns)
+        assertEquals(4, decoded.rows)
+        assertEquals(2.5f, decoded.cellSizePx)
+        assertEquals(4, decoded.erasedCount)
+        assertTrue(decoded.isErased(0, 0))
+        assertTrue(decoded.isErased(3, 1))
+        assertTrue(decoded.isErased(4, 1))
+        assertTrue(decoded.isErased(9, 3))
+        assertFalse(decoded.isErased(5, 1))
+    }
+
+    @Test
+    fun testEncodedSizeIndependentOfErasedArea() {
+        val mask = CoverageMask(100, 100, 1f)
+
+        0.until(100)
+            .forEach({ row -> 0.until(100).forEach({ mask.setErased(it, row) }) })
+
+        // A single run covering every cell
+        assertTrue(mask.encode().size < 16)
+    }
+
+    @Test
+    fun testErasedRunEndStopsAtRowEnd() {
+        val mask = CoverageMask(5, 2, 1f)
+        mask.setErased(2, 0)
+        mask.setErased(3, 0)
+        mask.setErased(4, 0)
+        mask.setErased(0, 1)
+
+        assertEquals(5, mask.findErasedRunEnd(2, 0))
+        assertEquals(1, mask.findErasedRunEnd(1, 0))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun testUnsupportedVersionThrows() {
+        val data = CoverageMask(1, 1, 1f).encode()
+        data[0] = 99
+
+        CoverageMask.decode(data)
+    }
+
+    @Test
+    fun testCreatedFromOverlaySamplesErasedCells() {
+        val overlay = Bitmap.createBitmap(40, 20, Bitmap.Config.ARGB_8888)
+            .apply({ this.eraseColor(Color.RED) })
+
+        Canvas(overlay).drawRect(
+            Rect(0, 0, 20, 20),
+            Paint().apply({ this.xfermode = PorterDuffXfermode(PorterDuff.Mode.CLEAR) })
+        )
+
+        val mask = CoverageMask.createFromOverlay(
+            object: OverlayAlphaCoverage.OverlaySource {
+                override fun drawOverlay(canvas: Canvas, paint: Paint): Boolean {
+                    canvas.drawBitmap(overlay, 0f, 0f, paint)
+
+                    return true
+                }
+            },
+            40,
+            20,
+            10f
+        )!!
+
+        assertEquals(4, mask.columns)
+        assertEquals(2, mask.rows)
+        assertEquals(4, mask.erasedCount)
+        assertTrue(mask.isErased(1, 1))
+        assertFalse(mask.isErased(2, 0))
+    }
+
+    @Test
+    fun testUnavailableOverlayCreatesNoMask() {
+        val mask = CoverageMask.createFromOverlay(
+            object: OverlayAlphaCoverage.OverlaySource {
+                override fun drawOverlay(canvas: Canvas, paint: Paint): Boolean {
+                    return false
+                }
+            },
+            40,
+            20,
+            10f
+        )
+
+        assertNull(mask)
+    }
+
+    @Test
+    fun testMaskCountedByMarkerBitmapCoverage() {
+        val mask = CoverageMask(4, 2, 10f)
+        mask.setErased(0, 0)
+        mask.setErased(1, 0)
+        mask.setErased(0, 1)
+        mask.setErased(1, 1)
+
+        val coverage = MarkerBitmapCoverage()
+        coverage.prepare(40, 20, 1f, 5f, ScratchoffThresholdProcessor.SimpleTargetRegionsProvider())
+        coverage.addCoverageMask(mask)
+
+        assertEquals(0.5f, coverage.calculate(), 0.01f)
+    }
+}
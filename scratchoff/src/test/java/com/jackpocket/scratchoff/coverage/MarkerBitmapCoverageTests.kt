@@ -0,0 +1,58 @@
+package com.jackpocket.scratchoff.coverage
+
+import android.graphics.Rect
+import android.view.MotionEvent
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.jackpocket.scratchoff.paths.ScratchPathManager
+import com.jackpocket.scratchoff.paths.ScratchPathPoint
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.annotation.GraphicsMode
+
+@RunWith(AndroidJUnit4::class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+class MarkerBitmapCoverageTests {
+
+    @Test
+    fun testBatchesCountedOverTheUnionOfTheirBoundsMatchCountingEachBatch() {
+        val regions = listOf(Rect(0, 0, 50, 100), Rect(50, 0, 100, 100))
+
+        // Overlapping, and far apart, so that the union covers pixels no batch touched
+        val batchPoints = listOf(
+            listOf(ScratchPathPoint(0, 10f, 10f, MotionEvent.ACTION_DOWN), ScratchPathPoint(0, 30f, 10f, MotionEvent.ACTION_MOVE)),
+            listOf(ScratchPathPoint(0, 20f, 10f, MotionEvent.ACTION_MOVE), ScratchPathPoint(0, 20f, 30f, MotionEvent.ACTION_MOVE)),
+            listOf(ScratchPathPoint(1, 80f, 90f, MotionEvent.ACTION_POINTER_DOWN), ScratchPathPoint(1, 90f, 90f, MotionEvent.ACTION_MOVE))
+        )
+
+        val unionCoverage = MarkerBitmapCoverage()
+        unionCoverage.prepare(100, 100, 1f, 4f, { regions })
+
+        val eachCoverage = MarkerBitmapCoverage()
+        eachCoverage.prepare(100, 100, 1f, 4f, { regions })
+
+        val unionPathManager = ScratchPathManager()
+        val eachPathManager = ScratchPathManager()
+
+        batchPoints.forEach({
+            val unionBatch = unionPathManager.createBatch(it)
+            unionCoverage.addScratchPathBatch(unionBatch)
+            unionBatch.release()
+
+            val eachBatch = eachPathManager.createBatch(it)
+            eachCoverage.addScratchPathBatch(eachBatch)
+            eachBatch.release()
+
+            eachCoverage.calculate()
+        })
+
+        val expected = eachCoverage.calculate()
+
+        assertTrue(0f < expected)
+        assertEquals(expected, unionCoverage.calculate())
+
+        unionCoverage.destroy()
+        eachCoverage.destroy()
+    }
+}
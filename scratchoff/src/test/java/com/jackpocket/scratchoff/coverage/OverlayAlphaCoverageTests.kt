@@ -0,0 +1,143 @@
+package com.jackpocket.scratchoff.coverage
+
+import android.graphics.*
+import android.view.MotionEvent
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.jackpocket.scratchoff.ScratchoffThresholdProcessor
+import com.jackpocket.scratchoff.paths.ScratchPathPoint
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.annotation.GraphicsMode
+
+@RunWith(AndroidJUnit4::class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+class OverlayAlphaCoverageTests {
+
+    @Test
+    fun testErasedOverlayPixelsCountedAsScratched() {
+        val source = BitmapOverlaySource(20, 20)
+        source.erase(Rect(0, 0, 10, 20))
+
+        val coverage = OverlayAlphaCoverage(source)
+        coverage.prepare(20, 20, 1f, 5f, ScratchoffThresholdProcessor.SimpleTargetRegionsProvider())
+
+        assertEquals(0.5f, coverage.calculate())
+        assertTrue(coverage.isThresholdReached(0.5f))
+        assertFalse(coverage.isThresholdReached(0.51f))
+    }
+
+    @Test
+    fun testSnapshotDownsampledToScale() {
+        val source = BitmapOverlaySource(20, 20)
+        source.erase(Rect(0, 0, 20, 5))
+
+        val coverage = OverlayAlphaCoverage(source)
+        coverage.prepare(10, 10, 0.5f, 5f, ScratchoffThresholdProcessor.SimpleTargetRegionsProvider())
+
+        assertEquals(10, coverage.snapshot.width)
+        assertEquals(0.25f, coverage.calculate())
+    }
+
+    @Test
+    fun testSnapshotOnlyRefreshedAfterPointsAdded() {
+        val source = BitmapOverlaySource(10, 10)
+
+        val coverage = OverlayAlphaCoverage(source)
+        coverage.prepare(10, 10, 1f, 5f, ScratchoffThresholdProcessor.SimpleTargetRegionsProvider())
+
+        assertEquals(0f, coverage.calculate())
+
+        source.erase(Rect(0, 0, 10, 5))
+
+        assertEquals(0f, coverage.calculate())
+
+        coverage.addScratchPathPoints(
+            listOf(
+                ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_DOWN)
+            )
+        )
+
+        assertEquals(0.5f, coverage.calculate())
+    }
+
+    @Test
+    fun testIncrementalSourceOnlyDrawnInFullOnce() {
+        val source = IncrementalBitmapOverlaySource(10, 10)
+
+        val coverage = OverlayAlphaCoverage(source)
+        coverage.prepare(10, 10, 1f, 5f, ScratchoffThresholdProcessor.SimpleTargetRegionsProvider())
+
+        assertEquals(0f, coverage.calculate())
+
+        source.erase(Rect(0, 0, 10, 5))
+
+        coverage.addScratchPathPoints(
+            listOf(
+                ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_DOWN)
+            )
+        )
+
+        assertEquals(0.5f, coverage.calculate())
+        assertEquals(1, source.fullDrawCount)
+        assertEquals(1, source.changesDrawCount)
+    }
+
+    @Test
+    fun testUnavailableOverlayConsideredUntouched() {
+        val coverage = OverlayAlphaCoverage(object: OverlayAlphaCoverage.OverlaySource {
+            override fun drawOverlay(canvas: Canvas, paint: Paint): Boolean {
+                return false
+            }
+        })
+
+        coverage.prepare(10, 10, 1f, 5f, ScratchoffThresholdProcessor.SimpleTargetRegionsProvider())
+
+        assertEquals(0f, coverage.calculate())
+    }
+
+    private class IncrementalBitmapOverlaySource(width: Int, height: Int): OverlayAlphaCoverage.IncrementalOverlaySource {
+
+        private val source = BitmapOverlaySource(width, height)
+
+        var fullDrawCount = 0
+        var changesDrawCount = 0
+
+        fun erase(bounds: Rect) {
+            source.erase(bounds)
+        }
+
+        override fun drawOverlay(canvas: Canvas, paint: Paint): Boolean {
+            fullDrawCount += 1
+
+            return source.drawOverlay(canvas, paint)
+        }
+
+        override fun drawOverlayChanges(canvas: Canvas, paint: Paint): Boolean {
+            changesDrawCount += 1
+
+            return source.drawOverlay(canvas, paint)
+        }
+    }
+
+    private class BitmapOverlaySource(width: Int, height: Int): OverlayAlphaCoverage.OverlaySource {
+
+        private val overlay = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
+            .apply({ this.eraseColor(Color.RED) })
+
+        fun erase(bounds: Rect) {
+            Canvas(overlay).drawRect(
+                bounds,
+                Paint().apply({ this.xfermode = PorterDuffXfermode(PorterDuff.Mode.CLEAR) })
+            )
+        }
+
+        override fun drawOverlay(canvas: Canvas, paint: Paint): Boolean {
+            canvas.drawBitmap(overlay, 0f, 0f, paint)
+
+            return true
+        }
+    }
+}
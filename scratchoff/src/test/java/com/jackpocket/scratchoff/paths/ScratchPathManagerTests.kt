@@ -1,10 +1,14 @@
 package com.jackpocket.scratchoff.paths
 
+import android.graphics.Canvas
+import android.graphics.Paint
 import android.graphics.Path
 import android.graphics.RectF
 import android.view.MotionEvent
 import androidx.test.ext.junit.runners.AndroidJUnit4
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
 import org.junit.Test
 import org.junit.runner.RunWith
 
@@ -53,6 +57,154 @@ class ScratchPathManagerTests {
         assertEquals(2, manager.paths.size)
     }
 
+    @Test
+    fun testActivePathListedOnceAfterDrawingOrHandingOff() {
+        val manager = ScratchPathManager()
+        manager.handleTouchDown(0, 0f, 0f)
+        manager.handleTouchMove(0, 1f, 1f)
+        manager.drawAndReset(Canvas(), Paint())
+        manager.handleTouchMove(0, 2f, 2f)
+        manager.handleTouchMove(0, 3f, 3f)
+
+        assertEquals(1, manager.paths.size)
+
+        manager.createBatch(listOf<ScratchPathPoint>()).release()
+        manager.handleTouchMove(0, 4f, 4f)
+        manager.handleTouchMove(0, 5f, 5f)
+
+        assertEquals(1, manager.paths.size)
+        manager.paths[0].assertEmpty(false)
+    }
+
+    @Test
+    fun testCreateBatchHandsOffPathsWithoutModifyingThemAfterwards() {
+        val manager = ScratchPathManager()
+
+        val batch = manager.createBatch(
+            listOf(
+                ScratchPathPoint(0, 1f, 1f, MotionEvent.ACTION_DOWN),
+                ScratchPathPoint(0, 5f, 1f, MotionEvent.ACTION_MOVE)
+            )
+        )
+
+        val batchPath = batch.paths.first()
+        val batchPathBounds = RectF()
+        batchPath.computeBounds(batchPathBounds, true)
+
+        assertEquals(1, batch.paths.size)
+        assertEquals(0, manager.paths.size)
+
+        val nextBatch = manager.createBatch(
+            listOf(
+                ScratchPathPoint(0, 9f, 9f, MotionEvent.ACTION_MOVE)
+            )
+        )
+
+        val afterBounds = RectF()
+        batchPath.computeBounds(afterBounds, true)
+
+        assertEquals(batchPathBounds, afterBounds)
+        assertEquals(1, nextBatch.paths.size)
+        assertFalse(batchPath === nextBatch.paths.first())
+    }
+
+    @Test
+    fun testReleasedBatchReusedOnlyOnceEveryReferenceReleased() {
+        val manager = ScratchPathManager()
+
+        val batch = manager.createBatch(
+            listOf(
+                ScratchPathPoint(0, 1f, 1f, MotionEvent.ACTION_DOWN),
+                ScratchPathPoint(0, 5f, 1f, MotionEvent.ACTION_MOVE)
+            )
+        )
+
+        batch.retain()
+        batch.release()
+
+        val retainedBatch = manager.createBatch(listOf(ScratchPathPoint(0, 6f, 1f, MotionEvent.ACTION_MOVE)))
+
+        assertFalse(batch === retainedBatch)
+        assertEquals(2, batch.points.size())
+
+        batch.release()
+
+        val reusedBatch = manager.createBatch(
+            listOf(
+                ScratchPathPoint(0, 2f, 2f, MotionEvent.ACTION_DOWN),
+                ScratchPathPoint(0, 8f, 4f, MotionEvent.ACTION_MOVE)
+            )
+        )
+
+        val bounds = RectF()
+
+        assertTrue(batch === reusedBatch)
+        assertEquals(2, reusedBatch.points.size())
+        assertTrue(reusedBatch.getBounds(bounds))
+        assertEquals(RectF(2f, 2f, 8f, 4f), bounds)
+    }
+
+    @Test
+    fun testCreateBatchBoundsIncludeAllPoints() {
+        val manager = ScratchPathManager()
+
+        val batch = manager.createBatch(
+            listOf(
+                ScratchPathPoint(0, 1f, 2f, MotionEvent.ACTION_DOWN),
+                ScratchPathPoint(0, 5f, 3f, MotionEvent.ACTION_MOVE),
+                ScratchPathPoint(1, 10f, 20f, MotionEvent.ACTION_POINTER_DOWN),
+                ScratchPathPoint(1, 12f, 22f, MotionEvent.ACTION_MOVE)
+            )
+        )
+
+        val bounds = RectF()
+
+        assertTrue(batch.getBounds(bounds))
+        assertEquals(RectF(1f, 2f, 12f, 22f), bounds)
+        assertEquals(4, batch.points.size())
+    }
+
+    @Test
+    fun testCreateBatchWithoutGeometryHasNoBounds() {
+        val manager = ScratchPathManager()
+
+        val batch = manager.createBatch(
+            listOf(
+                ScratchPathPoint(0, 1f, 2f, MotionEvent.ACTION_UP)
+            )
+        )
+
+        assertTrue(batch.isEmpty)
+        assertFalse(batch.getBounds(RectF()))
+    }
+
+    @Test
+    fun testBatchDrawnWithStrokeScaleWithoutModifyingPaint() {
+        var drawnStrokeWidth: Float = 0f
+
+        val batch = ScratchPathManager()
+            .setStrokeScale(2f)
+            .createBatch(
+                listOf(
+                    ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_DOWN),
+                    ScratchPathPoint(0, 5f, 5f, MotionEvent.ACTION_MOVE)
+                )
+            )
+
+        val canvas = object: Canvas() {
+            override fun drawPath(path: Path, paint: Paint) {
+                drawnStrokeWidth = paint.strokeWidth
+            }
+        }
+        val paint = Paint().apply({ this.strokeWidth = 3f })
+
+        batch.draw(canvas, paint)
+
+        assertEquals(2f, batch.strokeScale)
+        assertEquals(6f, drawnStrokeWidth)
+        assertEquals(3f, paint.strokeWidth)
+    }
+
     private fun Path.assertEmpty(value: Boolean) {
         val pathBounds = RectF()
 
@@ -114,4 +266,4 @@ class ScratchPathManagerTests {
 
         manager.addScratchPathPoints(events)
     }
-}
\ No newline at end of file
+}
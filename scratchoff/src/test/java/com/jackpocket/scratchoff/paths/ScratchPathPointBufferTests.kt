@@ -0,0 +1,165 @@
+package com.jackpocket.scratchoff.paths
+
+import android.view.MotionEvent
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.kotlin.any
+import org.mockito.kotlin.mock
+import org.mockito.Mockito.`when` as WHEN
+
+@RunWith(AndroidJUnit4::class)
+class ScratchPathPointBufferTests {
+
+    @Test
+    fun testPointsReadBackInInsertionOrder() {
+        val buffer = ScratchPathPointBuffer(2)
+
+        0.until(5)
+            .forEach({
+                buffer.add(it, it * 1f, it * 2f, MotionEvent.ACTION_MOVE)
+            })
+
+        assertEquals(5, buffer.size())
+        assertEquals(8, buffer.capacity)
+
+        0.until(5)
+            .forEach({
+                assertEquals(it, buffer.getPointerIndex(it))
+                assertEquals(it * 1f, buffer.getX(it))
+                assertEquals(it * 2f, buffer.getY(it))
+                assertEquals(MotionEvent.ACTION_MOVE, buffer.getAction(it))
+            })
+    }
+
+    @Test
+    fun testCapacityRetainedWhenReusedAcrossWrappedInsertions() {
+        val buffer = ScratchPathPointBuffer(4)
+
+        0.until(3)
+            .forEach({
+                buffer.add(0, it.toFloat(), 0f, MotionEvent.ACTION_MOVE)
+            })
+
+        buffer.removeFirst(2)
+
+        // Wraps around the end of the ring without growing
+        0.until(3)
+            .forEach({
+                buffer.add(0, (3 + it).toFloat(), 0f, MotionEvent.ACTION_MOVE)
+            })
+
+        assertEquals(4, buffer.capacity)
+        assertEquals(listOf(2f, 3f, 4f, 5f), 0.until(buffer.size()).map({ buffer.getX(it) }))
+
+        // Growing unrolls the wrapped points
+        buffer.add(0, 6f, 0f, MotionEvent.ACTION_MOVE)
+
+        assertEquals(8, buffer.capacity)
+        assertEquals(listOf(2f, 3f, 4f, 5f, 6f), 0.until(buffer.size()).map({ buffer.getX(it) }))
+
+        buffer.clear()
+
+        assertTrue(buffer.isEmpty)
+        assertEquals(8, buffer.capacity)
+    }
+
+    @Test
+    fun testMotionEventPointsMatchScratchPathPointCreate() {
+        val event = mock<MotionEvent>()
+
+        WHEN(event.actionMasked)
+            .thenReturn(MotionEvent.ACTION_MOVE)
+
+        WHEN(event.getX(any()))
+            .thenReturn(1F)
+
+        WHEN(event.getY(any()))
+            .thenReturn(2F)
+
+        WHEN(event.pointerCount)
+            .thenReturn(2)
+
+        WHEN(event.historySize)
+            .thenReturn(2)
+
+        WHEN(event.getHistoricalX(any(), any()))
+            .thenReturn(3F)
+
+        WHEN(event.getHistoricalY(any(), any()))
+            .thenReturn(4F)
+
+        val buffer = ScratchPathPointBuffer()
+        buffer.addAll(event)
+
+        assertEquals(ScratchPathPoint.create(event), buffer.toList())
+        assertEquals(listOf(0, 1, 0, 1, 0, 1), 0.until(buffer.size()).map({ buffer.getPointerIndex(it) }))
+    }
+
+    @Test
+    fun testCopyIsCompactAndIndependent() {
+        val buffer = ScratchPathPointBuffer()
+        buffer.add(ScratchPathPoint(0, 1f, 2f, MotionEvent.ACTION_DOWN))
+        buffer.add(ScratchPathPoint(0, 3f, 4f, MotionEvent.ACTION_MOVE))
+        buffer.add(ScratchPathPoint(0, 5f, 6f, MotionEvent.ACTION_UP))
+
+        val copy = buffer.copy()
+
+        buffer.clear()
+        buffer.add(0, 9f, 9f, MotionEvent.ACTION_DOWN)
+
+        assertEquals(4, copy.capacity)
+        assertEquals(
+            listOf(
+                ScratchPathPoint(0, 1f, 2f, MotionEvent.ACTION_DOWN),
+                ScratchPathPoint(0, 3f, 4f, MotionEvent.ACTION_MOVE),
+                ScratchPathPoint(0, 5f, 6f, MotionEvent.ACTION_UP)
+            ),
+            copy.toList()
+        )
+    }
+
+    @Test
+    fun testScaleMultipliesPositionsOfWrappedPoints() {
+        val buffer = ScratchPathPointBuffer(2)
+        buffer.add(0, 9f, 9f, MotionEvent.ACTION_DOWN)
+        buffer.removeFirst(1)
+        buffer.add(0, 1f, 2f, MotionEvent.ACTION_DOWN)
+        buffer.add(0, 3f, 4f, MotionEvent.ACTION_MOVE)
+
+        buffer.scale(2f, 0.5f)
+
+        assertEquals(
+            listOf(
+                ScratchPathPoint(0, 2f, 1f, MotionEvent.ACTION_DOWN),
+                ScratchPathPoint(0, 6f, 2f, MotionEvent.ACTION_MOVE)
+            ),
+            buffer.toList()
+        )
+    }
+
+    @Test
+    fun testAddAllRangeOnlyAddsPointsWithinRange() {
+        val source = ScratchPathPointBuffer()
+        0.until(5)
+            .forEach({ source.add(0, it.toFloat(), 0f, MotionEvent.ACTION_MOVE) })
+
+        val buffer = ScratchPathPointBuffer()
+        buffer.addAll(source, 1, 3)
+
+        assertEquals(2, buffer.size())
+        assertEquals(1f, buffer.getX(0))
+        assertEquals(2f, buffer.getX(1))
+    }
+
+    @Test(expected = IndexOutOfBoundsException::class)
+    fun testReadingPastSizeThrows() {
+        val buffer = ScratchPathPointBuffer()
+        buffer.add(0, 1f, 2f, MotionEvent.ACTION_DOWN)
+        buffer.removeFirst(1)
+
+        buffer.getX(0)
+    }
+}
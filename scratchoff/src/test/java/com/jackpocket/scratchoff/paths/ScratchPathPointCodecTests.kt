@@ -0,0 +1,127 @@
+package com.jackpocket.scratchoff.paths
+
+import android.view.MotionEvent
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+class ScratchPathPointCodecTests {
+
+    @Test
+    fun testRoundTripPreservesPointsWithinQuantizationStep() {
+        val points = listOf(
+            ScratchPathPoint(0, 10.3f, 20.7f, MotionEvent.ACTION_DOWN),
+            ScratchPathPoint(0, 12.125f, 19f, MotionEvent.ACTION_MOVE),
+            ScratchPathPoint(1, 100f, 200f, MotionEvent.ACTION_POINTER_DOWN),
+            ScratchPathPoint(0, 13f, 18.5f, MotionEvent.ACTION_MOVE),
+            ScratchPathPoint(1, 99.5f, 201f, MotionEvent.ACTION_MOVE),
+            ScratchPathPoint(0, -4f, 1000f, MotionEvent.ACTION_UP)
+        )
+
+        val decoded = ScratchPathPointBuffer()
+
+        assertEquals(points.size, ScratchPathPointCodec.decode(ScratchPathPointCodec.encode(points), decoded))
+        assertEquals(points.size, decoded.size())
+
+        val tolerance = 0.5f / ScratchPathPointCodec.QUANTIZATION_STEPS_PER_PX
+
+        points.forEachIndexed({ index, point ->
+            assertEquals(point.pointerIndex, decoded.getPointerIndex(index))
+            assertEquals(point.x, decoded.getX(index), tolerance)
+            assertEquals(point.y, decoded.getY(index), tolerance)
+            assertEquals(point.action, decoded.getAction(index))
+        })
+    }
+
+    @Test
+    fun testContinuousMoveEncodedCompactly() {
+        val points = ScratchPathPointBuffer()
+        points.add(0, 500f, 500f, MotionEvent.ACTION_DOWN)
+
+        1.until(1000)
+            .forEach({ points.add(0, 500f + (it * 1.5f), 500f + (it * 0.75f), MotionEvent.ACTION_MOVE) })
+
+        points.add(0, 2000f, 1250f, MotionEvent.ACTION_UP)
+
+        // 16 bytes per point for the ScratchPathPoint fields alone, before any Parcel overhead
+        assertTrue(ScratchPathPointCodec.encode(points).size * 5 < points.size() * 16)
+    }
+
+    @Test
+    fun testDecoderStreamsInChunks() {
+        val points = ScratchPathPointBuffer()
+
+        0.until(10)
+            .forEach({ points.add(0, it.toFloat(), 0f, MotionEvent.ACTION_MOVE) })
+
+        val decoder = ScratchPathPointCodec.Decoder(ScratchPathPointCodec.encode(points))
+        val decoded = ScratchPathPointBuffer()
+
+        assertEquals(10, decoder.count)
+        assertEquals(4, decoder.decodeInto(decoded, 4))
+        assertEquals(4, decoder.decodedCount)
+        assertEquals(6, decoder.decodeInto(decoded, 100))
+        assertFalse(decoder.hasNext())
+
+        assertEquals(9f, decoded.getX(9))
+    }
+
+    @Test
+    fun testStrokeScaleRoundTripsAndSplitsDecodedRuns() {
+        val points = ScratchPathPointBuffer()
+        points.add(0, 1f, 1f, MotionEvent.ACTION_DOWN, 2f)
+        points.add(0, 2f, 2f, MotionEvent.ACTION_MOVE, 2f)
+        points.add(0, 3f, 3f, MotionEvent.ACTION_MOVE)
+
+        val decoder = ScratchPathPointCodec.Decoder(ScratchPathPointCodec.encode(points))
+        val decoded = ScratchPathPointBuffer()
+
+        assertEquals(2, decoder.decodeRunInto(decoded, 100))
+        assertEquals(1, decoder.decodeRunInto(decoded, 100))
+        assertFalse(decoder.hasNext())
+
+        assertEquals(2f, decoded.getStrokeScale(0))
+        assertEquals(2f, decoded.getStrokeScale(1))
+        assertEquals(1f, decoded.getStrokeScale(2))
+        assertEquals(3f, decoded.getX(2))
+    }
+
+    @Test
+    fun testVersion1HistoryDecodedAtUnitStrokeScale() {
+        // Version, quantization steps, count, then a run of 1 point for pointer 1 with action 0 at (1, 2)
+        val encoded = byteArrayOf(1, 8, 1, 1, 1, 0, 16, 32)
+
+        val decoded = ScratchPathPointBuffer()
+
+        assertEquals(1, ScratchPathPointCodec.decode(encoded, decoded))
+        assertEquals(1, decoded.getPointerIndex(0))
+        assertEquals(1f, decoded.getX(0))
+        assertEquals(2f, decoded.getY(0))
+        assertEquals(1f, decoded.getStrokeScale(0))
+    }
+
+    @Test
+    fun testEmptyHistoryRoundTrips() {
+        val decoder = ScratchPathPointCodec.Decoder(ScratchPathPointCodec.encode(listOf<ScratchPathPoint>()))
+
+        assertEquals(0, decoder.count)
+        assertFalse(decoder.hasNext())
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun testTruncatedHistoryRejected() {
+        val points = listOf(
+            ScratchPathPoint(0, 10f, 20f, MotionEvent.ACTION_DOWN),
+            ScratchPathPoint(0, 30f, 40f, MotionEvent.ACTION_MOVE)
+        )
+
+        val encoded = ScratchPathPointCodec.encode(points)
+        val decoder = ScratchPathPointCodec.Decoder(encoded.copyOf(encoded.size - 1))
+
+        decoder.decodeInto(ScratchPathPointBuffer(), decoder.count)
+    }
+}
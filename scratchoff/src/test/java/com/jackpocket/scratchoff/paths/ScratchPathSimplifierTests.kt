@@ -0,0 +1,123 @@
+package com.jackpocket.scratchoff.paths
+
+import android.view.MotionEvent
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+class ScratchPathSimplifierTests {
+
+    @Test
+    fun testJitterWithinToleranceRemovedAndEndpointsKept() {
+        val points = ScratchPathPointBuffer()
+        points.add(0, 0f, 0f, MotionEvent.ACTION_DOWN)
+
+        1.until(11)
+            .forEach({ points.add(0, it * 1f, (it % 2) * 0.1f, MotionEvent.ACTION_MOVE) })
+
+        points.add(0, 10f, 0f, MotionEvent.ACTION_UP)
+
+        val simplified = ScratchPathSimplifier.simplify(points, 0.25f)
+
+        assertEquals(3, simplified.size())
+        assertPoint(simplified, 0, 0f, 0f, MotionEvent.ACTION_DOWN)
+        assertPoint(simplified, 1, 10f, 0f, MotionEvent.ACTION_MOVE)
+        assertPoint(simplified, 2, 10f, 0f, MotionEvent.ACTION_UP)
+    }
+
+    @Test
+    fun testPointsBeyondToleranceKept() {
+        val points = ScratchPathPointBuffer()
+        points.add(0, 0f, 0f, MotionEvent.ACTION_DOWN)
+        points.add(0, 5f, 1f, MotionEvent.ACTION_MOVE)
+        points.add(0, 10f, 0f, MotionEvent.ACTION_MOVE)
+
+        assertEquals(3, ScratchPathSimplifier.simplify(points, 0.25f).size())
+        assertEquals(2, ScratchPathSimplifier.simplify(points, 2f).size())
+    }
+
+    @Test
+    fun testBacktrackingPointKeptDespiteBeingOnLine() {
+        val points = ScratchPathPointBuffer()
+        points.add(0, 0f, 0f, MotionEvent.ACTION_DOWN)
+        points.add(0, 20f, 0f, MotionEvent.ACTION_MOVE)
+        points.add(0, 10f, 0f, MotionEvent.ACTION_MOVE)
+
+        val simplified = ScratchPathSimplifier.simplify(points, 0.25f)
+
+        assertEquals(3, simplified.size())
+        assertPoint(simplified, 1, 20f, 0f, MotionEvent.ACTION_MOVE)
+    }
+
+    @Test
+    fun testRepeatedPointsMergedAndDotsKept() {
+        val points = ScratchPathPointBuffer()
+        points.add(0, 5f, 5f, MotionEvent.ACTION_DOWN)
+
+        0.until(5)
+            .forEach({ points.add(0, 5f, 5f, MotionEvent.ACTION_MOVE) })
+
+        points.add(0, 5f, 5f, MotionEvent.ACTION_UP)
+
+        val simplified = ScratchPathSimplifier.simplify(points, 0.25f)
+
+        assertEquals(3, simplified.size())
+        assertPoint(simplified, 0, 5f, 5f, MotionEvent.ACTION_DOWN)
+        assertPoint(simplified, 1, 5f, 5f, MotionEvent.ACTION_MOVE)
+        assertPoint(simplified, 2, 5f, 5f, MotionEvent.ACTION_UP)
+    }
+
+    @Test
+    fun testInterleavedPointersSimplifiedIndependentlyInOrder() {
+        val points = ScratchPathPointBuffer()
+        points.add(0, 0f, 0f, MotionEvent.ACTION_DOWN)
+        points.add(1, 0f, 10f, MotionEvent.ACTION_POINTER_DOWN)
+
+        1.until(6)
+            .forEach({
+                points.add(0, it * 1f, 0f, MotionEvent.ACTION_MOVE)
+                points.add(1, it * 1f, 10f, MotionEvent.ACTION_MOVE)
+            })
+
+        points.add(0, 5f, 0f, MotionEvent.ACTION_POINTER_UP)
+        points.add(1, 20f, 10f, MotionEvent.ACTION_MOVE)
+        points.add(1, 20f, 10f, MotionEvent.ACTION_UP)
+
+        val simplified = ScratchPathSimplifier.simplify(points, 0.25f)
+
+        assertEquals(6, simplified.size())
+        assertPoint(simplified, 0, 0f, 0f, MotionEvent.ACTION_DOWN)
+        assertPoint(simplified, 1, 0f, 10f, MotionEvent.ACTION_POINTER_DOWN)
+        assertPoint(simplified, 2, 5f, 0f, MotionEvent.ACTION_MOVE)
+        assertPoint(simplified, 3, 5f, 0f, MotionEvent.ACTION_POINTER_UP)
+        assertPoint(simplified, 4, 20f, 10f, MotionEvent.ACTION_MOVE)
+        assertPoint(simplified, 5, 20f, 10f, MotionEvent.ACTION_UP)
+
+        assertEquals(1, simplified.getPointerIndex(4))
+    }
+
+    @Test
+    fun testMoveAfterPointerUpStartsNewStroke() {
+        val points = ScratchPathPointBuffer()
+        points.add(0, 0f, 0f, MotionEvent.ACTION_DOWN)
+        points.add(0, 10f, 0f, MotionEvent.ACTION_MOVE)
+        points.add(0, 10f, 0f, MotionEvent.ACTION_POINTER_UP)
+        points.add(0, 20f, 0f, MotionEvent.ACTION_MOVE)
+        points.add(0, 30f, 0f, MotionEvent.ACTION_MOVE)
+        points.add(0, 40f, 0f, MotionEvent.ACTION_MOVE)
+
+        val simplified = ScratchPathSimplifier.simplify(points, 0.25f)
+
+        assertEquals(5, simplified.size())
+        assertPoint(simplified, 3, 20f, 0f, MotionEvent.ACTION_MOVE)
+        assertPoint(simplified, 4, 40f, 0f, MotionEvent.ACTION_MOVE)
+    }
+
+    private fun assertPoint(points: ScratchPathPointBuffer, index: Int, x: Float, y: Float, action: Int) {
+        assertEquals(x, points.getX(index))
+        assertEquals(y, points.getY(index))
+        assertEquals(action, points.getAction(index))
+    }
+}
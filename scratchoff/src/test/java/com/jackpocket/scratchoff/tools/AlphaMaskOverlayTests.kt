@@ -0,0 +1,120 @@
+package com.jackpocket.scratchoff.tools
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.Canvas
+import android.graphics.Color
+import android.graphics.Paint
+import android.graphics.PorterDuff
+import android.graphics.PorterDuffXfermode
+import android.graphics.Rect
+import android.view.MotionEvent
+import android.view.View
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.jackpocket.scratchoff.paths.ScratchPathManager
+import com.jackpocket.scratchoff.paths.ScratchPathPoint
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.annotation.GraphicsMode
+
+@RunWith(AndroidJUnit4::class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+class AlphaMaskOverlayTests {
+
+    private val context: Context = ApplicationProvider.getApplicationContext()
+
+    @Test
+    fun testErasingOnlyModifiesTheMask() {
+        val overlay = AlphaMaskOverlay.createFromView(createWhiteView())
+
+        assertEquals(Bitmap.Config.ARGB_8888, overlay.content.config)
+        assertEquals(Bitmap.Config.ALPHA_8, overlay.mask.config)
+
+        eraseLeftColumn(overlay)
+
+        assertEquals(Color.WHITE, overlay.content.getPixel(0, 5))
+        assertEquals(0, Color.alpha(overlay.mask.getPixel(0, 5)))
+        assertEquals(0xFF, Color.alpha(overlay.mask.getPixel(5, 5)))
+    }
+
+    @Test
+    fun testDrawsContentThroughTheMask() {
+        val overlay = AlphaMaskOverlay.createFromView(createWhiteView())
+
+        eraseLeftColumn(overlay)
+
+        val result = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888)
+
+        overlay.draw(Canvas(result), null)
+
+        assertEquals(Color.TRANSPARENT, result.getPixel(0, 5))
+        assertEquals(Color.WHITE, result.getPixel(5, 5))
+
+        // A supplied Paint replaces erased areas of the destination, while keeping the content
+        result.eraseColor(Color.RED)
+
+        overlay.draw(
+            Canvas(result),
+            Paint().apply({ this.xfermode = PorterDuffXfermode(PorterDuff.Mode.SRC) })
+        )
+
+        assertEquals(Color.TRANSPARENT, result.getPixel(0, 5))
+        assertEquals(Color.WHITE, result.getPixel(5, 5))
+    }
+
+    @Test
+    fun testRecycleReleasesBothBitmaps() {
+        val overlay = AlphaMaskOverlay.createFromView(createWhiteView())
+        overlay.recycle()
+
+        assertTrue(overlay.isRecycled)
+        assertTrue(overlay.content.isRecycled)
+        assertTrue(overlay.mask.isRecycled)
+    }
+
+    @Test
+    fun testRenderedContentReusedFromBitmapPoolWithoutCopying() {
+        val bitmapPool = BitmapPool(10 * 10 * 5)
+
+        val overlay = AlphaMaskOverlay.createFromView(createWhiteView(), 1f, bitmapPool)
+        val content = overlay.content
+
+        overlay.recycle()
+
+        assertFalse(content.isRecycled)
+        assertEquals(10 * 10 * 5L, bitmapPool.pooledBytes)
+
+        val nextOverlay = AlphaMaskOverlay.createFromView(createWhiteView(), 1f, bitmapPool)
+
+        assertTrue(content === nextOverlay.content)
+        assertEquals(Color.WHITE, nextOverlay.content.getPixel(5, 5))
+        assertEquals(0L, bitmapPool.pooledBytes)
+    }
+
+    private fun eraseLeftColumn(overlay: AlphaMaskOverlay) {
+        val clearPaint = ScratchPathManager.createBaseScratchoffPaint(1)
+            .apply({ this.xfermode = PorterDuffXfermode(PorterDuff.Mode.CLEAR) })
+
+        val batch = ScratchPathManager()
+            .createBatch(
+                listOf(
+                    ScratchPathPoint(0, 0f, 0f, MotionEvent.ACTION_DOWN),
+                    ScratchPathPoint(0, 0f, 10f, MotionEvent.ACTION_MOVE)
+                )
+            )
+
+        overlay.erase(batch, clearPaint, Rect(-2, -2, 2, 12))
+    }
+
+    private fun createWhiteView(): View {
+        val view = View(context)
+        view.setBackgroundColor(Color.WHITE)
+        view.layout(0, 0, 10, 10)
+
+        return view
+    }
+}
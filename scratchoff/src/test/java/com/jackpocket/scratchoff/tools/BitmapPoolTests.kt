@@ -0,0 +1,115 @@
+package com.jackpocket.scratchoff.tools
+
+import android.graphics.Bitmap
+import android.graphics.Color
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.annotation.GraphicsMode
+
+@RunWith(AndroidJUnit4::class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+class BitmapPoolTests {
+
+    @Test
+    fun testReleasedBitmapsReusedOnlyForMatchingSizeAndConfig() {
+        val pool = BitmapPool(1024 * 1024)
+
+        val bitmap = pool.obtain(10, 10, Bitmap.Config.ARGB_8888)
+        bitmap.eraseColor(Color.RED)
+
+        pool.release(bitmap)
+
+        assertEquals(400L, pool.pooledBytes)
+
+        assertNotSame(bitmap, pool.obtain(10, 10, Bitmap.Config.ALPHA_8))
+        assertNotSame(bitmap, pool.obtain(10, 11, Bitmap.Config.ARGB_8888))
+
+        val reused = pool.obtain(10, 10, Bitmap.Config.ARGB_8888)
+
+        assertSame(bitmap, reused)
+        assertEquals(0L, pool.pooledBytes)
+
+        // Reused Bitmaps are handed out empty
+        assertEquals(Color.TRANSPARENT, reused.getPixel(5, 5))
+    }
+
+    @Test
+    fun testOldestBitmapsRecycledToStayWithinBudget() {
+        val pool = BitmapPool(800)
+
+        val first = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888)
+        val second = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888)
+        val third = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888)
+
+        pool.release(first)
+        pool.release(second)
+        pool.release(third)
+
+        assertEquals(800L, pool.pooledBytes)
+        assertTrue(first.isRecycled)
+        assertFalse(second.isRecycled)
+        assertFalse(third.isRecycled)
+
+        val tooLarge = Bitmap.createBitmap(20, 20, Bitmap.Config.ARGB_8888)
+
+        pool.release(tooLarge)
+
+        assertTrue(tooLarge.isRecycled)
+        assertEquals(800L, pool.pooledBytes)
+
+        pool.clear()
+
+        assertEquals(0L, pool.pooledBytes)
+        assertTrue(second.isRecycled)
+        assertTrue(third.isRecycled)
+    }
+
+    @Test
+    fun testImmutableAndDuplicateReleasesNotPooled() {
+        val pool = BitmapPool(1024 * 1024)
+
+        val immutable = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888)
+            .copy(Bitmap.Config.ARGB_8888, false)
+
+        pool.release(immutable)
+
+        assertTrue(immutable.isRecycled)
+        assertEquals(0L, pool.pooledBytes)
+
+        val bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888)
+
+        pool.release(bitmap)
+        pool.release(bitmap)
+
+        assertEquals(400L, pool.pooledBytes)
+    }
+
+    @Test
+    fun testUnpooledNeverHoldsBitmaps() {
+        val bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888)
+
+        BitmapPool.UNPOOLED.release(bitmap)
+
+        assertTrue(bitmap.isRecycled)
+        assertEquals(0L, BitmapPool.UNPOOLED.pooledBytes)
+    }
+
+    @Test
+    fun testOfferedBitmapsNeverRecycled() {
+        val bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888)
+
+        assertFalse(BitmapPool.UNPOOLED.offer(bitmap))
+        assertFalse(bitmap.isRecycled)
+
+        val pool = BitmapPool(1024 * 1024)
+
+        assertTrue(pool.offer(bitmap))
+        assertEquals(400L, pool.pooledBytes)
+    }
+}
@@ -0,0 +1,115 @@
+package com.jackpocket.scratchoff.tools
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class BitsetCoverageGridTests {
+
+    @Test
+    fun testVerticalSegmentMarksCellsWithCoveredCenters() {
+        val grid = BitsetCoverageGrid(10, 10)
+        grid.markSegment(0f, 0f, 0f, 10f, 5f)
+
+        assertEquals(50, grid.scratchedCount)
+        assertTrue(grid.isScratched(4, 9))
+        assertFalse(grid.isScratched(5, 0))
+    }
+
+    @Test
+    fun testRemarkingCellsDoesNotChangeCounts() {
+        val grid = BitsetCoverageGrid(10, 10)
+        grid.setRegions(intArrayOf(0, 0, 10, 10))
+        grid.markSegment(0f, 0f, 0f, 10f, 5f)
+        grid.markSegment(0f, 0f, 0f, 10f, 5f)
+        grid.markSegment(2f, 5f, 2f, 5f, 2f)
+
+        assertEquals(50, grid.scratchedCount)
+        assertEquals(50, grid.regionScratchedCounts[0])
+    }
+
+    @Test
+    fun testZeroLengthSegmentMarksCircle() {
+        val grid = BitsetCoverageGrid(10, 10)
+        grid.markSegment(5f, 5f, 5f, 5f, 1f)
+
+        assertEquals(4, grid.scratchedCount)
+        assertTrue(grid.isScratched(4, 4))
+        assertTrue(grid.isScratched(5, 5))
+    }
+
+    @Test
+    fun testRegionCountsOnlyIncludeIntersectingCells() {
+        val grid = BitsetCoverageGrid(10, 10)
+        grid.setRegions(intArrayOf(0, 0, 5, 10, 5, 0, 10, 10))
+        grid.markSegment(0f, 0f, 0f, 10f, 5f)
+
+        assertEquals(50, grid.regionScratchedCounts[0])
+        assertEquals(0, grid.regionScratchedCounts[1])
+
+        grid.markSegment(10f, 0f, 10f, 10f, 5f)
+
+        assertEquals(50, grid.regionScratchedCounts[0])
+        assertEquals(50, grid.regionScratchedCounts[1])
+        assertEquals(100, grid.scratchedCount)
+    }
+
+    @Test
+    fun testSettingRegionsCountsPreviouslyMarkedCells() {
+        val grid = BitsetCoverageGrid(10, 10)
+        grid.markSegment(0f, 0f, 0f, 10f, 5f)
+        grid.setRegions(intArrayOf(0, 0, 2, 2, 0, 0, 10, 10))
+
+        assertEquals(4, grid.regionScratchedCounts[0])
+        assertEquals(50, grid.regionScratchedCounts[1])
+        assertEquals(4, grid.countScratched(0, 0, 2, 2))
+    }
+
+    @Test
+    fun testDiagonalSegmentsAcrossWordBoundariesMatchDistanceCheck() {
+        val width = 150
+        val height = 40
+        val radius = 3.3f
+        val segments = listOf(
+            floatArrayOf(3.1f, 4.2f, 125.7f, 31.9f),
+            floatArrayOf(140.3f, 2.6f, 60.4f, 37.1f),
+            floatArrayOf(70.2f, 20.7f, 70.2f, 20.7f)
+        )
+
+        val grid = BitsetCoverageGrid(width, height)
+
+        segments.forEach({
+            grid.markSegment(it[0], it[1], it[2], it[3], radius)
+        })
+
+        var expected = 0
+
+        0.until(height).forEach({ row ->
+            0.until(width).forEach({ col ->
+                val covered = segments.any({
+                    distanceToSegment(col + 0.5, row + 0.5, it) <= radius
+                })
+
+                if (covered) {
+                    expected += 1
+                }
+
+                assertEquals(covered, grid.isScratched(col, row))
+            })
+        })
+
+        assertEquals(expected, grid.scratchedCount)
+    }
+
+    private fun distanceToSegment(x: Double, y: Double, segment: FloatArray): Double {
+        val dx = (segment[2] - segment[0]).toDouble()
+        val dy = (segment[3] - segment[1]).toDouble()
+        val lengthSquared = dx * dx + dy * dy
+        val t = if (lengthSquared == 0.0) 0.0 else {
+            (((x - segment[0]) * dx + (y - segment[1]) * dy) / lengthSquared).coerceIn(0.0, 1.0)
+        }
+
+        return Math.hypot(x - (segment[0] + t * dx), y - (segment[1] + t * dy))
+    }
+}
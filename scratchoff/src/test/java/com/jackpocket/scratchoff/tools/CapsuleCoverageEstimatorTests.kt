@@ -0,0 +1,82 @@
+package com.jackpocket.scratchoff.tools
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class CapsuleCoverageEstimatorTests {
+
+    @Test
+    fun testLatticeMatchesPixelsWhenWithinBudget() {
+        val estimator = CapsuleCoverageEstimator(intArrayOf(0, 0, 10, 10), 100)
+
+        assertEquals(100, estimator.getSampleCount(0))
+
+        estimator.addSegment(0f, 0f, 0f, 10f, 5f)
+
+        assertEquals(0.5f, estimator.calculate())
+    }
+
+    @Test
+    fun testBudgetIsSharedByRegionArea() {
+        val estimator = CapsuleCoverageEstimator(intArrayOf(0, 0, 1080, 1920, 0, 0, 500, 500), 4096)
+
+        assert(estimator.getSampleCount(0) + estimator.getSampleCount(1) <= 4096)
+        assert(estimator.getSampleCount(1) * 6 < estimator.getSampleCount(0))
+    }
+
+    @Test
+    fun testEachRegionKeepsMinimumSamples() {
+        val bounds = IntArray(100 * 4)
+
+        for (i in 0 until 100) {
+            bounds[i * 4] = (i % 10) * 100
+            bounds[i * 4 + 1] = (i / 10) * 100
+            bounds[i * 4 + 2] = (i % 10) * 100 + 100
+            bounds[i * 4 + 3] = (i / 10) * 100 + 100
+        }
+
+        val estimator = CapsuleCoverageEstimator(bounds, 4096)
+
+        for (i in 0 until 100) {
+            assertEquals(CapsuleCoverageEstimator.MIN_SAMPLES_PER_REGION, estimator.getSampleCount(i))
+        }
+    }
+
+    @Test
+    fun testMinimumSamplesLimitedToPixelsOfSmallRegion() {
+        val estimator = CapsuleCoverageEstimator(intArrayOf(0, 0, 1000, 1000, 0, 0, 4, 4), 4096)
+
+        assertEquals(16, estimator.getSampleCount(1))
+    }
+
+    @Test
+    fun testOverlappingCapsulesAreOnlyCountedOnce() {
+        val estimator = CapsuleCoverageEstimator(intArrayOf(0, 0, 10, 10), 100)
+        estimator.addSegment(0f, 0f, 0f, 10f, 5f)
+        estimator.addSegment(0f, 5f, 0f, 5f, 5f)
+        estimator.addSegment(2f, 0f, 2f, 10f, 2f)
+
+        assertEquals(0.5f, estimator.calculate())
+    }
+
+    @Test
+    fun testEstimateIsCloseToExactAreaOfLargeRegion() {
+        val estimator = CapsuleCoverageEstimator(intArrayOf(0, 0, 1000, 1000), 4096)
+
+        // A horizontal capsule of length 500 and radius 50 covers
+        // 500 * 100 + PI * 50^2 = 57853.98 of 1,000,000 pixels
+        estimator.addSegment(250f, 500f, 750f, 500f, 50f)
+
+        assertEquals(0.0578f, estimator.calculate(), 0.005f)
+    }
+
+    @Test
+    fun testRegionsAreAveraged() {
+        val estimator = CapsuleCoverageEstimator(intArrayOf(0, 0, 5, 10, 5, 0, 10, 10), 100)
+        estimator.addSegment(0f, 0f, 0f, 10f, 5f)
+
+        assertEquals(1f, estimator.calculate(0))
+        assertEquals(0f, estimator.calculate(1))
+        assertEquals(0.5f, estimator.calculate())
+    }
+}
@@ -0,0 +1,169 @@
+package com.jackpocket.scratchoff.tools
+
+import android.graphics.*
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.annotation.GraphicsMode
+import java.util.concurrent.Executor
+
+@RunWith(AndroidJUnit4::class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+class ParallelThresholdCalculatorTests {
+
+    @Test
+    fun testParallelCountsMatchSerialCountsForMultipleRegions() {
+        val subject = createSubject()
+        val regions = (0 until 5)
+            .flatMap({ row ->
+                (0 until 5).map({ column ->
+                    Rect(column * 80, row * 80, column * 80 + 80, row * 80 + 80)
+                })
+            })
+
+        assertCountsMatchSerial(subject, regions)
+    }
+
+    @Test
+    fun testParallelCountsMatchSerialCountsForSingleLargeRegion() {
+        val subject = createSubject()
+        val regions = ThresholdCalculator.createFullSizeThresholdRegion(subject)
+
+        assertCountsMatchSerial(subject, regions)
+    }
+
+    @Test
+    fun testSingleLargeRegionSplitIntoStripes() {
+        val subject = createSubject()
+        val regions = ThresholdCalculator.createFullSizeThresholdRegion(subject)
+        val calculator = object: ParallelThresholdCalculator(Color.WHITE, 4) {
+            val stripes = createStripeTasks(subject, regions).map({ it.stripe })
+        }
+
+        assertEquals(4, calculator.stripes.size)
+        assertEquals(subject.height, calculator.stripes.sumOf({ it.height() }))
+        assertTrue(calculator.stripes.all({ it.width() == subject.width }))
+
+        calculator.destroy()
+    }
+
+    @Test
+    fun testSmallRegionsNotSplit() {
+        val subject = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888)
+        val regions = ThresholdCalculator.createFullSizeThresholdRegion(subject)
+        val calculator = object: ParallelThresholdCalculator(Color.WHITE, 4) {
+            val tasks = createStripeTasks(subject, regions)
+        }
+
+        assertEquals(0, calculator.tasks.size)
+
+        calculator.destroy()
+    }
+
+    @Test
+    fun testCalculatorsShareOnePoolAndReleaseIt() {
+        val pool = ThresholdScanPool(2)
+        val first = ParallelThresholdCalculator(Color.WHITE, ThresholdCalculator.DEFAULT_SCAN_BUFFER_SIZE_BYTES, 4, pool)
+        val second = ParallelThresholdCalculator(Color.WHITE, ThresholdCalculator.DEFAULT_SCAN_BUFFER_SIZE_BYTES, 4, pool)
+
+        assertEquals(2, pool.referenceCount)
+
+        val executor = pool.executor
+
+        first.destroy()
+
+        assertEquals(1, pool.referenceCount)
+        assertSame(executor, pool.executor)
+
+        second.destroy()
+        second.destroy()
+
+        assertEquals(0, pool.referenceCount)
+        assertNull(pool.executor)
+    }
+
+    @Test
+    fun testCallingThreadScansEveryStripeWhenPoolIsBusy() {
+        val subject = createSubject()
+        val regions = ThresholdCalculator.createFullSizeThresholdRegion(subject)
+
+        // Accepts, but never runs, every task
+        val pool = ThresholdScanPool(Executor({ }))
+        val parallel = ParallelThresholdCalculator(Color.WHITE, ThresholdCalculator.DEFAULT_SCAN_BUFFER_SIZE_BYTES, 4, pool)
+
+        assertEquals(ThresholdCalculator(Color.WHITE).calculate(subject, regions), parallel.calculate(subject, regions))
+
+        parallel.destroy()
+    }
+
+    @Test
+    fun testParallelDecisionMatchesSerialDecision() {
+        val subject = createSubject()
+        val regions = ThresholdCalculator.createFullSizeThresholdRegion(subject)
+
+        val serial = ThresholdCalculator(Color.WHITE)
+        val parallel = ParallelThresholdCalculator(Color.WHITE, 4)
+
+        val percent = serial.calculate(subject, regions)
+
+        listOf(0f, 0.01f, percent - 0.01f, percent, percent + 0.01f, 0.5f, 1f)
+            .forEach({
+                assertEquals(serial.isThresholdReached(subject, regions, it), parallel.isThresholdReached(subject, regions, it))
+            })
+
+        parallel.destroy()
+    }
+
+    @Test
+    fun testStripesRebuiltWhenRegionsChange() {
+        val subject = createSubject()
+        val parallel = ParallelThresholdCalculator(Color.WHITE, 4)
+
+        assertCountsMatchSerial(subject, ThresholdCalculator.createFullSizeThresholdRegion(subject), parallel)
+        assertCountsMatchSerial(subject, listOf(Rect(0, 0, 400, 200), Rect(0, 200, 400, 400)), parallel)
+        assertCountsMatchSerial(subject, listOf(Rect(0, 0, 400, 200), Rect(0, 200, 400, 400)), parallel)
+
+        parallel.destroy()
+    }
+
+    private fun assertCountsMatchSerial(subject: Bitmap, regions: List<Rect>) {
+        val parallel = ParallelThresholdCalculator(Color.WHITE, 4)
+
+        assertCountsMatchSerial(subject, regions, parallel)
+
+        parallel.destroy()
+    }
+
+    private fun assertCountsMatchSerial(subject: Bitmap, regions: List<Rect>, parallel: ParallelThresholdCalculator) {
+        val serial = ThresholdCalculator(Color.WHITE)
+
+        val serialCounts = IntArray(regions.size)
+        val parallelCounts = IntArray(regions.size)
+
+        serial.countNotMatching(subject, regions, serialCounts)
+        parallel.countNotMatching(subject, regions, parallelCounts)
+
+        assertArrayEquals(serialCounts, parallelCounts)
+        assertEquals(serial.calculate(subject, regions), parallel.calculate(subject, regions))
+    }
+
+    private fun createSubject(): Bitmap {
+        val subject = Bitmap.createBitmap(400, 400, Bitmap.Config.ARGB_8888)
+        val paint = Paint().apply({
+            this.color = Color.BLACK
+            this.strokeWidth = 30f
+        })
+
+        val canvas = Canvas(subject)
+        canvas.drawColor(Color.WHITE)
+        canvas.drawLine(0f, 0f, 400f, 400f, paint)
+        canvas.drawCircle(120f, 300f, 70f, paint)
+
+        return subject
+    }
+}
@@ -0,0 +1,77 @@
+package com.jackpocket.scratchoff.tools
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class SingleProducerSingleConsumerQueueTests {
+
+    @Test
+    fun testItemsPolledInOfferedOrder() {
+        val queue = SingleProducerSingleConsumerQueue<Int>(4)
+
+        assertTrue(queue.isEmpty)
+        assertNull(queue.poll())
+
+        0.until(3)
+            .forEach(queue::offer)
+
+        assertFalse(queue.isEmpty)
+        assertEquals(listOf(0, 1, 2), 0.until(3).map({ queue.poll() }))
+        assertNull(queue.poll())
+    }
+
+    @Test
+    fun testRingGrowsInsteadOfWaitingForConsumer() {
+        val queue = SingleProducerSingleConsumerQueue<Int>(2)
+
+        // Interleave partial consumption with growth, so the consumer
+        // has to follow links across rings of different sizes
+        0.until(5)
+            .forEach(queue::offer)
+
+        assertEquals(0, queue.poll())
+        assertEquals(1, queue.poll())
+
+        5.until(40)
+            .forEach(queue::offer)
+
+        assertEquals(2.until(40).toList(), 2.until(40).map({ queue.poll() }))
+        assertTrue(queue.isEmpty)
+
+        // The grown ring is reused once drained
+        40.until(50)
+            .forEach(queue::offer)
+
+        assertEquals(40.until(50).toList(), 40.until(50).map({ queue.poll() }))
+    }
+
+    @Test
+    fun testConcurrentHandoffPreservesEveryItemInOrder() {
+        val queue = SingleProducerSingleConsumerQueue<Int>(2)
+        val count = 100_000
+
+        val producer = Thread({
+            0.until(count)
+                .forEach(queue::offer)
+        })
+
+        producer.start()
+
+        val received = ArrayList<Int>(count)
+        val deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10)
+
+        while (received.size < count && System.nanoTime() < deadline) {
+            val item = queue.poll() ?: continue
+
+            received.add(item)
+        }
+
+        producer.join()
+
+        assertEquals(0.until(count).toList(), received)
+    }
+}
@@ -0,0 +1,62 @@
+package com.jackpocket.scratchoff.tools
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class StrokeSegmenterTests {
+
+    private val segments = ArrayList<List<Float>>()
+
+    private val segmenter = StrokeSegmenter(object: StrokeSegmenter.SegmentAggregator {
+        override fun addSegment(x0: Float, y0: Float, x1: Float, y1: Float, radius: Float) {
+            segments.add(listOf(x0, y0, x1, y1, radius))
+        }
+    })
+
+    @Test
+    fun testMovesConnectedToPreviousPointOfSamePointer() {
+        segmenter.addPoint(0, 0f, 0f, StrokeSegmenter.ACTION_DOWN, 5f)
+        segmenter.addPoint(1, 50f, 50f, StrokeSegmenter.ACTION_POINTER_DOWN, 5f)
+        segmenter.addPoint(0, 10f, 0f, StrokeSegmenter.ACTION_MOVE, 5f)
+        segmenter.addPoint(1, 60f, 50f, StrokeSegmenter.ACTION_MOVE, 2f)
+        segmenter.addPoint(0, 20f, 0f, StrokeSegmenter.ACTION_MOVE, 5f)
+
+        assertEquals(
+            listOf(
+                listOf(0f, 0f, 10f, 0f, 5f),
+                listOf(50f, 50f, 60f, 50f, 2f),
+                listOf(10f, 0f, 20f, 0f, 5f)
+            ),
+            segments
+        )
+    }
+
+    @Test
+    fun testMovesIgnoredAfterUpAndRestartedAfterPointerUp() {
+        segmenter.addPoint(0, 0f, 0f, StrokeSegmenter.ACTION_DOWN, 5f)
+        segmenter.addPoint(0, 10f, 0f, StrokeSegmenter.ACTION_POINTER_UP, 5f)
+        segmenter.addPoint(0, 30f, 0f, StrokeSegmenter.ACTION_MOVE, 5f)
+        segmenter.addPoint(0, 40f, 0f, StrokeSegmenter.ACTION_MOVE, 5f)
+        segmenter.addPoint(0, 40f, 0f, StrokeSegmenter.ACTION_UP, 5f)
+        segmenter.addPoint(0, 50f, 0f, StrokeSegmenter.ACTION_MOVE, 5f)
+
+        assertEquals(
+            listOf(
+                listOf(30f, 0f, 30f, 0f, 5f),
+                listOf(30f, 0f, 40f, 0f, 5f)
+            ),
+            segments
+        )
+    }
+
+    @Test
+    fun testPointsEstimatedWithoutAndroidFramework() {
+        val estimator = CapsuleCoverageEstimator(intArrayOf(0, 0, 10, 10), 100)
+        val segmenter = StrokeSegmenter(estimator)
+
+        segmenter.addPoint(0, 0f, 0f, StrokeSegmenter.ACTION_DOWN, 5f)
+        segmenter.addPoint(0, 0f, 10f, StrokeSegmenter.ACTION_MOVE, 5f)
+
+        assertEquals(0.5f, estimator.calculate())
+    }
+}
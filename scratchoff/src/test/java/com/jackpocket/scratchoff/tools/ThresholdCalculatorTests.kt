@@ -4,6 +4,8 @@ import android.graphics.*
 import androidx.test.ext.junit.runners.AndroidJUnit4
 import com.jackpocket.scratchoff.ScratchoffThresholdProcessor
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
 import org.junit.Test
 import org.junit.runner.RunWith
 import org.robolectric.annotation.GraphicsMode
@@ -79,4 +81,77 @@ class ThresholdCalculatorTests {
         assertEquals(25, calculator.countNotMatching(subject, topLeftAndBottomRight.first()))
         assertEquals(0.50f, calculator.calculate(subject, topLeftAndBottomRight))
     }
-}
\ No newline at end of file
+
+    @Test
+    fun testCountNotMatchingAcrossMultipleBandsOfSmallScanBuffer() {
+        // 28 bytes fits 7 pixels, so each band of a 10px-wide region is a single row
+        val calculator = ThresholdCalculator(Color.WHITE, 28)
+        val subject = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888)
+        val fullSizeRegion = ThresholdCalculator.createFullSizeThresholdRegion(subject)
+
+        val canvas = Canvas(subject)
+        canvas.drawColor(Color.WHITE)
+        canvas.drawRect(0f, 0f, 10f, 3f, Paint().apply({ this.color = Color.BLACK }))
+
+        assertEquals(30, calculator.countNotMatching(subject, fullSizeRegion.first()))
+        assertEquals(10, calculator.getScanBufferLength())
+    }
+
+    @Test
+    fun testScanBufferIsReusedBetweenCounts() {
+        val calculator = ThresholdCalculator(Color.WHITE, 200)
+        val subject = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888)
+        val fullSizeRegion = ThresholdCalculator.createFullSizeThresholdRegion(subject)
+
+        val canvas = Canvas(subject)
+        canvas.drawColor(Color.WHITE)
+        canvas.drawRect(0f, 0f, 5f, 5f, Paint().apply({ this.color = Color.BLACK }))
+
+        assertEquals(25, calculator.countNotMatching(subject, fullSizeRegion.first()))
+        assertEquals(50, calculator.getScanBufferLength())
+
+        assertEquals(25, calculator.countNotMatching(subject, fullSizeRegion.first()))
+        assertEquals(0, calculator.countNotMatching(subject, Rect(5, 5, 10, 10)))
+        assertEquals(50, calculator.getScanBufferLength())
+    }
+
+    @Test
+    fun testThresholdReachedDecisionMatchesCalculatedPercentage() {
+        val calculator = ThresholdCalculator(Color.WHITE, 40)
+        val subject = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888)
+        val regions = listOf(
+            Rect(0, 0, 10, 5),
+            Rect(0, 5, 10, 10)
+        )
+
+        val canvas = Canvas(subject)
+        canvas.drawColor(Color.WHITE)
+        canvas.drawRect(0f, 0f, 10f, 4f, Paint().apply({ this.color = Color.BLACK }))
+
+        assertEquals(0.4f, calculator.calculate(subject, regions))
+
+        listOf(0f, 0.1f, 0.39f, 0.4f)
+            .forEach({
+                assertTrue(calculator.isThresholdReached(subject, regions, it))
+            })
+
+        listOf(0.41f, 0.5f, 1f)
+            .forEach({
+                assertFalse(calculator.isThresholdReached(subject, regions, it))
+            })
+    }
+
+    @Test
+    fun testThresholdReachedDecisionFromCountsMatchesCalculatedPercentage() {
+        val calculator = ThresholdCalculator(0)
+        val counts = intArrayOf(25, 0, 100)
+        val regions = listOf(
+            Rect(0, 0, 10, 10),
+            Rect(10, 0, 20, 10),
+            Rect(0, 10, 10, 20)
+        )
+
+        assertTrue(calculator.isThresholdReached(counts, regions, 0.4f))
+        assertFalse(calculator.isThresholdReached(counts, regions, 0.45f))
+    }
+}
@@ -0,0 +1,188 @@
+package com.jackpocket.scratchoff.tools
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.Canvas
+import android.graphics.Color
+import android.graphics.Paint
+import android.graphics.PorterDuff
+import android.graphics.PorterDuffXfermode
+import android.graphics.Rect
+import android.view.MotionEvent
+import android.view.View
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.jackpocket.scratchoff.paths.ScratchPathManager
+import com.jackpocket.scratchoff.paths.ScratchPathPoint
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.annotation.GraphicsMode
+
+@RunWith(AndroidJUnit4::class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+class TiledOverlayBitmapTests {
+
+    private val context: Context = ApplicationProvider.getApplicationContext()
+
+    @Test
+    fun testTilesWithoutVisibleContentNeverKept() {
+        val overlay = TiledOverlayBitmap.createFromView(createPartiallyDrawnView(), 10)
+
+        // Only the top-left tile, and the one partially covered to its right, have content
+        assertEquals(2, overlay.tileCount)
+
+        val result = Bitmap.createBitmap(25, 25, Bitmap.Config.ARGB_8888)
+
+        overlay.draw(Canvas(result), null)
+
+        assertEquals(Color.RED, result.getPixel(0, 0))
+        assertEquals(Color.RED, result.getPixel(11, 9))
+        assertEquals(Color.TRANSPARENT, result.getPixel(12, 0))
+        assertEquals(Color.TRANSPARENT, result.getPixel(0, 10))
+        assertEquals(Color.TRANSPARENT, result.getPixel(24, 24))
+    }
+
+    @Test
+    fun testFullyErasedTilesReleasedAndSkippedWhenDrawing() {
+        val overlay = TiledOverlayBitmap.createFromView(createPartiallyDrawnView(), 10)
+
+        val clearPaint = ScratchPathManager.createBaseScratchoffPaint(1)
+            .apply({ this.xfermode = PorterDuffXfermode(PorterDuff.Mode.CLEAR) })
+
+        // Erases the partially covered column of the second tile only
+        val batch = ScratchPathManager()
+            .createBatch(
+                listOf(
+                    ScratchPathPoint(0, 11f, 0f, MotionEvent.ACTION_DOWN),
+                    ScratchPathPoint(0, 11f, 10f, MotionEvent.ACTION_MOVE)
+                )
+            )
+
+        overlay.erase(batch, clearPaint, Rect(8, -3, 14, 13))
+
+        assertEquals(1, overlay.releaseTransparentTiles())
+        assertEquals(1, overlay.tileCount)
+
+        // Nothing else was erased since
+        assertEquals(0, overlay.releaseTransparentTiles())
+
+        val result = Bitmap.createBitmap(25, 25, Bitmap.Config.ARGB_8888)
+
+        overlay.draw(Canvas(result), null)
+
+        assertEquals(Color.RED, result.getPixel(5, 5))
+        assertEquals(Color.TRANSPARENT, result.getPixel(10, 5))
+    }
+
+    @Test
+    fun testReducedResolutionTilesScaledBackToOriginalSize() {
+        val overlay = TiledOverlayBitmap.createFromView(createPartiallyDrawnView(), 10, 0.5f)
+
+        // The 13x13 scaled overlay spans 4 tiles, of which only the first has content
+        assertEquals(25, overlay.width)
+        assertEquals(1, overlay.tileCount)
+
+        val result = Bitmap.createBitmap(25, 25, Bitmap.Config.ARGB_8888)
+
+        overlay.draw(Canvas(result), null)
+
+        assertEquals(Color.RED, result.getPixel(5, 5))
+        assertEquals(Color.TRANSPARENT, result.getPixel(20, 20))
+    }
+
+    @Test
+    fun testRecycleReleasesEveryTile() {
+        val overlay = TiledOverlayBitmap.createFromView(createPartiallyDrawnView(), 10)
+        overlay.recycle()
+
+        assertTrue(overlay.isRecycled)
+        assertEquals(0, overlay.tileCount)
+    }
+
+    @Test
+    fun testRecycledTilesReleasedToBitmapPool() {
+        val pool = BitmapPool(1024 * 1024)
+        val overlay = TiledOverlayBitmap.createFromView(createPartiallyDrawnView(), 10, 1f, pool)
+
+        // The band each row was rendered into is released once rendering completes
+        val pooledAfterRendering = pool.pooledBytes
+
+        overlay.recycle()
+
+        assertEquals(pooledAfterRendering + (2 * 10 * 10 * 4), pool.pooledBytes)
+    }
+
+    @Test
+    fun testViewDrawnOncePerRowOfTiles() {
+        var drawCount: Int = 0
+
+        val view = object: View(context) {
+            override fun draw(canvas: Canvas) {
+                drawCount += 1
+
+                canvas.drawRect(0f, 0f, 25f, 25f, Paint().apply({ this.color = Color.RED }))
+            }
+        }
+        view.layout(0, 0, 25, 25)
+
+        val overlay = TiledOverlayBitmap.createFromView(view, 10)
+
+        assertEquals(3, drawCount)
+        assertEquals(9, overlay.tileCount)
+
+        val result = Bitmap.createBitmap(25, 25, Bitmap.Config.ARGB_8888)
+
+        overlay.draw(Canvas(result), null)
+
+        assertEquals(Color.RED, result.getPixel(24, 24))
+        assertEquals(Color.RED, result.getPixel(15, 12))
+    }
+
+    @Test
+    fun testTransparentTilesReleasedToBitmapPoolAfterNextDraw() {
+        val pool = BitmapPool(1024 * 1024)
+        val overlay = TiledOverlayBitmap.createFromView(createPartiallyDrawnView(), 10, 1f, pool)
+
+        val pooledAfterRendering = pool.pooledBytes
+
+        val clearPaint = ScratchPathManager.createBaseScratchoffPaint(1)
+            .apply({ this.xfermode = PorterDuffXfermode(PorterDuff.Mode.CLEAR) })
+
+        val batch = ScratchPathManager()
+            .createBatch(
+                listOf(
+                    ScratchPathPoint(0, 11f, 0f, MotionEvent.ACTION_DOWN),
+                    ScratchPathPoint(0, 11f, 10f, MotionEvent.ACTION_MOVE)
+                )
+            )
+
+        overlay.erase(batch, clearPaint, Rect(8, -3, 14, 13))
+
+        assertEquals(1, overlay.releaseTransparentTiles())
+        assertEquals(pooledAfterRendering, pool.pooledBytes)
+
+        val result = Bitmap.createBitmap(25, 25, Bitmap.Config.ARGB_8888)
+
+        // Draws with a Paint are not the View's draws, so the tile is still held back
+        overlay.draw(Canvas(result), Paint())
+
+        assertEquals(pooledAfterRendering, pool.pooledBytes)
+
+        overlay.draw(Canvas(result), null)
+
+        assertEquals(pooledAfterRendering + (10 * 10 * 4), pool.pooledBytes)
+    }
+
+    private fun createPartiallyDrawnView(): View {
+        val view = object: View(context) {
+            override fun draw(canvas: Canvas) {
+                canvas.drawRect(0f, 0f, 12f, 10f, Paint().apply({ this.color = Color.RED }))
+            }
+        }
+        view.layout(0, 0, 25, 25)
+
+        return view
+    }
+}